@@ -16,16 +16,21 @@
  */
 package com.ymcmp.ntshell;
 
-import java.util.HashSet;
 import java.util.Set;
 
+import java.util.concurrent.CopyOnWriteArraySet;
+
 /**
  *
  * @author YTENG
  */
 abstract class AbstractFrontend implements Frontend {
 
-    protected Set<NtLibrary> libraries = new HashSet<>();
+    /**
+     * Linked once and searched on every variable lookup, possibly by many
+     * threads, so reads should not need a lock
+     */
+    protected Set<NtLibrary> libraries = new CopyOnWriteArraySet<>();
 
     @Override
     public void linkLibrary(final NtLibrary library) {
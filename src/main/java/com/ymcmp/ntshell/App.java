@@ -23,10 +23,20 @@ import net.sourceforge.argparse4j.impl.Arguments;
 
 import com.ymcmp.ntshell.ast.*;
 
+import com.ymcmp.ntshell.value.CoreAtom;
+import com.ymcmp.ntshell.value.CoreFuture;
+import com.ymcmp.ntshell.value.CoreMatrix;
+import com.ymcmp.ntshell.value.CoreNumber;
+import com.ymcmp.ntshell.value.MemoizedLambda;
+
 import java.awt.HeadlessException;
 
 import java.io.FileReader;
 import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.Reader;
+
+import java.net.InetSocketAddress;
 
 import java.util.List;
 
@@ -45,6 +55,13 @@ public class App {
     private boolean levelOp = true;
     private boolean simplifyRat = true;
     private boolean unfoldConst = true;
+    private boolean evaluate = true;
+
+    /**
+     * Set when the session is one of many served by the same process, which
+     * then share the process-wide settings
+     */
+    private boolean served = false;
 
     private InteractiveModeVisitor session = null;
     private Frontend environment = null;
@@ -64,10 +81,50 @@ public class App {
                 .type(FileReader.class)
                 .setDefault((Object) null)
                 .help("executes the specified file");
+        parser.addArgument("-b", "--batch")
+                .action(Arguments.storeTrue())
+                .help("executes the file (or the standard input) without prompts, prints one result per line and exits");
+        parser.addArgument("--json")
+                .action(Arguments.storeTrue())
+                .help("in batch mode, prints each result as a JSON object");
+        parser.addArgument("--serve")
+                .metavar("PORT")
+                .type(Integer.class)
+                .help("serves sessions to clients connecting on the local port (0 picks a free one)");
+        parser.addArgument("--workers")
+                .type(Integer.class)
+                .setDefault(Runtime.getRuntime().availableProcessors())
+                .help("in server mode, the amount of threads evaluating requests");
+        parser.addArgument("--timeout")
+                .metavar("MILLIS")
+                .type(Long.class)
+                .setDefault(10000L)
+                .help("in server mode, the time a request may take before it is interrupted (0 means no limit)");
         final Namespace res = parser.parseArgsOrFail(args);
 
+        final Integer port = res.get("serve");
+        if (port != null) {
+            try (final ServerMode server = new ServerMode(port, res.getInt("workers"), res.getLong("timeout"))) {
+                final InetSocketAddress addr = server.getAddress();
+                System.err.println("Listening on " + addr.getHostString() + ":" + addr.getPort());
+                server.serve();
+            } catch (IOException | IllegalArgumentException ex) {
+                System.err.println(ex);
+                System.exit(1);
+            }
+            return;
+        }
+
         final App app = new App();
         final FileReader reader = res.get("file");
+        if (res.getBoolean("batch")) {
+            final int status;
+            try (final BatchMode inst = new BatchMode(res.getBoolean("json"))) {
+                status = app.executeBatch(inst, reader == null ? new InputStreamReader(System.in) : reader);
+            }
+            System.exit(status);
+        }
+
         if (res.getBoolean("mode")) {
             try (final Frontend inst = new SwingMode()) {
                 app.executeFrontend(inst, reader);
@@ -97,6 +154,47 @@ public class App {
         interactiveMode();
     }
 
+    /**
+     * Evaluates every statement of a script without any user interaction. The
+     * evaluation stops at the first error.
+     *
+     * @param inst The batch frontend receiving the results
+     * @param reader The script
+     * @return The exit status: 0 on success, 1 if the script failed
+     */
+    public int executeBatch(final BatchMode inst, final Reader reader) {
+        switchFrontend(inst);
+        environment.linkLibrary(Core.getInstance());
+        session = new InteractiveModeVisitor(environment);
+        try {
+            final List<Token> toks = Lexer.lexFromReader(reader);
+            while (!toks.isEmpty()) {
+                final AST ast = parser.consumeExpr(toks);
+                if (ast == null) {
+                    break;
+                }
+
+                inst.writeResult(session.eval(procRuleRewrite(ast.unfoldConstant())));
+                while (!toks.isEmpty() && toks.get(0).type == Token.Type.SEMI) {
+                    toks.remove(0);
+                }
+            }
+            if (!toks.isEmpty()) {
+                throw new ParserException("Unexpected " + toks.get(0));
+            }
+            return 0;
+        } catch (LexerException | RuntimeException ex) {
+            inst.writeError(ex);
+            return 1;
+        } finally {
+            try {
+                reader.close();
+            } catch (IOException ex) {
+                // do nothing
+            }
+        }
+    }
+
     public void switchFrontend(final Frontend env) {
         parser.switchFrontend(this.environment = env);
     }
@@ -107,6 +205,21 @@ public class App {
         session = new InteractiveModeVisitor(environment);
     }
 
+    /**
+     * Sets up a session without greeting the user. The session shares the
+     * process with other ones, so commands changing process-wide settings are
+     * refused. The precision is not one of them as long as the session is
+     * evaluated in a {@link com.ymcmp.ntshell.rte.TaskScope} of its own.
+     *
+     * @param inst The frontend of the session
+     */
+    public void initServedSession(final Frontend inst) {
+        switchFrontend(inst);
+        environment.linkLibrary(Core.getInstance());
+        session = new InteractiveModeVisitor(environment);
+        served = true;
+    }
+
     public static void loadStartupFile(final FileReader reader, final InteractiveModeVisitor session) {
         try {
             final List<Token> toks = Lexer.lexFromReader(reader);
@@ -127,94 +240,200 @@ public class App {
     }
 
     public void interactiveMode() {
-        boolean evaluate = true;
+        while (processLine(environment.readLine())) {
+            // keep reading
+        }
+    }
 
-        while (true) {
-            final String input = environment.readLine();
-            switch (input) {
-            case "~exit":
-                return;
-            case "~help":
-                environment.writeLine("Enter the expression you want to test\nEnd the line with `\\` to wrap on the next line\nWhen the expression is done, punch in a `;`\n\nCommands:\n  ~help ~exit ~restart ~showast ~hideast\n  ~transneg ~no-transneg ~levelop ~no-levelop\n  ~simprat ~no-simprat ~unfoldc ~no-unfoldc\n  ~eval ~no-eval");
-                continue;
-            case "~showast":
-                showAST = true;
-                continue;
-            case "~hideast":
-                showAST = false;
-                continue;
-            case "~transneg":
-                transNeg = true;
-                continue;
-            case "~no-transneg":
-                transNeg = false;
-                continue;
-            case "~levelop":
-                levelOp = true;
-                continue;
-            case "~no-levelop":
-                levelOp = false;
-                continue;
-            case "~simprat":
-                simplifyRat = true;
-                continue;
-            case "~no-simprat":
-                simplifyRat = false;
-                continue;
-            case "~unfoldc":
-                unfoldConst = true;
-                continue;
-            case "~no-unfoldc":
-                unfoldConst = false;
-                continue;
-            case "~eval":
-                evaluate = true;
-                continue;
-            case "~no-eval":
-                evaluate = false;
-                continue;
-            case "~restart":
-                session.reset();
-                continue;
-            case "":
-                continue;
-            default:
-                if (input.charAt(0) == '~') {
-                    environment.errWriteLine("Unrecognized command " + input);
-                    environment.errWriteLine("Type `~help` for help");
-                    continue;
+    /**
+     * Runs one line of input, which is either a command or some expressions.
+     * Errors are reported to the frontend.
+     *
+     * @param input The line
+     * @return {@code false} if the session should end
+     */
+    public boolean processLine(final String input) {
+        if (input == null) {
+            // The frontend has nothing more to give
+            return false;
+        }
+        switch (input) {
+        case "~exit":
+            return false;
+        case "~help":
+            environment.writeLine("Enter the expression you want to test\nEnd the line with `\\` to wrap on the next line\nWhen the expression is done, punch in a `;`\n\nCommands:\n  ~help ~exit ~restart ~showast ~hideast\n  ~transneg ~no-transneg ~levelop ~no-levelop\n  ~simprat ~no-simprat ~unfoldc ~no-unfoldc\n  ~eval ~no-eval ~automemo ~no-automemo\n  ~display [maxrows maxcols] ~precision [digits]\n  ~workers [count] ~stats");
+            return true;
+        case "~showast":
+            showAST = true;
+            return true;
+        case "~hideast":
+            showAST = false;
+            return true;
+        case "~transneg":
+            transNeg = true;
+            return true;
+        case "~no-transneg":
+            transNeg = false;
+            return true;
+        case "~levelop":
+            levelOp = true;
+            return true;
+        case "~no-levelop":
+            levelOp = false;
+            return true;
+        case "~simprat":
+            simplifyRat = true;
+            return true;
+        case "~no-simprat":
+            simplifyRat = false;
+            return true;
+        case "~unfoldc":
+            unfoldConst = true;
+            return true;
+        case "~no-unfoldc":
+            unfoldConst = false;
+            return true;
+        case "~eval":
+            evaluate = true;
+            return true;
+        case "~no-eval":
+            evaluate = false;
+            return true;
+        case "~automemo":
+            session.setAutoMemo(true);
+            return true;
+        case "~no-automemo":
+            session.setAutoMemo(false);
+            return true;
+        case "~restart":
+            session.reset();
+            return true;
+        case "~stats":
+            writeStats();
+            return true;
+        case "":
+            return true;
+        default:
+            if (input.charAt(0) == '~') {
+                if (processParamCommand(input.split("\\s+"))) {
+                    return true;
                 }
+                environment.errWriteLine("Unrecognized command " + input);
+                environment.errWriteLine("Type `~help` for help");
+                return true;
             }
+        }
 
-            try {
-                final List<Token> toks = Lexer.lexFromString(input);
+        try {
+            final List<Token> toks = Lexer.lexFromString(input);
 
-                while (!toks.isEmpty()) {
-                    AST ast = parser.consumeExpr(toks);
-                    if (ast == null) {
-                        break;
-                    }
+            while (!toks.isEmpty()) {
+                AST ast = parser.consumeExpr(toks);
+                if (ast == null) {
+                    break;
+                }
 
-                    if (showAST) {
-                        environment.writeLine("showast:  " + ast);
-                    }
+                if (showAST) {
+                    environment.writeLine("showast:  " + ast);
+                }
 
-                    ast = procRuleRewrite(ast.unfoldConstant());
+                ast = procRuleRewrite(ast.unfoldConstant());
+
+                if (evaluate) {
+                    writeResult(session.eval(ast));
+                }
+                while (!toks.isEmpty() && toks.get(0).type == Token.Type.SEMI) {
+                    toks.remove(0);
+                }
+            }
+        } catch (IllegalArgumentException ex) {
+            environment.errWriteLine(ex);
+        } catch (NullPointerException ex) {
+            environment.errWriteLine("Syntax error?");
+        } catch (LexerException | RuntimeException ex) {
+            environment.errWriteLine(ex);
+        }
+        return true;
+    }
 
-                    if (evaluate) {
-                        environment.writeLine(session.eval(ast));
+    /**
+     * Handles the commands that take parameters
+     *
+     * @param cmd The command split by whitespace
+     * @return {@code true} if the command was recognized
+     */
+    private boolean processParamCommand(final String[] cmd) {
+        if (served && cmd.length > 1) {
+            switch (cmd[0]) {
+            case "~display":
+            case "~workers":
+                environment.errWriteLine(cmd[0] + " is shared by every session of the server and cannot be changed");
+                return true;
+            default:
+            }
+        }
+        try {
+            switch (cmd[0]) {
+            case "~display":
+                if (cmd.length == 3) {
+                    CoreMatrix.setDisplayLimit(Integer.parseInt(cmd[1]), Integer.parseInt(cmd[2]));
+                } else if (cmd.length != 1) {
+                    environment.errWriteLine("Usage: ~display [maxrows maxcols]  (0 means no limit)");
+                    return true;
+                }
+                environment.writeLine("display: " + CoreMatrix.getDisplayRows() + " rows, " + CoreMatrix.getDisplayColumns() + " columns");
+                return true;
+            case "~precision":
+                if (cmd.length == 2) {
+                    final int digits = Integer.parseInt(cmd[1]);
+                    if (digits < 1) {
+                        environment.errWriteLine("Precision must be at least one digit");
+                        return true;
                     }
-                    while (!toks.isEmpty() && toks.get(0).type == Token.Type.SEMI) {
-                        toks.remove(0);
+                    CoreNumber.setPrecision(digits);
+                } else if (cmd.length != 1) {
+                    environment.errWriteLine("Usage: ~precision [digits]");
+                    return true;
+                }
+                environment.writeLine("precision: " + CoreNumber.getPrecision() + " digits");
+                return true;
+            case "~workers":
+                if (cmd.length == 2) {
+                    final int workers = Integer.parseInt(cmd[1]);
+                    if (workers < 1) {
+                        environment.errWriteLine("There must be at least one worker");
+                        return true;
                     }
+                    CoreFuture.setParallelism(workers);
+                } else if (cmd.length != 1) {
+                    environment.errWriteLine("Usage: ~workers [count]");
+                    return true;
                 }
-            } catch (IllegalArgumentException ex) {
-                environment.errWriteLine(ex);
-            } catch (NullPointerException ex) {
-                environment.errWriteLine("Syntax error?");
-            } catch (LexerException | RuntimeException ex) {
-                environment.errWriteLine(ex);
+                environment.writeLine("workers: " + CoreFuture.getParallelism() + " threads for spawned tasks");
+                return true;
+            default:
+                return false;
             }
+        } catch (NumberFormatException ex) {
+            environment.errWriteLine("Expected a number: " + ex.getMessage());
+            return true;
+        }
+    }
+
+    private void writeStats() {
+        environment.writeLine("atom intern: " + CoreAtom.getInternHits() + " hits, "
+                + CoreAtom.getInternMisses() + " misses, "
+                + CoreAtom.getInternTableSize() + " live");
+        environment.writeLine("memo: " + MemoizedLambda.getTotalHits() + " hits, "
+                + MemoizedLambda.getTotalMisses() + " misses");
+    }
+
+    private void writeResult(final NtValue result) {
+        if (result instanceof CoreMatrix) {
+            // matrices are streamed instead of being rendered as a whole
+            ((CoreMatrix) result).writeTo(environment);
+        } else {
+            environment.writeLine(result);
         }
     }
 
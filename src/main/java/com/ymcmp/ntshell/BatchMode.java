@@ -0,0 +1,195 @@
+/**
+ *     Copyright (C) 2017  Paul Teng
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program. If not, see <http://www.gnu.org/licenses/>.
+ */
+package com.ymcmp.ntshell;
+
+import com.ymcmp.ntshell.value.CoreAtom;
+import com.ymcmp.ntshell.value.CoreMatrix;
+import com.ymcmp.ntshell.value.CoreRope;
+
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+
+import java.util.function.Consumer;
+
+/**
+ * A non-interactive frontend. Nothing is ever read from it (the script is
+ * supplied up front), no prompts are printed, and every result is written on
+ * its own line, matrices included. Output is buffered and flushed after every
+ * result and error, so a program reading the output sees each result as soon
+ * as it is ready.
+ *
+ * @author YTENG
+ */
+public class BatchMode extends AbstractFrontend {
+
+    private final Writer out;
+    private final Writer err;
+    private final boolean json;
+
+    public BatchMode(final boolean json) {
+        this(new BufferedWriter(new OutputStreamWriter(System.out)), new BufferedWriter(new OutputStreamWriter(System.err)), json);
+    }
+
+    BatchMode(final Writer out, final Writer err, final boolean json) {
+        this.out = out;
+        this.err = err;
+        this.json = json;
+    }
+
+    /**
+     * There is no one to ask for more input. Returning {@code null} makes the
+     * parser treat the end of the script as the end of the stream.
+     *
+     * @return Always {@code null}
+     */
+    @Override
+    public String readLine() {
+        return null;
+    }
+
+    @Override
+    public void write(final char c) {
+        try {
+            out.write(c);
+        } catch (IOException ex) {
+        }
+    }
+
+    @Override
+    public void write(final Object o) {
+        try {
+            out.write(String.valueOf(o));
+        } catch (IOException ex) {
+        }
+    }
+
+    @Override
+    public void errWrite(final char c) {
+        try {
+            err.write(c);
+        } catch (IOException ex) {
+        }
+    }
+
+    @Override
+    public void errWrite(final Object o) {
+        try {
+            err.write(String.valueOf(o));
+        } catch (IOException ex) {
+        }
+    }
+
+    /**
+     * Writes the result of one statement. Atoms and ropes are written as
+     * their text, other matrices are written inline as {@code [a, b; c, d]}.
+     * In JSON mode, the result becomes {@code {"result":"..."}} on a single
+     * line. Matrices are written in full either way, cell by cell.
+     *
+     * @param result The result of the statement
+     */
+    public void writeResult(final NtValue result) {
+        if (json) {
+            write("{\"result\":\"");
+            writeValue(result, this::writeQuoted);
+            writeLine("\"}");
+        } else {
+            writeValue(result, this::write);
+            writeLine();
+        }
+        flush();
+    }
+
+    private static void writeValue(final NtValue value, final Consumer<String> out) {
+        if (value instanceof CoreRope) {
+            ((CoreRope) value).forEachPiece(out);
+        } else if (value instanceof CoreAtom) {
+            out.accept(value.toString());
+        } else if (value instanceof CoreMatrix) {
+            ((CoreMatrix) value).writeInline(out);
+        } else {
+            out.accept(String.valueOf(value));
+        }
+    }
+
+    /**
+     * Reports the error that aborted the script. In JSON mode, the error is
+     * written to the standard output as {@code {"error":"..."}} so the stream
+     * stays parsable, otherwise it goes to the standard error.
+     *
+     * @param ex The error
+     */
+    public void writeError(final Exception ex) {
+        if (json) {
+            write("{\"error\":\"");
+            writeQuoted(String.valueOf(ex));
+            writeLine("\"}");
+        } else {
+            errWriteLine(ex);
+        }
+        flush();
+    }
+
+    /**
+     * Writes text escaped for the inside of a JSON string
+     */
+    private void writeQuoted(final String str) {
+        for (int i = 0; i < str.length(); ++i) {
+            final char c = str.charAt(i);
+            switch (c) {
+            case '"':
+                write("\\\"");
+                break;
+            case '\\':
+                write("\\\\");
+                break;
+            case '\n':
+                write("\\n");
+                break;
+            case '\r':
+                write("\\r");
+                break;
+            case '\t':
+                write("\\t");
+                break;
+            default:
+                if (c < 0x20) {
+                    write(String.format("\\u%04x", (int) c));
+                } else {
+                    write(c);
+                }
+            }
+        }
+    }
+
+    private void flush() {
+        try {
+            out.flush();
+        } catch (IOException ex) {
+        }
+        try {
+            err.flush();
+        } catch (IOException ex) {
+        }
+    }
+
+    @Override
+    public void close() {
+        flush();
+    }
+}
@@ -26,10 +26,29 @@ import java.io.FileReader;
 import java.io.IOException;
 
 import java.util.Map;
+import java.util.Set;
 import java.util.Arrays;
 import java.util.HashMap;
+import java.util.HashSet;
+
+import java.util.concurrent.ConcurrentHashMap;
 
 /**
+ * Evaluates syntax trees.
+ * <p>
+ * Concurrency model: numbers, atoms, ropes, syntax trees and library
+ * routines never change once created and can be shared by any amount of
+ * threads. Matrices that are built lazily, thunks and memoized lambdas guard
+ * their caches themselves. Values that do change, like joiners, synchronize
+ * their own state.
+ * <p>
+ * The top level variables of a visitor live in a concurrent map, so
+ * {@link #eval(AST)} can be called on the same visitor from several threads
+ * at once, for example to evaluate independent expressions against one
+ * loaded workspace. Each call of a user defined lambda gets a private copy of
+ * the variables it can see, which only the calling thread uses. Assignments
+ * from different threads to the same top level variable are not ordered, the
+ * last one wins.
  *
  * @author YTENG
  */
@@ -38,7 +57,7 @@ public class InteractiveModeVisitor extends Visitor<NtValue> {
     private final CoreLambda FUNC_LOAD_FILE = new CoreLambda(new CoreLambda.Info("Load file", "atom -> number", "Tries to load a NtShell script into the current context. Returns anything but zero on success")) {
         @Override
         public NtValue applyCall(final NtValue[] params) {
-            if (params.length == 1 && params[0] instanceof CoreAtom) {
+            if (params.length == 1 && (params[0] instanceof CoreAtom || params[0] instanceof CoreRope)) {
                 final String path = params[0].toString();
                 try (final FileReader reader = new FileReader(path)) {
                     App.loadStartupFile(reader, InteractiveModeVisitor.this);
@@ -68,24 +87,55 @@ public class InteractiveModeVisitor extends Visitor<NtValue> {
         }
     };
 
+    /**
+     * The user defined lambdas whose purity is being checked by the current
+     * thread, used to stop recursive functions from being checked forever
+     */
+    private static final ThreadLocal<Set<UserDefLambda>> PURITY_CHECKS = ThreadLocal.withInitial(HashSet::new);
+
     private final Map<String, NtValue> vars;
     private final Frontend env;
 
+    /**
+     * Assigning a lambda that can be cached wraps it in a
+     * {@link MemoizedLambda}
+     */
+    private volatile boolean autoMemo;
+
     public InteractiveModeVisitor(final Frontend env) {
-        this.vars = new HashMap<>();
+        this.vars = new ConcurrentHashMap<>();
         this.env = env;
     }
 
-    private InteractiveModeVisitor(final Map<String, NtValue> vars, final Frontend env) {
+    private InteractiveModeVisitor(final Map<String, NtValue> vars, final Frontend env, final boolean autoMemo) {
         this.vars = new HashMap<>(vars);
         this.env = env;
+        this.autoMemo = autoMemo;
     }
 
     public void reset() {
         vars.clear();
     }
 
+    /**
+     * Enables or disables automatic memoization. When enabled, assigning a
+     * user defined lambda to a variable stores a memoized version of it
+     * instead, but only if the lambda is pure and does not read any variable
+     * other than its parameters and the one it is assigned to. Reading other
+     * variables would let the cached results go stale when they change.
+     *
+     * @param autoMemo true to enable
+     */
+    public void setAutoMemo(final boolean autoMemo) {
+        this.autoMemo = autoMemo;
+    }
+
+    public boolean isAutoMemo() {
+        return autoMemo;
+    }
+
     public NtValue eval(final AST ast) {
+        EvaluationInterruptedException.check();
         try {
             return visit(ast);
         } catch (TailCallTrigger ex) {
@@ -116,23 +166,32 @@ public class InteractiveModeVisitor extends Visitor<NtValue> {
     @Override
     public NtValue visitVariableVal(final VariableVal variable) {
         final String name = variable.val.text;
-        NtValue val = vars.get(name);
+        final NtValue val = lookup(name);
         if (val == null) {
-            val = env.findDefinition(name);
-            if (val == null) {
-                switch (name) {
-                case "load_file":
-                    return FUNC_LOAD_FILE;
-                case "eval":
-                    return FUNC_EVAL;
-                default:
-                    throw new UndefinedHandleException("Variable " + name + " has not been defined");
-                }
-            }
+            throw new UndefinedHandleException("Variable " + name + " has not been defined");
         }
         return val;
     }
 
+    private NtValue lookup(final String name) {
+        final NtValue val = vars.get(name);
+        if (val != null) {
+            return val;
+        }
+        final NtValue def = env.findDefinition(name);
+        if (def != null) {
+            return def;
+        }
+        switch (name) {
+        case "load_file":
+            return FUNC_LOAD_FILE;
+        case "eval":
+            return FUNC_EVAL;
+        default:
+            return null;
+        }
+    }
+
     @Override
     public CoreMatrix visitMatrixVal(final MatrixVal matrix) {
         if (matrix.columns.length == 0) {
@@ -313,8 +372,20 @@ public class InteractiveModeVisitor extends Visitor<NtValue> {
             throw new UndefinedHandleException("Attempt to mutate value of non-existent variable " + assign.to.text);
         }
 
-        final NtValue val = eval(assign.value);
+        NtValue val = eval(assign.value);
+        if (val instanceof CoreMatrix) {
+            // Deferred element-wise operations are done now, so their errors
+            // belong to this statement
+            val = ((CoreMatrix) val).force();
+        }
         vars.put(assign.to.text, val);
+        if (autoMemo && val instanceof UserDefLambda
+                && ((UserDefLambda) val).isCacheable(assign.to.text)) {
+            // Recursive calls look up the name, so they hit the cache too
+            final NtValue memo = new MemoizedLambda(val, MemoizedLambda.DEFAULT_CAPACITY);
+            vars.put(assign.to.text, memo);
+            return memo;
+        }
         return val;
     }
 
@@ -331,9 +402,20 @@ public class InteractiveModeVisitor extends Visitor<NtValue> {
         return visit(assign.exprs[assign.exprs.length - 1]);
     }
 
+    @Override
+    public CoreThunk visitLazyExpr(final LazyExpr lazy) {
+        // Like a lambda, the expression sees the variables of this scope at
+        // the time it is forced but cannot assign to them
+        return new CoreThunk(() -> new InteractiveModeVisitor(vars, env, autoMemo).eval(lazy.expr));
+    }
+
     private class UserDefLambda extends CoreLambda {
 
-        public final Map<String, NtValue> lambdaLocals = new HashMap<>();
+        /**
+         * Shared by every call of the lambda, which might happen on different
+         * threads
+         */
+        public final Map<String, NtValue> lambdaLocals = new ConcurrentHashMap<>();
 
         public final AnonFuncVal decl;
 
@@ -348,7 +430,7 @@ public class InteractiveModeVisitor extends Visitor<NtValue> {
             if (params.length != decl.inputs.length) {
                 throw new DispatchException("Expected " + decl.inputs.length + " parameter(s) but got " + params.length);
             }
-            final InteractiveModeVisitor vis = new InteractiveModeVisitor(vars, env) {
+            final InteractiveModeVisitor vis = new InteractiveModeVisitor(vars, env, autoMemo) {
                 @Override
                 public NtValue visitAssignExpr(final AssignExpr assign) {
                     final NtValue val = super.visitAssignExpr(assign);
@@ -370,5 +452,470 @@ public class InteractiveModeVisitor extends Visitor<NtValue> {
             }
             return vis.visit(decl.output);
         }
+
+        /**
+         * A user defined lambda is pure if its body never assigns and only
+         * calls functions that are pure themselves. Recursive calls are
+         * assumed to be pure while the body is being checked.
+         *
+         * @return true if the lambda is known to be side-effect free
+         */
+        @Override
+        public boolean isPure() {
+            final Set<UserDefLambda> active = PURITY_CHECKS.get();
+            if (!active.add(this)) {
+                return true;
+            }
+            try {
+                return new PurityCheck(this, names(decl.inputs)).test(decl.output);
+            } finally {
+                active.remove(this);
+            }
+        }
+
+        /**
+         * Tests if the results of the lambda can be cached: it has to be pure
+         * and only read its parameters, the library and the variable it is
+         * assigned to.
+         *
+         * @param self The name of the variable the lambda is assigned to
+         * @return true if the results only depend on the parameters
+         */
+        boolean isCacheable(final String self) {
+            final Set<UserDefLambda> active = PURITY_CHECKS.get();
+            if (!active.add(this)) {
+                return true;
+            }
+            try {
+                return new PurityCheck(this, names(decl.inputs), self).test(decl.output);
+            } finally {
+                active.remove(this);
+            }
+        }
+
+        @Override
+        public CoreNumber[] getPolynomial() {
+            if (decl.inputs.length != 1) {
+                return null;
+            }
+            return new PolynomialForm(this, decl.inputs[0].text).visit(decl.output);
+        }
+
+        /**
+         * Copies the variables the lambda can see on the calling thread, so
+         * the copy can be called from another thread while this scope keeps
+         * changing
+         *
+         * @return The same lambda bound to a copy of the scope
+         */
+        @Override
+        public CoreLambda snapshot() {
+            final InteractiveModeVisitor frozen = new InteractiveModeVisitor(vars, env, autoMemo);
+            final UserDefLambda copy = frozen.new UserDefLambda(decl);
+            copy.lambdaLocals.putAll(lambdaLocals);
+            return copy;
+        }
+
+        /**
+         * Resolves a variable the same way the body would when the lambda is
+         * called, except parameters are not known.
+         *
+         * @param name The name of the variable
+         * @return The value or {@code null} if the variable is undefined
+         */
+        NtValue resolve(final String name) {
+            final NtValue val = lambdaLocals.get(name);
+            if (val != null) {
+                return val;
+            }
+            return lookup(name);
+        }
+
+        /**
+         * @param name The name of the variable
+         * @return true if the variable is defined by the user rather than
+         * the library, meaning it can be reassigned
+         */
+        boolean isUserVariable(final String name) {
+            return lambdaLocals.containsKey(name) || vars.containsKey(name);
+        }
+    }
+
+    private static Set<String> names(final Token[] tokens) {
+        final Set<String> ret = new HashSet<>();
+        for (final Token t : tokens) {
+            ret.add(t.text);
+        }
+        return ret;
+    }
+
+    /**
+     * Checks if evaluating an expression can have side effects. It is
+     * conservative: anything it cannot prove to be pure is impure.
+     */
+    private static final class PurityCheck extends Visitor<Boolean> {
+
+        private final UserDefLambda scope;
+        private final Set<String> bound;
+
+        /**
+         * If not null, reading user variables other than this one is
+         * rejected too
+         */
+        private final String self;
+
+        PurityCheck(final UserDefLambda scope, final Set<String> bound) {
+            this(scope, bound, null);
+        }
+
+        PurityCheck(final UserDefLambda scope, final Set<String> bound, final String self) {
+            this.scope = scope;
+            this.bound = bound;
+            this.self = self;
+        }
+
+        private boolean isReadable(final String name) {
+            return self == null || bound.contains(name) || self.equals(name)
+                    || !scope.isUserVariable(name);
+        }
+
+        boolean test(final AST node) {
+            return node == null || visit(node);
+        }
+
+        private boolean testAll(final AST[] nodes) {
+            for (final AST node : nodes) {
+                if (!test(node)) {
+                    return false;
+                }
+            }
+            return true;
+        }
+
+        private boolean isPureCallee(final AST callee) {
+            if (callee instanceof AnonFuncVal) {
+                return test(callee);
+            }
+            if (callee instanceof VariableVal) {
+                final String name = ((VariableVal) callee).val.text;
+                if (bound.contains(name)) {
+                    // Parameters could be anything
+                    return false;
+                }
+                if (!isReadable(name)) {
+                    return false;
+                }
+                final NtValue val = scope.resolve(name);
+                if (val instanceof CoreLambda) {
+                    return ((CoreLambda) val).isPure();
+                }
+                // Calling numbers and matrices multiplies or indexes
+                return val instanceof CoreNumber || val instanceof CoreMatrix;
+            }
+            return false;
+        }
+
+        @Override
+        public Boolean visitAtomVal(final AtomVal atom) {
+            return true;
+        }
+
+        @Override
+        public Boolean visitUnitVal(final UnitVal atom) {
+            return true;
+        }
+
+        @Override
+        public Boolean visitQexprVal(final QexprVal qexpr) {
+            // Quoting does not evaluate anything, eval itself is impure
+            return true;
+        }
+
+        @Override
+        public Boolean visitNumberVal(final NumberVal number) {
+            return true;
+        }
+
+        @Override
+        public Boolean visitVariableVal(final VariableVal variable) {
+            return isReadable(variable.val.text);
+        }
+
+        @Override
+        public Boolean visitMatrixVal(final MatrixVal matrix) {
+            for (final MatrixVal.Column column : matrix.columns) {
+                if (!testAll(column.row)) {
+                    return false;
+                }
+            }
+            return true;
+        }
+
+        @Override
+        public Boolean visitAnonFuncVal(final AnonFuncVal anonFunc) {
+            final Set<String> inner = new HashSet<>(bound);
+            inner.addAll(names(anonFunc.inputs));
+            return new PurityCheck(scope, inner, self).test(anonFunc.output);
+        }
+
+        @Override
+        public Boolean visitPiecewiseFuncVal(final PiecewiseFuncVal piecewiseFunc) {
+            for (final PiecewiseFuncVal.CaseBlock test : piecewiseFunc.cases) {
+                if (!test(test.pred) || !test(test.expr)) {
+                    return false;
+                }
+            }
+            return true;
+        }
+
+        @Override
+        public Boolean visitApplyExpr(final ApplyExpr apply) {
+            return testAll(apply.params) && isPureCallee(apply.instance);
+        }
+
+        @Override
+        public Boolean visitPartialApplyExpr(final PartialApplyExpr apply) {
+            return testAll(apply.placeholders) && isPureCallee(apply.applicant);
+        }
+
+        @Override
+        public Boolean visitUnaryExpr(final UnaryExpr unary) {
+            return test(unary.base);
+        }
+
+        @Override
+        public Boolean visitBinaryExpr(final BinaryExpr binary) {
+            return test(binary.lhs) && test(binary.rhs);
+        }
+
+        @Override
+        public Boolean visitCommutativeExpr(final CommutativeExpr commutative) {
+            return testAll(commutative.nodes);
+        }
+
+        @Override
+        public Boolean visitAssignExpr(final AssignExpr assign) {
+            return false;
+        }
+
+        @Override
+        public Boolean visitDoEndExpr(final DoEndExpr assign) {
+            return testAll(assign.exprs);
+        }
+
+        @Override
+        public Boolean visitLazyExpr(final LazyExpr lazy) {
+            return test(lazy.expr);
+        }
+    }
+
+    /**
+     * Converts an expression into the coefficients of a polynomial of one
+     * variable, lowest degree first. Variables other than the parameter are
+     * treated as constants if they are numbers. Anything else yields
+     * {@code null}.
+     */
+    private static final class PolynomialForm extends Visitor<CoreNumber[]> {
+
+        private static final int MAX_DEGREE = 60;
+
+        private final UserDefLambda scope;
+        private final String param;
+
+        PolynomialForm(final UserDefLambda scope, final String param) {
+            this.scope = scope;
+            this.param = param;
+        }
+
+        private static CoreNumber[] constant(final CoreNumber c) {
+            return new CoreNumber[]{c};
+        }
+
+        private static CoreNumber[] add(final CoreNumber[] a, final CoreNumber[] b, final boolean negateB) {
+            final CoreNumber[] ret = new CoreNumber[Math.max(a.length, b.length)];
+            for (int i = 0; i < ret.length; ++i) {
+                CoreNumber c = i < a.length ? a[i] : CoreNumber.ZERO;
+                if (i < b.length) {
+                    c = (CoreNumber) (negateB ? c.applySub(b[i]) : c.applyAdd(b[i]));
+                }
+                ret[i] = c;
+            }
+            return ret;
+        }
+
+        private static CoreNumber[] mul(final CoreNumber[] a, final CoreNumber[] b) {
+            if (a.length + b.length - 2 > MAX_DEGREE) {
+                return null;
+            }
+            final CoreNumber[] ret = new CoreNumber[a.length + b.length - 1];
+            Arrays.fill(ret, CoreNumber.ZERO);
+            for (int i = 0; i < a.length; ++i) {
+                for (int j = 0; j < b.length; ++j) {
+                    ret[i + j] = (CoreNumber) ret[i + j].applyAdd(a[i].applyMul(b[j]));
+                }
+            }
+            return ret;
+        }
+
+        private static CoreNumber[] scale(final CoreNumber[] a, final NtValue factor) {
+            final CoreNumber[] ret = new CoreNumber[a.length];
+            for (int i = 0; i < ret.length; ++i) {
+                ret[i] = (CoreNumber) a[i].applyMul(factor);
+            }
+            return ret;
+        }
+
+        @Override
+        public CoreNumber[] visitAtomVal(final AtomVal atom) {
+            return null;
+        }
+
+        @Override
+        public CoreNumber[] visitUnitVal(final UnitVal atom) {
+            return null;
+        }
+
+        @Override
+        public CoreNumber[] visitQexprVal(final QexprVal qexpr) {
+            return null;
+        }
+
+        @Override
+        public CoreNumber[] visitNumberVal(final NumberVal number) {
+            return constant(CoreNumber.from(number.toDouble()));
+        }
+
+        @Override
+        public CoreNumber[] visitVariableVal(final VariableVal variable) {
+            final String name = variable.val.text;
+            if (name.equals(param)) {
+                return new CoreNumber[]{CoreNumber.ZERO, CoreNumber.ONE};
+            }
+            final NtValue val = scope.resolve(name);
+            if (val instanceof CoreNumber && ((CoreNumber) val).isFinite()) {
+                return constant((CoreNumber) val);
+            }
+            return null;
+        }
+
+        @Override
+        public CoreNumber[] visitMatrixVal(final MatrixVal matrix) {
+            return null;
+        }
+
+        @Override
+        public CoreNumber[] visitAnonFuncVal(final AnonFuncVal anonFunc) {
+            return null;
+        }
+
+        @Override
+        public CoreNumber[] visitPiecewiseFuncVal(final PiecewiseFuncVal piecewiseFunc) {
+            return null;
+        }
+
+        @Override
+        public CoreNumber[] visitApplyExpr(final ApplyExpr apply) {
+            return null;
+        }
+
+        @Override
+        public CoreNumber[] visitPartialApplyExpr(final PartialApplyExpr apply) {
+            return null;
+        }
+
+        @Override
+        public CoreNumber[] visitUnaryExpr(final UnaryExpr unary) {
+            final CoreNumber[] base = visit(unary.base);
+            if (base == null) {
+                return null;
+            }
+            switch (unary.op.type) {
+            case ADD:
+                return unary.prefix ? base : null;
+            case SUB:
+                return unary.prefix ? scale(base, CoreNumber.from(-1)) : null;
+            case PERCENT:
+                return unary.prefix ? null : scale(base, CoreNumber.from(1, 100));
+            default:
+                return null;
+            }
+        }
+
+        @Override
+        public CoreNumber[] visitBinaryExpr(final BinaryExpr binary) {
+            final CoreNumber[] lhs = visit(binary.lhs);
+            final CoreNumber[] rhs = visit(binary.rhs);
+            if (lhs == null || rhs == null) {
+                return null;
+            }
+            switch (binary.op.type) {
+            case ADD:
+                return add(lhs, rhs, false);
+            case SUB:
+                return add(lhs, rhs, true);
+            case MUL:
+                return mul(lhs, rhs);
+            case DIV:
+                if (rhs.length != 1 || !rhs[0].isTruthy()) {
+                    return null;
+                }
+                return scale(lhs, rhs[0].inverse());
+            case POW: {
+                if (rhs.length != 1 || !rhs[0].isInteger() || rhs[0].isNegative()
+                        || rhs[0].compareTo(CoreNumber.from(MAX_DEGREE)) > 0) {
+                    return null;
+                }
+                CoreNumber[] ret = constant(CoreNumber.ONE);
+                for (int i = rhs[0].toInt(); i > 0 && ret != null; --i) {
+                    ret = mul(ret, lhs);
+                }
+                return ret;
+            }
+            default:
+                return null;
+            }
+        }
+
+        @Override
+        public CoreNumber[] visitCommutativeExpr(final CommutativeExpr commutative) {
+            final boolean sum;
+            switch (commutative.op.type) {
+            case ADD:
+                sum = true;
+                break;
+            case MUL:
+                sum = false;
+                break;
+            default:
+                return null;
+            }
+            CoreNumber[] ret = null;
+            for (final AST node : commutative.nodes) {
+                final CoreNumber[] term = visit(node);
+                if (term == null) {
+                    return null;
+                }
+                ret = ret == null ? term : sum ? add(ret, term, false) : mul(ret, term);
+                if (ret == null) {
+                    return null;
+                }
+            }
+            return ret;
+        }
+
+        @Override
+        public CoreNumber[] visitAssignExpr(final AssignExpr assign) {
+            return null;
+        }
+
+        @Override
+        public CoreNumber[] visitDoEndExpr(final DoEndExpr assign) {
+            return null;
+        }
+
+        @Override
+        public CoreNumber[] visitLazyExpr(final LazyExpr lazy) {
+            return null;
+        }
     }
 }
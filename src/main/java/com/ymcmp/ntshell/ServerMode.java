@@ -0,0 +1,471 @@
+/**
+ *     Copyright (C) 2017  Paul Teng
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program. If not, see <http://www.gnu.org/licenses/>.
+ */
+package com.ymcmp.ntshell;
+
+import com.ymcmp.ntshell.rte.TaskScope;
+
+import com.ymcmp.ntshell.value.CoreNumber;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+
+import java.nio.ByteBuffer;
+
+import java.nio.channels.CancelledKeyException;
+import java.nio.channels.ClosedSelectorException;
+import java.nio.channels.SelectionKey;
+import java.nio.channels.Selector;
+import java.nio.channels.ServerSocketChannel;
+import java.nio.channels.SocketChannel;
+
+import java.util.Iterator;
+import java.util.Queue;
+import java.util.Set;
+
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.ScheduledThreadPoolExecutor;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+
+import static java.nio.charset.StandardCharsets.UTF_8;
+
+/**
+ * Serves NtShell sessions to clients connecting on a local port. Every
+ * connection gets its own session, as if a new shell was started for it, but
+ * all of them share the same library.
+ * <p>
+ * The protocol is line based. Each line sent is handled like a line typed in
+ * terminal mode, and a line ending with {@code \} continues on the next one.
+ * The response is whatever the session printed, with error lines prefixed by
+ * {@code "! "}, followed by a line holding a single {@code "."}.
+ * <p>
+ * One thread accepts connections and moves the bytes around. Requests are
+ * evaluated by a fixed amount of workers. All requests of a session go to
+ * the same worker, picked by hashing the session, so they run in the order
+ * they were sent and a session is never used by two threads at once. Every
+ * worker only queues a bounded amount of requests, more than that are
+ * refused. A refusal is answered in turn like any other response, so the
+ * responses always come in the order of the requests. Requests running
+ * longer than the timeout are interrupted.
+ * <p>
+ * Every session spawns its tasks on a pool of its own, so tasks of one
+ * session never wait behind the ones of another. Spawned tasks get the same
+ * timeout as requests and are cancelled when their session ends.
+ *
+ * @author YTENG
+ */
+public final class ServerMode implements AutoCloseable {
+
+    private static final int QUEUE_SIZE = 256;
+    private static final int MAX_LINE_LENGTH = 1 << 20;
+    private static final int READ_BUFFER_SIZE = 8192;
+
+    private final ServerSocketChannel server;
+    private final Selector selector;
+    private final ThreadPoolExecutor[] workers;
+    private final ScheduledThreadPoolExecutor watchdog;
+
+    /**
+     * Milliseconds a request may run, 0 means no limit
+     */
+    private final long timeout;
+
+    private final Set<Session> sessions = ConcurrentHashMap.newKeySet();
+
+    /**
+     * Sessions with new output. Only the selector thread may change what a
+     * channel is watched for, so the workers leave a note here.
+     */
+    private final Queue<Session> pendingWrites = new ConcurrentLinkedQueue<>();
+
+    private long nextId;
+    private volatile boolean running = true;
+
+    /**
+     * Binds the server to the loopback interface. No connection is accepted
+     * until {@link #serve()} is called.
+     *
+     * @param port The port, 0 picks a free one
+     * @param workers The amount of threads evaluating requests
+     * @param timeout The milliseconds a request may run, 0 means no limit
+     * @throws IOException If the port cannot be bound
+     */
+    public ServerMode(final int port, final int workers, final long timeout) throws IOException {
+        if (workers < 1) {
+            throw new IllegalArgumentException("Expected at least one worker, got " + workers);
+        }
+        if (timeout < 0) {
+            throw new IllegalArgumentException("Timeout cannot be negative: " + timeout);
+        }
+        this.timeout = timeout;
+
+        this.selector = Selector.open();
+        this.server = ServerSocketChannel.open();
+        try {
+            server.bind(new InetSocketAddress(InetAddress.getLoopbackAddress(), port));
+            server.configureBlocking(false);
+            server.register(selector, SelectionKey.OP_ACCEPT);
+        } catch (IOException ex) {
+            server.close();
+            selector.close();
+            throw ex;
+        }
+
+        this.workers = new ThreadPoolExecutor[workers];
+        for (int i = 0; i < workers; ++i) {
+            this.workers[i] = new ThreadPoolExecutor(1, 1, 0, TimeUnit.MILLISECONDS,
+                                                     new ArrayBlockingQueue<>(QUEUE_SIZE),
+                                                     daemon("ntshell-worker-" + i));
+        }
+        this.watchdog = new ScheduledThreadPoolExecutor(1, daemon("ntshell-watchdog"));
+        this.watchdog.setRemoveOnCancelPolicy(true);
+    }
+
+    private static ThreadFactory daemon(final String name) {
+        return r -> {
+            final Thread t = new Thread(r, name);
+            t.setDaemon(true);
+            return t;
+        };
+    }
+
+    public InetSocketAddress getAddress() throws IOException {
+        return (InetSocketAddress) server.getLocalAddress();
+    }
+
+    /**
+     * Accepts connections and serves them until the server is closed
+     *
+     * @throws IOException If the server socket fails
+     */
+    public void serve() throws IOException {
+        try {
+            while (running) {
+                selector.select();
+
+                Session pending;
+                while ((pending = pendingWrites.poll()) != null) {
+                    pending.watchWrites();
+                }
+
+                final Iterator<SelectionKey> it = selector.selectedKeys().iterator();
+                while (it.hasNext()) {
+                    final SelectionKey key = it.next();
+                    it.remove();
+                    if (key.attachment() == null) {
+                        if (key.isValid() && key.isAcceptable()) {
+                            accept();
+                        }
+                        continue;
+                    }
+
+                    final Session session = (Session) key.attachment();
+                    try {
+                        if (key.isValid() && key.isReadable()) {
+                            session.read();
+                        }
+                        if (key.isValid() && key.isWritable()) {
+                            session.flush();
+                        }
+                    } catch (IOException | CancelledKeyException ex) {
+                        session.close();
+                    }
+                }
+            }
+        } catch (ClosedSelectorException ex) {
+            if (running) {
+                throw ex;
+            }
+        }
+    }
+
+    private void accept() throws IOException {
+        final SocketChannel channel = server.accept();
+        if (channel == null) {
+            return;
+        }
+        channel.configureBlocking(false);
+        final Session session = new Session(channel, nextId++);
+        session.key = channel.register(selector, SelectionKey.OP_READ, session);
+        sessions.add(session);
+    }
+
+    private ThreadPoolExecutor partition(final long id) {
+        // Spread consecutive ids instead of going round-robin, so the
+        // assignment does not depend on the order sessions were opened in
+        final long hash = id * 0x9E3779B97F4A7C15L;
+        return workers[Math.floorMod((int) (hash ^ (hash >>> 32)), workers.length)];
+    }
+
+    @Override
+    public void close() {
+        running = false;
+        for (final ThreadPoolExecutor worker : workers) {
+            worker.shutdownNow();
+        }
+        watchdog.shutdownNow();
+        for (final Session session : sessions) {
+            session.close();
+        }
+        try {
+            server.close();
+        } catch (IOException ex) {
+        }
+        try {
+            selector.close();
+        } catch (IOException ex) {
+        }
+    }
+
+    private final class Session {
+
+        private final SocketChannel channel;
+        private final ThreadPoolExecutor worker;
+
+        // Only used by the worker
+        private final App app = new App();
+        private final SocketMode frontend = new SocketMode();
+        private final TaskScope tasks = new TaskScope(new ForkJoinPool(Runtime.getRuntime().availableProcessors()), timeout, CoreNumber.getPrecision());
+
+        // Only used by the selector thread
+        private final ByteBuffer in = ByteBuffer.allocate(READ_BUFFER_SIZE);
+        private final ByteArrayOutputStream line = new ByteArrayOutputStream();
+        private final StringBuilder statement = new StringBuilder();
+        private SelectionKey key;
+
+        /**
+         * Responses in the order of their requests, the ones still being
+         * worked on hold back the ones after them
+         */
+        private final Queue<Response> out = new ConcurrentLinkedQueue<>();
+
+        /**
+         * Set once no more requests are taken, the connection is closed after
+         * the remaining output is sent
+         */
+        private volatile boolean closing;
+        private volatile boolean closed;
+
+        Session(final SocketChannel channel, final long id) {
+            this.channel = channel;
+            this.worker = partition(id);
+            app.initServedSession(frontend);
+        }
+
+        void read() throws IOException {
+            in.clear();
+            if (channel.read(in) < 0) {
+                // The client might only have shut down its side, answer what
+                // it already sent first
+                key.interestOps(key.interestOps() & ~SelectionKey.OP_READ);
+                if (line.size() > 0 || statement.length() > 0) {
+                    submit(takeLine());
+                }
+                closeWhenFlushed();
+                return;
+            }
+            in.flip();
+            while (in.hasRemaining() && !closing) {
+                final byte b = in.get();
+                if (b != '\n') {
+                    if (line.size() + statement.length() >= MAX_LINE_LENGTH) {
+                        respond(reserve(), "! Line is longer than " + MAX_LINE_LENGTH + " bytes\n");
+                        closing = true;
+                        watchWrites();
+                        return;
+                    }
+                    line.write(b);
+                    continue;
+                }
+                final String text = takeLine();
+                if (text != null) {
+                    submit(text);
+                }
+            }
+        }
+
+        /**
+         * Takes the line read so far
+         *
+         * @return The statement or {@code null} if it continues on the next
+         * line
+         */
+        private String takeLine() {
+            String text = new String(line.toByteArray(), UTF_8);
+            line.reset();
+            if (text.endsWith("\r")) {
+                text = text.substring(0, text.length() - 1);
+            }
+            if (text.endsWith("\\")) {
+                statement.append(text, 0, text.length() - 1);
+                return null;
+            }
+            final String ret = statement.append(text).toString();
+            statement.setLength(0);
+            return ret;
+        }
+
+        private void submit(final String text) {
+            final Response slot = reserve();
+            try {
+                worker.execute(new Request(text, slot));
+            } catch (RejectedExecutionException ex) {
+                respond(slot, "! The server is busy, try again later\n");
+            }
+        }
+
+        /**
+         * Closes the session once everything submitted so far is answered
+         */
+        private void closeWhenFlushed() {
+            closing = true;
+            pendingWrites.add(this);
+            selector.wakeup();
+        }
+
+        /**
+         * Takes the next place in the order of responses. Only called by the
+         * selector thread, in the order the requests are read.
+         */
+        private Response reserve() {
+            final Response slot = new Response();
+            out.add(slot);
+            return slot;
+        }
+
+        private void respond(final Response slot, final String text) {
+            slot.data = ByteBuffer.wrap((text + ".\n").getBytes(UTF_8));
+            pendingWrites.add(this);
+            selector.wakeup();
+        }
+
+        void watchWrites() {
+            if (key.isValid()) {
+                key.interestOps(key.interestOps() | SelectionKey.OP_WRITE);
+            }
+        }
+
+        void flush() throws IOException {
+            Response slot;
+            while ((slot = out.peek()) != null) {
+                final ByteBuffer buf = slot.data;
+                if (buf == null) {
+                    // Waiting on the worker, which asks to be flushed again
+                    key.interestOps(key.interestOps() & ~SelectionKey.OP_WRITE);
+                    return;
+                }
+                channel.write(buf);
+                if (buf.hasRemaining()) {
+                    return;
+                }
+                out.poll();
+            }
+            key.interestOps(key.interestOps() & ~SelectionKey.OP_WRITE);
+            if (closing) {
+                close();
+            }
+        }
+
+        void close() {
+            closed = true;
+            sessions.remove(this);
+            tasks.cancel();
+            tasks.getPool().shutdownNow();
+            if (key != null) {
+                key.cancel();
+            }
+            try {
+                channel.close();
+            } catch (IOException ex) {
+            }
+        }
+
+        private final class Request implements Runnable {
+
+            private final String text;
+            private final Response slot;
+
+            private Thread runner;
+            private boolean expired;
+
+            Request(final String text, final Response slot) {
+                this.text = text;
+                this.slot = slot;
+            }
+
+            @Override
+            public void run() {
+                if (closed) {
+                    return;
+                }
+                synchronized (this) {
+                    runner = Thread.currentThread();
+                }
+                final ScheduledFuture<?> alarm = timeout > 0
+                        ? watchdog.schedule(this::expire, timeout, TimeUnit.MILLISECONDS)
+                        : null;
+                boolean more = true;
+                try {
+                    more = tasks.run(() -> app.processLine(text));
+                } catch (RuntimeException | StackOverflowError ex) {
+                    frontend.errWriteLine(ex);
+                } finally {
+                    synchronized (this) {
+                        runner = null;
+                    }
+                    // An interrupt meant for this request must not leak into
+                    // the next one
+                    Thread.interrupted();
+                    if (alarm != null) {
+                        alarm.cancel(false);
+                    }
+                }
+                if (expired) {
+                    frontend.errWriteLine("Request took longer than " + timeout + " ms and was interrupted");
+                }
+                respond(slot, frontend.drain());
+                if (!more) {
+                    closeWhenFlushed();
+                }
+            }
+
+            private synchronized void expire() {
+                if (runner != null) {
+                    expired = true;
+                    runner.interrupt();
+                }
+            }
+        }
+    }
+
+    /**
+     * The response to one request, empty until the request is done
+     */
+    private static final class Response {
+
+        volatile ByteBuffer data;
+    }
+}
@@ -0,0 +1,76 @@
+/**
+ *     Copyright (C) 2017  Paul Teng
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program. If not, see <http://www.gnu.org/licenses/>.
+ */
+package com.ymcmp.ntshell;
+
+/**
+ * The frontend of a session served by {@link ServerMode}. The server hands it
+ * one line at a time, so it never reads anything by itself. Output is
+ * collected until the server sends the response of the line back. Error
+ * lines are prefixed with {@code "! "}.
+ *
+ * @author YTENG
+ */
+class SocketMode extends AbstractFrontend {
+
+    private final StringBuilder out = new StringBuilder();
+    private boolean errLineStart = true;
+
+    /**
+     * Expressions must fit on the line that was sent, there is no one to ask
+     * for the rest.
+     *
+     * @return Always {@code null}
+     */
+    @Override
+    public String readLine() {
+        return null;
+    }
+
+    @Override
+    public void write(final char c) {
+        out.append(c);
+    }
+
+    @Override
+    public void write(final Object o) {
+        out.append(o);
+    }
+
+    @Override
+    public void errWrite(final char c) {
+        if (errLineStart) {
+            out.append("! ");
+        }
+        out.append(c);
+        errLineStart = c == '\n';
+    }
+
+    /**
+     * Takes everything written since the last call
+     *
+     * @return The output, ending with a line break unless it is empty
+     */
+    String drain() {
+        if (out.length() > 0 && out.charAt(out.length() - 1) != '\n') {
+            out.append('\n');
+        }
+        final String ret = out.toString();
+        out.setLength(0);
+        errLineStart = true;
+        return ret;
+    }
+}
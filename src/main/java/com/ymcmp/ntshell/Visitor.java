@@ -61,4 +61,6 @@ public abstract class Visitor<T> {
     public abstract T visitAssignExpr(AssignExpr assign);
 
     public abstract T visitDoEndExpr(DoEndExpr assign);
+
+    public abstract T visitLazyExpr(LazyExpr lazy);
 }
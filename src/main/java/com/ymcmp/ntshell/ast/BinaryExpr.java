@@ -169,6 +169,33 @@ public class BinaryExpr extends AST {
         }
     }
 
+    /**
+     * Checks if a node can only be a scalar. Identities like
+     * {@code (/ a a) => 1} do not hold for matrices, a matrix divided by
+     * itself is an identity matrix. Variables and calls could be matrices, so
+     * only numbers and arithmetic on numbers count.
+     */
+    private static boolean isScalar(final AST node) {
+        if (node instanceof NumberVal) {
+            return true;
+        }
+        if (node instanceof BinaryExpr) {
+            return isScalar(((BinaryExpr) node).lhs) && isScalar(((BinaryExpr) node).rhs);
+        }
+        if (node instanceof UnaryExpr) {
+            return isScalar(((UnaryExpr) node).base);
+        }
+        if (node instanceof CommutativeExpr) {
+            for (final AST el : ((CommutativeExpr) node).nodes) {
+                if (!isScalar(el)) {
+                    return false;
+                }
+            }
+            return true;
+        }
+        return false;
+    }
+
     @Override
     public AST unfoldConstant() {
         final AST nthis = this.promote();
@@ -208,7 +235,7 @@ public class BinaryExpr extends AST {
             // (- a a) => 0
             // (- a 0) => a
             // (- 0 a) => -a
-            if (nlhs.equals(nrhs)) {
+            if (nlhs.equals(nrhs) && isScalar(nlhs)) {
                 return NumberVal.fromLong(0);
             }
             if (nrhs.equals(NumberVal.fromLong(0))) {
@@ -224,7 +251,7 @@ public class BinaryExpr extends AST {
             // (/ 0 0)  => NaN
             // (/ (* 3 a) 3)  => a
             // (/ (* 3 a) a)  => 3
-            if (nlhs.equals(nrhs)) {
+            if (nlhs.equals(nrhs) && isScalar(nlhs)) {
                 if (nlhs.equals(NumberVal.fromLong(0))) {
                     return NumberVal.fromDouble(Double.NaN);
                 }
@@ -0,0 +1,105 @@
+/**
+ *     Copyright (C) 2017  Paul Teng
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program. If not, see <http://www.gnu.org/licenses/>.
+ */
+package com.ymcmp.ntshell.ast;
+
+import com.ymcmp.ntshell.AST;
+import com.ymcmp.ntshell.Visitor;
+
+/**
+ * {@code lazy expr} delays evaluating {@code expr} until the resulting
+ * function is called without parameters. It is only ever evaluated once.
+ *
+ * @author YTENG
+ */
+public final class LazyExpr extends AST {
+
+    private static final long serialVersionUID = 1L;
+
+    public final AST expr;
+
+    public LazyExpr(final AST expr) {
+        this.expr = expr;
+    }
+
+    @Override
+    public <T> T accept(final Visitor<T> vis) {
+        return vis.visitLazyExpr(this);
+    }
+
+    @Override
+    public String toString() {
+        return "lazy{ expr:" + expr + " }";
+    }
+
+    @Override
+    public int hashCode() {
+        int hash = 7;
+        hash = 13 * hash + this.expr.hashCode();
+        return hash;
+    }
+
+    @Override
+    public boolean equals(Object obj) {
+        if (this == obj) {
+            return true;
+        }
+        if (obj == null) {
+            return false;
+        }
+        if (getClass() != obj.getClass()) {
+            return false;
+        }
+        final LazyExpr other = (LazyExpr) obj;
+        return this.expr.equals(other.expr);
+    }
+
+    @Override
+    public AST transformNegatives() {
+        final AST nexpr = expr.transformNegatives();
+        if (nexpr == expr) {
+            return this;
+        }
+        return new LazyExpr(nexpr);
+    }
+
+    @Override
+    public AST levelOperators() {
+        final AST nexpr = expr.levelOperators();
+        if (nexpr == expr) {
+            return this;
+        }
+        return new LazyExpr(nexpr);
+    }
+
+    @Override
+    public AST simplifyRationals() {
+        final AST nexpr = expr.simplifyRationals();
+        if (nexpr == expr) {
+            return this;
+        }
+        return new LazyExpr(nexpr);
+    }
+
+    @Override
+    public AST unfoldConstant() {
+        final AST nexpr = expr.unfoldConstant();
+        if (nexpr == expr) {
+            return this;
+        }
+        return new LazyExpr(nexpr);
+    }
+}
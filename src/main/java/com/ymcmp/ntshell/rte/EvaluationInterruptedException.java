@@ -0,0 +1,52 @@
+/**
+ *     Copyright (C) 2017  Paul Teng
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program. If not, see <http://www.gnu.org/licenses/>.
+ */
+package com.ymcmp.ntshell.rte;
+
+/**
+ * Thrown when the thread running an evaluation is interrupted, for example
+ * because the evaluation took too long. Evaluation only checks for it between
+ * steps, so a single long running builtin still runs to completion.
+ *
+ * @author YTENG
+ */
+public class EvaluationInterruptedException extends RuntimeException {
+
+    private static final long serialVersionUID = 1L;
+
+    public EvaluationInterruptedException() {
+        super("Evaluation was interrupted");
+    }
+
+    public EvaluationInterruptedException(String message) {
+        super(message);
+    }
+
+    /**
+     * Throws if the current thread has been interrupted or its
+     * {@link TaskScope} was cancelled. The interrupt flag is left set, the
+     * owner of the thread decides when to clear it.
+     */
+    public static void check() {
+        if (Thread.currentThread().isInterrupted()) {
+            throw new EvaluationInterruptedException();
+        }
+        final TaskScope scope = TaskScope.current();
+        if (scope != null && scope.isCancelled()) {
+            throw new EvaluationInterruptedException("Task was cancelled or ran out of time");
+        }
+    }
+}
@@ -37,6 +37,8 @@ public class TailCallTrigger extends RuntimeException {
     public static NtValue applyTailCall(final TailCallTrigger trigger) {
         TailCallTrigger handle = trigger;
         while (true) {
+            // Tail calls can loop forever without ever growing the stack
+            EvaluationInterruptedException.check();
             try {
                 return handle.applicant.applyCall(handle.params);
             } catch (TailCallTrigger ex) {
@@ -0,0 +1,173 @@
+/**
+ *     Copyright (C) 2017  Paul Teng
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program. If not, see <http://www.gnu.org/licenses/>.
+ */
+package com.ymcmp.ntshell.rte;
+
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.TimeUnit;
+
+import java.util.function.Supplier;
+
+/**
+ * Decides where tasks spawned by an evaluation run and when they have to
+ * stop. A scope belongs to the thread running the evaluation, tasks spawned
+ * from it run in a child scope that inherits the pool. Cancelling a scope
+ * cancels its children too, and a child also gives up once it has run for
+ * longer than the timeout of the scope. Evaluation notices both the next
+ * time {@link EvaluationInterruptedException#check()} is called.
+ * <p>
+ * A scope also holds the precision of inexact results, so sessions sharing
+ * the process can each use their own. Spawned tasks start with the precision
+ * their parent had when they were spawned.
+ * <p>
+ * Without a scope, tasks run on the default pool with no limit and use the
+ * process-wide precision.
+ *
+ * @author YTENG
+ */
+public final class TaskScope {
+
+    private static final ThreadLocal<TaskScope> CURRENT = new ThreadLocal<>();
+
+    private final ForkJoinPool pool;
+    private final TaskScope parent;
+
+    /**
+     * Milliseconds a task spawned from this scope may run, 0 means no limit
+     */
+    private final long timeout;
+
+    /**
+     * In terms of {@link System#nanoTime()}, only used if the scope has a
+     * parent with a timeout
+     */
+    private final long deadline;
+    private final boolean hasDeadline;
+
+    private volatile boolean cancelled;
+
+    /**
+     * Digits after the decimal point inexact results are accurate to
+     */
+    private volatile int precision;
+
+    /**
+     * @param pool The pool running the spawned tasks
+     * @param timeout The milliseconds a spawned task may run, 0 means no
+     * limit
+     * @param precision The initial precision of inexact results
+     */
+    public TaskScope(final ForkJoinPool pool, final long timeout, final int precision) {
+        this(pool, null, timeout, precision);
+    }
+
+    private TaskScope(final ForkJoinPool pool, final TaskScope parent, final long timeout, final int precision) {
+        this.pool = pool;
+        this.parent = parent;
+        this.timeout = timeout;
+        this.precision = precision;
+        this.hasDeadline = parent != null && parent.timeout > 0;
+        this.deadline = hasDeadline ? System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(parent.timeout) : 0;
+    }
+
+    /**
+     *
+     * @return The scope of the current thread or {@code null} if there is
+     * none
+     */
+    public static TaskScope current() {
+        return CURRENT.get();
+    }
+
+    public ForkJoinPool getPool() {
+        return pool;
+    }
+
+    public int getPrecision() {
+        return precision;
+    }
+
+    /**
+     * Changes the precision of inexact results computed in this scope. Tasks
+     * that were already spawned keep theirs.
+     *
+     * @param digits The amount of digits after the decimal point
+     */
+    public void setPrecision(final int digits) {
+        precision = digits;
+    }
+
+    public void cancel() {
+        cancelled = true;
+    }
+
+    public boolean isCancelled() {
+        if (cancelled) {
+            return true;
+        }
+        if (hasDeadline && System.nanoTime() - deadline > 0) {
+            return true;
+        }
+        return parent != null && parent.isCancelled();
+    }
+
+    /**
+     * Runs a body with this scope as the scope of the current thread
+     *
+     * @param <T> The result type
+     * @param body The body
+     * @return The result of the body
+     */
+    public <T> T run(final Supplier<T> body) {
+        final TaskScope old = CURRENT.get();
+        CURRENT.set(this);
+        try {
+            return body.get();
+        } finally {
+            if (old == null) {
+                CURRENT.remove();
+            } else {
+                CURRENT.set(old);
+            }
+        }
+    }
+
+    /**
+     * Runs a body in a scope. Fork/join tasks use this to carry the scope of
+     * the thread that created them over to the thread that runs them.
+     *
+     * @param <T> The result type
+     * @param scope The scope, {@code null} runs the body as is
+     * @param body The body
+     * @return The result of the body
+     */
+    public static <T> T runIn(final TaskScope scope, final Supplier<T> body) {
+        return scope == null ? body.get() : scope.run(body);
+    }
+
+    /**
+     * Wraps the body of a task spawned from this scope. The task runs in a
+     * child scope whose time starts when the task is created.
+     *
+     * @param <T> The result type
+     * @param body The body of the task
+     * @return The wrapped body
+     */
+    public <T> Supplier<T> spawn(final Supplier<T> body) {
+        final TaskScope child = new TaskScope(pool, this, timeout, precision);
+        return () -> child.run(body);
+    }
+}
@@ -16,10 +16,16 @@
  */
 package com.ymcmp.ntshell.value;
 
+import com.ymcmp.ntshell.Frontend;
 import com.ymcmp.ntshell.NtValue;
 
-import java.util.HashMap;
-import java.util.Map;
+import java.lang.ref.Reference;
+import java.lang.ref.ReferenceQueue;
+import java.lang.ref.WeakReference;
+
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.atomic.AtomicLong;
 
 /**
  * The closest data type to a string in NtShell. An atom is a one dimensional
@@ -32,7 +38,25 @@ import java.util.Map;
  */
 public class CoreAtom extends CoreMatrix {
 
-    private static final Map<String, CoreAtom> INTERN_MAP = new HashMap<>();
+    /**
+     * Atoms are only weakly held by the intern table. Once nothing else refers
+     * to an atom, its entry is dropped the next time an atom is requested.
+     */
+    private static final ConcurrentMap<String, InternRef> INTERN_MAP = new ConcurrentHashMap<>();
+    private static final ReferenceQueue<CoreAtom> RELEASED_ATOMS = new ReferenceQueue<>();
+
+    private static final AtomicLong INTERN_HITS = new AtomicLong();
+    private static final AtomicLong INTERN_MISSES = new AtomicLong();
+
+    private static final class InternRef extends WeakReference<CoreAtom> {
+
+        final String key;
+
+        InternRef(final CoreAtom atom) {
+            super(atom, RELEASED_ATOMS);
+            this.key = atom.str;
+        }
+    }
 
     /**
      * The atom in text form
@@ -47,12 +71,67 @@ public class CoreAtom extends CoreMatrix {
      * @param val The text representation of the atom
      */
     private CoreAtom(final String val) {
-        super(1, val.length());
+        super();
         this.str = val;
-        final char[] arr = val.toCharArray();
-        for (int i = 0; i < arr.length; ++i) {
-            mat[0][i] = CoreNumber.from(arr[i]);
+    }
+
+    /**
+     * Builds the character matrix of the atom. Most operations on atoms work
+     * on the text directly, so this only happens when the atom is treated as
+     * a general matrix.
+     *
+     * @return The character codes of the atom as a 1 by n matrix
+     */
+    @Override
+    protected NtValue[][] materialize() {
+        final NtValue[] row = new NtValue[str.length()];
+        for (int i = 0; i < row.length; ++i) {
+            row[i] = CoreNumber.from(str.charAt(i));
+        }
+        return new NtValue[][]{row};
+    }
+
+    @Override
+    public int getRowCount() {
+        return 1;
+    }
+
+    @Override
+    public int getColumnCount() {
+        return str.length();
+    }
+
+    @Override
+    public NtValue getCell(int row, int column) {
+        if (row != 0) {
+            throw new ArrayIndexOutOfBoundsException(row);
+        }
+        return CoreNumber.from(str.charAt(column));
+    }
+
+    /**
+     * Atoms are interned and shared, so they cannot be modified.
+     *
+     * @param row
+     * @param column
+     * @param val
+     * @throws UnsupportedOperationException always
+     */
+    @Override
+    public void setCell(int row, int column, final NtValue val) {
+        throw new UnsupportedOperationException("Atoms cannot be modified");
+    }
+
+    @Override
+    public boolean equals(final Object obj) {
+        if (obj instanceof CoreAtom) {
+            return this.str.equals(((CoreAtom) obj).str);
         }
+        if (obj instanceof CoreRope) {
+            // Ropes compare without flattening their text
+            return obj.equals(this);
+        }
+        return super.equals(obj);
     }
 
     /**
@@ -64,6 +143,16 @@ public class CoreAtom extends CoreMatrix {
         return str;
     }
 
+    /**
+     * Atoms are written as plain text, they are never truncated.
+     *
+     * @param out The frontend being written to
+     */
+    @Override
+    public void writeTo(final Frontend out) {
+        out.writeLine(str);
+    }
+
     /**
      *
      * @return The length of the atom
@@ -81,11 +170,59 @@ public class CoreAtom extends CoreMatrix {
      * @return An atom instance
      */
     public static CoreAtom from(final String s) {
-        CoreAtom get = INTERN_MAP.get(s);
-        if (get == null) {
-            INTERN_MAP.put(s, get = new CoreAtom(s));
+        expungeReleasedAtoms();
+        while (true) {
+            final InternRef ref = INTERN_MAP.get(s);
+            if (ref != null) {
+                final CoreAtom get = ref.get();
+                if (get != null) {
+                    INTERN_HITS.incrementAndGet();
+                    return get;
+                }
+            }
+
+            final CoreAtom atom = new CoreAtom(s);
+            final InternRef newRef = new InternRef(atom);
+            if (ref == null
+                    ? INTERN_MAP.putIfAbsent(s, newRef) == null
+                    : INTERN_MAP.replace(s, ref, newRef)) {
+                INTERN_MISSES.incrementAndGet();
+                return atom;
+            }
+            // Another thread interned the same text first, use theirs
+        }
+    }
+
+    private static void expungeReleasedAtoms() {
+        Reference<? extends CoreAtom> ref;
+        while ((ref = RELEASED_ATOMS.poll()) != null) {
+            INTERN_MAP.remove(((InternRef) ref).key, ref);
         }
-        return get;
+    }
+
+    /**
+     *
+     * @return The amount of times an already interned atom was reused
+     */
+    public static long getInternHits() {
+        return INTERN_HITS.get();
+    }
+
+    /**
+     *
+     * @return The amount of times a new atom had to be allocated
+     */
+    public static long getInternMisses() {
+        return INTERN_MISSES.get();
+    }
+
+    /**
+     *
+     * @return The amount of entries currently in the intern table
+     */
+    public static int getInternTableSize() {
+        expungeReleasedAtoms();
+        return INTERN_MAP.size();
     }
 
     /**
@@ -106,14 +243,14 @@ public class CoreAtom extends CoreMatrix {
         switch (params.length) {
         case 1:
             if (params[0] instanceof CoreNumber) {
-                final int loc = ((CoreNumber) params[0]).toDecimal().intValue();
+                final int loc = ((CoreNumber) params[0]).toInt();
                 return getCharAt(translateIndex(loc));
             }
             break;
         case 2:
             if (params[0] instanceof CoreNumber && params[1] instanceof CoreNumber) {
-                final int start = (int) ((CoreNumber) params[0]).toDecimal().intValue();
-                int end = (int) ((CoreNumber) params[1]).toDecimal().intValue();
+                final int start = ((CoreNumber) params[0]).toInt();
+                int end = ((CoreNumber) params[1]).toInt();
 
                 if (end < 0 && ++end == 0) {
                     end = str.length() + 1;
@@ -176,7 +313,7 @@ public class CoreAtom extends CoreMatrix {
      */
     public NtValue getCharAt(final int pos) {
         try {
-            return this.mat[0][getLocation(pos)];
+            return CoreNumber.from(str.charAt(getLocation(pos)));
         } catch (IndexOutOfBoundsException ex) {
             return CoreUnit.getInstance();
         }
@@ -201,7 +338,7 @@ public class CoreAtom extends CoreMatrix {
      * @return The equivalent matrix
      */
     public CoreMatrix toMatrix() {
-        return new CoreMatrix(this.mat);
+        return new CoreMatrix(getMatrix());
     }
 
     @Override
@@ -222,6 +359,9 @@ public class CoreAtom extends CoreMatrix {
         if (o instanceof CoreAtom) {
             return this.str.compareTo(((CoreAtom) o).str);
         }
+        if (o instanceof CoreRope) {
+            return -o.compareTo(this);
+        }
         return super.compareTo(o);
     }
 }
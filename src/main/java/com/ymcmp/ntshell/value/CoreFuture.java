@@ -0,0 +1,134 @@
+/**
+ *     Copyright (C) 2017  Paul Teng
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program. If not, see <http://www.gnu.org/licenses/>.
+ */
+package com.ymcmp.ntshell.value;
+
+import com.ymcmp.ntshell.NtValue;
+
+import com.ymcmp.ntshell.rte.DispatchException;
+import com.ymcmp.ntshell.rte.EvaluationInterruptedException;
+import com.ymcmp.ntshell.rte.TailCallTrigger;
+import com.ymcmp.ntshell.rte.TaskScope;
+
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RejectedExecutionException;
+
+import java.util.function.Supplier;
+
+/**
+ * The result of a function running in the background. Tasks are run by the
+ * pool of the current {@link TaskScope}, or by a shared pool whose size can
+ * be changed with {@link #setParallelism(int)} if there is none.
+ * Cancelling the scope stops its tasks. Waiting for a task from inside another task
+ * lets the pool start a replacement thread, so nested tasks do not starve
+ * it.
+ *
+ * @author YTENG
+ */
+public final class CoreFuture extends AbstractNtValue {
+
+    private static volatile ForkJoinPool pool = new ForkJoinPool(Runtime.getRuntime().availableProcessors());
+
+    private final CompletableFuture<NtValue> future;
+
+    private CoreFuture(final CompletableFuture<NtValue> future) {
+        this.future = future;
+    }
+
+    /**
+     * Starts calling a function in the background. Functions are
+     * {@link CoreLambda#snapshot() snapshotted} first, so the task does not
+     * see changes made to the variables afterwards.
+     *
+     * @param f The function
+     * @param params The parameters passed to the function
+     * @return The pending result
+     */
+    public static CoreFuture spawn(final NtValue f, final NtValue... params) {
+        final NtValue task = f instanceof CoreLambda ? ((CoreLambda) f).snapshot() : f;
+        final Supplier<NtValue> body = () -> TailCallTrigger.call(task, params);
+        final TaskScope scope = TaskScope.current();
+        try {
+            if (scope == null) {
+                return new CoreFuture(CompletableFuture.supplyAsync(body, pool));
+            }
+            return new CoreFuture(CompletableFuture.supplyAsync(scope.spawn(body), scope.getPool()));
+        } catch (RejectedExecutionException ex) {
+            throw new DispatchException("spawn", "No more tasks are accepted");
+        }
+    }
+
+    /**
+     * Waits for the result. If the task failed, the same error is thrown
+     * here.
+     *
+     * @return The result of the task
+     */
+    public NtValue await() {
+        try {
+            return future.get();
+        } catch (InterruptedException ex) {
+            Thread.currentThread().interrupt();
+            throw new EvaluationInterruptedException();
+        } catch (CancellationException ex) {
+            throw new DispatchException("await", "Task was cancelled");
+        } catch (ExecutionException ex) {
+            final Throwable cause = ex.getCause();
+            if (cause instanceof RuntimeException) {
+                throw (RuntimeException) cause;
+            }
+            if (cause instanceof Error) {
+                throw (Error) cause;
+            }
+            throw new DispatchException("await", String.valueOf(cause));
+        }
+    }
+
+    public boolean isDone() {
+        return future.isDone();
+    }
+
+    /**
+     *
+     * @return The amount of tasks that can run at the same time
+     */
+    public static int getParallelism() {
+        return pool.getParallelism();
+    }
+
+    /**
+     * Changes the amount of tasks that can run at the same time. Tasks that
+     * are already running are not affected.
+     *
+     * @param parallelism The new amount, at least one
+     */
+    public static synchronized void setParallelism(final int parallelism) {
+        if (parallelism < 1) {
+            throw new IllegalArgumentException("Parallelism must be at least one, got " + parallelism);
+        }
+        final ForkJoinPool old = pool;
+        pool = new ForkJoinPool(parallelism);
+        old.shutdown();
+    }
+
+    @Override
+    public String toString() {
+        return String.format("<future@%s>", Integer.toHexString(this.hashCode()));
+    }
+}
@@ -79,6 +79,16 @@ public abstract class CoreLambda extends AbstractNtValue {
                 }
                 throw new DispatchException("identity", "Identity only takes one parameter: " + params.length + " recieved");
             }
+
+            @Override
+            public boolean isPure() {
+                return true;
+            }
+
+            @Override
+            public CoreNumber[] getPolynomial() {
+                return new CoreNumber[]{CoreNumber.ZERO, CoreNumber.ONE};
+            }
         };
     }
 
@@ -108,6 +118,40 @@ public abstract class CoreLambda extends AbstractNtValue {
         return true;
     }
 
+    /**
+     * Tests if calling the function has no side effects, meaning it can be
+     * called any amount of times, in any order and from any thread. Functions
+     * are assumed to have side effects unless they say otherwise.
+     *
+     * @return true if the function is known to be side-effect free
+     */
+    public boolean isPure() {
+        return false;
+    }
+
+    /**
+     * Returns the coefficients of the function if it is a polynomial of its
+     * only parameter, lowest degree first. For example, {@code x -> 3x^2 + 1}
+     * yields {@code [1, 0, 3]}.
+     *
+     * @return The coefficients or {@code null} if the function is not known
+     * to be a polynomial
+     */
+    public CoreNumber[] getPolynomial() {
+        return null;
+    }
+
+    /**
+     * Returns a version of the function that is unaffected by later changes
+     * to the variables it captured. Used before a function is handed to
+     * another thread. Functions that capture nothing return themselves.
+     *
+     * @return The function bound to a copy of what it captured
+     */
+    public CoreLambda snapshot() {
+        return this;
+    }
+
     /**
      * Wraps the underlying function into a {@link java.util.function.Function}
      *
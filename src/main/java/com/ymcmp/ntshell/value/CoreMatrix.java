@@ -16,21 +16,20 @@
  */
 package com.ymcmp.ntshell.value;
 
-import com.inamik.text.tables.Cell;
-import com.inamik.text.tables.GridTable;
-import com.inamik.text.tables.grid.Border;
-import com.inamik.text.tables.grid.Util;
-
+import com.ymcmp.ntshell.Frontend;
 import com.ymcmp.ntshell.NtValue;
 import com.ymcmp.ntshell.rte.DispatchException;
 import com.ymcmp.ntshell.rte.TailCallTrigger;
-
-import java.io.ByteArrayOutputStream;
-import java.io.IOException;
-import java.io.PrintStream;
+import com.ymcmp.ntshell.rte.TaskScope;
 
 import java.util.Arrays;
+import java.util.Objects;
+
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
+import java.util.concurrent.RecursiveTask;
 
+import java.util.function.Consumer;
 import java.util.function.Function;
 import java.util.function.BiFunction;
 import java.util.function.BinaryOperator;
@@ -43,10 +42,34 @@ import java.util.regex.Pattern;
  */
 public class CoreMatrix extends AbstractNtValue implements Comparable<CoreMatrix> {
 
-    private static final Border BORDER_FMT = Border.of(Border.Chars.of('+', '-', '|'));
     private static final Pattern LINE_BREAK_PAT = Pattern.compile("\r?\n");
+    private static final String ELLIPSIS = "...";
+
+    /**
+     * Matrices with at least this many cells are mapped and folded in
+     * parallel when the function is pure
+     */
+    static final long PARALLEL_THRESHOLD = 4096;
+
+    /**
+     * Parallel maps and folds stop splitting below this many cells
+     */
+    static final long PARALLEL_LEAF_SIZE = 1024;
 
-    public final NtValue[][] mat;
+    private static volatile int displayRows = 20;
+    private static volatile int displayColumns = 20;
+
+    /**
+     * The cells of the matrix. Subclasses that can answer most queries
+     * without them (see {@link #CoreMatrix()}) leave this unset until
+     * {@link #getMatrix()} is called for the first time.
+     */
+    private volatile NtValue[][] mat;
+
+    /**
+     * Cached by {@link #getDecomposition()}, cleared when a cell changes
+     */
+    private volatile LUDecomposition decomposition;
 
     private static class Helper {
 
@@ -75,18 +98,90 @@ public class CoreMatrix extends AbstractNtValue implements Comparable<CoreMatrix
         this.mat = new NtValue[rows][columns];
     }
 
+    /**
+     * Creates a matrix whose cells are only built when they are needed.
+     * Subclasses using this must override {@link #materialize()},
+     * {@link #getRowCount()} and {@link #getColumnCount()}.
+     */
+    protected CoreMatrix() {
+        this.mat = null;
+    }
+
+    /**
+     * Returns the cells of the matrix, building them first if the matrix was
+     * created lazily. The returned array is shared, not copied.
+     *
+     * @return The cells of the matrix
+     */
+    protected final NtValue[][] getMatrix() {
+        NtValue[][] ret = mat;
+        if (ret == null) {
+            synchronized (this) {
+                ret = mat;
+                if (ret == null) {
+                    mat = ret = materialize();
+                }
+            }
+        }
+        return ret;
+    }
+
+    /**
+     * Builds the cells of a lazily created matrix. Only called once.
+     *
+     * @return The cells of the matrix
+     */
+    protected NtValue[][] materialize() {
+        throw new IllegalStateException("Matrix has no cells");
+    }
+
+    /**
+     * Calculates the cells now if the matrix is the result of an operation
+     * that was deferred. Errors of the operation surface here, and later
+     * changes to its operands are no longer seen. Other matrices, including
+     * ones that only keep a compact form of their cells, are left as is.
+     *
+     * @return This matrix
+     */
+    public CoreMatrix force() {
+        return this;
+    }
+
+    public int getRowCount() {
+        return getMatrix().length;
+    }
+
+    public int getColumnCount() {
+        final NtValue[][] rows = getMatrix();
+        return rows.length == 0 ? 0 : rows[0].length;
+    }
+
     public NtValue getCell(int row, int column) {
-        return mat[row][column];
+        return getMatrix()[row][column];
     }
 
     public void setCell(int row, int column, final NtValue val) {
-        mat[row][column] = val;
+        getMatrix()[row][column] = val;
+        decomposition = null;
     }
 
     @Override
     public int hashCode() {
+        // Same as Arrays.deepHashCode, but without touching the cells of
+        // matrices that are not materialized
+        final int rows = getRowCount();
+        final int columns = getColumnCount();
+        int cells = 1;
+        for (int x = 0; x < rows; ++x) {
+            int row = 1;
+            for (int y = 0; y < columns; ++y) {
+                row = 31 * row + Objects.hashCode(getCell(x, y));
+            }
+            cells = 31 * cells + row;
+        }
+
         int hash = 7;
-        hash = 89 * hash + Arrays.deepHashCode(this.mat);
+        hash = 89 * hash + cells;
         return hash;
     }
 
@@ -100,7 +195,19 @@ public class CoreMatrix extends AbstractNtValue implements Comparable<CoreMatrix
         }
         if (obj instanceof CoreMatrix) {
             final CoreMatrix other = (CoreMatrix) obj;
-            return Arrays.deepEquals(this.mat, other.mat);
+            final int rows = getRowCount();
+            final int columns = getColumnCount();
+            if (rows != other.getRowCount() || columns != other.getColumnCount()) {
+                return false;
+            }
+            for (int x = 0; x < rows; ++x) {
+                for (int y = 0; y < columns; ++y) {
+                    if (!Objects.equals(getCell(x, y), other.getCell(x, y))) {
+                        return false;
+                    }
+                }
+            }
+            return true;
         }
         return false;
     }
@@ -114,6 +221,7 @@ public class CoreMatrix extends AbstractNtValue implements Comparable<CoreMatrix
      * @return The atom representation of the matrix
      */
     public CoreAtom toAtom() {
+        final NtValue[][] mat = getMatrix();
         if (mat.length == 0) {
             return CoreAtom.from("");
         }
@@ -123,7 +231,7 @@ public class CoreMatrix extends AbstractNtValue implements Comparable<CoreMatrix
             if (el instanceof CoreMatrix) {
                 buf.append(((CoreMatrix) el).toAtom().str);
             } else if (el instanceof CoreNumber) {
-                buf.append((char) ((CoreNumber) el).toDecimal().intValue());
+                buf.append((char) ((CoreNumber) el).toInt());
             } else {
                 throw new ClassCastException("Cannot convert " + el.getClass().getSimpleName() + " to character");
             }
@@ -164,7 +272,7 @@ public class CoreMatrix extends AbstractNtValue implements Comparable<CoreMatrix
      */
     @Override
     public CoreMatrix applyPositive() {
-        return this.map(NtValue::applyPositive);
+        return LazyMatrix.unary(this, NtValue::applyPositive);
     }
 
     /**
@@ -174,7 +282,7 @@ public class CoreMatrix extends AbstractNtValue implements Comparable<CoreMatrix
      */
     @Override
     public CoreMatrix applyNegative() {
-        return this.map(NtValue::applyNegative);
+        return LazyMatrix.unary(this, NtValue::applyNegative);
     }
 
     /**
@@ -184,7 +292,7 @@ public class CoreMatrix extends AbstractNtValue implements Comparable<CoreMatrix
      */
     @Override
     public CoreMatrix applyPercentage() {
-        return this.map(NtValue::applyPercentage);
+        return LazyMatrix.unary(this, NtValue::applyPercentage);
     }
 
     /**
@@ -200,8 +308,8 @@ public class CoreMatrix extends AbstractNtValue implements Comparable<CoreMatrix
         if (params.length == 2
                 && params[0] instanceof CoreNumber
                 && params[1] instanceof CoreNumber) {
-            final int row = (int) ((CoreNumber) params[0]).toDecimal().intValue();
-            final int column = (int) ((CoreNumber) params[1]).toDecimal().intValue();
+            final int row = ((CoreNumber) params[0]).toInt();
+            final int column = ((CoreNumber) params[1]).toInt();
             try {
                 return getCell(row - 1, column - 1);
             } catch (ArrayIndexOutOfBoundsException ex) {
@@ -211,91 +319,72 @@ public class CoreMatrix extends AbstractNtValue implements Comparable<CoreMatrix
         return super.applyCall(params);
     }
 
+    /**
+     * Element-wise operations do not calculate anything until the result is
+     * observed, and chaining them fuses the operations into a single pass.
+     * See {@link LazyMatrix}.
+     *
+     * @param rhs The other operand
+     * @return The new matrix
+     */
     @Override
     public NtValue applyAdd(NtValue rhs) {
         if (rhs instanceof CoreMatrix) {
-            try {
-                return this.bimap((CoreMatrix) rhs, (a, b) -> a.applyAdd(b));
-            } catch (MatrixBoundMismatchException ex) {
-                throw ex.toDispatchException("+");
-            }
+            return fuse("+", this, (CoreMatrix) rhs, NtValue::applyAdd);
         }
-
-        return map(el -> el.applyAdd(rhs));
+        return LazyMatrix.withRight(this, rhs, NtValue::applyAdd);
     }
 
     public NtValue applyRSub(NtValue lhs) {
         if (lhs instanceof CoreMatrix) {
-            try {
-                return this.bimap((CoreMatrix) lhs, (a, b) -> b.applySub(a));
-            } catch (MatrixBoundMismatchException ex) {
-                throw ex.toDispatchException("-");
-            }
+            return fuse("-", (CoreMatrix) lhs, this, NtValue::applySub);
         }
-
-        return this.map(lhs::applySub);
+        return LazyMatrix.withLeft(lhs, this, NtValue::applySub);
     }
 
     @Override
     public NtValue applySub(NtValue rhs) {
         if (rhs instanceof CoreMatrix) {
-            try {
-                return this.bimap((CoreMatrix) rhs, (a, b) -> a.applySub(b));
-            } catch (MatrixBoundMismatchException ex) {
-                throw ex.toDispatchException("-");
-            }
+            return fuse("-", this, (CoreMatrix) rhs, NtValue::applySub);
         }
-
-        return this.map(el -> el.applySub(rhs));
+        return LazyMatrix.withRight(this, rhs, NtValue::applySub);
     }
 
     public NtValue applyRMod(NtValue lhs) {
         if (lhs instanceof CoreMatrix) {
-            try {
-                return this.bimap((CoreMatrix) lhs, (a, b) -> b.applyPow(a));
-            } catch (MatrixBoundMismatchException ex) {
-                throw ex.toDispatchException("mod");
-            }
+            return fuse("mod", (CoreMatrix) lhs, this, NtValue::applyMod);
         }
-
-        return this.map(lhs::applyMod);
+        return LazyMatrix.withLeft(lhs, this, NtValue::applyMod);
     }
 
     @Override
     public NtValue applyMod(NtValue rhs) {
         if (rhs instanceof CoreMatrix) {
-            try {
-                return this.bimap((CoreMatrix) rhs, (a, b) -> a.applyMod(b));
-            } catch (MatrixBoundMismatchException ex) {
-                throw ex.toDispatchException("mod");
-            }
+            return fuse("mod", this, (CoreMatrix) rhs, NtValue::applyMod);
         }
-
-        return this.map(el -> el.applyMod(rhs));
+        return LazyMatrix.withRight(this, rhs, NtValue::applyMod);
     }
 
     public NtValue applyRPow(NtValue lhs) {
         if (lhs instanceof CoreMatrix) {
-            try {
-                return this.bimap((CoreMatrix) lhs, (a, b) -> b.applyPow(a));
-            } catch (MatrixBoundMismatchException ex) {
-                throw ex.toDispatchException("^");
-            }
+            return fuse("^", (CoreMatrix) lhs, this, NtValue::applyPow);
         }
-
-        return this.map(lhs::applyPow);
+        return LazyMatrix.withLeft(lhs, this, NtValue::applyPow);
     }
 
     @Override
     public NtValue applyPow(NtValue rhs) {
         if (rhs instanceof CoreMatrix) {
-            try {
-                return this.bimap((CoreMatrix) rhs, (a, b) -> a.applyPow(b));
-            } catch (MatrixBoundMismatchException ex) {
-                throw ex.toDispatchException("^");
-            }
+            return fuse("^", this, (CoreMatrix) rhs, NtValue::applyPow);
         }
-        return this.map(el -> el.applyPow(rhs));
+        return LazyMatrix.withRight(this, rhs, NtValue::applyPow);
+    }
+
+    private static CoreMatrix fuse(final String op, final CoreMatrix lhs, final CoreMatrix rhs, final BinaryOperator<NtValue> f) {
+        if (!lhs.sameShape(rhs)) {
+            throw new MatrixBoundMismatchException("Two matrices have different shapes").toDispatchException(op);
+        }
+        return LazyMatrix.binary(lhs, rhs, f);
     }
 
     @Override
@@ -308,7 +397,7 @@ public class CoreMatrix extends AbstractNtValue implements Comparable<CoreMatrix
             }
         }
 
-        return this.map(el -> el.applyMul(rhs));
+        return LazyMatrix.withRight(this, rhs, NtValue::applyMul);
     }
 
     /**
@@ -320,23 +409,34 @@ public class CoreMatrix extends AbstractNtValue implements Comparable<CoreMatrix
      * If the two matrices do not have a shape of {@code m*n} and {@code n*p}
      */
     public CoreMatrix crossProduct(final CoreMatrix rhs) throws MatrixBoundMismatchException {
+        if (rhs instanceof SparseMatrix) {
+            return ((SparseMatrix) rhs).crossProductLeft(this);
+        }
+        if (this instanceof DoubleMatrix || rhs instanceof DoubleMatrix) {
+            final CoreMatrix ret = DoubleMatrix.crossProduct(this, rhs);
+            if (ret != null) {
+                return ret;
+            }
+        }
+        final NtValue[][] mat = getMatrix();
+        final NtValue[][] rmat = rhs.getMatrix();
         if (mat.length == 0) {
-            if (rhs.mat.length == 0) {
+            if (rmat.length == 0) {
                 return Helper.EMPTY_MAT;
             }
             throw new MatrixBoundMismatchException("Matrices do not have capatible shape");
         }
-        if (mat[0].length != rhs.mat.length) {
+        if (mat[0].length != rmat.length) {
             throw new MatrixBoundMismatchException("Matrices do not have capatible shape");
         }
         // Here, shape is capatible: (m, n) * (n, p) => (m, p)
-        final NtValue[][] rows = new NtValue[mat.length][rhs.mat[0].length];
+        final NtValue[][] rows = new NtValue[mat.length][rmat[0].length];
         for (int x = 0; x < rows.length; ++x) {
             final int columnCount = rows[x].length;
             for (int y = 0; y < columnCount; ++y) {
                 NtValue acc = null;
-                for (int k = 0; k < rhs.mat.length; ++k) {
-                    final NtValue r = mat[x][k].applyMul(rhs.mat[k][y]);
+                for (int k = 0; k < rmat.length; ++k) {
+                    final NtValue r = mat[x][k].applyMul(rmat[k][y]);
                     if (acc == null) {
                         acc = r;
                         continue;
@@ -349,21 +449,116 @@ public class CoreMatrix extends AbstractNtValue implements Comparable<CoreMatrix
         return new CoreMatrix(rows);
     }
 
+    /**
+     * Dividing by a matrix multiplies by its inverse, {@code A / B} is
+     * {@code A * inv(B)}. Dividing by a number divides every element.
+     *
+     * @param lhs The dividend
+     * @return The new matrix
+     */
     public NtValue applyRDiv(NtValue lhs) {
         if (lhs instanceof CoreMatrix) {
-            throw new DispatchException("/", "Currently not supported");
+            return divide((CoreMatrix) lhs, this);
         }
 
-        return this.map(lhs::applyDiv);
+        return LazyMatrix.withLeft(lhs, this, NtValue::applyDiv);
     }
 
     @Override
     public NtValue applyDiv(NtValue rhs) {
         if (rhs instanceof CoreMatrix) {
-            throw new DispatchException("/", "Currently not supported");
+            return divide(this, (CoreMatrix) rhs);
         }
 
-        return this.map(el -> el.applyDiv(rhs));
+        return LazyMatrix.withRight(this, rhs, NtValue::applyDiv);
+    }
+
+    private static CoreMatrix divide(final CoreMatrix lhs, final CoreMatrix rhs) {
+        try {
+            return lhs.crossProduct(rhs.inverse());
+        } catch (MatrixBoundMismatchException ex) {
+            throw ex.toDispatchException("/");
+        } catch (ArithmeticException | IllegalArgumentException ex) {
+            throw new DispatchException("/", ex.getMessage());
+        }
+    }
+
+    /**
+     * Returns the LU decomposition of the matrix. It is only calculated the
+     * first time, until a cell of the matrix is changed.
+     *
+     * @return The decomposition
+     * @throws com.ymcmp.ntshell.value.CoreMatrix.MatrixBoundMismatchException
+     * If the matrix is not square
+     * @throws IllegalArgumentException If the matrix contains things other
+     * than numbers
+     */
+    final LUDecomposition getDecomposition() throws MatrixBoundMismatchException {
+        LUDecomposition ret = decomposition;
+        if (ret == null) {
+            if (getRowCount() != getColumnCount()) {
+                throw new MatrixBoundMismatchException("Matrix is not square");
+            }
+            decomposition = ret = LUDecomposition.of(getMatrix());
+        }
+        return ret;
+    }
+
+    /**
+     * Calculates the determinant of the matrix
+     *
+     * @return The determinant
+     * @throws com.ymcmp.ntshell.value.CoreMatrix.MatrixBoundMismatchException
+     * If the matrix is not square
+     * @throws IllegalArgumentException If the matrix contains things other
+     * than numbers
+     */
+    public NtValue determinant() throws MatrixBoundMismatchException {
+        return getDecomposition().determinant();
+    }
+
+    /**
+     * Calculates the inverse of the matrix. The result is cached along with
+     * the decomposition of the matrix.
+     *
+     * @return The inverse
+     * @throws com.ymcmp.ntshell.value.CoreMatrix.MatrixBoundMismatchException
+     * If the matrix is not square
+     * @throws ArithmeticException If the matrix is singular
+     * @throws IllegalArgumentException If the matrix contains things other
+     * than numbers
+     */
+    public CoreMatrix inverse() throws MatrixBoundMismatchException {
+        return getDecomposition().inverse();
+    }
+
+    /**
+     * Solves {@code this * x = rhs}. Solving different right-hand sides
+     * with the same matrix reuses its decomposition.
+     *
+     * @param rhs The right-hand sides, one per column
+     * @return The solutions, one per column
+     * @throws com.ymcmp.ntshell.value.CoreMatrix.MatrixBoundMismatchException
+     * If the matrix is not square or the right-hand sides have a different
+     * amount of rows
+     * @throws ArithmeticException If the matrix is singular
+     * @throws IllegalArgumentException If either matrix contains things other
+     * than numbers
+     */
+    public CoreMatrix solve(final CoreMatrix rhs) throws MatrixBoundMismatchException {
+        final LUDecomposition lu = getDecomposition();
+        if (rhs.getRowCount() != getRowCount()) {
+            throw new MatrixBoundMismatchException("Right-hand side has " + rhs.getRowCount() + " rows instead of " + getRowCount());
+        }
+        final NtValue[][] b = rhs.getMatrix();
+        for (final NtValue[] row : b) {
+            for (final NtValue cell : row) {
+                if (!(cell instanceof CoreNumber)) {
+                    throw new IllegalArgumentException("Matrix can only contain numbers");
+                }
+            }
+        }
+        return lu.solve(b);
     }
 
     /**
@@ -374,11 +569,12 @@ public class CoreMatrix extends AbstractNtValue implements Comparable<CoreMatrix
      * @return {@code true} if same shape, {@code false} otherwise
      */
     public boolean sameShape(final CoreMatrix other) {
-        if (mat.length == other.mat.length) {
-            if (mat.length == 0) {
+        final int rows = getRowCount();
+        if (rows == other.getRowCount()) {
+            if (rows == 0) {
                 return true;
             }
-            return mat[0].length == other.mat[0].length;
+            return getColumnCount() == other.getColumnCount();
         }
         return false;
     }
@@ -400,16 +596,18 @@ public class CoreMatrix extends AbstractNtValue implements Comparable<CoreMatrix
             throw new MatrixBoundMismatchException("Two matrices have different shapes");
         }
 
+        final NtValue[][] mat = getMatrix();
         if (mat.length == 0) {
             return Helper.EMPTY_MAT;
         }
 
+        final NtValue[][] rmat = rhs.getMatrix();
         final NtValue[][] rows = new NtValue[mat.length][];
         for (int x = 0; x < rows.length; ++x) {
             final NtValue[] columns = Arrays.copyOf(mat[x], mat[x].length);
             rows[x] = columns;
             for (int y = 0; y < columns.length; ++y) {
-                columns[y] = transformer.apply(columns[y], rhs.mat[x][y]);
+                columns[y] = transformer.apply(columns[y], rmat[x][y]);
             }
         }
         return new CoreMatrix(rows);
@@ -422,26 +620,172 @@ public class CoreMatrix extends AbstractNtValue implements Comparable<CoreMatrix
      * @return The new matrix
      */
     public CoreMatrix map(final Function<NtValue, NtValue> transformer) {
-        return map(CoreLambda.from(x -> transformer.apply(x[0])));
+        final NtValue[][] mat = getMatrix();
+        if (mat.length == 0) {
+            return Helper.EMPTY_MAT;
+        }
+
+        final NtValue[][] rows = new NtValue[mat.length][];
+        for (int i = 0; i < rows.length; ++i) {
+            final NtValue[] row = mat[i];
+            final NtValue[] columns = new NtValue[row.length];
+            for (int j = 0; j < columns.length; ++j) {
+                columns[j] = transformer.apply(row[j]);
+            }
+            rows[i] = columns;
+        }
+        return new CoreMatrix(rows);
     }
 
     /**
-     * Applies a transformation on every element of the matrix
+     * Applies a thread-safe transformation on every element of the matrix.
+     * Unlike {@link CoreMatrix#map(java.util.function.Function)}, large
+     * matrices are mapped in parallel.
+     *
+     * @param transformer The transformation, must be safe to call from
+     * multiple threads
+     * @return The new matrix
+     */
+    public CoreMatrix mapPure(final Function<NtValue, NtValue> transformer) {
+        final int columns = getColumnCount();
+        if ((long) getRowCount() * columns < PARALLEL_THRESHOLD) {
+            return map(transformer);
+        }
+        return mapParallel(getMatrix(), columns, transformer);
+    }
+
+    /**
+     * Applies a transformation on every element of the matrix. Large matrices
+     * are mapped in parallel if the transformation is pure. See
+     * {@link CoreMatrix#mapParallel(com.ymcmp.ntshell.NtValue)}.
      *
      * @param transformer Must support
      * {@link NtValue#applyCall(com.ymcmp.ntshell.NtValue[])}
      * @return The new matrix
      */
     public CoreMatrix map(final NtValue transformer) {
+        final NtValue[][] mat = getMatrix();
+        if (mat.length == 0) {
+            return Helper.EMPTY_MAT;
+        }
+
+        final int columns = getColumnCount();
+        if ((long) mat.length * columns >= PARALLEL_THRESHOLD && isPure(transformer)) {
+            return mapParallel(mat, columns, transformer);
+        }
+        return mapSequential(mat, transformer);
+    }
+
+    /**
+     * Applies a transformation on every element of the matrix on the
+     * fork-join pool regardless of the size of the matrix. This is only done
+     * if the transformation is a pure {@link CoreLambda}, otherwise the
+     * elements are transformed one after the other.
+     *
+     * @param transformer Must support
+     * {@link NtValue#applyCall(com.ymcmp.ntshell.NtValue[])}
+     * @return The new matrix
+     */
+    public CoreMatrix mapParallel(final NtValue transformer) {
+        final NtValue[][] mat = getMatrix();
         if (mat.length == 0) {
             return Helper.EMPTY_MAT;
         }
 
-        return new CoreMatrix(Arrays.stream(mat)
-                .map(Arrays::stream)
-                .map(s -> s.map(f -> TailCallTrigger.call(transformer, f)))
-                .map(s -> s.toArray(NtValue[]::new))
-                .toArray(NtValue[][]::new));
+        if (isPure(transformer)) {
+            return mapParallel(mat, getColumnCount(), transformer);
+        }
+        return mapSequential(mat, transformer);
+    }
+
+    private static CoreMatrix mapSequential(final NtValue[][] mat, final NtValue transformer) {
+        final NtValue[][] rows = new NtValue[mat.length][];
+        for (int i = 0; i < rows.length; ++i) {
+            final NtValue[] row = mat[i];
+            final NtValue[] columns = new NtValue[row.length];
+            for (int j = 0; j < columns.length; ++j) {
+                columns[j] = TailCallTrigger.call(transformer, row[j]);
+            }
+            rows[i] = columns;
+        }
+        return new CoreMatrix(rows);
+    }
+
+    private static CoreMatrix mapParallel(final NtValue[][] mat, final int columns, final NtValue transformer) {
+        return mapParallel(mat, columns, el -> TailCallTrigger.call(transformer, el));
+    }
+
+    private static CoreMatrix mapParallel(final NtValue[][] mat, final int columns, final Function<NtValue, NtValue> transformer) {
+        final NtValue[][] rows = new NtValue[mat.length][columns];
+        ForkJoinPool.commonPool()
+                .invoke(new ParallelMap(mat, rows, columns, transformer, 0, (long) mat.length * columns));
+        return new CoreMatrix(rows);
+    }
+
+    /**
+     * Checks if a function can be called from multiple threads at the same
+     * time. Only {@link CoreLambda}s can tell.
+     *
+     * @param f The function
+     * @return true if {@code f} is known to be side-effect free
+     */
+    private static boolean isPure(final NtValue f) {
+        return f instanceof CoreLambda && ((CoreLambda) f).isPure();
+    }
+
+    /**
+     * Transforms the cells in {@code [start, end)} of a matrix, where cells
+     * are numbered row by row. Ranges are split on cells instead of rows so
+     * wide matrices (and atoms) are divided up as well. Every range is
+     * transformed in the {@link TaskScope} the map was started from.
+     */
+    private static final class ParallelMap extends RecursiveAction {
+
+        private static final long serialVersionUID = 1L;
+
+        private final TaskScope scope = TaskScope.current();
+        private final NtValue[][] src;
+        private final NtValue[][] dst;
+        private final int columns;
+        private final Function<NtValue, NtValue> transformer;
+        private final long start;
+        private final long end;
+
+        ParallelMap(final NtValue[][] src, final NtValue[][] dst, final int columns, final Function<NtValue, NtValue> transformer, final long start, final long end) {
+            this.src = src;
+            this.dst = dst;
+            this.columns = columns;
+            this.transformer = transformer;
+            this.start = start;
+            this.end = end;
+        }
+
+        @Override
+        protected void compute() {
+            TaskScope.runIn(scope, () -> {
+                computeInScope();
+                return null;
+            });
+        }
+
+        private void computeInScope() {
+            if (end - start <= PARALLEL_LEAF_SIZE) {
+                int row = (int) (start / columns);
+                int column = (int) (start % columns);
+                for (long i = start; i < end; ++i) {
+                    dst[row][column] = transformer.apply(src[row][column]);
+                    if (++column == columns) {
+                        column = 0;
+                        ++row;
+                    }
+                }
+                return;
+            }
+
+            final long mid = start + (end - start) / 2;
+            invokeAll(new ParallelMap(src, dst, columns, transformer, start, mid),
+                    new ParallelMap(src, dst, columns, transformer, mid, end));
+        }
     }
 
     /**
@@ -473,13 +817,14 @@ public class CoreMatrix extends AbstractNtValue implements Comparable<CoreMatrix
      * @return Either the initial value or the accumulated value
      */
     public NtValue reduceLeft(final NtValue accum, final NtValue initial) {
-        if (mat.length == 0) {
-            return initial;
+        final NtValue[][] mat = getMatrix();
+        NtValue ret = initial;
+        for (final NtValue[] row : mat) {
+            for (final NtValue cell : row) {
+                ret = TailCallTrigger.call(accum, ret, cell);
+            }
         }
-
-        return Arrays.stream(mat)
-                .flatMap(Arrays::stream)
-                .reduce(initial, (a, b) -> accum.applyCall(a, b));
+        return ret;
     }
 
     /**
@@ -511,26 +856,126 @@ public class CoreMatrix extends AbstractNtValue implements Comparable<CoreMatrix
      * @return Either the initial value or the accumulated value
      */
     public NtValue reduceRight(final NtValue accum, final NtValue initial) {
-        if (mat.length == 0) {
-            return initial;
-        }
-
+        final NtValue[][] mat = getMatrix();
         NtValue ret = initial;
-        final NtValue[] lst = Arrays.stream(mat)
-                .flatMap(Arrays::stream)
-                .toArray(NtValue[]::new);
-        for (int i = lst.length; i > 0; --i) {
-            ret = accum.applyCall(ret, lst[i - 1]);
+        for (int i = mat.length; i > 0; --i) {
+            final NtValue[] row = mat[i - 1];
+            for (int j = row.length; j > 0; --j) {
+                ret = TailCallTrigger.call(accum, ret, row[j - 1]);
+            }
         }
         return ret;
     }
 
+    /**
+     * Performs a reduction with an associative accumulator. The cells are
+     * split into chunks that are reduced on the fork-join pool, each starting
+     * from {@code identity}, and the partial results are then combined in
+     * order. The accumulator is assumed to be thread-safe.
+     *
+     * @param accum The associative accumulator
+     * @param identity The identity value of the accumulator
+     * @return Either the identity value or the accumulated value
+     */
+    public NtValue reduceParallel(final BinaryOperator<NtValue> accum, final NtValue identity) {
+        return reduceParallel(new CoreLambda() {
+            @Override
+            public NtValue applyCall(final NtValue[] params) {
+                return accum.apply(params[0], params[1]);
+            }
+
+            @Override
+            public boolean isPure() {
+                return true;
+            }
+        }, identity);
+    }
+
+    /**
+     * Performs a reduction with an associative accumulator. The reduction
+     * only happens in parallel if the accumulator is a pure
+     * {@link CoreLambda} and the matrix is large enough, otherwise this is
+     * the same as
+     * {@link CoreMatrix#reduceLeft(com.ymcmp.ntshell.NtValue, com.ymcmp.ntshell.NtValue)}.
+     *
+     * @param accum Must support
+     * {@link NtValue#applyCall(com.ymcmp.ntshell.NtValue[])}
+     * @param identity The identity value of the accumulator
+     * @return Either the identity value or the accumulated value
+     */
+    public NtValue reduceParallel(final NtValue accum, final NtValue identity) {
+        final NtValue[][] mat = getMatrix();
+        final int columns = getColumnCount();
+        final long size = (long) mat.length * columns;
+        if (size < PARALLEL_THRESHOLD || !isPure(accum)) {
+            return reduceLeft(accum, identity);
+        }
+        return ForkJoinPool.commonPool()
+                .invoke(new ParallelReduce(mat, columns, accum, identity, 0, size));
+    }
+
+    /**
+     * Reduces the cells in {@code [start, end)} of a matrix, where cells are
+     * numbered row by row, in the {@link TaskScope} the reduction was started
+     * from.
+     */
+    private static final class ParallelReduce extends RecursiveTask<NtValue> {
+
+        private static final long serialVersionUID = 1L;
+
+        private final TaskScope scope = TaskScope.current();
+        private final NtValue[][] mat;
+        private final int columns;
+        private final NtValue accum;
+        private final NtValue identity;
+        private final long start;
+        private final long end;
+
+        ParallelReduce(final NtValue[][] mat, final int columns, final NtValue accum, final NtValue identity, final long start, final long end) {
+            this.mat = mat;
+            this.columns = columns;
+            this.accum = accum;
+            this.identity = identity;
+            this.start = start;
+            this.end = end;
+        }
+
+        @Override
+        protected NtValue compute() {
+            return TaskScope.runIn(scope, this::computeInScope);
+        }
+
+        private NtValue computeInScope() {
+            if (end - start <= PARALLEL_LEAF_SIZE) {
+                int row = (int) (start / columns);
+                int column = (int) (start % columns);
+                NtValue ret = identity;
+                for (long i = start; i < end; ++i) {
+                    ret = TailCallTrigger.call(accum, ret, mat[row][column]);
+                    if (++column == columns) {
+                        column = 0;
+                        ++row;
+                    }
+                }
+                return ret;
+            }
+
+            final long mid = start + (end - start) / 2;
+            final ParallelReduce left = new ParallelReduce(mat, columns, accum, identity, start, mid);
+            final ParallelReduce right = new ParallelReduce(mat, columns, accum, identity, mid, end);
+            left.fork();
+            final NtValue rhs = right.compute();
+            return TailCallTrigger.call(accum, left.join(), rhs);
+        }
+    }
+
     /**
      * Transposes a matrix
      *
      * @return The new matrix
      */
     public CoreMatrix transpose() {
+        final NtValue[][] mat = getMatrix();
         if (mat.length == 0) {
             return Helper.EMPTY_MAT;
         }
@@ -553,6 +998,7 @@ public class CoreMatrix extends AbstractNtValue implements Comparable<CoreMatrix
     public CoreMatrix flipOnY() {
         // 1 2 => 2 1
         // 3 4    4 3
+        final NtValue[][] mat = getMatrix();
         if (mat.length == 0) {
             return Helper.EMPTY_MAT;
         }
@@ -571,6 +1017,7 @@ public class CoreMatrix extends AbstractNtValue implements Comparable<CoreMatrix
     public CoreMatrix flipOnX() {
         // 1 2 => 3 4
         // 3 4    1 2
+        final NtValue[][] mat = getMatrix();
         if (mat.length == 0) {
             return Helper.EMPTY_MAT;
         }
@@ -595,7 +1042,7 @@ public class CoreMatrix extends AbstractNtValue implements Comparable<CoreMatrix
 
     @Override
     public boolean isTruthy() {
-        return mat.length > 0;
+        return getRowCount() > 0;
     }
 
     @Override
@@ -605,14 +1052,16 @@ public class CoreMatrix extends AbstractNtValue implements Comparable<CoreMatrix
         if (o == this) {
             return 0;
         }
-        if (o.mat.length == 0) {
+        final NtValue[][] mat = getMatrix();
+        final NtValue[][] omat = o.getMatrix();
+        if (omat.length == 0) {
             return Integer.compare(mat.length, 0);
         }
 
         for (int x = 0; x < mat.length; ++x) {
             for (int y = 0; y < mat[x].length; ++y) {
                 final Comparable<NtValue> comparator = (Comparable<NtValue>) mat[x][y];
-                final int cmp = comparator.compareTo(o.mat[x][y]);
+                final int cmp = comparator.compareTo(omat[x][y]);
                 if (cmp != 0) {
                     return cmp;
                 }
@@ -644,6 +1093,7 @@ public class CoreMatrix extends AbstractNtValue implements Comparable<CoreMatrix
         [1, 2, 3, 4, 5, 6].reshape(1, 5) =>
         [1, 2, 3, 4, 5]
          */
+        final NtValue[][] mat = getMatrix();
         final int newLinearLength = rows * columns;
         if (newLinearLength == 0) {
             return Helper.EMPTY_MAT;
@@ -674,30 +1124,191 @@ public class CoreMatrix extends AbstractNtValue implements Comparable<CoreMatrix
         throw new MatrixBoundMismatchException("New shape is bigger than old shape: (linear length) " + newLinearLength + " > " + oldLinearLength);
     }
 
+    /**
+     * Changes how much of a matrix is rendered by {@link #toString()} and
+     * {@link #writeTo(com.ymcmp.ntshell.Frontend)}. If a matrix has more rows
+     * (or columns) than the limit, only the leading and trailing ones are
+     * rendered and the rest are replaced by {@code ...}. A limit that is not
+     * positive means no limit.
+     *
+     * @param maxRows The maximum amount of rows rendered
+     * @param maxColumns The maximum amount of columns rendered
+     */
+    public static void setDisplayLimit(final int maxRows, final int maxColumns) {
+        displayRows = maxRows;
+        displayColumns = maxColumns;
+    }
+
+    public static int getDisplayRows() {
+        return displayRows;
+    }
+
+    public static int getDisplayColumns() {
+        return displayColumns;
+    }
+
     @Override
     public String toString() {
-        if (mat.length == 0) {
+        if (getRowCount() == 0) {
             return "[]";
         }
 
-        final GridTable table = GridTable.of(mat.length, mat[0].length);
-        for (int x = 0; x < mat.length; ++x) {
-            final int colCount = mat[x].length;
-            for (int y = 0; y < colCount; ++y) {
-                final String[] lines = LINE_BREAK_PAT.split(mat[x][y].toString());
-                table.put(x, y, Cell.of(lines));
-                table.apply(x, y, Cell.Functions.VERTICAL_CENTER);
-                table.apply(x, y, Cell.Functions.HORIZONTAL_CENTER);
+        final StringBuilder sb = new StringBuilder();
+        render(sb::append, displayRows, displayColumns);
+        // drop the line break after the bottom border
+        sb.setLength(sb.length() - 1);
+        return sb.toString();
+    }
+
+    /**
+     * Renders the matrix line by line onto the frontend instead of building
+     * the whole text representation in memory first.
+     *
+     * @param out The frontend being written to
+     */
+    public void writeTo(final Frontend out) {
+        writeTo(out, displayRows, displayColumns);
+    }
+
+    /**
+     * Renders the matrix line by line with a display limit of its own instead
+     * of the one set by {@link #setDisplayLimit(int, int)}
+     *
+     * @param out The frontend being written to
+     * @param maxRows The maximum amount of rows rendered, not positive for no
+     * limit
+     * @param maxColumns The maximum amount of columns rendered, not positive
+     * for no limit
+     */
+    public void writeTo(final Frontend out, final int maxRows, final int maxColumns) {
+        if (getRowCount() == 0) {
+            out.writeLine("[]");
+            return;
+        }
+        render(out::write, maxRows, maxColumns);
+    }
+
+    /**
+     * Writes the matrix on a single line in the form it is typed in, for
+     * example {@code [1, 2; 3, 4]}. The display limit does not apply and the
+     * cells are written one by one, nested matrices included.
+     *
+     * @param out Receives the text piece by piece
+     */
+    public void writeInline(final Consumer<String> out) {
+        final int rows = getRowCount();
+        final int columns = getColumnCount();
+        out.accept("[");
+        for (int i = 0; i < rows; ++i) {
+            if (i > 0) {
+                out.accept("; ");
+            }
+            for (int j = 0; j < columns; ++j) {
+                if (j > 0) {
+                    out.accept(", ");
+                }
+                final NtValue cell = getCell(i, j);
+                if (cell instanceof CoreMatrix) {
+                    ((CoreMatrix) cell).writeInline(out);
+                } else {
+                    out.accept(LINE_BREAK_PAT.matcher(cell.toString()).replaceAll(" "));
+                }
+            }
+        }
+        out.accept("]");
+    }
+
+    /**
+     * Renders the visible part of the matrix as a grid. The cells are
+     * converted to text twice, once to size the columns and once when their
+     * row is written, so only one row is held in memory however large the
+     * matrix is.
+     */
+    private void render(final Consumer<String> out, final int maxRows, final int maxColumns) {
+        final int[] rows = visibleIndices(getRowCount(), maxRows);
+        final int[] cols = visibleIndices(getColumnCount(), maxColumns);
+
+        final int[] widths = new int[cols.length];
+        for (final int row : rows) {
+            for (int y = 0; y < cols.length; ++y) {
+                for (final String line : cellLines(row, cols[y])) {
+                    widths[y] = Math.max(widths[y], line.length());
+                }
             }
         }
 
-        try (final ByteArrayOutputStream baos = new ByteArrayOutputStream();
-             final PrintStream pw = new PrintStream(baos)) {
-            Util.print(BORDER_FMT.apply(table), pw);
-            return baos.toString().trim();
-        } catch (IOException ex) {
-            // This should not happen
+        final StringBuilder border = new StringBuilder().append('+');
+        for (final int width : widths) {
+            for (int i = 0; i < width; ++i) {
+                border.append('-');
+            }
+            border.append('+');
+        }
+        final String borderLine = border.append('\n').toString();
+
+        out.accept(borderLine);
+        final String[][] cells = new String[cols.length][];
+        final StringBuilder buf = new StringBuilder();
+        for (final int row : rows) {
+            int height = 0;
+            for (int y = 0; y < cols.length; ++y) {
+                cells[y] = cellLines(row, cols[y]);
+                height = Math.max(height, cells[y].length);
+            }
+            for (int k = 0; k < height; ++k) {
+                buf.setLength(0);
+                buf.append('|');
+                for (int y = 0; y < cols.length; ++y) {
+                    final String[] lines = cells[y];
+                    final int line = k - (height - lines.length) / 2;
+                    final String text = line >= 0 && line < lines.length ? lines[line] : "";
+                    final int left = (widths[y] - text.length()) / 2;
+                    pad(buf, left);
+                    buf.append(text);
+                    pad(buf, widths[y] - text.length() - left);
+                    buf.append('|');
+                }
+                out.accept(buf.append('\n').toString());
+            }
+            out.accept(borderLine);
+        }
+    }
+
+    private String[] cellLines(final int row, final int col) {
+        return row < 0 || col < 0
+                ? new String[]{ELLIPSIS}
+                : LINE_BREAK_PAT.split(getCell(row, col).toString());
+    }
+
+    /**
+     * Picks the indices that will be rendered. A -1 in the result marks the
+     * place where the omitted indices would have been.
+     */
+    private static int[] visibleIndices(final int length, final int limit) {
+        if (limit <= 0 || length <= limit) {
+            final int[] ret = new int[length];
+            for (int i = 0; i < length; ++i) {
+                ret[i] = i;
+            }
+            return ret;
+        }
+
+        final int head = (limit + 1) / 2;
+        final int tail = limit / 2;
+        final int[] ret = new int[head + tail + 1];
+        for (int i = 0; i < head; ++i) {
+            ret[i] = i;
+        }
+        ret[head] = -1;
+        for (int i = 0; i < tail; ++i) {
+            ret[head + 1 + i] = length - tail + i;
+        }
+        return ret;
+    }
+
+    private static void pad(final StringBuilder buf, final int amount) {
+        for (int i = 0; i < amount; ++i) {
+            buf.append(' ');
         }
-        return "";
     }
 }
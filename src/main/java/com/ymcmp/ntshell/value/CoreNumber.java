@@ -17,14 +17,21 @@
 package com.ymcmp.ntshell.value;
 
 import com.ymcmp.ntshell.NtValue;
+import com.ymcmp.ntshell.rte.TaskScope;
 
 import java.math.BigDecimal;
 import java.math.BigInteger;
+import java.math.MathContext;
 import java.math.RoundingMode;
 
 import java.util.Objects;
 
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+
 import org.apfloat.Apfloat;
+import org.apfloat.ApfloatMath;
 
 /**
  * Numbers in NtShell in the form of rational numbers
@@ -50,8 +57,52 @@ public class CoreNumber extends AbstractNtValue implements Comparable<CoreNumber
     public static final CoreNumber POS_INF = new CoreNumber(1L, 0L);
     public static final CoreNumber NEG_INF = new CoreNumber(-1L, 0L);
 
-    private BigInteger numerator;
-    private BigInteger denominator;
+    /**
+     * Inexact results (decimal conversions, roots, transcendental functions)
+     * are accurate to this many digits after the decimal point. Evaluations
+     * running in a {@link TaskScope} use the precision of the scope instead.
+     */
+    private static volatile int precision = 12;
+
+    private static final ConcurrentMap<Integer, CoreNumber> PI_CACHE = new ConcurrentHashMap<>();
+    private static final ConcurrentMap<Integer, CoreNumber> E_CACHE = new ConcurrentHashMap<>();
+
+    /**
+     * Doubles hold at least this many significant decimal digits
+     */
+    public static final int DOUBLE_DIGITS = 15;
+
+    /**
+     * Enough digits for the decimal rounding to (almost) never affect the
+     * rounding to double
+     */
+    private static final MathContext DOUBLE_CONTEXT = new MathContext(20);
+
+    /**
+     * Always in canonical form: the fraction is reduced and the numerator
+     * takes the sign
+     */
+    private final BigInteger numerator;
+    private final BigInteger denominator;
+
+    /**
+     * Projections are cached since the number is converted over and over
+     * again when it is used as an index or printed. Numbers are never
+     * modified once created, so the caches never go stale.
+     */
+    private volatile DecimalCache decimalCache;
+    private volatile Double doubleCache;
+
+    private static final class DecimalCache {
+
+        final int digits;
+        final BigDecimal value;
+
+        DecimalCache(final int digits, final BigDecimal value) {
+            this.digits = digits;
+            this.value = value;
+        }
+    }
 
     private CoreNumber(final long val) {
         this(BigInteger.valueOf(val), BigInteger.ONE);
@@ -72,7 +123,6 @@ public class CoreNumber extends AbstractNtValue implements Comparable<CoreNumber
 
     @Override
     public String toString() {
-        simplify();
         if (isNaN()) {
             return "Undefined";
         }
@@ -88,11 +138,111 @@ public class CoreNumber extends AbstractNtValue implements Comparable<CoreNumber
     }
 
     public Apfloat toApfloat() {
-        return new Apfloat(toDecimal());
+        final BigDecimal dec = toDecimal();
+        // Integer digits plus the digits after the decimal point
+        return new Apfloat(dec, Math.max(1, dec.precision() - dec.scale()) + getPrecision());
     }
 
     public BigDecimal toDecimal() {
-        return toDecimal(12);
+        return toDecimal(getPrecision());
+    }
+
+    /**
+     * Converts the number into the closest double. Numbers that fit in the
+     * significand of a double are divided directly, everything else goes
+     * through {@link BigDecimal}.
+     *
+     * @return The double value
+     */
+    public double toDouble() {
+        final Double cached = doubleCache;
+        if (cached != null) {
+            return cached;
+        }
+        final double ret = computeDouble();
+        doubleCache = ret;
+        return ret;
+    }
+
+    private double computeDouble() {
+        if (denominator.signum() == 0) {
+            if (isNaN()) {
+                return Double.NaN;
+            }
+            // x/0 takes the sign of x
+            return numerator.signum() < 0 ? Double.NEGATIVE_INFINITY : Double.POSITIVE_INFINITY;
+        }
+        if (numerator.bitLength() <= 53 && denominator.bitLength() <= 53) {
+            // Both are exact as doubles, so the division is correctly rounded
+            return numerator.doubleValue() / denominator.doubleValue();
+        }
+        return new BigDecimal(numerator)
+                .divide(new BigDecimal(denominator), DOUBLE_CONTEXT)
+                .doubleValue();
+    }
+
+    /**
+     *
+     * @return The amount of digits after the decimal point inexact results
+     * are accurate to, taken from the {@link TaskScope} of the current thread
+     * if there is one
+     */
+    public static int getPrecision() {
+        final TaskScope scope = TaskScope.current();
+        return scope == null ? precision : scope.getPrecision();
+    }
+
+    /**
+     * Changes the precision of inexact results. Inside a {@link TaskScope}
+     * only the scope is affected, otherwise this changes the process-wide
+     * precision.
+     *
+     * @param digits The amount of digits after the decimal point
+     * @throws IllegalArgumentException if digits is less than one
+     */
+    public static void setPrecision(final int digits) {
+        if (digits < 1) {
+            throw new IllegalArgumentException("Precision must be at least one digit: " + digits);
+        }
+        final TaskScope scope = TaskScope.current();
+        if (scope == null) {
+            precision = digits;
+        } else {
+            scope.setPrecision(digits);
+        }
+    }
+
+    /**
+     * Tests if the current precision is low enough for doubles, assuming the
+     * numbers involved are less than one in magnitude
+     *
+     * @return true if doubles are precise enough
+     */
+    public static boolean isDoublePrecision() {
+        return getPrecision() <= DOUBLE_DIGITS;
+    }
+
+    /**
+     * Tests if doubles are precise enough for numbers of these magnitudes.
+     * The significant digits of a double have to cover the digits before the
+     * decimal point as well as the precision after it, so the larger the
+     * numbers, the fewer digits are left for the precision. Functions without
+     * an exact result pass their argument and their result computed with
+     * {@link StrictMath}, and fall back to Apfloat if this is false.
+     * Infinities and NaN are not checked.
+     *
+     * @param values The numbers involved
+     * @return true if doubles are precise enough
+     */
+    public static boolean isDoublePrecision(final double... values) {
+        int whole = 0;
+        for (final double value : values) {
+            final double abs = Math.abs(value);
+            if (abs >= 1 && abs < Double.POSITIVE_INFINITY) {
+                whole = Math.max(whole, (int) Math.log10(abs) + 1);
+            }
+        }
+        return getPrecision() + whole <= DOUBLE_DIGITS;
     }
 
     public BigDecimal toDecimal(final int digits) {
@@ -100,31 +250,97 @@ public class CoreNumber extends AbstractNtValue implements Comparable<CoreNumber
     }
 
     public BigDecimal toDecimal(final int digits, final RoundingMode mode) {
-        return new BigDecimal(numerator)
-                .divide(new BigDecimal(denominator), digits, mode);
-    }
-
-    public void simplify() {
-        final BigInteger gcd = numerator.gcd(denominator);
-        if (gcd.compareTo(BigInteger.ZERO) > 0) {
-            numerator = numerator.divide(gcd);
-            denominator = denominator.divide(gcd);
-        }
-
-        // canonical form is that numerator takes the sign, denominator is
-        // always positive.
-        if (denominator.signum() < 0) {
-            numerator = numerator.negate();
-            denominator = denominator.negate();
-        }
-    }
-
+        if (mode != RoundingMode.HALF_UP) {
+            return new BigDecimal(numerator)
+                    .divide(new BigDecimal(denominator), digits, mode);
+        }
+
+        final DecimalCache cached = decimalCache;
+        if (cached != null && cached.digits == digits) {
+            return cached.value;
+        }
+        final BigDecimal ret = denominator.equals(BigInteger.ONE)
+                ? new BigDecimal(numerator).setScale(digits)
+                : new BigDecimal(numerator).divide(new BigDecimal(denominator), digits, mode);
+        decimalCache = new DecimalCache(digits, ret);
+        return ret;
+    }
+
+    /**
+     * Converts the number into an int, truncating the fractional part.
+     * Integers are converted directly without going through
+     * {@link BigDecimal}.
+     *
+     * @return The int value
+     */
+    public int toInt() {
+        if (denominator.equals(BigInteger.ONE)) {
+            return numerator.intValue();
+        }
+        return toDecimal().intValue();
+    }
+
+    /**
+     * Converts the number into an int if it is an integer that fits in one.
+     *
+     * @return The int value
+     * @throws ArithmeticException if the number is not an integer or is out
+     * of range
+     */
+    public int toIntExact() {
+        if (!isInteger()) {
+            throw new ArithmeticException("Not an integer: " + this);
+        }
+        return numerator.intValueExact();
+    }
+
+    /**
+     *
+     * @return true if the denominator is one
+     */
+    public boolean isInteger() {
+        return denominator.equals(BigInteger.ONE);
+    }
+
+    /**
+     *
+     * @return The numerator of the number in simplest form
+     */
+    public BigInteger getNumerator() {
+        return numerator;
+    }
+
+    /**
+     *
+     * @return The denominator of the number in simplest form, which is zero
+     * for infinities and NaN
+     */
+    public BigInteger getDenominator() {
+        return denominator;
+    }
+
+    /**
+     *
+     * @return Pi accurate to the current precision
+     */
     public static CoreNumber getPi() {
-        return PI;
+        final int digits = getPrecision();
+        if (isDoublePrecision(Math.PI)) {
+            return PI;
+        }
+        return PI_CACHE.computeIfAbsent(digits, k -> from(ApfloatMath.pi(k + 2L)));
     }
 
+    /**
+     *
+     * @return E accurate to the current precision
+     */
     public static CoreNumber getE() {
-        return E;
+        final int digits = getPrecision();
+        if (isDoublePrecision(Math.E)) {
+            return E;
+        }
+        return E_CACHE.computeIfAbsent(digits, k -> from(ApfloatMath.exp(new Apfloat(1L, k + 2L))));
     }
 
     public static CoreNumber from(Apfloat f) {
@@ -136,37 +352,21 @@ public class CoreNumber extends AbstractNtValue implements Comparable<CoreNumber
     }
 
     public static CoreNumber from(long val) {
-        if (val == 0L) {
-            return ZERO;
+        if (val >= SmallValues.LOW && val <= SmallValues.HIGH) {
+            return SmallValues.integer((int) val);
         }
-        if (val == 1L) {
-            return ONE;
-        }
-        if (val == 2L) {
-            return TWO;
-        }
-        if (val == 3L) {
-            return THREE;
-        }
-        if (val == 10L) {
-            return TEN;
-        }
-        final CoreNumber n = new CoreNumber(val);
-        n.simplify();
-        return n;
+        return new CoreNumber(val);
     }
 
     public static CoreNumber from(long numer, long denom) {
         if (denom == 1L) {
             return from(numer);
         }
+        return valueOf(BigInteger.valueOf(numer), BigInteger.valueOf(denom));
+    }
 
-        if (numer == 1L && denom == 2L) {
-            return HALF;
-        }
-        final CoreNumber n = new CoreNumber(numer, denom);
-        n.simplify();
-        return n;
+    public static CoreNumber from(final BigInteger numer, final BigInteger denom) {
+        return valueOf(numer, denom);
     }
 
     public static CoreNumber from(double d) {
@@ -182,15 +382,144 @@ public class CoreNumber extends AbstractNtValue implements Comparable<CoreNumber
         return from(Double.toString(d));
     }
 
+    /**
+     * Converts a double into a number without going through its decimal
+     * representation. Unlike {@link #from(double)}, the result is the exact
+     * binary value of the double ({@code 0.1} is not {@code 1/10}), which is
+     * the right choice for results that are approximations anyway.
+     *
+     * @param d The double
+     * @return The number
+     */
+    public static CoreNumber exact(double d) {
+        if (Double.isNaN(d) || Double.isInfinite(d)) {
+            return from(d);
+        }
+        if (d == 0.0) {
+            return ZERO;
+        }
+
+        // d = significand * 2^exponent
+        final int exponent = Math.getExponent(d) - 52;
+        long significand = (long) Math.scalb(d, -exponent);
+        int shift = exponent;
+        final int zeros = Long.numberOfTrailingZeros(significand);
+        significand >>= zeros;
+        shift += zeros;
+
+        if (shift >= 0) {
+            return valueOf(BigInteger.valueOf(significand).shiftLeft(shift), BigInteger.ONE);
+        }
+        return valueOf(BigInteger.valueOf(significand), BigInteger.ONE.shiftLeft(-shift));
+    }
+
     public static CoreNumber from(String str) {
         final BigDecimal dec = new BigDecimal(str);
         return from(dec);
     }
 
     public static CoreNumber from(final BigDecimal dec) {
-        final CoreNumber n = new CoreNumber(dec.unscaledValue(), BigInteger.TEN.pow(dec.scale()));
-        n.simplify();
-        return n;
+        final int scale = dec.scale();
+        if (scale < 0) {
+            // 1E+3 is 1 * 10^3
+            return valueOf(dec.unscaledValue().multiply(BigInteger.TEN.pow(-scale)), BigInteger.ONE);
+        }
+        return valueOf(dec.unscaledValue(), BigInteger.TEN.pow(scale));
+    }
+
+    /**
+     * Returns the canonical form of a rational number. Small integers and
+     * common fractions are shared instances, which is why numbers must never
+     * be modified after they are created.
+     *
+     * @param numer The numerator
+     * @param denom The denominator
+     * @return The number
+     */
+    private static CoreNumber valueOf(BigInteger numer, BigInteger denom) {
+        final BigInteger gcd = numer.gcd(denom);
+        if (gcd.compareTo(BigInteger.ONE) > 0) {
+            numer = numer.divide(gcd);
+            denom = denom.divide(gcd);
+        }
+        if (denom.signum() < 0) {
+            numer = numer.negate();
+            denom = denom.negate();
+        }
+
+        if (numer.bitLength() < 32 && denom.bitLength() < 32) {
+            final int n = numer.intValue();
+            final int d = denom.intValue();
+            final CoreNumber cached;
+            if (d == 1) {
+                cached = n >= SmallValues.LOW && n <= SmallValues.HIGH ? SmallValues.integer(n) : null;
+            } else if (d == 0) {
+                cached = n == 0 ? NAN : n < 0 ? NEG_INF : POS_INF;
+            } else {
+                cached = SmallValues.fraction(n, d);
+            }
+            if (cached != null) {
+                return cached;
+            }
+        }
+        return new CoreNumber(numer, denom);
+    }
+
+    /**
+     * Shared instances of small integers and common fractions. Integers are
+     * created the first time they are requested. The range can be changed
+     * with the {@code ntshell.number.cache.low} and
+     * {@code ntshell.number.cache.high} system properties, it always
+     * includes 0 to 10 and by default covers every char.
+     */
+    private static final class SmallValues {
+
+        static final int LOW = Math.min(0, Integer.getInteger("ntshell.number.cache.low", -1024));
+        static final int HIGH = Math.max(10, Integer.getInteger("ntshell.number.cache.high", 65535));
+
+        /**
+         * Fractions with denominators up to this are preallocated
+         */
+        static final int MAX_DENOM = 16;
+
+        private static final AtomicReferenceArray<CoreNumber> INTEGERS = new AtomicReferenceArray<>(HIGH - LOW + 1);
+
+        // FRACTIONS[d][n + d] is n/d where |n| < d
+        private static final CoreNumber[][] FRACTIONS = new CoreNumber[MAX_DENOM + 1][];
+
+        static {
+            for (final CoreNumber n : new CoreNumber[]{ZERO, ONE, TWO, THREE, TEN}) {
+                INTEGERS.set(n.numerator.intValue() - LOW, n);
+            }
+
+            for (int d = 2; d <= MAX_DENOM; ++d) {
+                FRACTIONS[d] = new CoreNumber[2 * d];
+                for (int n = 1 - d; n < d; ++n) {
+                    if (n != 0 && BigInteger.valueOf(n).gcd(BigInteger.valueOf(d)).equals(BigInteger.ONE)) {
+                        FRACTIONS[d][n + d] = new CoreNumber(n, d);
+                    }
+                }
+            }
+            FRACTIONS[2][1 + 2] = HALF;
+            FRACTIONS[3][1 + 3] = THIRD;
+        }
+
+        static CoreNumber integer(final int val) {
+            final int idx = val - LOW;
+            final CoreNumber cached = INTEGERS.get(idx);
+            if (cached != null) {
+                return cached;
+            }
+            final CoreNumber created = new CoreNumber(val);
+            return INTEGERS.compareAndSet(idx, null, created) ? created : INTEGERS.get(idx);
+        }
+
+        static CoreNumber fraction(final int numer, final int denom) {
+            if (denom > MAX_DENOM || numer <= -denom || numer >= denom) {
+                return null;
+            }
+            return FRACTIONS[denom][numer + denom];
+        }
     }
 
     @Override
@@ -223,17 +552,12 @@ public class CoreNumber extends AbstractNtValue implements Comparable<CoreNumber
 
     @Override
     public CoreNumber applyNegative() {
-        final CoreNumber n = new CoreNumber(numerator.negate(), denominator);
-        n.simplify();
-        return n;
+        return valueOf(numerator.negate(), denominator);
     }
 
     @Override
     public CoreNumber applyPercentage() {
-        final CoreNumber n = new CoreNumber(numerator,
-                                            denominator.multiply(BigInteger.TEN).multiply(BigInteger.TEN));
-        n.simplify();
-        return n;
+        return valueOf(numerator, denominator.multiply(BigInteger.TEN).multiply(BigInteger.TEN));
     }
 
     @Override
@@ -248,22 +572,21 @@ public class CoreNumber extends AbstractNtValue implements Comparable<CoreNumber
     public NtValue applyAdd(NtValue rhs) {
         if (rhs instanceof CoreNumber) {
             final CoreNumber rhsn = (CoreNumber) rhs;
-            final CoreNumber n;
             if (denominator.equals(rhsn.denominator)) {
                 // 2/5 + 1/5 => (1+2)/5
-                n = new CoreNumber(numerator.add(rhsn.numerator), denominator);
-            } else {
-                // 1/2 + 2/3 => (1*3 + 2*2)/(2*3)
-                n = new CoreNumber(numerator.multiply(rhsn.denominator).add(rhsn.numerator.multiply(denominator)),
-                                   denominator.multiply(rhsn.denominator));
+                return valueOf(numerator.add(rhsn.numerator), denominator);
             }
-            n.simplify();
-            return n;
+            // 1/2 + 2/3 => (1*3 + 2*2)/(2*3)
+            return valueOf(numerator.multiply(rhsn.denominator).add(rhsn.numerator.multiply(denominator)),
+                           denominator.multiply(rhsn.denominator));
         }
         if (rhs instanceof CoreMatrix) {
             // Addition is commutative
             return rhs.applyAdd(this);
         }
+        if (rhs instanceof CoreSequence) {
+            return ((CoreSequence) rhs).applyRAdd(this);
+        }
         return super.applyAdd(rhs);
     }
 
@@ -271,21 +594,20 @@ public class CoreNumber extends AbstractNtValue implements Comparable<CoreNumber
     public NtValue applySub(NtValue rhs) {
         if (rhs instanceof CoreNumber) {
             final CoreNumber rhsn = (CoreNumber) rhs;
-            final CoreNumber n;
             if (denominator.equals(rhsn.denominator)) {
                 // 2/5 - 1/5 => (1-2)/5
-                n = new CoreNumber(numerator.subtract(rhsn.numerator), denominator);
-            } else {
-                // 1/2 - 2/3 => (1*3 - 2*2)/(2*3)
-                n = new CoreNumber(numerator.multiply(rhsn.denominator).subtract(rhsn.numerator.multiply(denominator)),
-                                   denominator.multiply(rhsn.denominator));
+                return valueOf(numerator.subtract(rhsn.numerator), denominator);
             }
-            n.simplify();
-            return n;
+            // 1/2 - 2/3 => (1*3 - 2*2)/(2*3)
+            return valueOf(numerator.multiply(rhsn.denominator).subtract(rhsn.numerator.multiply(denominator)),
+                           denominator.multiply(rhsn.denominator));
         }
         if (rhs instanceof CoreMatrix) {
             return ((CoreMatrix) rhs).applyRSub(this);
         }
+        if (rhs instanceof CoreSequence) {
+            return ((CoreSequence) rhs).applyRSub(this);
+        }
         return super.applySub(rhs);
     }
 
@@ -293,15 +615,16 @@ public class CoreNumber extends AbstractNtValue implements Comparable<CoreNumber
     public NtValue applyMul(NtValue rhs) {
         if (rhs instanceof CoreNumber) {
             final CoreNumber rhsn = (CoreNumber) rhs;
-            final CoreNumber n = new CoreNumber(numerator.multiply(rhsn.numerator),
-                                                denominator.multiply(rhsn.denominator));
-            n.simplify();
-            return n;
+            return valueOf(numerator.multiply(rhsn.numerator),
+                           denominator.multiply(rhsn.denominator));
         }
         if (rhs instanceof CoreMatrix) {
             // Multiplication is commutative
             return rhs.applyMul(this);
         }
+        if (rhs instanceof CoreSequence) {
+            return ((CoreSequence) rhs).applyRMul(this);
+        }
         return super.applyMul(rhs);
     }
 
@@ -309,14 +632,15 @@ public class CoreNumber extends AbstractNtValue implements Comparable<CoreNumber
     public NtValue applyDiv(NtValue rhs) {
         if (rhs instanceof CoreNumber) {
             final CoreNumber rhsn = (CoreNumber) rhs;
-            final CoreNumber n = new CoreNumber(numerator.multiply(rhsn.denominator),
-                                                denominator.multiply(rhsn.numerator));
-            n.simplify();
-            return n;
+            return valueOf(numerator.multiply(rhsn.denominator),
+                           denominator.multiply(rhsn.numerator));
         }
         if (rhs instanceof CoreMatrix) {
             return ((CoreMatrix) rhs).applyRDiv(this);
         }
+        if (rhs instanceof CoreSequence) {
+            return ((CoreSequence) rhs).applyRDiv(this);
+        }
         return super.applyDiv(rhs);
     }
 
@@ -326,13 +650,14 @@ public class CoreNumber extends AbstractNtValue implements Comparable<CoreNumber
             // a mod b = a - b*floor(a/b)
             final CoreNumber rhsn = (CoreNumber) rhs;
             final CoreNumber beFloor = (CoreNumber) this.applyDiv(rhsn);
-            final CoreNumber n = (CoreNumber) applySub(rhsn.applyMul(new CoreNumber(beFloor.toDecimal(1, RoundingMode.FLOOR).toBigInteger())));
-            n.simplify();
-            return n;
+            return applySub(rhsn.applyMul(valueOf(beFloor.toDecimal(1, RoundingMode.FLOOR).toBigInteger(), BigInteger.ONE)));
         }
         if (rhs instanceof CoreMatrix) {
             return ((CoreMatrix) rhs).applyRMod(this);
         }
+        if (rhs instanceof CoreSequence) {
+            return ((CoreSequence) rhs).applyRMod(this);
+        }
         return super.applyMod(rhs);
     }
 
@@ -341,30 +666,42 @@ public class CoreNumber extends AbstractNtValue implements Comparable<CoreNumber
         if (rhs instanceof CoreNumber) {
             // (1/2)^(2/3) => 1^(2/3)/2^(2/3)
             final CoreNumber rhsn = (CoreNumber) rhs;
-            final CoreNumber n = new CoreNumber(numerator, denominator);
-            if (rhsn.isNegative()) {
-                n.inverse();
-            }
+            final CoreNumber n = rhsn.isNegative() ? inverse() : this;
             try {
                 // only take absolute value of numerator since in canonical form,
                 // denominator is always positive, and numerator dictates the sign
-                n.numerator = pow(n.numerator, rhsn.numerator.abs());
-                n.denominator = pow(n.denominator, rhsn.numerator.abs());
-                n.simplify();
-
+                final BigInteger exp = rhsn.numerator.abs();
                 final int cmp = rhsn.denominator.compareTo(BigInteger.ONE);
                 if (cmp == 0) {
-                    return n;
+                    return valueOf(pow(n.numerator, exp), pow(n.denominator, exp));
                 }
-                return CoreNumber.from(root(rhsn.denominator.intValueExact(), n.toDecimal()));
+
+                final int degree = rhsn.denominator.intValueExact();
+                if (n.numerator.signum() < 0 && (degree & 1) == 0) {
+                    // even roots of negative numbers are not real
+                    return NAN;
+                }
+
+                // 8^(2/3) => (8^(1/3))^2 if 8 has an exact cube root, that
+                // way the result stays exact and the numbers stay small
+                final BigInteger rootNumer = exactRoot(n.numerator, degree);
+                final BigInteger rootDenom = exactRoot(n.denominator, degree);
+                if (rootNumer != null && rootDenom != null) {
+                    return valueOf(pow(rootNumer, exp), pow(rootDenom, exp));
+                }
+
+                return CoreNumber.from(root(degree, pow(n.numerator, exp), pow(n.denominator, exp)));
             } catch (IllegalArgumentException | ArithmeticException ex) {
-                // Most likely caused by having a negative base when rooting
+                // Most likely caused by having an exponent that is too large
                 return NAN;
             }
         }
         if (rhs instanceof CoreMatrix) {
             return ((CoreMatrix) rhs).applyRPow(this);
         }
+        if (rhs instanceof CoreSequence) {
+            return ((CoreSequence) rhs).applyRPow(this);
+        }
         return super.applyPow(rhs);
     }
 
@@ -394,42 +731,109 @@ public class CoreNumber extends AbstractNtValue implements Comparable<CoreNumber
         return x.multiply(y);
     }
 
-    private static BigDecimal root(final int exp, final BigDecimal base) {
-        if (base.signum() == 0) {
-            return BigDecimal.ZERO;
+    /**
+     * Calculates the nth root of a rational number, truncated to one digit
+     * more than the current precision. Odd roots of negative numbers are
+     * negative.
+     *
+     * @param exp The degree of the root
+     * @param numer The numerator
+     * @param denom The denominator, must be positive
+     * @return The root
+     */
+    private static BigDecimal root(final int exp, final BigInteger numer, final BigInteger denom) {
+        // root(a/b) * 10^s = root(a * 10^(s*exp) / b)
+        final int scale = getPrecision() + 1;
+        final BigInteger scaled = numer.abs()
+                .multiply(BigInteger.TEN.pow(scale * exp))
+                .divide(denom);
+        final BigInteger ret = integerRoot(scaled, exp);
+        return new BigDecimal(numer.signum() < 0 ? ret.negate() : ret, scale);
+    }
+
+    /**
+     * Calculates the nth root of an integer if it is an integer. Odd roots of
+     * negative numbers are negative.
+     *
+     * @param n The integer
+     * @param exp The degree of the root
+     * @return The root, or {@code null} if the root is not an integer
+     */
+    private static BigInteger exactRoot(final BigInteger n, final int exp) {
+        if (n.signum() == 0 || n.equals(BigInteger.ONE)) {
+            return n;
         }
-        // If exp is even, it is impossible (real number range)
-        // If exp is odd, calculate as if base was positive and add negative sign
-        if (base.signum() < 0 && exp % 2 == 0) {
-            throw new IllegalArgumentException("nth root can only be calculated for positive numbers");
+        final BigInteger abs = n.abs();
+        // a perfect nth power has at least n times the trailing zeros of its
+        // root, this catches most non-powers before rooting
+        if (abs.getLowestSetBit() % exp != 0) {
+            return null;
+        }
+        final BigInteger ret = integerRoot(abs, exp);
+        if (!ret.pow(exp).equals(abs)) {
+            return null;
+        }
+        return n.signum() < 0 ? ret.negate() : ret;
+    }
+
+    /**
+     * Calculates the floor of the nth root of a non-negative integer with
+     * Newton's method. The starting value comes from doubles, so only a few
+     * iterations are needed.
+     *
+     * @param n The integer
+     * @param exp The degree of the root
+     * @return The largest integer x where x^exp is at most n
+     */
+    private static BigInteger integerRoot(final BigInteger n, final int exp) {
+        if (n.signum() == 0 || exp == 1) {
+            return n;
         }
-        final BigDecimal p = BigDecimal.valueOf(.1).movePointLeft(12);
-        BigDecimal xPrev = base;
-        BigDecimal x = base.divide(new BigDecimal(exp), 12, RoundingMode.HALF_DOWN);  // starting "guessed" value...
-        while (x.subtract(xPrev).abs().compareTo(p) > 0) {
-            xPrev = x;
-            x = BigDecimal.valueOf(exp - 1.0)
-                    .multiply(x)
-                    .add(base.divide(x.pow(exp - 1), 12, RoundingMode.HALF_DOWN))
-                    .divide(new BigDecimal(exp), 12, RoundingMode.HALF_DOWN);
+
+        // Scale the number into the range of doubles if it is too large,
+        // dropping a multiple of exp bits so the root can be scaled back
+        final int bits = n.bitLength();
+        final int shift = bits > 1000 ? (bits - 1000 + exp - 1) / exp : 0;
+        final double estimate = Math.pow(n.shiftRight(shift * exp).doubleValue(), 1.0 / exp);
+
+        // Newton's method converges from above, so overshoot the estimate
+        BigInteger x = new BigDecimal(estimate * (1 + 1e-10))
+                .toBigInteger()
+                .add(BigInteger.ONE)
+                .shiftLeft(shift);
+        if (x.pow(exp).compareTo(n) <= 0) {
+            // The estimate was too rough, fall back to a power of two
+            x = BigInteger.ONE.shiftLeft(bits / exp + 1);
+        }
+
+        final BigInteger degree = BigInteger.valueOf(exp);
+        final BigInteger lower = BigInteger.valueOf(exp - 1L);
+        while (true) {
+            // x' = ((exp - 1) * x + n / x^(exp - 1)) / exp
+            final BigInteger y = lower.multiply(x)
+                    .add(n.divide(x.pow(exp - 1)))
+                    .divide(degree);
+            if (y.compareTo(x) >= 0) {
+                return x;
+            }
+            x = y;
         }
-        return x;
     }
 
-    public void inverse() {
-        final BigInteger tmp = denominator;
-        denominator = numerator;
-        numerator = tmp;
+    /**
+     *
+     * @return The reciprocal of the number
+     */
+    public CoreNumber inverse() {
+        return valueOf(denominator, numerator);
     }
 
     @Override
     public boolean isTruthy() {
-        simplify();
         return numerator.signum() != 0;
     }
 
     public boolean isNegative() {
-        simplify();
         return numerator.signum() < 0;
     }
 
@@ -454,14 +858,10 @@ public class CoreNumber extends AbstractNtValue implements Comparable<CoreNumber
     }
 
     public CoreNumber addOne() {
-        final CoreNumber n = new CoreNumber(numerator.add(denominator), denominator);
-        n.simplify();
-        return n;
+        return valueOf(numerator.add(denominator), denominator);
     }
 
     public CoreNumber abs() {
-        final CoreNumber n = new CoreNumber(numerator.abs(), denominator.abs());
-        n.simplify();
-        return n;
+        return valueOf(numerator.abs(), denominator.abs());
     }
 }
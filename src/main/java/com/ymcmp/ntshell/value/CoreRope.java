@@ -0,0 +1,607 @@
+/**
+ *     Copyright (C) 2017  Paul Teng
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program. If not, see <http://www.gnu.org/licenses/>.
+ */
+package com.ymcmp.ntshell.value;
+
+import com.ymcmp.ntshell.Frontend;
+import com.ymcmp.ntshell.NtValue;
+
+import java.util.ArrayDeque;
+import java.util.function.Consumer;
+
+/**
+ * Text stored as a balanced tree of string pieces. Unlike atoms, ropes are
+ * not interned and concatenating or slicing them does not copy the text,
+ * which makes them suitable for building large strings piece by piece. Like
+ * atoms, a rope is a one dimensional {@link CoreMatrix} of character codes.
+ *
+ * @author YTENG
+ */
+public final class CoreRope extends CoreMatrix {
+
+    /**
+     * Pieces shorter than this are copied into one piece when concatenated.
+     * Keeps ropes built by appending many short pieces from degenerating into
+     * a tree of single characters.
+     */
+    private static final int SHORT_PIECE = 256;
+
+    private static final CoreRope EMPTY = new CoreRope(new Leaf(""));
+
+    private abstract static class Node {
+
+        final int length;
+        final int height;
+
+        Node(final int length, final int height) {
+            this.length = length;
+            this.height = height;
+        }
+
+        abstract char charAt(int idx);
+
+        abstract Node slice(int start, int end);
+
+        abstract void forEachPiece(Consumer<String> action);
+
+        abstract void appendTo(StringBuilder sb);
+    }
+
+    /**
+     * A range of a string. Slicing a leaf shares the string instead of
+     * copying the range out of it.
+     */
+    private static final class Leaf extends Node {
+
+        final String text;
+        final int offset;
+
+        Leaf(final String text) {
+            this(text, 0, text.length());
+        }
+
+        Leaf(final String text, final int offset, final int length) {
+            super(length, 0);
+            this.text = text;
+            this.offset = offset;
+        }
+
+        /**
+         * @return The text of the leaf, only copied if the leaf is a slice
+         */
+        String piece() {
+            return offset == 0 && length == text.length() ? text : text.substring(offset, offset + length);
+        }
+
+        @Override
+        char charAt(final int idx) {
+            return text.charAt(offset + idx);
+        }
+
+        @Override
+        Node slice(final int start, final int end) {
+            if (start == 0 && end == length) {
+                return this;
+            }
+            return new Leaf(text, offset + start, end - start);
+        }
+
+        @Override
+        void forEachPiece(final Consumer<String> action) {
+            action.accept(piece());
+        }
+
+        @Override
+        void appendTo(final StringBuilder sb) {
+            sb.append(text, offset, offset + length);
+        }
+    }
+
+    private static final class Concat extends Node {
+
+        final Node left;
+        final Node right;
+
+        Concat(final Node left, final Node right) {
+            super(left.length + right.length, Math.max(left.height, right.height) + 1);
+            this.left = left;
+            this.right = right;
+        }
+
+        @Override
+        char charAt(final int idx) {
+            return idx < left.length ? left.charAt(idx) : right.charAt(idx - left.length);
+        }
+
+        @Override
+        Node slice(final int start, final int end) {
+            if (start == 0 && end == length) {
+                return this;
+            }
+            if (end <= left.length) {
+                return left.slice(start, end);
+            }
+            if (start >= left.length) {
+                return right.slice(start - left.length, end - left.length);
+            }
+            return join(left.slice(start, left.length), right.slice(0, end - left.length));
+        }
+
+        @Override
+        void forEachPiece(final Consumer<String> action) {
+            left.forEachPiece(action);
+            right.forEachPiece(action);
+        }
+
+        @Override
+        void appendTo(final StringBuilder sb) {
+            left.appendTo(sb);
+            right.appendTo(sb);
+        }
+    }
+
+    private final Node root;
+
+    private volatile String text;
+
+    private CoreRope(final Node root) {
+        super();
+        this.root = root;
+    }
+
+    /**
+     *
+     * @return A rope with no text
+     */
+    public static CoreRope getEmptyRope() {
+        return EMPTY;
+    }
+
+    /**
+     * Creates a rope holding the specified text
+     *
+     * @param text The text
+     * @return The rope
+     */
+    public static CoreRope from(final CharSequence text) {
+        if (text.length() == 0) {
+            return EMPTY;
+        }
+        return new CoreRope(new Leaf(text.toString()));
+    }
+
+    /**
+     * Creates a rope holding the text of the value. Ropes are returned as is,
+     * atoms share their text with the rope and everything else is converted
+     * by {@link Object#toString()}.
+     *
+     * @param val The value
+     * @return The rope
+     */
+    public static CoreRope from(final NtValue val) {
+        if (val instanceof CoreRope) {
+            return (CoreRope) val;
+        }
+        return from(val.toString());
+    }
+
+    /**
+     *
+     * @return The length of the text
+     */
+    public int length() {
+        return root.length;
+    }
+
+    /**
+     * Appends a rope to the end of this rope. Neither rope is modified.
+     *
+     * @param other The rope being appended
+     * @return The joined rope
+     */
+    public CoreRope concat(final CoreRope other) {
+        if (other.root.length == 0) {
+            return this;
+        }
+        if (root.length == 0) {
+            return other;
+        }
+        return new CoreRope(join(root, other.root));
+    }
+
+    /**
+     * Appends text to the end of this rope. Neither rope is modified.
+     *
+     * @param other The text being appended
+     * @return The joined rope
+     */
+    public CoreRope concat(final CharSequence other) {
+        return concat(from(other));
+    }
+
+    /**
+     * Joins two trees, keeping the height of the result logarithmic to the
+     * amount of pieces (the same way AVL trees are joined).
+     *
+     * @param lhs The tree on the left
+     * @param rhs The tree on the right
+     * @return The joined tree
+     */
+    private static Node join(final Node lhs, final Node rhs) {
+        if (lhs.length == 0) {
+            return rhs;
+        }
+        if (rhs.length == 0) {
+            return lhs;
+        }
+        if (rhs instanceof Leaf && rhs.length < SHORT_PIECE) {
+            // Appending a short piece, try merging it into the rightmost piece
+            final Node merged = appendShort(lhs, (Leaf) rhs);
+            if (merged != null) {
+                return merged;
+            }
+        }
+        if (lhs.height > rhs.height + 1) {
+            return joinRight((Concat) lhs, rhs);
+        }
+        if (rhs.height > lhs.height + 1) {
+            return joinLeft(lhs, (Concat) rhs);
+        }
+        return new Concat(lhs, rhs);
+    }
+
+    /**
+     * Merges a short piece into the rightmost piece of a tree. Merging does
+     * not change the height of the tree, so it stays balanced.
+     *
+     * @param tree The tree
+     * @param piece The piece being appended
+     * @return The new tree, or {@code null} if the rightmost piece is too
+     * long to merge with
+     */
+    private static Node appendShort(final Node tree, final Leaf piece) {
+        if (tree instanceof Leaf) {
+            if (tree.length + piece.length > SHORT_PIECE) {
+                return null;
+            }
+            return new Leaf(((Leaf) tree).piece() + piece.piece());
+        }
+
+        final Concat node = (Concat) tree;
+        final Node right = appendShort(node.right, piece);
+        return right == null ? null : new Concat(node.left, right);
+    }
+
+    private static Node joinRight(final Concat lhs, final Node rhs) {
+        final Node inner = lhs.right;
+        if (inner.height <= rhs.height + 1) {
+            final Concat node = new Concat(inner, rhs);
+            if (node.height <= lhs.left.height + 1) {
+                return new Concat(lhs.left, node);
+            }
+            return rotateLeft(new Concat(lhs.left, rotateRight(node)));
+        }
+
+        final Node node = joinRight((Concat) inner, rhs);
+        final Concat ret = new Concat(lhs.left, node);
+        if (node.height <= lhs.left.height + 1) {
+            return ret;
+        }
+        return rotateLeft(ret);
+    }
+
+    private static Node joinLeft(final Node lhs, final Concat rhs) {
+        final Node inner = rhs.left;
+        if (inner.height <= lhs.height + 1) {
+            final Concat node = new Concat(lhs, inner);
+            if (node.height <= rhs.right.height + 1) {
+                return new Concat(node, rhs.right);
+            }
+            return rotateRight(new Concat(rotateLeft(node), rhs.right));
+        }
+
+        final Node node = joinLeft(lhs, (Concat) inner);
+        final Concat ret = new Concat(node, rhs.right);
+        if (node.height <= rhs.right.height + 1) {
+            return ret;
+        }
+        return rotateRight(ret);
+    }
+
+    private static Concat rotateLeft(final Concat node) {
+        final Concat right = (Concat) node.right;
+        return new Concat(new Concat(node.left, right.left), right.right);
+    }
+
+    private static Concat rotateRight(final Concat node) {
+        final Concat left = (Concat) node.left;
+        return new Concat(left.left, new Concat(left.right, node.right));
+    }
+
+    /**
+     * Returns the character at the specified position. Indexing works the
+     * same way as {@link CoreAtom#getCharAt(int)}.
+     *
+     * @param pos The position of the char
+     * @return The char (wrapped inside a {@link CoreNumber}) or
+     * {@link CoreUnit} if index is out of bounds.
+     */
+    public NtValue getCharAt(final int pos) {
+        final int loc = getLocation(pos);
+        if (loc < 0 || loc >= root.length) {
+            return CoreUnit.getInstance();
+        }
+        return CoreNumber.from(root.charAt(loc));
+    }
+
+    /**
+     * Creates a rope from a range of characters of the current rope. The
+     * current rope is not modified and the text is not copied. Indexing
+     * works the same way as {@link CoreAtom#slice(int, int)}.
+     *
+     * @param start Starting location
+     * @param end Ending location (not included in range)
+     * @return The new rope, or {@link CoreUnit} if out of bounds
+     */
+    public NtValue slice(final int start, final int end) {
+        final int from = getLocation(start);
+        final int to = getLocation(end);
+        if (from < 0 || to > root.length || from > to) {
+            return CoreUnit.getInstance();
+        }
+        return new CoreRope(root.slice(from, to));
+    }
+
+    private int getLocation(final int loc) {
+        return loc < 0 ? root.length + loc : loc;
+    }
+
+    private static int translateIndex(final int loc) {
+        return loc < 0 ? loc : loc - 1;
+    }
+
+    /**
+     * Behaves the same way as {@link CoreAtom#applyCall(NtValue[])}, except
+     * slices are ropes.
+     *
+     * @param params
+     * @return
+     */
+    @Override
+    public NtValue applyCall(final NtValue[] params) {
+        switch (params.length) {
+        case 1:
+            if (params[0] instanceof CoreNumber) {
+                final int loc = ((CoreNumber) params[0]).toInt();
+                return getCharAt(translateIndex(loc));
+            }
+            break;
+        case 2:
+            if (params[0] instanceof CoreNumber && params[1] instanceof CoreNumber) {
+                final int start = ((CoreNumber) params[0]).toInt();
+                int end = ((CoreNumber) params[1]).toInt();
+
+                if (end < 0 && ++end == 0) {
+                    end = root.length + 1;
+                }
+
+                return slice(translateIndex(start), translateIndex(end));
+            }
+            break;
+        default:
+        }
+        return CoreUnit.getInstance();
+    }
+
+    @Override
+    protected NtValue[][] materialize() {
+        final NtValue[] row = new NtValue[root.length];
+        final String str = toString();
+        for (int i = 0; i < row.length; ++i) {
+            row[i] = CoreNumber.from(str.charAt(i));
+        }
+        return new NtValue[][]{row};
+    }
+
+    @Override
+    public int getRowCount() {
+        return 1;
+    }
+
+    @Override
+    public int getColumnCount() {
+        return root.length;
+    }
+
+    @Override
+    public NtValue getCell(int row, int column) {
+        if (row != 0) {
+            throw new ArrayIndexOutOfBoundsException(row);
+        }
+        if (column < 0 || column >= root.length) {
+            throw new ArrayIndexOutOfBoundsException(column);
+        }
+        return CoreNumber.from(root.charAt(column));
+    }
+
+    /**
+     * Ropes share their pieces with each other, so they cannot be modified.
+     *
+     * @param row
+     * @param column
+     * @param val
+     * @throws UnsupportedOperationException always
+     */
+    @Override
+    public void setCell(int row, int column, final NtValue val) {
+        throw new UnsupportedOperationException("Ropes cannot be modified");
+    }
+
+    /**
+     * Converts the rope into an atom. The text is only flattened once.
+     *
+     * @return The equivalent atom
+     */
+    @Override
+    public CoreAtom toAtom() {
+        return CoreAtom.from(toString());
+    }
+
+    /**
+     * Converts the rope into its matrix equivalent. See
+     * {@link CoreAtom#toMatrix()}.
+     *
+     * @return The equivalent matrix
+     */
+    public CoreMatrix toMatrix() {
+        return new CoreMatrix(getMatrix());
+    }
+
+    @Override
+    public CoreRope flipOnX() {
+        return this;
+    }
+
+    @Override
+    public CoreRope flipOnY() {
+        return from(new StringBuilder(toString()).reverse());
+    }
+
+    /**
+     * Ropes are equal to ropes and atoms with the same text. The text is
+     * compared piece by piece, the rope is not flattened.
+     *
+     * @param obj The other object
+     * @return true if the text is the same
+     */
+    @Override
+    public boolean equals(final Object obj) {
+        if (obj == this) {
+            return true;
+        }
+        if (obj instanceof CoreRope || obj instanceof CoreAtom) {
+            final Chars other = Chars.of((CoreMatrix) obj);
+            return root.length == other.length && compareText(new Chars(root), other) == 0;
+        }
+        return super.equals(obj);
+    }
+
+    @Override
+    public int compareTo(final CoreMatrix o) {
+        if (o == this) {
+            return 0;
+        }
+        if (o instanceof CoreRope || o instanceof CoreAtom) {
+            return compareText(new Chars(root), Chars.of(o));
+        }
+        return super.compareTo(o);
+    }
+
+    /**
+     * Compares text the same way {@link String#compareTo(String)} does
+     */
+    private static int compareText(final Chars a, final Chars b) {
+        while (true) {
+            final int x = a.next();
+            final int y = b.next();
+            if (x < 0 || y < 0) {
+                return a.length - b.length;
+            }
+            if (x != y) {
+                return x - y;
+            }
+        }
+    }
+
+    /**
+     * Walks the pieces of a rope one character at a time
+     */
+    private static final class Chars {
+
+        final int length;
+        private final ArrayDeque<Node> pending = new ArrayDeque<>();
+        private String piece = "";
+        private int pos;
+        private int end;
+
+        Chars(final Node root) {
+            length = root.length;
+            pending.push(root);
+        }
+
+        static Chars of(final CoreMatrix text) {
+            return text instanceof CoreRope
+                    ? new Chars(((CoreRope) text).root)
+                    : new Chars(new Leaf(text.toString()));
+        }
+
+        /**
+         * @return The next character, -1 at the end of the text
+         */
+        int next() {
+            while (pos >= end) {
+                if (pending.isEmpty()) {
+                    return -1;
+                }
+                Node node = pending.pop();
+                while (node instanceof Concat) {
+                    pending.push(((Concat) node).right);
+                    node = ((Concat) node).left;
+                }
+                final Leaf leaf = (Leaf) node;
+                piece = leaf.text;
+                pos = leaf.offset;
+                end = leaf.offset + leaf.length;
+            }
+            return piece.charAt(pos++);
+        }
+    }
+
+    /**
+     * Passes the text of the rope piece by piece without flattening it
+     *
+     * @param out Receives the pieces in order
+     */
+    public void forEachPiece(final Consumer<String> out) {
+        root.forEachPiece(out);
+    }
+
+    /**
+     * Ropes are written piece by piece, they are never flattened or truncated.
+     *
+     * @param out The frontend being written to
+     */
+    @Override
+    public void writeTo(final Frontend out) {
+        root.forEachPiece(out::write);
+        out.writeLine();
+    }
+
+    /**
+     *
+     * @return The text of the rope
+     */
+    @Override
+    public String toString() {
+        String ret = text;
+        if (ret == null) {
+            final StringBuilder sb = new StringBuilder(root.length);
+            root.appendTo(sb);
+            text = ret = sb.toString();
+        }
+        return ret;
+    }
+}
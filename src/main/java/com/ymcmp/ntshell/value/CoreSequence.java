@@ -0,0 +1,529 @@
+/**
+ *     Copyright (C) 2017  Paul Teng
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program. If not, see <http://www.gnu.org/licenses/>.
+ */
+package com.ymcmp.ntshell.value;
+
+import com.ymcmp.ntshell.NtValue;
+import com.ymcmp.ntshell.rte.DispatchException;
+import com.ymcmp.ntshell.rte.TailCallTrigger;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.function.BinaryOperator;
+import java.util.function.UnaryOperator;
+
+/**
+ * A lazy stream of values. Nothing is evaluated until the sequence is
+ * consumed by a fold or collected into a matrix, and consumers pull one
+ * element at a time, so a pipeline like {@code take(filter(xs, p), 10)}
+ * only ever holds one element of every stage in memory.
+ *
+ * <p>
+ * A sequence is a recipe rather than a buffer: every consumer opens a new
+ * {@link Cursor}, so a sequence over a matrix or a range can be consumed
+ * more than once. Sequences wrapping generators are only as repeatable as
+ * the generator itself.
+ *
+ * @author YTENG
+ */
+public abstract class CoreSequence extends AbstractNtValue {
+
+    /**
+     * One pass over a sequence. Cursors over files or other resources
+     * release them when closed, which consumers do even if they stop before
+     * the end.
+     */
+    public abstract static class Cursor implements AutoCloseable {
+
+        /**
+         * Advances the cursor
+         *
+         * @return The next element, or null if there are none left
+         */
+        public abstract NtValue next();
+
+        @Override
+        public void close() {
+        }
+    }
+
+    /**
+     * Starts a new pass over the sequence
+     *
+     * @return The cursor
+     */
+    public abstract Cursor open();
+
+    /**
+     * Creates a sequence of the cells of a matrix in row-major order
+     *
+     * @param mat The matrix
+     * @return The sequence
+     */
+    public static CoreSequence of(final CoreMatrix mat) {
+        return new CoreSequence() {
+            @Override
+            public Cursor open() {
+                final int rows = mat.getRowCount();
+                final int columns = mat.getColumnCount();
+                return new Cursor() {
+                    private int index;
+
+                    @Override
+                    public NtValue next() {
+                        if (columns == 0 || index >= rows * columns) {
+                            return null;
+                        }
+                        final NtValue cell = mat.getCell(index / columns, index % columns);
+                        ++index;
+                        return cell;
+                    }
+                };
+            }
+        };
+    }
+
+    /**
+     * Creates a sequence of the rows of a matrix. Each row is a matrix with
+     * one row.
+     *
+     * @param mat The matrix
+     * @return The sequence
+     */
+    public static CoreSequence rowsOf(final CoreMatrix mat) {
+        return new CoreSequence() {
+            @Override
+            public Cursor open() {
+                final int rows = mat.getRowCount();
+                final int columns = mat.getColumnCount();
+                return new Cursor() {
+                    private int row;
+
+                    @Override
+                    public NtValue next() {
+                        if (row >= rows) {
+                            return null;
+                        }
+                        final NtValue[] cells = new NtValue[columns];
+                        for (int i = 0; i < columns; ++i) {
+                            cells[i] = mat.getCell(row, i);
+                        }
+                        ++row;
+                        return CoreMatrix.from(new NtValue[][]{cells});
+                    }
+                };
+            }
+        };
+    }
+
+    /**
+     * Creates a sequence of numbers. The sequence includes the end if the
+     * steps land on it.
+     *
+     * @param start The first number
+     * @param end The last number, or null for a sequence that does not end
+     * @param step The difference between two numbers
+     * @return The sequence
+     */
+    public static CoreSequence range(final CoreNumber start, final CoreNumber end, final CoreNumber step) {
+        final int direction = step.compareTo(CoreNumber.ZERO);
+        if (direction == 0 || step.isNaN()) {
+            throw new DispatchException("range", "Step must be a non-zero number");
+        }
+        return new CoreSequence() {
+            @Override
+            public Cursor open() {
+                return new Cursor() {
+                    private CoreNumber current = start;
+
+                    @Override
+                    public NtValue next() {
+                        if (end != null && current.compareTo(end) * direction > 0) {
+                            return null;
+                        }
+                        final CoreNumber ret = current;
+                        current = (CoreNumber) current.applyAdd(step);
+                        return ret;
+                    }
+                };
+            }
+        };
+    }
+
+    /**
+     * Creates a sequence out of a generator. The generator is called without
+     * parameters for every element until it returns unit.
+     *
+     * @param generator The generator
+     * @return The sequence
+     */
+    public static CoreSequence generate(final NtValue generator) {
+        return new CoreSequence() {
+            @Override
+            public Cursor open() {
+                return new Cursor() {
+                    private boolean done;
+
+                    @Override
+                    public NtValue next() {
+                        if (done) {
+                            return null;
+                        }
+                        final NtValue ret = TailCallTrigger.call(generator);
+                        if (ret instanceof CoreUnit) {
+                            done = true;
+                            return null;
+                        }
+                        return ret;
+                    }
+                };
+            }
+        };
+    }
+
+    /**
+     * Keeps the first elements of the sequence
+     *
+     * @param n The amount of elements to keep
+     * @return The new sequence
+     */
+    public CoreSequence take(final long n) {
+        return new CoreSequence() {
+            @Override
+            public Cursor open() {
+                final Cursor src = CoreSequence.this.open();
+                return new Cursor() {
+                    private long left = n;
+
+                    @Override
+                    public NtValue next() {
+                        if (left <= 0) {
+                            return null;
+                        }
+                        --left;
+                        return src.next();
+                    }
+
+                    @Override
+                    public void close() {
+                        src.close();
+                    }
+                };
+            }
+        };
+    }
+
+    /**
+     * Skips the first elements of the sequence
+     *
+     * @param n The amount of elements to skip
+     * @return The new sequence
+     */
+    public CoreSequence drop(final long n) {
+        return new CoreSequence() {
+            @Override
+            public Cursor open() {
+                final Cursor src = CoreSequence.this.open();
+                return new Cursor() {
+                    private long skip = n;
+
+                    @Override
+                    public NtValue next() {
+                        for (; skip > 0; --skip) {
+                            if (src.next() == null) {
+                                skip = 0;
+                                return null;
+                            }
+                        }
+                        return src.next();
+                    }
+
+                    @Override
+                    public void close() {
+                        src.close();
+                    }
+                };
+            }
+        };
+    }
+
+    /**
+     * Keeps the elements that satisfy a predicate
+     *
+     * @param pred Must support
+     * {@link NtValue#applyCall(com.ymcmp.ntshell.NtValue[])}
+     * @return The new sequence
+     */
+    public CoreSequence filter(final NtValue pred) {
+        return new CoreSequence() {
+            @Override
+            public Cursor open() {
+                final Cursor src = CoreSequence.this.open();
+                return new Cursor() {
+                    @Override
+                    public NtValue next() {
+                        NtValue el;
+                        while ((el = src.next()) != null) {
+                            if (TailCallTrigger.call(pred, el).isTruthy()) {
+                                return el;
+                            }
+                        }
+                        return null;
+                    }
+
+                    @Override
+                    public void close() {
+                        src.close();
+                    }
+                };
+            }
+        };
+    }
+
+    /**
+     * Transforms every element of the sequence when it is pulled
+     *
+     * @param transformer Must support
+     * {@link NtValue#applyCall(com.ymcmp.ntshell.NtValue[])}
+     * @return The new sequence
+     */
+    public CoreSequence map(final NtValue transformer) {
+        return map(el -> TailCallTrigger.call(transformer, el));
+    }
+
+    private CoreSequence map(final UnaryOperator<NtValue> transformer) {
+        return new CoreSequence() {
+            @Override
+            public Cursor open() {
+                final Cursor src = CoreSequence.this.open();
+                return new Cursor() {
+                    @Override
+                    public NtValue next() {
+                        final NtValue el = src.next();
+                        return el == null ? null : transformer.apply(el);
+                    }
+
+                    @Override
+                    public void close() {
+                        src.close();
+                    }
+                };
+            }
+        };
+    }
+
+    /**
+     * Performs a left reduction on the sequence, consuming it
+     *
+     * @param accum Must support
+     * {@link NtValue#applyCall(com.ymcmp.ntshell.NtValue[])}
+     * @param initial The initial value
+     * @return Either the initial value or the accumulated value
+     */
+    public NtValue reduceLeft(final NtValue accum, final NtValue initial) {
+        NtValue ret = initial;
+        try (final Cursor cursor = open()) {
+            NtValue el;
+            while ((el = cursor.next()) != null) {
+                ret = TailCallTrigger.call(accum, ret, el);
+            }
+        }
+        return ret;
+    }
+
+    /**
+     * Gathers the elements of the sequence into a matrix. If every element
+     * is a matrix (but not an atom) and they all have the same amount of
+     * columns, they are stacked on top of each other, which puts the rows
+     * of {@link #rowsOf(CoreMatrix)} back together. Otherwise the elements
+     * become a matrix with one row.
+     *
+     * @return The matrix
+     */
+    public CoreMatrix collect() {
+        final List<NtValue> elements = new ArrayList<>();
+        try (final Cursor cursor = open()) {
+            NtValue el;
+            while ((el = cursor.next()) != null) {
+                elements.add(el);
+            }
+        }
+        if (elements.isEmpty()) {
+            return CoreMatrix.getEmptyMatrix();
+        }
+
+        int columns = -1;
+        int rows = 0;
+        for (final NtValue el : elements) {
+            if (!(el instanceof CoreMatrix) || el instanceof CoreAtom || el instanceof CoreRope
+                    || columns >= 0 && ((CoreMatrix) el).getColumnCount() != columns) {
+                return CoreMatrix.from(new NtValue[][]{elements.toArray(new NtValue[elements.size()])});
+            }
+            columns = ((CoreMatrix) el).getColumnCount();
+            rows += ((CoreMatrix) el).getRowCount();
+        }
+
+        final NtValue[][] mat = new NtValue[rows][columns];
+        int row = 0;
+        for (final NtValue el : elements) {
+            final CoreMatrix part = (CoreMatrix) el;
+            for (int i = 0; i < part.getRowCount(); ++i, ++row) {
+                for (int j = 0; j < columns; ++j) {
+                    mat[row][j] = part.getCell(i, j);
+                }
+            }
+        }
+        return CoreMatrix.from(mat);
+    }
+
+    /**
+     * Combines the elements of two sequences pairwise. The result ends with
+     * the shorter sequence.
+     */
+    private CoreSequence zip(final CoreSequence rhs, final BinaryOperator<NtValue> op) {
+        return new CoreSequence() {
+            @Override
+            public Cursor open() {
+                final Cursor left = CoreSequence.this.open();
+                final Cursor right;
+                try {
+                    right = rhs.open();
+                } catch (RuntimeException ex) {
+                    left.close();
+                    throw ex;
+                }
+                return new Cursor() {
+                    @Override
+                    public NtValue next() {
+                        final NtValue a = left.next();
+                        if (a == null) {
+                            return null;
+                        }
+                        final NtValue b = right.next();
+                        return b == null ? null : op.apply(a, b);
+                    }
+
+                    @Override
+                    public void close() {
+                        try {
+                            left.close();
+                        } finally {
+                            right.close();
+                        }
+                    }
+                };
+            }
+        };
+    }
+
+    private CoreSequence combine(final NtValue rhs, final BinaryOperator<NtValue> op) {
+        if (rhs instanceof CoreSequence) {
+            return zip((CoreSequence) rhs, op);
+        }
+        return map(el -> op.apply(el, rhs));
+    }
+
+    /**
+     * Arithmetic applies to every element when it is pulled. For example,
+     * {@code xs * 2} is the sequence of the elements of {@code xs} doubled.
+     * Two sequences are combined pairwise until the shorter one ends, so
+     * {@code xs + ys} adds the first elements, then the second elements and
+     * so on.
+     *
+     * @return The new sequence
+     */
+    @Override
+    public NtValue applyPositive() {
+        return map(NtValue::applyPositive);
+    }
+
+    @Override
+    public NtValue applyNegative() {
+        return map(NtValue::applyNegative);
+    }
+
+    @Override
+    public NtValue applyPercentage() {
+        return map(NtValue::applyPercentage);
+    }
+
+    @Override
+    public NtValue applyAdd(final NtValue rhs) {
+        return combine(rhs, NtValue::applyAdd);
+    }
+
+    @Override
+    public NtValue applySub(final NtValue rhs) {
+        return combine(rhs, NtValue::applySub);
+    }
+
+    @Override
+    public NtValue applyMul(final NtValue rhs) {
+        return combine(rhs, NtValue::applyMul);
+    }
+
+    @Override
+    public NtValue applyDiv(final NtValue rhs) {
+        return combine(rhs, NtValue::applyDiv);
+    }
+
+    @Override
+    public NtValue applyMod(final NtValue rhs) {
+        return combine(rhs, NtValue::applyMod);
+    }
+
+    @Override
+    public NtValue applyPow(final NtValue rhs) {
+        return combine(rhs, NtValue::applyPow);
+    }
+
+    /**
+     * Operations where the sequence is on the right hand side, used by values
+     * that do not know about sequences. For example, {@code 2 * xs} doubles
+     * every element and {@code 1 - xs} subtracts every element from one.
+     *
+     * @param lhs The left hand side
+     * @return The new sequence
+     */
+    public NtValue applyRAdd(final NtValue lhs) {
+        return map(el -> lhs.applyAdd(el));
+    }
+
+    public NtValue applyRSub(final NtValue lhs) {
+        return map(el -> lhs.applySub(el));
+    }
+
+    public NtValue applyRMul(final NtValue lhs) {
+        return map(el -> lhs.applyMul(el));
+    }
+
+    public NtValue applyRDiv(final NtValue lhs) {
+        return map(el -> lhs.applyDiv(el));
+    }
+
+    public NtValue applyRMod(final NtValue lhs) {
+        return map(el -> lhs.applyMod(el));
+    }
+
+    public NtValue applyRPow(final NtValue lhs) {
+        return map(el -> lhs.applyPow(el));
+    }
+
+    @Override
+    public String toString() {
+        return String.format("<sequence@%s>", Integer.toHexString(this.hashCode()));
+    }
+}
@@ -0,0 +1,109 @@
+/**
+ *     Copyright (C) 2017  Paul Teng
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program. If not, see <http://www.gnu.org/licenses/>.
+ */
+package com.ymcmp.ntshell.value;
+
+import com.ymcmp.ntshell.NtValue;
+
+import com.ymcmp.ntshell.rte.DispatchException;
+
+import java.util.function.Supplier;
+
+/**
+ * A value that is computed the first time it is needed. Calling the thunk
+ * without parameters forces it, every call after that returns the same
+ * value. Forcing it from many threads at once still computes the value
+ * only once.
+ *
+ * @author YTENG
+ */
+public final class CoreThunk extends CoreLambda {
+
+    /**
+     * The computed value, null until the thunk is forced
+     */
+    private volatile NtValue value;
+
+    /**
+     * Computes the value, dropped once forced so whatever it captured can be
+     * collected
+     */
+    private Supplier<NtValue> body;
+
+    /**
+     * Set while the body is being computed, used to catch a thunk that needs
+     * its own value
+     */
+    private boolean forcing;
+
+    public CoreThunk(final Supplier<NtValue> body) {
+        super(new Info("lazy", "() -> any", "Computes the delayed value on the first call and returns the same value afterwards"));
+        if (body == null) {
+            throw new IllegalArgumentException("Thunk body cannot be null");
+        }
+        this.body = body;
+    }
+
+    /**
+     * Tests if the value has been computed already
+     *
+     * @return true if forcing the thunk is free
+     */
+    public boolean isForced() {
+        return value != null;
+    }
+
+    /**
+     * Returns the value, computing it if this is the first time
+     *
+     * @return The value
+     */
+    public NtValue force() {
+        final NtValue fast = value;
+        if (fast != null) {
+            return fast;
+        }
+        synchronized (this) {
+            if (value == null) {
+                if (forcing) {
+                    throw new DispatchException("lazy", "Lazy value depends on itself");
+                }
+                forcing = true;
+                try {
+                    final NtValue ret = body.get();
+                    value = ret == null ? CoreUnit.getInstance() : ret;
+                    body = null;
+                } finally {
+                    forcing = false;
+                }
+            }
+            return value;
+        }
+    }
+
+    @Override
+    public NtValue applyCall(final NtValue... params) {
+        if (params.length == 0) {
+            return force();
+        }
+        throw new DispatchException("lazy", "Expected no parameters, got " + params.length + " instead");
+    }
+
+    @Override
+    public String toString() {
+        return String.format("<lazy@%s>", Integer.toHexString(this.hashCode()));
+    }
+}
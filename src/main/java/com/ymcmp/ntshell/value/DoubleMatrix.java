@@ -0,0 +1,294 @@
+/**
+ *     Copyright (C) 2017  Paul Teng
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program. If not, see <http://www.gnu.org/licenses/>.
+ */
+package com.ymcmp.ntshell.value;
+
+import com.ymcmp.ntshell.NtValue;
+
+import com.ymcmp.ntshell.rte.TailCallTrigger;
+
+import java.nio.DoubleBuffer;
+
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
+
+import java.util.function.DoubleUnaryOperator;
+
+/**
+ * A matrix of doubles, stored row by row in a {@link DoubleBuffer}. The
+ * buffer can be a memory mapped file (see {@link MatrixFile}), in which case
+ * the cells are only read from disk when they are used. Cells are converted
+ * to {@link CoreNumber}s one at a time, the full matrix is only built if an
+ * operation needs it. Double matrices cannot be modified.
+ *
+ * @author YTENG
+ */
+public final class DoubleMatrix extends CoreMatrix {
+
+    private final int rows;
+    private final int columns;
+    private final DoubleBuffer data;
+
+    private DoubleMatrix(final int rows, final int columns, final DoubleBuffer data) {
+        super();
+        this.rows = rows;
+        this.columns = columns;
+        this.data = data;
+    }
+
+    /**
+     * Wraps a buffer of cells stored row by row. The buffer must not be
+     * modified afterwards.
+     *
+     * @param rows The amount of rows
+     * @param columns The amount of columns
+     * @param data The cells, from the current position of the buffer
+     * @return The matrix
+     * @throws IllegalArgumentException If the buffer is too small
+     */
+    public static DoubleMatrix wrap(final int rows, final int columns, final DoubleBuffer data) {
+        if (rows < 0 || columns < 0) {
+            throw new IllegalArgumentException("Matrix cannot have negative size");
+        }
+        if ((long) rows * columns > data.remaining()) {
+            throw new IllegalArgumentException("Buffer has " + data.remaining() + " cells, need " + (long) rows * columns);
+        }
+        return new DoubleMatrix(rows, columns, data.slice());
+    }
+
+    /**
+     * Wraps an array of cells stored row by row. The array must not be
+     * modified afterwards.
+     *
+     * @param rows The amount of rows
+     * @param columns The amount of columns
+     * @param data The cells
+     * @return The matrix
+     * @throws IllegalArgumentException If the array is too small
+     */
+    public static DoubleMatrix wrap(final int rows, final int columns, final double[] data) {
+        return wrap(rows, columns, DoubleBuffer.wrap(data));
+    }
+
+    @Override
+    public int getRowCount() {
+        return rows;
+    }
+
+    @Override
+    public int getColumnCount() {
+        return columns;
+    }
+
+    /**
+     * Reads a cell without converting it
+     *
+     * @param row The row
+     * @param column The column
+     * @return The cell
+     */
+    public double getDouble(final int row, final int column) {
+        if (row < 0 || row >= rows) {
+            throw new ArrayIndexOutOfBoundsException(row);
+        }
+        if (column < 0 || column >= columns) {
+            throw new ArrayIndexOutOfBoundsException(column);
+        }
+        return data.get(row * columns + column);
+    }
+
+    /**
+     * Reads a cell by its position when the cells are numbered row by row
+     *
+     * @param index The position
+     * @return The cell
+     */
+    public double getDouble(final int index) {
+        return data.get(index);
+    }
+
+    /**
+     * Applies a thread-safe transformation on every cell without converting
+     * the cells to {@link CoreNumber}s. Large matrices are mapped on the
+     * fork-join pool.
+     *
+     * @param transformer The transformation, must be safe to call from
+     * multiple threads
+     * @return The new matrix
+     */
+    public DoubleMatrix mapDouble(final DoubleUnaryOperator transformer) {
+        final int size = rows * columns;
+        final double[] out = new double[size];
+        if (size < PARALLEL_THRESHOLD) {
+            for (int k = 0; k < size; ++k) {
+                out[k] = transformer.applyAsDouble(data.get(k));
+            }
+        } else {
+            ForkJoinPool.commonPool().invoke(new ParallelMap(data, out, transformer, 0, size));
+        }
+        return wrap(rows, columns, out);
+    }
+
+    /**
+     * Multiplies two matrices with doubles. This is used when one of them is
+     * a double matrix: its cells are approximations already, so the product
+     * is one too and does not need to be computed with rationals.
+     *
+     * @param lhs The left matrix
+     * @param rhs The right matrix
+     * @return The product, or null if a cell is not a number or either
+     * matrix is empty
+     * @throws com.ymcmp.ntshell.value.CoreMatrix.MatrixBoundMismatchException
+     * If the two matrices do not have a shape of {@code m*n} and {@code n*p}
+     */
+    static DoubleMatrix crossProduct(final CoreMatrix lhs, final CoreMatrix rhs) throws MatrixBoundMismatchException {
+        final int m = lhs.getRowCount();
+        final int n = lhs.getColumnCount();
+        final int p = rhs.getColumnCount();
+        if (m == 0 || rhs.getRowCount() == 0 || (long) m * p > Integer.MAX_VALUE - 8) {
+            return null;
+        }
+        if (n != rhs.getRowCount()) {
+            throw new MatrixBoundMismatchException("Matrices do not have capatible shape");
+        }
+        final double[] a = toDoubles(lhs);
+        final double[] b = a == null ? null : toDoubles(rhs);
+        if (b == null) {
+            return null;
+        }
+
+        final double[] out = new double[m * p];
+        for (int i = 0; i < m; ++i) {
+            for (int k = 0; k < n; ++k) {
+                final double aik = a[i * n + k];
+                for (int j = 0; j < p; ++j) {
+                    out[i * p + j] += aik * b[k * p + j];
+                }
+            }
+        }
+        return wrap(m, p, out);
+    }
+
+    private static double[] toDoubles(final CoreMatrix mat) {
+        final int rows = mat.getRowCount();
+        final int columns = mat.getColumnCount();
+        final double[] ret = new double[rows * columns];
+        if (mat instanceof DoubleMatrix) {
+            for (int i = 0; i < ret.length; ++i) {
+                ret[i] = ((DoubleMatrix) mat).getDouble(i);
+            }
+            return ret;
+        }
+        for (int i = 0; i < rows; ++i) {
+            for (int j = 0; j < columns; ++j) {
+                final NtValue cell = mat.getCell(i, j);
+                if (!(cell instanceof CoreNumber)) {
+                    return null;
+                }
+                ret[i * columns + j] = ((CoreNumber) cell).toDouble();
+            }
+        }
+        return ret;
+    }
+
+    @Override
+    public NtValue getCell(final int row, final int column) {
+        return CoreNumber.exact(getDouble(row, column));
+    }
+
+    /**
+     * Double matrices are backed by buffers that are possibly read-only, so
+     * they cannot be modified.
+     *
+     * @param row
+     * @param column
+     * @param val
+     * @throws UnsupportedOperationException always
+     */
+    @Override
+    public void setCell(int row, int column, final NtValue val) {
+        throw new UnsupportedOperationException("Double matrices cannot be modified");
+    }
+
+    @Override
+    protected NtValue[][] materialize() {
+        final NtValue[][] cells = new NtValue[rows][columns];
+        int k = 0;
+        for (int i = 0; i < rows; ++i) {
+            final NtValue[] row = cells[i];
+            for (int j = 0; j < columns; ++j) {
+                row[j] = CoreNumber.exact(data.get(k++));
+            }
+        }
+        return cells;
+    }
+
+    /**
+     * A left reduction that converts one cell at a time instead of building
+     * the full matrix first
+     *
+     * @param accum Must support
+     * {@link NtValue#applyCall(com.ymcmp.ntshell.NtValue[])}
+     * @param initial The initial value
+     * @return Either the initial value or the accumulated value
+     */
+    @Override
+    public NtValue reduceLeft(final NtValue accum, final NtValue initial) {
+        NtValue ret = initial;
+        final int size = rows * columns;
+        for (int k = 0; k < size; ++k) {
+            ret = TailCallTrigger.call(accum, ret, CoreNumber.exact(data.get(k)));
+        }
+        return ret;
+    }
+
+    /**
+     * Transforms the cells in {@code [start, end)}. Absolute reads do not
+     * touch the position of the buffer, so the tasks can share it.
+     */
+    private static final class ParallelMap extends RecursiveAction {
+
+        private static final long serialVersionUID = 1L;
+
+        private final DoubleBuffer src;
+        private final double[] dst;
+        private final DoubleUnaryOperator transformer;
+        private final int start;
+        private final int end;
+
+        ParallelMap(final DoubleBuffer src, final double[] dst, final DoubleUnaryOperator transformer, final int start, final int end) {
+            this.src = src;
+            this.dst = dst;
+            this.transformer = transformer;
+            this.start = start;
+            this.end = end;
+        }
+
+        @Override
+        protected void compute() {
+            if (end - start <= PARALLEL_LEAF_SIZE) {
+                for (int k = start; k < end; ++k) {
+                    dst[k] = transformer.applyAsDouble(src.get(k));
+                }
+                return;
+            }
+
+            final int mid = start + (end - start) / 2;
+            invokeAll(new ParallelMap(src, dst, transformer, start, mid),
+                    new ParallelMap(src, dst, transformer, mid, end));
+        }
+    }
+}
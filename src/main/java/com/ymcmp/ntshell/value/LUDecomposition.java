@@ -0,0 +1,411 @@
+/**
+ *     Copyright (C) 2017  Paul Teng
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program. If not, see <http://www.gnu.org/licenses/>.
+ */
+package com.ymcmp.ntshell.value;
+
+import com.ymcmp.ntshell.NtValue;
+
+import java.math.BigDecimal;
+import java.math.BigInteger;
+import java.math.RoundingMode;
+
+/**
+ * The LU decomposition of a square matrix with partial pivoting. Matrices
+ * are cached on the matrix they are calculated from (see
+ * {@link CoreMatrix#getDecomposition()}), so solving the same system with
+ * different right-hand sides only pays for the decomposition once.
+ *
+ * <p>
+ * Small matrices are decomposed exactly with fraction-free (Bareiss)
+ * elimination. Large matrices are decomposed with doubles if the precision
+ * is low enough for doubles (see {@link CoreNumber#isDoublePrecision()}).
+ * Their solutions are {@link DoubleMatrix}es and their determinants are
+ * rounded to the precision.
+ *
+ * @author YTENG
+ */
+abstract class LUDecomposition {
+
+    /**
+     * Matrices bigger than this are decomposed with doubles if the precision
+     * allows it
+     */
+    static final int EXACT_LIMIT = 64;
+
+    final int n;
+
+    /**
+     * {@code perm[i]} is the row of the original matrix that ends up as row
+     * {@code i}
+     */
+    final int[] perm;
+
+    /**
+     * true if an odd amount of rows were swapped
+     */
+    boolean negate;
+
+    boolean singular;
+
+    private volatile CoreMatrix inverse;
+
+    LUDecomposition(final int n) {
+        this.n = n;
+        this.perm = new int[n];
+        for (int i = 0; i < n; ++i) {
+            perm[i] = i;
+        }
+    }
+
+    /**
+     * Decomposes a square matrix
+     *
+     * @param mat The cells of the matrix
+     * @return The decomposition
+     * @throws IllegalArgumentException If a cell is not a number
+     */
+    static LUDecomposition of(final NtValue[][] mat) {
+        final int n = mat.length;
+        final CoreNumber[][] cells = new CoreNumber[n][];
+        boolean finite = true;
+        for (int i = 0; i < n; ++i) {
+            cells[i] = new CoreNumber[n];
+            for (int j = 0; j < n; ++j) {
+                if (!(mat[i][j] instanceof CoreNumber)) {
+                    throw new IllegalArgumentException("Matrix can only contain numbers");
+                }
+                cells[i][j] = (CoreNumber) mat[i][j];
+                finite &= cells[i][j].isFinite();
+            }
+        }
+        if (finite && (n <= EXACT_LIMIT || !CoreNumber.isDoublePrecision())) {
+            return new Exact(cells);
+        }
+        return new Floating(cells);
+    }
+
+    abstract NtValue determinant();
+
+    /**
+     * Solves {@code A * x = b} for every column of {@code b}
+     *
+     * @param b The right-hand sides, must have the same amount of rows as the
+     * decomposed matrix
+     * @return The solutions
+     * @throws ArithmeticException If the matrix is singular
+     */
+    abstract CoreMatrix solve(final NtValue[][] b);
+
+    /**
+     * Calculates the inverse of the matrix. The inverse is cached.
+     *
+     * @return The inverse
+     * @throws ArithmeticException If the matrix is singular
+     */
+    final CoreMatrix inverse() {
+        CoreMatrix ret = inverse;
+        if (ret == null) {
+            final NtValue[][] identity = new NtValue[n][n];
+            for (int i = 0; i < n; ++i) {
+                for (int j = 0; j < n; ++j) {
+                    identity[i][j] = i == j ? CoreNumber.ONE : CoreNumber.ZERO;
+                }
+            }
+            inverse = ret = solve(identity);
+        }
+        return ret;
+    }
+
+    final void checkSingular() {
+        if (singular) {
+            throw new ArithmeticException("Matrix is singular");
+        }
+    }
+
+    /**
+     * Fraction-free elimination. Each row is first scaled to integers, after
+     * that every division in the elimination is exact, so the numbers only
+     * grow as much as the minors of the matrix.
+     */
+    private static final class Exact extends LUDecomposition {
+
+        /**
+         * The upper triangle (including the diagonal) is the eliminated
+         * matrix, the lower triangle keeps the column below each pivot from
+         * when it was eliminated
+         */
+        private final BigInteger[][] lu;
+
+        /**
+         * What each row of the original matrix was multiplied by to clear
+         * the denominators
+         */
+        private final BigInteger[] scale;
+
+        Exact(final CoreNumber[][] cells) {
+            super(cells.length);
+            lu = new BigInteger[n][n];
+            scale = new BigInteger[n];
+            for (int i = 0; i < n; ++i) {
+                BigInteger lcm = BigInteger.ONE;
+                for (final CoreNumber cell : cells[i]) {
+                    final BigInteger d = cell.getDenominator();
+                    lcm = lcm.multiply(d).divide(lcm.gcd(d));
+                }
+                scale[i] = lcm;
+                for (int j = 0; j < n; ++j) {
+                    lu[i][j] = cells[i][j].getNumerator().multiply(lcm.divide(cells[i][j].getDenominator()));
+                }
+            }
+            decompose();
+        }
+
+        private void decompose() {
+            BigInteger prev = BigInteger.ONE;
+            for (int k = 0; k < n; ++k) {
+                // Any non-zero pivot works, pick the smallest to keep the
+                // numbers small
+                int pivot = -1;
+                for (int i = k; i < n; ++i) {
+                    if (lu[i][k].signum() != 0
+                            && (pivot < 0 || lu[i][k].bitLength() < lu[pivot][k].bitLength())) {
+                        pivot = i;
+                    }
+                }
+                if (pivot < 0) {
+                    singular = true;
+                    return;
+                }
+                if (pivot != k) {
+                    swapRows(k, pivot);
+                }
+
+                final BigInteger p = lu[k][k];
+                for (int i = k + 1; i < n; ++i) {
+                    final BigInteger m = lu[i][k];
+                    for (int j = k + 1; j < n; ++j) {
+                        lu[i][j] = p.multiply(lu[i][j]).subtract(m.multiply(lu[k][j])).divide(prev);
+                    }
+                }
+                prev = p;
+            }
+        }
+
+        private void swapRows(final int a, final int b) {
+            final BigInteger[] row = lu[a];
+            lu[a] = lu[b];
+            lu[b] = row;
+            final int tmp = perm[a];
+            perm[a] = perm[b];
+            perm[b] = tmp;
+            negate = !negate;
+        }
+
+        @Override
+        NtValue determinant() {
+            if (singular) {
+                return CoreNumber.ZERO;
+            }
+            BigInteger denom = BigInteger.ONE;
+            for (final BigInteger s : scale) {
+                denom = denom.multiply(s);
+            }
+            final BigInteger det = n == 0 ? BigInteger.ONE : lu[n - 1][n - 1];
+            return CoreNumber.from(negate ? det.negate() : det, denom);
+        }
+
+        @Override
+        CoreMatrix solve(final NtValue[][] b) {
+            checkSingular();
+            final int m = b.length == 0 ? 0 : b[0].length;
+            final NtValue[][] x = new NtValue[n][m];
+            final NtValue[] y = new NtValue[n];
+            for (int c = 0; c < m; ++c) {
+                // Same elimination steps as on the matrix, with the scaling
+                for (int i = 0; i < n; ++i) {
+                    y[i] = b[perm[i]][c].applyMul(CoreNumber.from(scale[perm[i]], BigInteger.ONE));
+                }
+                NtValue prev = CoreNumber.ONE;
+                for (int k = 0; k < n; ++k) {
+                    final CoreNumber p = CoreNumber.from(lu[k][k], BigInteger.ONE);
+                    for (int i = k + 1; i < n; ++i) {
+                        final CoreNumber l = CoreNumber.from(lu[i][k], BigInteger.ONE);
+                        y[i] = p.applyMul(y[i]).applySub(l.applyMul(y[k])).applyDiv(prev);
+                    }
+                    prev = p;
+                }
+
+                // Back substitution on the eliminated matrix
+                for (int i = n - 1; i >= 0; --i) {
+                    NtValue acc = y[i];
+                    for (int j = i + 1; j < n; ++j) {
+                        if (lu[i][j].signum() != 0) {
+                            acc = acc.applySub(CoreNumber.from(lu[i][j], BigInteger.ONE).applyMul(x[j][c]));
+                        }
+                    }
+                    x[i][c] = acc.applyDiv(CoreNumber.from(lu[i][i], BigInteger.ONE));
+                }
+            }
+            return new CoreMatrix(x);
+        }
+    }
+
+    /**
+     * Blocked LU decomposition on doubles. The columns are processed in
+     * panels, most of the work is then a matrix product on the trailing
+     * submatrix which is friendly to the cache.
+     */
+    private static final class Floating extends LUDecomposition {
+
+        private static final int BLOCK = 32;
+
+        /**
+         * L (unit diagonal, not stored) and U in one array
+         */
+        private final double[][] lu;
+
+        Floating(final CoreNumber[][] cells) {
+            super(cells.length);
+            lu = new double[n][n];
+            for (int i = 0; i < n; ++i) {
+                for (int j = 0; j < n; ++j) {
+                    lu[i][j] = cells[i][j].toDouble();
+                }
+            }
+            decompose();
+        }
+
+        private void decompose() {
+            for (int kb = 0; kb < n; kb += BLOCK) {
+                final int ke = Math.min(kb + BLOCK, n);
+
+                // Factor the panel of columns [kb, ke)
+                for (int k = kb; k < ke; ++k) {
+                    int pivot = k;
+                    for (int i = k + 1; i < n; ++i) {
+                        if (Math.abs(lu[i][k]) > Math.abs(lu[pivot][k])) {
+                            pivot = i;
+                        }
+                    }
+                    if (lu[pivot][k] == 0) {
+                        singular = true;
+                        return;
+                    }
+                    if (pivot != k) {
+                        swapRows(k, pivot);
+                    }
+
+                    final double p = lu[k][k];
+                    for (int i = k + 1; i < n; ++i) {
+                        final double l = lu[i][k] /= p;
+                        if (l != 0) {
+                            for (int j = k + 1; j < ke; ++j) {
+                                lu[i][j] -= l * lu[k][j];
+                            }
+                        }
+                    }
+                }
+
+                // U of the block row: forward substitution with the unit
+                // lower triangle of the panel
+                for (int k = kb; k < ke; ++k) {
+                    for (int i = k + 1; i < ke; ++i) {
+                        final double l = lu[i][k];
+                        if (l != 0) {
+                            for (int j = ke; j < n; ++j) {
+                                lu[i][j] -= l * lu[k][j];
+                            }
+                        }
+                    }
+                }
+
+                // Trailing update: A22 -= L21 * U12
+                for (int i = ke; i < n; ++i) {
+                    final double[] row = lu[i];
+                    for (int k = kb; k < ke; ++k) {
+                        final double l = row[k];
+                        if (l != 0) {
+                            final double[] urow = lu[k];
+                            for (int j = ke; j < n; ++j) {
+                                row[j] -= l * urow[j];
+                            }
+                        }
+                    }
+                }
+            }
+        }
+
+        private void swapRows(final int a, final int b) {
+            final double[] row = lu[a];
+            lu[a] = lu[b];
+            lu[b] = row;
+            final int tmp = perm[a];
+            perm[a] = perm[b];
+            perm[b] = tmp;
+            negate = !negate;
+        }
+
+        @Override
+        NtValue determinant() {
+            if (singular) {
+                return CoreNumber.ZERO;
+            }
+            // The product is taken exactly, it would overflow a double for
+            // large matrices, and then rounded to the precision like other
+            // inexact results
+            BigDecimal det = BigDecimal.valueOf(negate ? -1 : 1);
+            for (int i = 0; i < n; ++i) {
+                det = det.multiply(new BigDecimal(lu[i][i]));
+            }
+            return CoreNumber.from(det.setScale(CoreNumber.getPrecision(), RoundingMode.HALF_UP));
+        }
+
+        @Override
+        CoreMatrix solve(final NtValue[][] b) {
+            checkSingular();
+            final int m = b.length == 0 ? 0 : b[0].length;
+            final double[] x = new double[n * m];
+            final double[] y = new double[n];
+            for (int c = 0; c < m; ++c) {
+                for (int i = 0; i < n; ++i) {
+                    final NtValue cell = b[perm[i]][c];
+                    if (!(cell instanceof CoreNumber)) {
+                        throw new IllegalArgumentException("Matrix can only contain numbers");
+                    }
+                    y[i] = ((CoreNumber) cell).toDouble();
+                }
+                for (int i = 0; i < n; ++i) {
+                    double acc = y[i];
+                    for (int k = 0; k < i; ++k) {
+                        acc -= lu[i][k] * y[k];
+                    }
+                    y[i] = acc;
+                }
+                for (int i = n - 1; i >= 0; --i) {
+                    double acc = y[i];
+                    for (int j = i + 1; j < n; ++j) {
+                        acc -= lu[i][j] * y[j];
+                    }
+                    y[i] = acc / lu[i][i];
+                }
+                for (int i = 0; i < n; ++i) {
+                    x[i * m + c] = y[i];
+                }
+            }
+            return DoubleMatrix.wrap(n, m, x);
+        }
+    }
+}
@@ -0,0 +1,245 @@
+/**
+ *     Copyright (C) 2017  Paul Teng
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program. If not, see <http://www.gnu.org/licenses/>.
+ */
+package com.ymcmp.ntshell.value;
+
+import com.ymcmp.ntshell.NtValue;
+
+import java.util.concurrent.atomic.AtomicBoolean;
+
+import java.util.function.BinaryOperator;
+import java.util.function.UnaryOperator;
+
+/**
+ * The result of an element-wise operation on matrices. The cells are not
+ * calculated until the matrix is observed. Element-wise operations on a lazy
+ * matrix extend the expression instead, so a chain such as
+ * {@code A + B * 2 - C} is evaluated in a single pass that only allocates
+ * the final matrix.
+ *
+ * <p>
+ * Operands are captured when the expression is built. Changing a cell of an
+ * operand through
+ * {@link CoreMatrix#setCell(int, int, com.ymcmp.ntshell.NtValue)} before the
+ * result is calculated is visible in the result, which is why the shell
+ * {@link #force() forces} matrices as soon as they are assigned.
+ * <p>
+ * A lazy matrix is only inlined into one expression. When it is used a
+ * second time, for example in {@code m + m}, it is calculated instead, so
+ * shared operands are never calculated once per path leading to them.
+ *
+ * @author YTENG
+ */
+final class LazyMatrix extends CoreMatrix {
+
+    /**
+     * Expressions with more nodes than this are evaluated before being
+     * extended, which bounds both the work per cell and the recursion in
+     * {@link Node#eval(int, int)}
+     */
+    private static final int MAX_NODES = 64;
+
+    private final int rows;
+    private final int columns;
+
+    /**
+     * The expression of the cells, dropped once they are calculated so the
+     * operands can be collected
+     */
+    private volatile Node expr;
+
+    /**
+     * Set once the expression has been inlined into another one
+     */
+    private final AtomicBoolean inlined = new AtomicBoolean();
+
+    private LazyMatrix(final int rows, final int columns, final Node expr) {
+        super();
+        this.rows = rows;
+        this.columns = columns;
+        this.expr = expr;
+    }
+
+    @Override
+    public int getRowCount() {
+        return rows;
+    }
+
+    @Override
+    public int getColumnCount() {
+        return columns;
+    }
+
+    @Override
+    protected NtValue[][] materialize() {
+        final Node node = expr;
+        final NtValue[][] cells = new NtValue[rows][columns];
+        for (int x = 0; x < rows; ++x) {
+            final NtValue[] row = cells[x];
+            for (int y = 0; y < columns; ++y) {
+                row[y] = node.eval(x, y);
+            }
+        }
+        expr = null;
+        return cells;
+    }
+
+    @Override
+    public CoreMatrix force() {
+        getMatrix();
+        return this;
+    }
+
+    /**
+     * Applies an operation on every element of a matrix
+     *
+     * @param mat The matrix
+     * @param op The operation
+     * @return The lazy result
+     */
+    static CoreMatrix unary(final CoreMatrix mat, final UnaryOperator<NtValue> op) {
+        if (mat.getRowCount() == 0) {
+            return getEmptyMatrix();
+        }
+        return new LazyMatrix(mat.getRowCount(), mat.getColumnCount(), new Unary(nodeOf(mat), op));
+    }
+
+    /**
+     * Applies an operation on the elements of two matrices at the same
+     * positions. The shapes must already be checked.
+     *
+     * @param lhs The matrix on the left
+     * @param rhs The matrix on the right
+     * @param op The operation
+     * @return The lazy result
+     */
+    static CoreMatrix binary(final CoreMatrix lhs, final CoreMatrix rhs, final BinaryOperator<NtValue> op) {
+        if (lhs.getRowCount() == 0) {
+            return getEmptyMatrix();
+        }
+        return new LazyMatrix(lhs.getRowCount(), lhs.getColumnCount(), new Binary(nodeOf(lhs), nodeOf(rhs), op));
+    }
+
+    /**
+     * Applies an operation on every element of a matrix with the element as
+     * the left operand
+     *
+     * @param lhs The matrix
+     * @param rhs The right operand of every operation
+     * @param op The operation
+     * @return The lazy result
+     */
+    static CoreMatrix withRight(final CoreMatrix lhs, final NtValue rhs, final BinaryOperator<NtValue> op) {
+        return unary(lhs, el -> op.apply(el, rhs));
+    }
+
+    /**
+     * Applies an operation on every element of a matrix with the element as
+     * the right operand
+     *
+     * @param lhs The left operand of every operation
+     * @param rhs The matrix
+     * @param op The operation
+     * @return The lazy result
+     */
+    static CoreMatrix withLeft(final NtValue lhs, final CoreMatrix rhs, final BinaryOperator<NtValue> op) {
+        return unary(rhs, el -> op.apply(lhs, el));
+    }
+
+    /**
+     * Returns the expression of a matrix operand. Lazy matrices that are not
+     * calculated yet, not too large and not inlined anywhere else are
+     * inlined, everything else is read cell by cell.
+     *
+     * @param mat The operand
+     * @return The expression
+     */
+    private static Node nodeOf(final CoreMatrix mat) {
+        if (mat instanceof LazyMatrix) {
+            final LazyMatrix lazy = (LazyMatrix) mat;
+            final Node node = lazy.expr;
+            if (node != null && node.size < MAX_NODES && lazy.inlined.compareAndSet(false, true)) {
+                return node;
+            }
+        }
+        return new Leaf(mat.getMatrix());
+    }
+
+    private abstract static class Node {
+
+        /**
+         * The amount of nodes in the expression
+         */
+        final int size;
+
+        Node(final int size) {
+            this.size = size;
+        }
+
+        abstract NtValue eval(int row, int column);
+    }
+
+    private static final class Leaf extends Node {
+
+        private final NtValue[][] cells;
+
+        Leaf(final NtValue[][] cells) {
+            super(1);
+            this.cells = cells;
+        }
+
+        @Override
+        NtValue eval(final int row, final int column) {
+            return cells[row][column];
+        }
+    }
+
+    private static final class Unary extends Node {
+
+        private final Node operand;
+        private final UnaryOperator<NtValue> op;
+
+        Unary(final Node operand, final UnaryOperator<NtValue> op) {
+            super(operand.size + 1);
+            this.operand = operand;
+            this.op = op;
+        }
+
+        @Override
+        NtValue eval(final int row, final int column) {
+            return op.apply(operand.eval(row, column));
+        }
+    }
+
+    private static final class Binary extends Node {
+
+        private final Node lhs;
+        private final Node rhs;
+        private final BinaryOperator<NtValue> op;
+
+        Binary(final Node lhs, final Node rhs, final BinaryOperator<NtValue> op) {
+            super(lhs.size + rhs.size + 1);
+            this.lhs = lhs;
+            this.rhs = rhs;
+            this.op = op;
+        }
+
+        @Override
+        NtValue eval(final int row, final int column) {
+            return op.apply(lhs.eval(row, column), rhs.eval(row, column));
+        }
+    }
+}
@@ -0,0 +1,284 @@
+/**
+ *     Copyright (C) 2017  Paul Teng
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program. If not, see <http://www.gnu.org/licenses/>.
+ */
+package com.ymcmp.ntshell.value;
+
+import com.ymcmp.ntshell.NtValue;
+
+import java.io.BufferedOutputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+
+import java.math.BigInteger;
+
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.file.AtomicMoveNotSupportedException;
+import java.nio.file.FileAlreadyExistsException;
+import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+
+import java.util.concurrent.ThreadLocalRandom;
+
+/**
+ * Reads and writes matrices of numbers in a binary format:
+ *
+ * <pre>
+ * offset  size
+ *  0      4     "NTMX"
+ *  4      1     version (1)
+ *  5      1     cell type: 1 for doubles, 2 for rationals
+ *  6      2     reserved (0)
+ *  8      4     rows (big-endian)
+ * 12      4     columns (big-endian)
+ * 16            cells, row by row
+ * </pre>
+ *
+ * Doubles are stored as 8 big-endian bytes. Rationals are stored as the
+ * numerator followed by the denominator, each as a varint byte count
+ * followed by the two's-complement bytes of the integer.
+ *
+ * <p>
+ * Files of doubles are memory mapped when they are loaded (see
+ * {@link DoubleMatrix}), the cells are read from disk as they are used.
+ *
+ * @author YTENG
+ */
+public final class MatrixFile {
+
+    private static final byte[] MAGIC = {'N', 'T', 'M', 'X'};
+    private static final byte VERSION = 1;
+    private static final byte TYPE_DOUBLE = 1;
+    private static final byte TYPE_RATIONAL = 2;
+    private static final int HEADER_SIZE = 16;
+
+    private MatrixFile() {
+    }
+
+    /**
+     * Writes a matrix to a file. Cells are stored as doubles if every cell
+     * can be represented as a double exactly, as rationals otherwise. The
+     * matrix is written to a temporary file next to the destination which
+     * then replaces it, so matrices still mapped from an older version of the
+     * file keep their values.
+     *
+     * @param path The file
+     * @param mat The matrix
+     * @throws IOException If the file cannot be written
+     * @throws IllegalArgumentException If a cell is not a number
+     */
+    public static void save(final Path path, final CoreMatrix mat) throws IOException {
+        final int rows = mat.getRowCount();
+        final int columns = mat.getColumnCount();
+        boolean doubles = true;
+        if (!(mat instanceof DoubleMatrix)) {
+            for (int i = 0; i < rows; ++i) {
+                for (int j = 0; j < columns; ++j) {
+                    final NtValue cell = mat.getCell(i, j);
+                    if (!(cell instanceof CoreNumber)) {
+                        throw new IllegalArgumentException("Only matrices of numbers can be saved");
+                    }
+                    doubles &= fitsDouble((CoreNumber) cell);
+                }
+            }
+        }
+
+        // Matrices loaded from the old file are mapped, so the file is never
+        // rewritten in place. The new content replaces it in one step.
+        final Path temp = createSibling(path);
+        try {
+            write(temp, mat, doubles);
+            try {
+                Files.move(temp, path, StandardCopyOption.ATOMIC_MOVE, StandardCopyOption.REPLACE_EXISTING);
+            } catch (AtomicMoveNotSupportedException ex) {
+                Files.move(temp, path, StandardCopyOption.REPLACE_EXISTING);
+            }
+        } finally {
+            Files.deleteIfExists(temp);
+        }
+    }
+
+    /**
+     * Creates an empty file with an unused name next to the specified file.
+     * Unlike {@link Files#createTempFile}, the file gets the default
+     * permissions, or the ones of the specified file if it exists, so the
+     * file keeps them once it is replaced.
+     */
+    private static Path createSibling(final Path path) throws IOException {
+        final Path dir = path.toAbsolutePath().getParent();
+        final String name = path.getFileName().toString();
+        Path temp;
+        while (true) {
+            temp = dir.resolve(name + "." + Long.toHexString(ThreadLocalRandom.current().nextLong()) + ".tmp");
+            try {
+                Files.createFile(temp);
+                break;
+            } catch (FileAlreadyExistsException ex) {
+            }
+        }
+        try {
+            Files.setPosixFilePermissions(temp, Files.getPosixFilePermissions(path));
+        } catch (NoSuchFileException | UnsupportedOperationException ex) {
+        } catch (IOException ex) {
+            Files.deleteIfExists(temp);
+            throw ex;
+        }
+        return temp;
+    }
+
+    private static void write(final Path path, final CoreMatrix mat, final boolean doubles) throws IOException {
+        final int rows = mat.getRowCount();
+        final int columns = mat.getColumnCount();
+        try (final FileChannel ch = FileChannel.open(path, StandardOpenOption.WRITE);
+                final DataOutputStream out = new DataOutputStream(new BufferedOutputStream(Channels.newOutputStream(ch)))) {
+            out.write(MAGIC);
+            out.writeByte(VERSION);
+            out.writeByte(doubles ? TYPE_DOUBLE : TYPE_RATIONAL);
+            out.writeShort(0);
+            out.writeInt(rows);
+            out.writeInt(columns);
+            for (int i = 0; i < rows; ++i) {
+                for (int j = 0; j < columns; ++j) {
+                    if (mat instanceof DoubleMatrix) {
+                        out.writeDouble(((DoubleMatrix) mat).getDouble(i, j));
+                        continue;
+                    }
+                    final CoreNumber cell = (CoreNumber) mat.getCell(i, j);
+                    if (doubles) {
+                        out.writeDouble(cell.toDouble());
+                    } else {
+                        writeInteger(out, cell.getNumerator());
+                        writeInteger(out, cell.getDenominator());
+                    }
+                }
+            }
+        }
+    }
+
+    private static boolean fitsDouble(final CoreNumber num) {
+        if (!num.isFinite()) {
+            return true;
+        }
+        final double d = num.toDouble();
+        return !Double.isInfinite(d) && CoreNumber.exact(d).equals(num);
+    }
+
+    private static void writeInteger(final DataOutputStream out, final BigInteger val) throws IOException {
+        final byte[] bytes = val.toByteArray();
+        int len = bytes.length;
+        while ((len & ~0x7F) != 0) {
+            out.writeByte((len & 0x7F) | 0x80);
+            len >>>= 7;
+        }
+        out.writeByte(len);
+        out.write(bytes);
+    }
+
+    /**
+     * Reads a matrix from a file
+     *
+     * @param path The file
+     * @return The matrix, a {@link DoubleMatrix} backed by the file if the
+     * cells are doubles
+     * @throws IOException If the file cannot be read or is not a matrix file
+     */
+    public static CoreMatrix load(final Path path) throws IOException {
+        final MappedByteBuffer buf;
+        try (final FileChannel ch = FileChannel.open(path, StandardOpenOption.READ)) {
+            final long size = ch.size();
+            if (size > Integer.MAX_VALUE) {
+                throw new IOException("File is too large to be mapped");
+            }
+            if (size < HEADER_SIZE) {
+                throw new IOException("Not a matrix file");
+            }
+            // The mapping stays valid after the channel is closed
+            buf = ch.map(FileChannel.MapMode.READ_ONLY, 0, size);
+        }
+
+        for (final byte b : MAGIC) {
+            if (buf.get() != b) {
+                throw new IOException("Not a matrix file");
+            }
+        }
+        if (buf.get() != VERSION) {
+            throw new IOException("Unsupported matrix file version");
+        }
+        final byte type = buf.get();
+        buf.getShort();
+        final int rows = buf.getInt();
+        final int columns = buf.getInt();
+        if (rows < 0 || columns < 0) {
+            throw new IOException("Corrupted matrix file");
+        }
+
+        switch (type) {
+        case TYPE_DOUBLE:
+            if ((long) rows * columns * Double.BYTES > buf.remaining()) {
+                throw new IOException("Matrix file is truncated");
+            }
+            return DoubleMatrix.wrap(rows, columns, buf.asDoubleBuffer());
+        case TYPE_RATIONAL:
+            return readRationals(buf, rows, columns);
+        default:
+            throw new IOException("Unknown cell type " + type);
+        }
+    }
+
+    private static CoreMatrix readRationals(final ByteBuffer buf, final int rows, final int columns) throws IOException {
+        // Every cell takes at least two bytes, this rejects shapes that would
+        // not fit in the file before anything is allocated
+        if ((long) rows * columns * 2 > buf.remaining()) {
+            throw new IOException("Matrix file is truncated");
+        }
+        try {
+            final NtValue[][] cells = new NtValue[rows][columns];
+            for (int i = 0; i < rows; ++i) {
+                for (int j = 0; j < columns; ++j) {
+                    final BigInteger numer = readInteger(buf);
+                    final BigInteger denom = readInteger(buf);
+                    cells[i][j] = CoreNumber.from(numer, denom);
+                }
+            }
+            return rows == 0 ? CoreMatrix.getEmptyMatrix() : new CoreMatrix(cells);
+        } catch (RuntimeException ex) {
+            // Buffer underflows and bad integer encodings
+            throw new IOException("Corrupted matrix file", ex);
+        }
+    }
+
+    private static BigInteger readInteger(final ByteBuffer buf) throws IOException {
+        int len = 0;
+        int shift = 0;
+        byte b;
+        do {
+            b = buf.get();
+            len |= (b & 0x7F) << shift;
+            shift += 7;
+        } while ((b & 0x80) != 0 && shift < 32);
+        if (len < 0 || len > buf.remaining()) {
+            throw new IOException("Matrix file is truncated");
+        }
+        final byte[] bytes = new byte[len];
+        buf.get(bytes);
+        return new BigInteger(bytes);
+    }
+}
@@ -0,0 +1,208 @@
+/**
+ *     Copyright (C) 2017  Paul Teng
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program. If not, see <http://www.gnu.org/licenses/>.
+ */
+package com.ymcmp.ntshell.value;
+
+import com.ymcmp.ntshell.NtValue;
+import com.ymcmp.ntshell.rte.TailCallTrigger;
+
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Caches the results of a function by its parameters. Parameters are
+ * compared with {@link Object#equals(java.lang.Object)}, so numbers and
+ * matrices are matched by value and functions by identity. Once the cache is
+ * full, the entry that was used least recently is dropped.
+ *
+ * <p>
+ * The cache does not check if the function is pure. Memoizing a function
+ * with side effects means the side effects only happen on a miss. Matrices
+ * used as parameters should not be modified afterwards, otherwise their
+ * entries can no longer be found.
+ *
+ * @author YTENG
+ */
+public final class MemoizedLambda extends CoreLambda {
+
+    /**
+     * The amount of entries a cache holds unless specified otherwise
+     */
+    public static final int DEFAULT_CAPACITY = 4096;
+
+    private static final AtomicLong TOTAL_HITS = new AtomicLong();
+    private static final AtomicLong TOTAL_MISSES = new AtomicLong();
+
+    private final NtValue function;
+    private final int capacity;
+    private final LinkedHashMap<Key, NtValue> cache;
+
+    private long hits;
+    private long misses;
+
+    /**
+     * The parameters of one call
+     */
+    private static final class Key {
+
+        private final NtValue[] params;
+        private final int hash;
+
+        Key(final NtValue[] params) {
+            this.params = params.clone();
+            this.hash = Arrays.hashCode(this.params);
+        }
+
+        @Override
+        public int hashCode() {
+            return hash;
+        }
+
+        @Override
+        public boolean equals(final Object obj) {
+            return obj instanceof Key
+                    && hash == ((Key) obj).hash
+                    && Arrays.equals(params, ((Key) obj).params);
+        }
+    }
+
+    /**
+     * Wraps a function in a cache
+     *
+     * @param function Must support
+     * {@link NtValue#applyCall(com.ymcmp.ntshell.NtValue[])}
+     * @param capacity The maximum amount of entries, at least one
+     * @throws IllegalArgumentException If the capacity is less than one
+     */
+    public MemoizedLambda(final NtValue function, final int capacity) {
+        super(function instanceof CoreLambda ? ((CoreLambda) function).info : null);
+        if (capacity < 1) {
+            throw new IllegalArgumentException("Cache must hold at least one entry");
+        }
+        this.function = function;
+        this.capacity = capacity;
+        this.cache = new LinkedHashMap<Key, NtValue>(16, 0.75f, true) {
+            @Override
+            protected boolean removeEldestEntry(final Map.Entry<Key, NtValue> eldest) {
+                return size() > MemoizedLambda.this.capacity;
+            }
+        };
+    }
+
+    /**
+     * Looks up the parameters in the cache and only calls the function on a
+     * miss. The function is called outside of the lock so recursive
+     * functions can use the cache while they are computing an entry.
+     *
+     * @param params The parameters
+     * @return The result
+     */
+    @Override
+    public NtValue applyCall(final NtValue[] params) {
+        final Key key = new Key(params);
+        synchronized (cache) {
+            final NtValue ret = cache.get(key);
+            if (ret != null) {
+                ++hits;
+                TOTAL_HITS.incrementAndGet();
+                return ret;
+            }
+            ++misses;
+            TOTAL_MISSES.incrementAndGet();
+        }
+
+        final NtValue ret = TailCallTrigger.call(function, params);
+        synchronized (cache) {
+            cache.put(key, ret);
+        }
+        return ret;
+    }
+
+    /**
+     *
+     * @return The function being cached
+     */
+    public NtValue getFunction() {
+        return function;
+    }
+
+    /**
+     *
+     * @return The maximum amount of entries
+     */
+    public int getCapacity() {
+        return capacity;
+    }
+
+    /**
+     *
+     * @return The amount of entries currently cached
+     */
+    public int getSize() {
+        synchronized (cache) {
+            return cache.size();
+        }
+    }
+
+    /**
+     *
+     * @return The amount of calls answered from the cache
+     */
+    public long getHits() {
+        synchronized (cache) {
+            return hits;
+        }
+    }
+
+    /**
+     *
+     * @return The amount of calls that had to call the function
+     */
+    public long getMisses() {
+        synchronized (cache) {
+            return misses;
+        }
+    }
+
+    /**
+     *
+     * @return The amount of cache hits of all memoized functions
+     */
+    public static long getTotalHits() {
+        return TOTAL_HITS.get();
+    }
+
+    /**
+     *
+     * @return The amount of cache misses of all memoized functions
+     */
+    public static long getTotalMisses() {
+        return TOTAL_MISSES.get();
+    }
+
+    @Override
+    public boolean isPure() {
+        return function instanceof CoreLambda && ((CoreLambda) function).isPure();
+    }
+
+    @Override
+    public CoreNumber[] getPolynomial() {
+        return function instanceof CoreLambda ? ((CoreLambda) function).getPolynomial() : null;
+    }
+}
@@ -0,0 +1,479 @@
+/**
+ *     Copyright (C) 2017  Paul Teng
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program. If not, see <http://www.gnu.org/licenses/>.
+ */
+package com.ymcmp.ntshell.value;
+
+import com.ymcmp.ntshell.NtValue;
+import com.ymcmp.ntshell.rte.TailCallTrigger;
+
+import java.util.Arrays;
+
+import java.util.function.BinaryOperator;
+
+/**
+ * A matrix where most of the cells are zero. Only the non-zero cells are
+ * stored, row by row (compressed sparse row). Sparse matrices cannot be
+ * modified.
+ *
+ * <p>
+ * Operations that keep most cells at zero (adding or subtracting sparse
+ * matrices, scaling, multiplying and transposing) produce sparse matrices.
+ * If the result ends up with more than half of its cells set, a normal
+ * matrix is returned instead.
+ *
+ * @author YTENG
+ */
+public final class SparseMatrix extends CoreMatrix {
+
+    /**
+     * Results with a higher ratio of non-zero cells become normal matrices
+     */
+    private static final double MAX_FILL = 0.5;
+
+    private final int rows;
+    private final int columns;
+
+    /**
+     * The non-zero cells of row {@code i} are at
+     * {@code [rowStart[i], rowStart[i + 1])} of {@code columnIndex} and
+     * {@code values}
+     */
+    private final int[] rowStart;
+    private final int[] columnIndex;
+    private final NtValue[] values;
+
+    private SparseMatrix(final int rows, final int columns, final int[] rowStart, final int[] columnIndex, final NtValue[] values) {
+        super();
+        this.rows = rows;
+        this.columns = columns;
+        this.rowStart = rowStart;
+        this.columnIndex = columnIndex;
+        this.values = values;
+    }
+
+    /**
+     * Creates a matrix from a list of (row, column, value) triplets. Cells
+     * that appear more than once are added together, and cells that are not
+     * listed are zero. Indices start from zero.
+     *
+     * @param rows The amount of rows
+     * @param columns The amount of columns
+     * @param rowIndex The row of each cell
+     * @param colIndex The column of each cell
+     * @param vals The value of each cell
+     * @return The matrix, which is only sparse if most cells are zero
+     * @throws IllegalArgumentException If the arrays have different lengths
+     * or an index is out of bounds
+     */
+    public static CoreMatrix fromTriplets(final int rows, final int columns, final int[] rowIndex, final int[] colIndex, final NtValue[] vals) {
+        if (rows < 0 || columns < 0) {
+            throw new IllegalArgumentException("Matrix cannot have negative size");
+        }
+        if (rowIndex.length != colIndex.length || rowIndex.length != vals.length) {
+            throw new IllegalArgumentException("Triplets have different lengths");
+        }
+
+        // Counting sort on the rows
+        final int[] start = new int[rows + 1];
+        for (int i = 0; i < rowIndex.length; ++i) {
+            if (rowIndex[i] < 0 || rowIndex[i] >= rows || colIndex[i] < 0 || colIndex[i] >= columns) {
+                throw new IllegalArgumentException("Cell (" + rowIndex[i] + ", " + colIndex[i] + ") is out of bounds");
+            }
+            ++start[rowIndex[i] + 1];
+        }
+        for (int i = 0; i < rows; ++i) {
+            start[i + 1] += start[i];
+        }
+        final int[] next = Arrays.copyOf(start, rows);
+        final int[] order = new int[vals.length];
+        for (int i = 0; i < vals.length; ++i) {
+            order[next[rowIndex[i]]++] = i;
+        }
+
+        // Sort each row on the columns and merge duplicates
+        final Builder builder = new Builder(rows, columns, vals.length);
+        final NtValue[] row = new NtValue[columns];
+        final int[] used = new int[columns];
+        for (int i = 0; i < rows; ++i) {
+            int count = 0;
+            for (int k = start[i]; k < start[i + 1]; ++k) {
+                final int j = colIndex[order[k]];
+                if (row[j] == null) {
+                    row[j] = vals[order[k]];
+                    used[count++] = j;
+                } else {
+                    row[j] = row[j].applyAdd(vals[order[k]]);
+                }
+            }
+            Arrays.sort(used, 0, count);
+            for (int k = 0; k < count; ++k) {
+                builder.add(used[k], row[used[k]]);
+                row[used[k]] = null;
+            }
+            builder.endRow();
+        }
+        return builder.build();
+    }
+
+    /**
+     * Converts a matrix into its sparse form
+     *
+     * @param mat The matrix
+     * @return The sparse matrix
+     */
+    public static SparseMatrix from(final CoreMatrix mat) {
+        if (mat instanceof SparseMatrix) {
+            return (SparseMatrix) mat;
+        }
+        final int rows = mat.getRowCount();
+        final int columns = mat.getColumnCount();
+        final Builder builder = new Builder(rows, columns, 16);
+        for (int i = 0; i < rows; ++i) {
+            for (int j = 0; j < columns; ++j) {
+                builder.add(j, mat.getCell(i, j));
+            }
+            builder.endRow();
+        }
+        return builder.buildSparse();
+    }
+
+    /**
+     *
+     * @return The amount of cells that are not zero
+     */
+    public int getNonZeroCount() {
+        return rowStart[rows];
+    }
+
+    @Override
+    public int getRowCount() {
+        return rows;
+    }
+
+    @Override
+    public int getColumnCount() {
+        return columns;
+    }
+
+    @Override
+    protected NtValue[][] materialize() {
+        final NtValue[][] cells = new NtValue[rows][columns];
+        for (int i = 0; i < rows; ++i) {
+            Arrays.fill(cells[i], CoreNumber.ZERO);
+            for (int k = rowStart[i]; k < rowStart[i + 1]; ++k) {
+                cells[i][columnIndex[k]] = values[k];
+            }
+        }
+        return cells;
+    }
+
+    @Override
+    public NtValue getCell(int row, int column) {
+        if (row < 0 || row >= rows) {
+            throw new ArrayIndexOutOfBoundsException(row);
+        }
+        if (column < 0 || column >= columns) {
+            throw new ArrayIndexOutOfBoundsException(column);
+        }
+        final int k = Arrays.binarySearch(columnIndex, rowStart[row], rowStart[row + 1], column);
+        return k < 0 ? CoreNumber.ZERO : values[k];
+    }
+
+    /**
+     * Sparse matrices cannot be modified.
+     *
+     * @param row
+     * @param column
+     * @param val
+     * @throws UnsupportedOperationException always
+     */
+    @Override
+    public void setCell(int row, int column, final NtValue val) {
+        throw new UnsupportedOperationException("Sparse matrices cannot be modified");
+    }
+
+    @Override
+    public NtValue applyAdd(final NtValue rhs) {
+        if (rhs instanceof SparseMatrix) {
+            return merge("+", (SparseMatrix) rhs, NtValue::applyAdd);
+        }
+        return super.applyAdd(rhs);
+    }
+
+    @Override
+    public NtValue applySub(final NtValue rhs) {
+        if (rhs instanceof SparseMatrix) {
+            return merge("-", (SparseMatrix) rhs, NtValue::applySub);
+        }
+        return super.applySub(rhs);
+    }
+
+    @Override
+    public NtValue applyMul(final NtValue rhs) {
+        if (rhs instanceof CoreMatrix) {
+            return super.applyMul(rhs);
+        }
+        final Builder builder = new Builder(rows, columns, values.length);
+        for (int i = 0; i < rows; ++i) {
+            for (int k = rowStart[i]; k < rowStart[i + 1]; ++k) {
+                builder.add(columnIndex[k], values[k].applyMul(rhs));
+            }
+            builder.endRow();
+        }
+        return builder.build();
+    }
+
+    @Override
+    public CoreMatrix applyNegative() {
+        final NtValue[] negated = new NtValue[values.length];
+        for (int k = 0; k < negated.length; ++k) {
+            negated[k] = values[k].applyNegative();
+        }
+        return new SparseMatrix(rows, columns, rowStart, columnIndex, negated);
+    }
+
+    private CoreMatrix merge(final String op, final SparseMatrix rhs, final BinaryOperator<NtValue> f) {
+        if (!sameShape(rhs)) {
+            throw new MatrixBoundMismatchException("Two matrices have different shapes").toDispatchException(op);
+        }
+        final Builder builder = new Builder(rows, columns, values.length + rhs.values.length);
+        for (int i = 0; i < rows; ++i) {
+            int a = rowStart[i];
+            int b = rhs.rowStart[i];
+            final int aEnd = rowStart[i + 1];
+            final int bEnd = rhs.rowStart[i + 1];
+            while (a < aEnd || b < bEnd) {
+                final int aCol = a < aEnd ? columnIndex[a] : columns;
+                final int bCol = b < bEnd ? rhs.columnIndex[b] : columns;
+                if (aCol < bCol) {
+                    builder.add(aCol, f.apply(values[a++], CoreNumber.ZERO));
+                } else if (bCol < aCol) {
+                    builder.add(bCol, f.apply(CoreNumber.ZERO, rhs.values[b++]));
+                } else {
+                    builder.add(aCol, f.apply(values[a++], rhs.values[b++]));
+                }
+            }
+            builder.endRow();
+        }
+        return builder.build();
+    }
+
+    /**
+     * Calculates the matrix product. Only the non-zero cells are multiplied,
+     * the result is sparse if the other matrix is sparse too.
+     *
+     * @param rhs The other matrix
+     * @return The new matrix
+     * @throws com.ymcmp.ntshell.value.CoreMatrix.MatrixBoundMismatchException
+     * If the two matrices do not have a shape of {@code m*n} and {@code n*p}
+     */
+    @Override
+    public CoreMatrix crossProduct(final CoreMatrix rhs) throws MatrixBoundMismatchException {
+        if (columns != rhs.getRowCount()) {
+            throw new MatrixBoundMismatchException("Matrices do not have capatible shape");
+        }
+        final int width = rhs.getColumnCount();
+        if (rhs instanceof SparseMatrix) {
+            // Gustavson's algorithm: row i of the result is the sum of the
+            // rows k of rhs scaled by the cells (i, k)
+            final SparseMatrix other = (SparseMatrix) rhs;
+            final Builder builder = new Builder(rows, width, values.length + other.values.length);
+            final NtValue[] acc = new NtValue[width];
+            final int[] used = new int[width];
+            for (int i = 0; i < rows; ++i) {
+                int count = 0;
+                for (int k = rowStart[i]; k < rowStart[i + 1]; ++k) {
+                    final int r = columnIndex[k];
+                    for (int l = other.rowStart[r]; l < other.rowStart[r + 1]; ++l) {
+                        final int j = other.columnIndex[l];
+                        final NtValue prod = values[k].applyMul(other.values[l]);
+                        if (acc[j] == null) {
+                            acc[j] = prod;
+                            used[count++] = j;
+                        } else {
+                            acc[j] = acc[j].applyAdd(prod);
+                        }
+                    }
+                }
+                Arrays.sort(used, 0, count);
+                for (int k = 0; k < count; ++k) {
+                    builder.add(used[k], acc[used[k]]);
+                    acc[used[k]] = null;
+                }
+                builder.endRow();
+            }
+            return builder.build();
+        }
+
+        final NtValue[][] rmat = rhs.getMatrix();
+        final NtValue[][] cells = new NtValue[rows][width];
+        for (int i = 0; i < rows; ++i) {
+            final NtValue[] row = cells[i];
+            for (int k = rowStart[i]; k < rowStart[i + 1]; ++k) {
+                final NtValue[] other = rmat[columnIndex[k]];
+                for (int j = 0; j < width; ++j) {
+                    final NtValue prod = values[k].applyMul(other[j]);
+                    row[j] = row[j] == null ? prod : row[j].applyAdd(prod);
+                }
+            }
+            fillZeros(row);
+        }
+        return new CoreMatrix(cells);
+    }
+
+    /**
+     * Calculates {@code lhs * this} where {@code lhs} is not sparse. Each
+     * non-zero cell (k, j) only contributes to column j of the result.
+     *
+     * @param lhs The matrix on the left
+     * @return The new matrix
+     * @throws com.ymcmp.ntshell.value.CoreMatrix.MatrixBoundMismatchException
+     * If the two matrices do not have a shape of {@code m*n} and {@code n*p}
+     */
+    CoreMatrix crossProductLeft(final CoreMatrix lhs) throws MatrixBoundMismatchException {
+        if (lhs.getColumnCount() != rows) {
+            throw new MatrixBoundMismatchException("Matrices do not have capatible shape");
+        }
+        final NtValue[][] lmat = lhs.getMatrix();
+        final NtValue[][] cells = new NtValue[lmat.length][columns];
+        for (int k = 0; k < rows; ++k) {
+            for (int l = rowStart[k]; l < rowStart[k + 1]; ++l) {
+                final int j = columnIndex[l];
+                for (int i = 0; i < lmat.length; ++i) {
+                    final NtValue prod = lmat[i][k].applyMul(values[l]);
+                    cells[i][j] = cells[i][j] == null ? prod : cells[i][j].applyAdd(prod);
+                }
+            }
+        }
+        for (final NtValue[] row : cells) {
+            fillZeros(row);
+        }
+        return new CoreMatrix(cells);
+    }
+
+    private static void fillZeros(final NtValue[] row) {
+        for (int j = 0; j < row.length; ++j) {
+            if (row[j] == null) {
+                row[j] = CoreNumber.ZERO;
+            }
+        }
+    }
+
+    @Override
+    public CoreMatrix transpose() {
+        final int[] start = new int[columns + 1];
+        for (int k = 0; k < columnIndex.length; ++k) {
+            ++start[columnIndex[k] + 1];
+        }
+        for (int j = 0; j < columns; ++j) {
+            start[j + 1] += start[j];
+        }
+        final int[] next = Arrays.copyOf(start, columns);
+        final int[] index = new int[columnIndex.length];
+        final NtValue[] vals = new NtValue[values.length];
+        // Rows are visited in order, so every new row stays sorted
+        for (int i = 0; i < rows; ++i) {
+            for (int k = rowStart[i]; k < rowStart[i + 1]; ++k) {
+                final int pos = next[columnIndex[k]]++;
+                index[pos] = i;
+                vals[pos] = values[k];
+            }
+        }
+        return new SparseMatrix(columns, rows, start, index, vals);
+    }
+
+    /**
+     * Performs a left reduction without building the normal matrix. Cells
+     * that are not stored are passed as zero.
+     *
+     * @param accum Must support
+     * {@link NtValue#applyCall(com.ymcmp.ntshell.NtValue[])}
+     * @param initial The initial value
+     * @return Either the initial value or the accumulated value
+     */
+    @Override
+    public NtValue reduceLeft(final NtValue accum, final NtValue initial) {
+        NtValue ret = initial;
+        for (int i = 0; i < rows; ++i) {
+            int k = rowStart[i];
+            for (int j = 0; j < columns; ++j) {
+                final NtValue cell;
+                if (k < rowStart[i + 1] && columnIndex[k] == j) {
+                    cell = values[k++];
+                } else {
+                    cell = CoreNumber.ZERO;
+                }
+                ret = TailCallTrigger.call(accum, ret, cell);
+            }
+        }
+        return ret;
+    }
+
+    /**
+     * Collects non-zero cells row by row
+     */
+    private static final class Builder {
+
+        private final int rows;
+        private final int columns;
+        private final int[] rowStart;
+        private int[] columnIndex;
+        private NtValue[] values;
+        private int row;
+        private int size;
+
+        Builder(final int rows, final int columns, final int capacity) {
+            this.rows = rows;
+            this.columns = columns;
+            this.rowStart = new int[rows + 1];
+            this.columnIndex = new int[Math.max(capacity, 4)];
+            this.values = new NtValue[columnIndex.length];
+        }
+
+        /**
+         * Adds a cell to the current row. Columns must be increasing, zeros
+         * are dropped.
+         */
+        void add(final int column, final NtValue val) {
+            if (CoreNumber.ZERO.equals(val)) {
+                return;
+            }
+            if (size == values.length) {
+                columnIndex = Arrays.copyOf(columnIndex, size * 2);
+                values = Arrays.copyOf(values, size * 2);
+            }
+            columnIndex[size] = column;
+            values[size++] = val;
+        }
+
+        void endRow() {
+            rowStart[++row] = size;
+        }
+
+        SparseMatrix buildSparse() {
+            return new SparseMatrix(rows, columns, rowStart,
+                    Arrays.copyOf(columnIndex, size), Arrays.copyOf(values, size));
+        }
+
+        CoreMatrix build() {
+            final SparseMatrix mat = buildSparse();
+            if (size > MAX_FILL * rows * columns) {
+                return new CoreMatrix(mat.materialize());
+            }
+            return mat;
+        }
+    }
+}
@@ -21,18 +21,24 @@ import com.ymcmp.ntshell.NtLibrary;
 
 import com.ymcmp.ntshell.value.*;
 
-import java.util.HashSet;
-import java.util.Set;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
 
 import ntshell.rt.lib.rout.*;
 
 /**
+ * The library every frontend links. There is only one instance and it never
+ * changes, so it can be shared by all sessions of a process.
  *
  * @author YTENG
  */
 public final class Core implements NtLibrary {
 
-    private final Set<NtLibrary> submodules = new HashSet<>();
+    /**
+     * Searched in order
+     */
+    private final List<NtLibrary> submodules;
 
     private static class Helper {
 
@@ -40,9 +46,11 @@ public final class Core implements NtLibrary {
     }
 
     private Core() {
-        submodules.add(new ntshell.rt.lib.rout.matrix.Loader());
-        submodules.add(new ntshell.rt.lib.rout.trig.Loader());
-        submodules.add(new ntshell.rt.lib.rout.type.Loader());
+        submodules = Collections.unmodifiableList(Arrays.asList(
+                new ntshell.rt.lib.rout.matrix.Loader(),
+                new ntshell.rt.lib.rout.trig.Loader(),
+                new ntshell.rt.lib.rout.stream.Loader(),
+                new ntshell.rt.lib.rout.type.Loader()));
     }
 
     public static NtLibrary getInstance() {
@@ -105,6 +113,20 @@ public final class Core implements NtLibrary {
             return Limits.getBothSided();
         case "joining!":
             return new Joining();
+        case "concat":
+            return Concat.getInstance();
+        case "precision":
+            return Precision.getInstance();
+        case "memo":
+            return Memo.getInstance();
+        case "memo_stats":
+            return MemoStats.getInstance();
+        case "spawn":
+            return Spawn.getInstance();
+        case "await":
+            return Await.getInstance();
+        case "par":
+            return Par.getInstance();
         default:
         }
         return null;
@@ -18,8 +18,6 @@ package ntshell.rt.lib.rout;
 
 import com.ymcmp.ntshell.NtValue;
 
-import com.ymcmp.ntshell.rte.DispatchException;
-
 import com.ymcmp.ntshell.value.CoreLambda;
 import com.ymcmp.ntshell.value.CoreNumber;
 
@@ -27,12 +25,12 @@ import com.ymcmp.ntshell.value.CoreNumber;
  *
  * @author YTENG
  */
-public final class Abs extends CoreLambda {
+public final class Abs extends UnaryNumericFunction {
 
     private static final Abs INSTANCE = new Abs();
 
     private Abs() {
-        super(new CoreLambda.Info("absolute value", "number -> number", "Calculates the absolute value of a value"));
+        super(new CoreLambda.Info("absolute value", "number -> number  OR  mat -> mat", "Calculates the absolute value of a value"));
     }
 
     public static NtValue getInstance() {
@@ -40,10 +38,12 @@ public final class Abs extends CoreLambda {
     }
 
     @Override
-    public NtValue applyCall(final NtValue[] input) {
-        if (input.length == 1 && input[0] instanceof CoreNumber) {
-            return ((CoreNumber) input[0]).abs();
-        }
-        throw new DispatchException("absolute value", "Expected a number but got " + input.length);
+    protected CoreNumber apply(final CoreNumber x) {
+        return x.abs();
+    }
+
+    @Override
+    protected double applyDouble(final double x) {
+        return Math.abs(x);
     }
 }
@@ -0,0 +1,52 @@
+/**
+ *     Copyright (C) 2017  Paul Teng
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program. If not, see <http://www.gnu.org/licenses/>.
+ */
+package ntshell.rt.lib.rout;
+
+import com.ymcmp.ntshell.NtValue;
+
+import com.ymcmp.ntshell.rte.DispatchException;
+
+import com.ymcmp.ntshell.value.CoreFuture;
+import com.ymcmp.ntshell.value.CoreLambda;
+
+/**
+ *
+ * @author YTENG
+ */
+public final class Await extends CoreLambda {
+
+    private static final Await INSTANCE = new Await();
+
+    private Await() {
+        super(new CoreLambda.Info("await", "future -> any", "Waits for a future returned by <code>spawn</code> and returns its result, or throws the error the task failed with. Anything other than a future is returned as is"));
+    }
+
+    public static NtValue getInstance() {
+        return INSTANCE;
+    }
+
+    @Override
+    public NtValue applyCall(final NtValue[] input) {
+        if (input.length == 1) {
+            if (input[0] instanceof CoreFuture) {
+                return ((CoreFuture) input[0]).await();
+            }
+            return input[0];
+        }
+        throw new DispatchException("await", "Expected one parameter, got " + input.length + " instead");
+    }
+}
@@ -18,8 +18,6 @@ package ntshell.rt.lib.rout;
 
 import com.ymcmp.ntshell.NtValue;
 
-import com.ymcmp.ntshell.rte.DispatchException;
-
 import com.ymcmp.ntshell.value.CoreLambda;
 import com.ymcmp.ntshell.value.CoreNumber;
 
@@ -29,12 +27,12 @@ import org.apfloat.ApfloatMath;
  *
  * @author YTENG
  */
-public final class Ceil extends CoreLambda {
+public final class Ceil extends UnaryNumericFunction {
 
     private static final Ceil INSTANCE = new Ceil();
 
     private Ceil() {
-        super(new CoreLambda.Info("ceil", "number -> number", "Calculates the ceiling of a value"));
+        super(new CoreLambda.Info("ceil", "number -> number  OR  mat -> mat", "Calculates the ceiling of a value"));
     }
 
     public static NtValue getInstance() {
@@ -42,10 +40,12 @@ public final class Ceil extends CoreLambda {
     }
 
     @Override
-    public NtValue applyCall(final NtValue[] input) {
-        if (input.length == 1 && input[0] instanceof CoreNumber) {
-            return CoreNumber.from(ApfloatMath.ceil(((CoreNumber) input[0]).toApfloat()));
-        }
-        throw new DispatchException("ceil", "Expected a number but got " + input.length);
+    protected CoreNumber apply(final CoreNumber x) {
+        return CoreNumber.from(ApfloatMath.ceil(x.toApfloat()));
+    }
+
+    @Override
+    protected double applyDouble(final double x) {
+        return Math.ceil(x);
     }
 }
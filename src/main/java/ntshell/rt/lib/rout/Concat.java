@@ -0,0 +1,54 @@
+/**
+ *     Copyright (C) 2017  Paul Teng
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program. If not, see <http://www.gnu.org/licenses/>.
+ */
+package ntshell.rt.lib.rout;
+
+import com.ymcmp.ntshell.NtValue;
+
+import com.ymcmp.ntshell.rte.DispatchException;
+
+import com.ymcmp.ntshell.value.CoreAtom;
+import com.ymcmp.ntshell.value.CoreLambda;
+import com.ymcmp.ntshell.value.CoreRope;
+
+/**
+ *
+ * @author YTENG
+ */
+public final class Concat extends CoreLambda {
+
+    private static final Concat INSTANCE = new Concat();
+
+    private Concat() {
+        super(new CoreLambda.Info("concat", "atom... -> rope", "Joins atoms or ropes into a rope without copying the text"));
+    }
+
+    public static NtValue getInstance() {
+        return INSTANCE;
+    }
+
+    @Override
+    public NtValue applyCall(final NtValue[] input) {
+        CoreRope acc = CoreRope.getEmptyRope();
+        for (int i = 0; i < input.length; ++i) {
+            if (!(input[i] instanceof CoreAtom || input[i] instanceof CoreRope)) {
+                throw new DispatchException("concat", "Expected only atoms or ropes");
+            }
+            acc = acc.concat(CoreRope.from(input[i]));
+        }
+        return acc;
+    }
+}
@@ -18,8 +18,6 @@ package ntshell.rt.lib.rout;
 
 import com.ymcmp.ntshell.NtValue;
 
-import com.ymcmp.ntshell.rte.DispatchException;
-
 import com.ymcmp.ntshell.value.CoreLambda;
 import com.ymcmp.ntshell.value.CoreNumber;
 
@@ -29,12 +27,12 @@ import org.apfloat.ApfloatMath;
  *
  * @author YTENG
  */
-public final class Floor extends CoreLambda {
+public final class Floor extends UnaryNumericFunction {
 
     private static final Floor INSTANCE = new Floor();
 
     private Floor() {
-        super(new CoreLambda.Info("floor", "number -> number", "Calculates the floor of a value"));
+        super(new CoreLambda.Info("floor", "number -> number  OR  mat -> mat", "Calculates the floor of a value"));
     }
 
     public static NtValue getInstance() {
@@ -42,10 +40,12 @@ public final class Floor extends CoreLambda {
     }
 
     @Override
-    public NtValue applyCall(final NtValue[] input) {
-        if (input.length == 1 && input[0] instanceof CoreNumber) {
-            return CoreNumber.from(ApfloatMath.floor(((CoreNumber) input[0]).toApfloat()));
-        }
-        throw new DispatchException("floor", "Expected a number but got " + input.length);
+    protected CoreNumber apply(final CoreNumber x) {
+        return CoreNumber.from(ApfloatMath.floor(x.toApfloat()));
+    }
+
+    @Override
+    protected double applyDouble(final double x) {
+        return Math.floor(x);
     }
 }
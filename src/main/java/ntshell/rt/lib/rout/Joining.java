@@ -18,31 +18,34 @@ package ntshell.rt.lib.rout;
 
 import com.ymcmp.ntshell.NtValue;
 
-import com.ymcmp.ntshell.value.CoreAtom;
 import com.ymcmp.ntshell.value.CoreLambda;
+import com.ymcmp.ntshell.value.CoreRope;
 
 /**
+ * Unlike most values, a joiner changes every time it is called. Calls are
+ * synchronized so a joiner shared between threads does not lose parts.
  *
  * @author YTENG
  */
 public final class Joining extends CoreLambda {
 
-    private final StringBuilder str;
+    private CoreRope str;
 
     public Joining() {
-        super(new CoreLambda.Info("joining!", "... -> func OR () -> atom", "Joins a string until unit is passed as parameter"));
-        str = new StringBuilder();
+        super(new CoreLambda.Info("joining!", "... -> func OR () -> rope", "Joins a string until unit is passed as parameter"));
+        str = CoreRope.getEmptyRope();
     }
 
     @Override
-    public NtValue applyCall(final NtValue[] input) {
+    public synchronized NtValue applyCall(final NtValue[] input) {
         if (input.length == 0) {
-            return CoreAtom.from(str.toString());
+            return str;
         }
-        str.append(input[0]);
+        CoreRope acc = str.concat(CoreRope.from(input[0]));
         for (int i = 1; i < input.length; ++i) {
-            str.append(' ').append(input[i]);
+            acc = acc.concat(" ").concat(CoreRope.from(input[i]));
         }
+        str = acc;
         return this;
     }
 }
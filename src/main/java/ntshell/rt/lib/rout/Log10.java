@@ -18,8 +18,6 @@ package ntshell.rt.lib.rout;
 
 import com.ymcmp.ntshell.NtValue;
 
-import com.ymcmp.ntshell.rte.DispatchException;
-
 import com.ymcmp.ntshell.value.CoreLambda;
 import com.ymcmp.ntshell.value.CoreNumber;
 
@@ -30,12 +28,12 @@ import org.apfloat.ApfloatMath;
  *
  * @author YTENG
  */
-public final class Log10 extends CoreLambda {
+public final class Log10 extends UnaryNumericFunction {
 
     private static final Log10 INSTANCE = new Log10();
 
     private Log10() {
-        super(new CoreLambda.Info("base 10 logarithm", "number -> number", "Calculates the base 10 logarithm of a value"));
+        super(new CoreLambda.Info("base 10 logarithm", "number -> number  OR  mat -> mat", "Calculates the base 10 logarithm of a value"));
     }
 
     public static NtValue getInstance() {
@@ -43,10 +41,17 @@ public final class Log10 extends CoreLambda {
     }
 
     @Override
-    public NtValue applyCall(NtValue[] input) {
-        if (input.length == 1 && input[0] instanceof CoreNumber) {
-            return CoreNumber.from(ApfloatMath.log(((CoreNumber) input[0]).toApfloat(), new Apfloat(10L)));
+    protected CoreNumber apply(final CoreNumber x) {
+        final double in = x.toDouble();
+        final double out = StrictMath.log10(in);
+        if (CoreNumber.isDoublePrecision(in, out)) {
+            return CoreNumber.exact(out);
         }
-        throw new DispatchException("base 10 logarithm", "Expected a number but got " + input.length);
+        return CoreNumber.from(ApfloatMath.log(x.toApfloat(), new Apfloat(10L)));
+    }
+
+    @Override
+    protected double applyDouble(final double x) {
+        return StrictMath.log10(x);
     }
 }
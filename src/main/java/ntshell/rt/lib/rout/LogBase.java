@@ -23,7 +23,6 @@ import com.ymcmp.ntshell.rte.DispatchException;
 import com.ymcmp.ntshell.value.CoreLambda;
 import com.ymcmp.ntshell.value.CoreNumber;
 
-import org.apfloat.Apfloat;
 import org.apfloat.ApfloatMath;
 
 /**
@@ -46,14 +45,22 @@ public final class LogBase extends CoreLambda {
     public NtValue applyCall(final NtValue[] params) {
         if (params.length == 1 && params[0] instanceof CoreNumber) {
             // log_base (10)(100) => 2
-            final Apfloat base = ((CoreNumber) params[0]).toApfloat();
-            return new CoreLambda(new CoreLambda.Info("$$base n log", "func(number) -> number", "Calculates the logarithm of a value with a predefined base")) {
+            final CoreNumber base = (CoreNumber) params[0];
+            final double logBase = StrictMath.log(base.toDouble());
+            return new UnaryNumericFunction(new CoreLambda.Info("$$base n log", "func(number) -> number  OR  func(mat) -> mat", "Calculates the logarithm of a value with a predefined base")) {
                 @Override
-                public NtValue applyCall(final NtValue[] params) {
-                    if (params.length == 1 && params[0] instanceof CoreNumber) {
-                        return CoreNumber.from(ApfloatMath.log(((CoreNumber) params[0]).toApfloat(), base));
+                protected CoreNumber apply(final CoreNumber x) {
+                    final double in = x.toDouble();
+                    final double out = StrictMath.log(in) / logBase;
+                    if (CoreNumber.isDoublePrecision(in, out)) {
+                        return CoreNumber.exact(out);
                     }
-                    throw new DispatchException("Expected one number but got " + params.length);
+                    return CoreNumber.from(ApfloatMath.log(x.toApfloat(), base.toApfloat()));
+                }
+
+                @Override
+                protected double applyDouble(final double x) {
+                    return StrictMath.log(x) / logBase;
                 }
             };
         }
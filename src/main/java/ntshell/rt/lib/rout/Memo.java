@@ -0,0 +1,57 @@
+/**
+ *     Copyright (C) 2017  Paul Teng
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program. If not, see <http://www.gnu.org/licenses/>.
+ */
+package ntshell.rt.lib.rout;
+
+import com.ymcmp.ntshell.NtValue;
+
+import com.ymcmp.ntshell.rte.DispatchException;
+
+import com.ymcmp.ntshell.value.CoreLambda;
+import com.ymcmp.ntshell.value.CoreNumber;
+import com.ymcmp.ntshell.value.MemoizedLambda;
+
+/**
+ *
+ * @author YTENG
+ */
+public final class Memo extends CoreLambda {
+
+    private static final Memo INSTANCE = new Memo();
+
+    private Memo() {
+        super(new CoreLambda.Info("memo", "func -> func OR func(f:func, capacity:number) -> func", "Returns a function that caches the results of (f) by its parameters, keeping the (capacity) most recently used ones. Assign the result to the name (f) calls itself by so recursive calls are cached too: <code>fib = memo(n -> ...)</code>"));
+    }
+
+    public static NtValue getInstance() {
+        return INSTANCE;
+    }
+
+    @Override
+    public NtValue applyCall(final NtValue[] input) {
+        if (input.length == 1 && input[0] instanceof CoreLambda) {
+            return new MemoizedLambda(input[0], MemoizedLambda.DEFAULT_CAPACITY);
+        }
+        if (input.length == 2 && input[0] instanceof CoreLambda && input[1] instanceof CoreNumber) {
+            final int capacity = ((CoreNumber) input[1]).toInt();
+            if (capacity < 1) {
+                throw new DispatchException("memo", "Capacity must be at least one, got " + input[1]);
+            }
+            return new MemoizedLambda(input[0], capacity);
+        }
+        throw new DispatchException("memo", "Expected a function optionally followed by a number, got " + input.length + " parameter(s) instead");
+    }
+}
@@ -0,0 +1,58 @@
+/**
+ *     Copyright (C) 2017  Paul Teng
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program. If not, see <http://www.gnu.org/licenses/>.
+ */
+package ntshell.rt.lib.rout;
+
+import com.ymcmp.ntshell.NtValue;
+
+import com.ymcmp.ntshell.rte.DispatchException;
+
+import com.ymcmp.ntshell.value.CoreAtom;
+import com.ymcmp.ntshell.value.CoreLambda;
+import com.ymcmp.ntshell.value.CoreMatrix;
+import com.ymcmp.ntshell.value.CoreNumber;
+import com.ymcmp.ntshell.value.MemoizedLambda;
+
+/**
+ *
+ * @author YTENG
+ */
+public final class MemoStats extends CoreLambda {
+
+    private static final MemoStats INSTANCE = new MemoStats();
+
+    private MemoStats() {
+        super(new CoreLambda.Info("memo_stats", "func -> mat", "Returns the cache statistics of a function created by memo as [key, value] rows: @hits, @misses, @size and @capacity"));
+    }
+
+    public static NtValue getInstance() {
+        return INSTANCE;
+    }
+
+    @Override
+    public NtValue applyCall(final NtValue[] input) {
+        if (input.length == 1 && input[0] instanceof MemoizedLambda) {
+            final MemoizedLambda f = (MemoizedLambda) input[0];
+            return CoreMatrix.from(new NtValue[][]{
+                {CoreAtom.from("hits"), CoreNumber.from(f.getHits())},
+                {CoreAtom.from("misses"), CoreNumber.from(f.getMisses())},
+                {CoreAtom.from("size"), CoreNumber.from(f.getSize())},
+                {CoreAtom.from("capacity"), CoreNumber.from(f.getCapacity())}
+            });
+        }
+        throw new DispatchException("memo_stats", "Expected a memoized function");
+    }
+}
@@ -18,8 +18,6 @@ package ntshell.rt.lib.rout;
 
 import com.ymcmp.ntshell.NtValue;
 
-import com.ymcmp.ntshell.rte.DispatchException;
-
 import com.ymcmp.ntshell.value.CoreLambda;
 import com.ymcmp.ntshell.value.CoreNumber;
 
@@ -29,12 +27,12 @@ import org.apfloat.ApfloatMath;
  *
  * @author YTENG
  */
-public final class NaturalLog extends CoreLambda {
+public final class NaturalLog extends UnaryNumericFunction {
 
     private static final NaturalLog INSTANCE = new NaturalLog();
 
     private NaturalLog() {
-        super(new CoreLambda.Info("natural logarithm", "number -> number", "Calculates the natural logarithm of a value"));
+        super(new CoreLambda.Info("natural logarithm", "number -> number  OR  mat -> mat", "Calculates the natural logarithm of a value"));
     }
 
     public static NtValue getInstance() {
@@ -42,10 +40,17 @@ public final class NaturalLog extends CoreLambda {
     }
 
     @Override
-    public NtValue applyCall(NtValue[] input) {
-        if (input.length == 1 && input[0] instanceof CoreNumber) {
-            return CoreNumber.from(ApfloatMath.log(((CoreNumber) input[0]).toApfloat()));
+    protected CoreNumber apply(final CoreNumber x) {
+        final double in = x.toDouble();
+        final double out = StrictMath.log(in);
+        if (CoreNumber.isDoublePrecision(in, out)) {
+            return CoreNumber.exact(out);
         }
-        throw new DispatchException("natural logarithm", "Expected a number but got " + input.length);
+        return CoreNumber.from(ApfloatMath.log(x.toApfloat()));
+    }
+
+    @Override
+    protected double applyDouble(final double x) {
+        return StrictMath.log(x);
     }
 }
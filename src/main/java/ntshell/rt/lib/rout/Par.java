@@ -0,0 +1,60 @@
+/**
+ *     Copyright (C) 2017  Paul Teng
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program. If not, see <http://www.gnu.org/licenses/>.
+ */
+package ntshell.rt.lib.rout;
+
+import com.ymcmp.ntshell.NtValue;
+
+import com.ymcmp.ntshell.rte.TailCallTrigger;
+
+import com.ymcmp.ntshell.value.CoreFuture;
+import com.ymcmp.ntshell.value.CoreLambda;
+import com.ymcmp.ntshell.value.CoreMatrix;
+
+/**
+ *
+ * @author YTENG
+ */
+public final class Par extends CoreLambda {
+
+    private static final Par INSTANCE = new Par();
+
+    private Par() {
+        super(new CoreLambda.Info("par", "func(...) -> mat", "Calls every parameter without parameters at the same time and returns the results as a row, in order. Pass lambdas without parameters or lazy values: <code>par(() -> f(1), lazy g(2))</code>"));
+    }
+
+    public static NtValue getInstance() {
+        return INSTANCE;
+    }
+
+    @Override
+    public NtValue applyCall(final NtValue[] input) {
+        if (input.length == 0) {
+            return CoreMatrix.getEmptyMatrix();
+        }
+        final CoreFuture[] futures = new CoreFuture[input.length];
+        for (int i = 1; i < input.length; ++i) {
+            futures[i] = CoreFuture.spawn(input[i]);
+        }
+        // The current thread would only wait, let it do the first one
+        final NtValue[] results = new NtValue[input.length];
+        results[0] = TailCallTrigger.call(input[0]);
+        for (int i = 1; i < input.length; ++i) {
+            results[i] = futures[i].await();
+        }
+        return CoreMatrix.from(new NtValue[][]{results});
+    }
+}
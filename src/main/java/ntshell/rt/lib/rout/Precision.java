@@ -0,0 +1,61 @@
+/**
+ *     Copyright (C) 2017  Paul Teng
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program. If not, see <http://www.gnu.org/licenses/>.
+ */
+package ntshell.rt.lib.rout;
+
+import com.ymcmp.ntshell.NtValue;
+
+import com.ymcmp.ntshell.rte.DispatchException;
+
+import com.ymcmp.ntshell.value.CoreLambda;
+import com.ymcmp.ntshell.value.CoreNumber;
+
+/**
+ *
+ * @author YTENG
+ */
+public final class Precision extends CoreLambda {
+
+    private static final Precision INSTANCE = new Precision();
+
+    private Precision() {
+        super(new CoreLambda.Info("precision", "() -> number OR number -> number", "Returns or changes the amount of digits inexact results are accurate to. Sessions served by the same process each have their own"));
+    }
+
+    public static NtValue getInstance() {
+        return INSTANCE;
+    }
+
+    @Override
+    public NtValue applyCall(final NtValue[] input) {
+        switch (input.length) {
+        case 0:
+            return CoreNumber.from(CoreNumber.getPrecision());
+        case 1:
+            if (input[0] instanceof CoreNumber) {
+                final int digits = ((CoreNumber) input[0]).toInt();
+                if (digits < 1) {
+                    throw new DispatchException("precision", "Precision must be at least one digit");
+                }
+                CoreNumber.setPrecision(digits);
+                return CoreNumber.from(digits);
+            }
+            break;
+        default:
+        }
+        throw new DispatchException("precision", "Expected nothing or a number but got " + input.length);
+    }
+}
@@ -18,25 +18,21 @@ package ntshell.rt.lib.rout;
 
 import com.ymcmp.ntshell.NtValue;
 
-import com.ymcmp.ntshell.rte.DispatchException;
-
 import com.ymcmp.ntshell.value.CoreLambda;
 import com.ymcmp.ntshell.value.CoreNumber;
 
-import org.apfloat.ApfloatMath;
-
-import java.math.RoundingMode;
+import java.math.BigInteger;
 
 /**
  *
  * @author YTENG
  */
-public final class Round extends CoreLambda {
+public final class Round extends UnaryNumericFunction {
 
     private static final Round INSTANCE = new Round();
 
     private Round() {
-        super(new CoreLambda.Info("round", "number -> number", "Rounds value to the nearest integer"));
+        super(new CoreLambda.Info("round", "number -> number  OR  mat -> mat", "Rounds value to the nearest integer"));
     }
 
     public static NtValue getInstance() {
@@ -44,10 +40,18 @@ public final class Round extends CoreLambda {
     }
 
     @Override
-    public NtValue applyCall(final NtValue[] input) {
-        if (input.length == 1 && input[0] instanceof CoreNumber) {
-            return CoreNumber.from(ApfloatMath.round(((CoreNumber) input[0]).toApfloat(), 0, RoundingMode.HALF_UP));
-        }
-        throw new DispatchException("round", "Expected a number but got " + input.length);
+    protected CoreNumber apply(final CoreNumber x) {
+        // floor(|n/d| + 1/2) = floor((2|n| + d) / 2d), then put the sign back
+        final BigInteger d = x.getDenominator();
+        final BigInteger r = x.getNumerator().abs().shiftLeft(1).add(d).divide(d.shiftLeft(1));
+        return CoreNumber.from(x.isNegative() ? r.negate() : r, BigInteger.ONE);
+    }
+
+    @Override
+    protected double applyDouble(final double x) {
+        // Half up rounds halves away from zero, unlike Math.round
+        final double abs = Math.abs(x);
+        final double floor = Math.floor(abs);
+        return Math.copySign(abs - floor >= 0.5 ? floor + 1 : floor, x);
     }
 }
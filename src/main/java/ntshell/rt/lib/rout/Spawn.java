@@ -0,0 +1,51 @@
+/**
+ *     Copyright (C) 2017  Paul Teng
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program. If not, see <http://www.gnu.org/licenses/>.
+ */
+package ntshell.rt.lib.rout;
+
+import com.ymcmp.ntshell.NtValue;
+
+import com.ymcmp.ntshell.rte.DispatchException;
+
+import com.ymcmp.ntshell.value.CoreFuture;
+import com.ymcmp.ntshell.value.CoreLambda;
+
+import java.util.Arrays;
+
+/**
+ *
+ * @author YTENG
+ */
+public final class Spawn extends CoreLambda {
+
+    private static final Spawn INSTANCE = new Spawn();
+
+    private Spawn() {
+        super(new CoreLambda.Info("spawn", "func(f:[applyCall], ...) -> future", "Calls (f) with the remaining parameters in the background and returns a future of the result. (f) sees the variables as they were when it was spawned. Use <code>await</code> to get the result"));
+    }
+
+    public static NtValue getInstance() {
+        return INSTANCE;
+    }
+
+    @Override
+    public NtValue applyCall(final NtValue[] input) {
+        if (input.length == 0) {
+            throw new DispatchException("spawn", "Expected a function followed by its parameters");
+        }
+        return CoreFuture.spawn(input[0], Arrays.copyOfRange(input, 1, input.length));
+    }
+}
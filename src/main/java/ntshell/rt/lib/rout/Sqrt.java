@@ -18,8 +18,6 @@ package ntshell.rt.lib.rout;
 
 import com.ymcmp.ntshell.NtValue;
 
-import com.ymcmp.ntshell.rte.DispatchException;
-
 import com.ymcmp.ntshell.value.CoreLambda;
 import com.ymcmp.ntshell.value.CoreNumber;
 
@@ -27,12 +25,12 @@ import com.ymcmp.ntshell.value.CoreNumber;
  *
  * @author YTENG
  */
-public final class Sqrt extends CoreLambda {
+public final class Sqrt extends UnaryNumericFunction {
 
     private static final Sqrt INSTANCE = new Sqrt();
 
     private Sqrt() {
-        super(new CoreLambda.Info("square root", "number -> number", "Calculates the square root of a value"));
+        super(new CoreLambda.Info("square root", "number -> number  OR  mat -> mat", "Calculates the square root of a value"));
     }
 
     public static NtValue getInstance() {
@@ -40,10 +38,12 @@ public final class Sqrt extends CoreLambda {
     }
 
     @Override
-    public NtValue applyCall(final NtValue[] input) {
-        if (input.length == 1 && input[0] instanceof CoreNumber) {
-            return ((CoreNumber) input[0]).applyPow(CoreNumber.HALF);
-        }
-        throw new DispatchException("square root", "Expected a number but got " + input.length);
+    protected CoreNumber apply(final CoreNumber x) {
+        return (CoreNumber) x.applyPow(CoreNumber.HALF);
+    }
+
+    @Override
+    protected double applyDouble(final double x) {
+        return Math.sqrt(x);
     }
 }
@@ -18,8 +18,6 @@ package ntshell.rt.lib.rout;
 
 import com.ymcmp.ntshell.NtValue;
 
-import com.ymcmp.ntshell.rte.DispatchException;
-
 import com.ymcmp.ntshell.value.CoreLambda;
 import com.ymcmp.ntshell.value.CoreNumber;
 
@@ -27,12 +25,12 @@ import com.ymcmp.ntshell.value.CoreNumber;
  *
  * @author YTENG
  */
-public final class Square extends CoreLambda {
+public final class Square extends UnaryNumericFunction {
 
     private static final Square INSTANCE = new Square();
 
     private Square() {
-        super(new CoreLambda.Info("square", "number -> number", "Calculates the square of a value"));
+        super(new CoreLambda.Info("square", "number -> number  OR  mat -> mat", "Calculates the square of a value"));
     }
 
     public static NtValue getInstance() {
@@ -40,10 +38,12 @@ public final class Square extends CoreLambda {
     }
 
     @Override
-    public NtValue applyCall(final NtValue[] input) {
-        if (input.length == 1 && input[0] instanceof CoreNumber) {
-            return ((CoreNumber) input[0]).applyPow(CoreNumber.TWO);
-        }
-        throw new DispatchException("square", "Expected a number but got " + input.length);
+    protected CoreNumber apply(final CoreNumber x) {
+        return (CoreNumber) x.applyPow(CoreNumber.TWO);
+    }
+
+    @Override
+    protected double applyDouble(final double x) {
+        return x * x;
     }
 }
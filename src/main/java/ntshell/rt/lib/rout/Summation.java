@@ -20,11 +20,32 @@ import com.ymcmp.ntshell.NtValue;
 
 import com.ymcmp.ntshell.rte.DispatchException;
 import com.ymcmp.ntshell.rte.TailCallTrigger;
+import com.ymcmp.ntshell.rte.TaskScope;
 
+import com.ymcmp.ntshell.value.CoreAtom;
 import com.ymcmp.ntshell.value.CoreLambda;
 import com.ymcmp.ntshell.value.CoreNumber;
+import com.ymcmp.ntshell.value.CoreRope;
+
+import java.math.BigInteger;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveTask;
 
 /**
+ * Summations are evaluated in one of the following ways:
+ * <ul>
+ * <li>If (f) is a polynomial and the bounds are integers, the sum is
+ * calculated with Faulhaber's formula in constant time.</li>
+ * <li>If (f) is pure and the range is large, the range is split and summed
+ * on the fork-join pool.</li>
+ * <li>Otherwise (f) is called for every value in the range in order.</li>
+ * </ul>
+ * {@code summation(f, @kahan)} sums with doubles using Kahan's compensated
+ * summation instead, which is faster for inexact terms.
  *
  * @author YTENG
  */
@@ -32,8 +53,26 @@ public final class Summation extends CoreLambda {
 
     private static final Summation INSTANCE = new Summation();
 
+    /**
+     * Ranges with at least this many terms are summed in parallel
+     */
+    private static final long PARALLEL_THRESHOLD = 10000;
+
+    /**
+     * Parallel sums stop splitting below this many terms
+     */
+    private static final long LEAF_SIZE = 1024;
+
+    private static final BigInteger LONG_MIN = BigInteger.valueOf(Long.MIN_VALUE);
+    private static final BigInteger LONG_MAX = BigInteger.valueOf(Long.MAX_VALUE);
+
+    /**
+     * Bernoulli numbers with B(1) = +1/2, calculated as needed
+     */
+    private static final List<CoreNumber> BERNOULLI = new ArrayList<>();
+
     private Summation() {
-        super(new CoreLambda.Info("summation", "f:[applyCall] -> func", "Wraps (f) inside a summation sequence"));
+        super(new CoreLambda.Info("summation", "f:[applyCall] -> func OR (f:[applyCall], @kahan) -> func", "Wraps (f) inside a summation sequence"));
     }
 
     public static NtValue getInstance() {
@@ -43,36 +82,205 @@ public final class Summation extends CoreLambda {
     @Override
     public NtValue applyCall(final NtValue[] f) {
         // summation (f)(m, n) => while ++m <= n { ret += f(m); }
-        if (f.length == 1) {
-            return new CoreLambda(new CoreLambda.Info("$$summation", "func(start:number, end:number) -> [applyAdd]", "Performs summation from (start) to (end) with the increment of 1")) {
-                @Override
-                public NtValue applyCall(final NtValue[] params) {
-                    final CoreNumber n;
-                    CoreNumber m;
-                    if (params.length == 2
-                            && params[0] instanceof CoreNumber
-                            && params[1] instanceof CoreNumber) {
-                        m = ((CoreNumber) params[0]);
-                        n = ((CoreNumber) params[1]);
-
-                        NtValue ret = null;
-                        // Do summation here
-                        do {
-                            NtValue t = TailCallTrigger.call(f[0], m);
-                            if (ret == null) {
-                                ret = t;
-                            } else {
-                                ret = ret.applyAdd(t);
-                            }
-                            m = m.addOne();
-                        } while (m.compareTo(n) <= 0);
-                        // ret should never be null at this point
-                        return ret;
+        switch (f.length) {
+        case 1:
+            return sequence(f[0], false);
+        case 2:
+            if ((f[1] instanceof CoreAtom || f[1] instanceof CoreRope) && "kahan".equals(f[1].toString())) {
+                return sequence(f[0], true);
+            }
+            throw new DispatchException("summation", "Unknown summation mode " + f[1]);
+        default:
+        }
+        throw new DispatchException("summation", "Expected one or two parameters, got " + f.length + " instead");
+    }
+
+    private static NtValue sequence(final NtValue f, final boolean kahan) {
+        return new CoreLambda(new CoreLambda.Info("$$summation", "func(start:number, end:number) -> [applyAdd]", "Performs summation from (start) to (end) with the increment of 1")) {
+            @Override
+            public NtValue applyCall(final NtValue[] params) {
+                if (params.length == 2
+                        && params[0] instanceof CoreNumber
+                        && params[1] instanceof CoreNumber) {
+                    final CoreNumber m = (CoreNumber) params[0];
+                    final CoreNumber n = (CoreNumber) params[1];
+                    if (kahan) {
+                        return kahanSum(f, m, n);
+                    }
+                    if (m.isInteger() && n.isInteger() && m.compareTo(n) <= 0) {
+                        return integerSum(f, m, n);
                     }
-                    throw new DispatchException("Expected two numbers, got " + params.length + " instead");
+                    return sequentialSum(f, m, n);
+                }
+                throw new DispatchException("Expected two numbers, got " + params.length + " instead");
+            }
+        };
+    }
+
+    private static NtValue integerSum(final NtValue f, final CoreNumber m, final CoreNumber n) {
+        if (f instanceof CoreLambda) {
+            final CoreLambda lambda = (CoreLambda) f;
+            final CoreNumber[] poly = lambda.getPolynomial();
+            if (poly != null) {
+                return faulhaber(poly, m, n);
+            }
+
+            final BigInteger lo = m.toDecimal(0).toBigIntegerExact();
+            final BigInteger hi = n.toDecimal(0).toBigIntegerExact();
+            if (lo.compareTo(LONG_MIN) > 0 && hi.compareTo(LONG_MAX) < 0
+                    && hi.subtract(lo).compareTo(BigInteger.valueOf(PARALLEL_THRESHOLD)) >= 0
+                    && lambda.isPure()) {
+                return ForkJoinPool.commonPool().invoke(new RangeSum(f, lo.longValue(), hi.longValue()));
+            }
+        }
+        return sequentialSum(f, m, n);
+    }
+
+    private static NtValue sequentialSum(final NtValue f, CoreNumber m, final CoreNumber n) {
+        NtValue ret = null;
+        // Do summation here
+        do {
+            NtValue t = TailCallTrigger.call(f, m);
+            if (ret == null) {
+                ret = t;
+            } else {
+                ret = ret.applyAdd(t);
+            }
+            m = m.addOne();
+        } while (m.compareTo(n) <= 0);
+        // ret should never be null at this point
+        return ret;
+    }
+
+    private static NtValue kahanSum(final NtValue f, CoreNumber m, final CoreNumber n) {
+        double sum = 0;
+        double compensation = 0;
+        do {
+            final NtValue t = TailCallTrigger.call(f, m);
+            if (!(t instanceof CoreNumber)) {
+                throw new DispatchException("summation", "Kahan summation only works on numbers");
+            }
+            final double y = ((CoreNumber) t).toDouble() - compensation;
+            final double next = sum + y;
+            compensation = (next - sum) - y;
+            sum = next;
+            m = m.addOne();
+        } while (m.compareTo(n) <= 0);
+        return CoreNumber.exact(sum);
+    }
+
+    /**
+     * Sums a range of integers by splitting it in half until the halves are
+     * small enough. Only used on pure functions, so the terms can be
+     * calculated in any order. The terms are calculated in the
+     * {@link TaskScope} the sum was started from.
+     */
+    private static final class RangeSum extends RecursiveTask<NtValue> {
+
+        private static final long serialVersionUID = 1L;
+
+        private final TaskScope scope = TaskScope.current();
+        private final NtValue f;
+        private final long lo;
+        private final long hi;
+
+        RangeSum(final NtValue f, final long lo, final long hi) {
+            this.f = f;
+            this.lo = lo;
+            this.hi = hi;
+        }
+
+        @Override
+        protected NtValue compute() {
+            return TaskScope.runIn(scope, this::computeInScope);
+        }
+
+        private NtValue computeInScope() {
+            if (hi - lo < LEAF_SIZE) {
+                NtValue ret = TailCallTrigger.call(f, CoreNumber.from(lo));
+                for (long i = lo + 1; i <= hi; ++i) {
+                    ret = ret.applyAdd(TailCallTrigger.call(f, CoreNumber.from(i)));
+                }
+                return ret;
+            }
+
+            final long mid = lo + (hi - lo) / 2;
+            final RangeSum left = new RangeSum(f, lo, mid);
+            final RangeSum right = new RangeSum(f, mid + 1, hi);
+            left.fork();
+            final NtValue rhs = right.compute();
+            return left.join().applyAdd(rhs);
+        }
+    }
+
+    /**
+     * Sums a polynomial from m to n (both integers). With F(x) being the sum
+     * from 1 to x, the result is F(n) - F(m - 1), which holds for any integer
+     * bounds since F(x) - F(x - 1) = p(x).
+     *
+     * @param poly The coefficients of the polynomial, lowest degree first
+     * @param m The lower bound
+     * @param n The upper bound
+     * @return The sum
+     */
+    private static NtValue faulhaber(final CoreNumber[] poly, final CoreNumber m, final CoreNumber n) {
+        final CoreNumber before = (CoreNumber) m.applySub(CoreNumber.ONE);
+        NtValue ret = CoreNumber.ZERO;
+        for (int j = 0; j < poly.length; ++j) {
+            if (poly[j].isTruthy()) {
+                final NtValue powerSum = powerSum(j, n).applySub(powerSum(j, before));
+                ret = ret.applyAdd(poly[j].applyMul(powerSum));
+            }
+        }
+        return ret;
+    }
+
+    /**
+     * Faulhaber's formula: the sum of k^p for k from 1 to x is
+     * {@code 1/(p+1) * sum(i = 0..p, C(p+1, i) * B(i) * x^(p+1-i))}.
+     *
+     * @param p The power
+     * @param x The upper bound
+     * @return The sum
+     */
+    private static NtValue powerSum(final int p, final CoreNumber x) {
+        NtValue ret = CoreNumber.ZERO;
+        BigInteger binomial = BigInteger.ONE;
+        for (int i = 0; i <= p; ++i) {
+            final CoreNumber b = bernoulli(i);
+            if (b.isTruthy()) {
+                final NtValue term = CoreNumber.from(binomial, BigInteger.ONE)
+                        .applyMul(b)
+                        .applyMul(x.applyPow(CoreNumber.from(p + 1 - i)));
+                ret = ret.applyAdd(term);
+            }
+            // C(p+1, i+1) = C(p+1, i) * (p+1-i) / (i+1)
+            binomial = binomial.multiply(BigInteger.valueOf(p + 1 - i)).divide(BigInteger.valueOf(i + 1));
+        }
+        return ret.applyDiv(CoreNumber.from(p + 1));
+    }
+
+    private static CoreNumber bernoulli(final int i) {
+        synchronized (BERNOULLI) {
+            // B(m) = -1/(m+1) * sum(k = 0..m-1, C(m+1, k) * B(k))
+            while (BERNOULLI.size() <= i) {
+                final int m = BERNOULLI.size();
+                if (m == 0) {
+                    BERNOULLI.add(CoreNumber.ONE);
+                    continue;
+                }
+                NtValue acc = CoreNumber.ZERO;
+                BigInteger binomial = BigInteger.ONE;
+                for (int k = 0; k < m; ++k) {
+                    // B(1) is stored as +1/2, the recurrence needs -1/2
+                    final CoreNumber b = k == 1 ? CoreNumber.from(-1, 2) : BERNOULLI.get(k);
+                    acc = acc.applyAdd(CoreNumber.from(binomial, BigInteger.ONE).applyMul(b));
+                    binomial = binomial.multiply(BigInteger.valueOf(m + 1 - k)).divide(BigInteger.valueOf(k + 1));
                 }
-            };
+                final CoreNumber bm = (CoreNumber) acc.applyDiv(CoreNumber.from(-(m + 1)));
+                BERNOULLI.add(m == 1 ? bm.applyNegative() : bm);
+            }
+            return BERNOULLI.get(i);
         }
-        throw new DispatchException("summation", "Expected one parameter, got " + f.length + " instead");
     }
 }
@@ -0,0 +1,97 @@
+/**
+ *     Copyright (C) 2017  Paul Teng
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program. If not, see <http://www.gnu.org/licenses/>.
+ */
+package ntshell.rt.lib.rout;
+
+import com.ymcmp.ntshell.NtValue;
+
+import com.ymcmp.ntshell.rte.DispatchException;
+
+import com.ymcmp.ntshell.value.CoreAtom;
+import com.ymcmp.ntshell.value.CoreLambda;
+import com.ymcmp.ntshell.value.CoreMatrix;
+import com.ymcmp.ntshell.value.CoreNumber;
+import com.ymcmp.ntshell.value.CoreRope;
+import com.ymcmp.ntshell.value.CoreSequence;
+import com.ymcmp.ntshell.value.DoubleMatrix;
+
+/**
+ * A function of one number that also applies to every cell of a matrix and
+ * every element of a sequence. {@code sin([0, pi])} is the same as
+ * {@code map([0, pi])(sin)} but skips the call dispatch per cell, and
+ * matrices of doubles are mapped in a primitive loop without converting the
+ * cells. Large matrices are mapped in parallel.
+ *
+ * @author YTENG
+ */
+public abstract class UnaryNumericFunction extends CoreLambda {
+
+    protected UnaryNumericFunction(final CoreLambda.Info info) {
+        super(info);
+    }
+
+    /**
+     * Applies the function on one number. Infinities and NaN never get here,
+     * they go through {@link #applyDouble(double)} so they are handled the
+     * same way as in a matrix of doubles.
+     *
+     * @param x The number, always finite
+     * @return The result
+     */
+    protected abstract CoreNumber apply(CoreNumber x);
+
+    /**
+     * Applies the function on one cell of a {@link DoubleMatrix}. Matrices of
+     * doubles are approximations, so the result only needs to be as precise
+     * as a double.
+     *
+     * @param x The cell
+     * @return The result
+     */
+    protected double applyDouble(final double x) {
+        return apply(CoreNumber.exact(x)).toDouble();
+    }
+
+    @Override
+    public NtValue applyCall(final NtValue[] input) {
+        if (input.length == 1) {
+            return broadcast(input[0]);
+        }
+        throw new DispatchException(info.name, "Expected a number but got " + input.length);
+    }
+
+    private NtValue broadcast(final NtValue x) {
+        if (x instanceof CoreNumber) {
+            final CoreNumber num = (CoreNumber) x;
+            return num.isFinite() ? apply(num) : CoreNumber.exact(applyDouble(num.toDouble()));
+        }
+        if (x instanceof DoubleMatrix) {
+            return ((DoubleMatrix) x).mapDouble(this::applyDouble);
+        }
+        if (x instanceof CoreMatrix && !(x instanceof CoreAtom) && !(x instanceof CoreRope)) {
+            return ((CoreMatrix) x).mapPure(this::broadcast);
+        }
+        if (x instanceof CoreSequence) {
+            return ((CoreSequence) x).map(this);
+        }
+        throw new DispatchException(info.name, "Expected a number or a matrix but got " + x.getClass().getSimpleName());
+    }
+
+    @Override
+    public boolean isPure() {
+        return true;
+    }
+}
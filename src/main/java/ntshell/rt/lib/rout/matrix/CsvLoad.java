@@ -0,0 +1,272 @@
+/**
+ *     Copyright (C) 2017  Paul Teng
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program. If not, see <http://www.gnu.org/licenses/>.
+ */
+package ntshell.rt.lib.rout.matrix;
+
+import com.ymcmp.ntshell.NtValue;
+
+import com.ymcmp.ntshell.rte.DispatchException;
+import com.ymcmp.ntshell.rte.TailCallTrigger;
+
+import com.ymcmp.ntshell.value.CoreAtom;
+import com.ymcmp.ntshell.value.CoreLambda;
+import com.ymcmp.ntshell.value.CoreMatrix;
+import com.ymcmp.ntshell.value.CoreNumber;
+import com.ymcmp.ntshell.value.CoreRope;
+import com.ymcmp.ntshell.value.CoreSequence;
+import com.ymcmp.ntshell.value.CoreUnit;
+import com.ymcmp.ntshell.value.DoubleMatrix;
+
+import java.io.IOException;
+
+import java.math.BigInteger;
+
+import java.nio.file.InvalidPathException;
+import java.nio.file.Paths;
+
+/**
+ * Options are passed as a matrix with one [key, value] row per option:
+ * <ul>
+ * <li>{@code @columns}: a column number or a row of column numbers to
+ * keep, in the order they should appear</li>
+ * <li>{@code @limit}: the maximum amount of rows to read</li>
+ * <li>{@code @header}: skips the first line if true</li>
+ * <li>{@code @separator}: the field separator, a comma by default</li>
+ * <li>{@code @chunk}: reads the file this many rows at a time, see
+ * below</li>
+ * </ul>
+ * In chunk mode, a function is returned instead of a matrix. Calling it
+ * without parameters returns the next chunk of rows, or unit once the file
+ * is exhausted. Calling it with an accumulator and an initial value folds
+ * the accumulator over the remaining chunks. The file stays open until the
+ * last chunk is read.
+ * <p>
+ * With {@code @stream} set to true, a lazy sequence of the rows (or of the
+ * chunks if {@code @chunk} is given) is returned instead. The file is only
+ * opened when the sequence is consumed, and every pass reads it again.
+ *
+ * @author YTENG
+ */
+final class CsvLoad extends CoreLambda {
+
+    public CsvLoad() {
+        super(new CoreLambda.Info("csv_load", "path:atom -> mat OR func(path:atom, opts:mat) -> any", "Loads the numbers of a CSV file into a matrix. Fields that are not numbers become NaN. (opts) has one [key, value] row per option: @columns, @limit, @header, @separator, @chunk and @stream."));
+    }
+
+    @Override
+    public NtValue applyCall(final NtValue[] params) {
+        if ((params.length == 1 || params.length == 2 && params[1] instanceof CoreMatrix)
+                && (params[0] instanceof CoreAtom || params[0] instanceof CoreRope)) {
+            int[] columns = null;
+            long limit = Long.MAX_VALUE;
+            boolean header = false;
+            char separator = ',';
+            long chunk = 0;
+            boolean stream = false;
+
+            final CoreMatrix opts = params.length == 2 ? (CoreMatrix) params[1] : CoreMatrix.getEmptyMatrix();
+            if (opts.getRowCount() > 0 && opts.getColumnCount() != 2) {
+                throw new DispatchException("csv_load", "Expected one [key, value] row per option");
+            }
+            for (int i = 0; i < opts.getRowCount(); ++i) {
+                final NtValue val = opts.getCell(i, 1);
+                switch (opts.getCell(i, 0).toString()) {
+                case "columns":
+                    columns = toColumns(val);
+                    break;
+                case "limit":
+                    limit = toCount("limit", val);
+                    break;
+                case "header":
+                    header = val.isTruthy();
+                    break;
+                case "separator":
+                    if (!(val instanceof CoreAtom || val instanceof CoreRope) || ((CoreMatrix) val).getColumnCount() != 1) {
+                        throw new DispatchException("csv_load", "Expected a single character as separator");
+                    }
+                    separator = val.toString().charAt(0);
+                    if (separator > 0x7F || separator == '"' || separator == '\n' || separator == '\r') {
+                        throw new DispatchException("csv_load", "Unsupported separator " + separator);
+                    }
+                    break;
+                case "chunk":
+                    chunk = toCount("chunk", val);
+                    if (chunk == 0) {
+                        throw new DispatchException("csv_load", "Chunks must have at least one row");
+                    }
+                    break;
+                case "stream":
+                    stream = val.isTruthy();
+                    break;
+                default:
+                    throw new DispatchException("csv_load", "Unknown option " + opts.getCell(i, 0));
+                }
+            }
+
+            final CsvReader reader;
+            try {
+                reader = new CsvReader(Paths.get(params[0].toString()), separator, columns, header, limit);
+            } catch (IOException | InvalidPathException ex) {
+                return CoreUnit.getInstance();
+            } catch (IllegalArgumentException ex) {
+                throw new DispatchException("csv_load", ex.getMessage());
+            }
+            if (stream) {
+                try {
+                    reader.close();
+                } catch (IOException ex) {
+                }
+                return new Rows(params[0].toString(), separator, columns, header, limit, Math.max(1, chunk));
+            }
+            if (chunk > 0) {
+                return new Chunks(reader, chunk);
+            }
+            try (final CsvReader r = reader) {
+                final DoubleMatrix mat = r.read(Long.MAX_VALUE);
+                return mat == null ? CoreMatrix.getEmptyMatrix() : mat;
+            } catch (IOException ex) {
+                throw new DispatchException("csv_load", ex.getMessage());
+            }
+        }
+        throw new DispatchException("csv_load", "Expected an atom optionally followed by a matrix, got " + params.length + " instead");
+    }
+
+    private static int[] toColumns(final NtValue val) {
+        if (val instanceof CoreNumber) {
+            return new int[]{((CoreNumber) val).toInt() - 1};
+        }
+        if (val instanceof CoreMatrix && ((CoreMatrix) val).getRowCount() == 1) {
+            final CoreMatrix mat = (CoreMatrix) val;
+            final int[] columns = new int[mat.getColumnCount()];
+            for (int i = 0; i < columns.length; ++i) {
+                if (!(mat.getCell(0, i) instanceof CoreNumber)) {
+                    throw new DispatchException("csv_load", "Expected column numbers");
+                }
+                columns[i] = ((CoreNumber) mat.getCell(0, i)).toInt() - 1;
+            }
+            return columns;
+        }
+        throw new DispatchException("csv_load", "Expected a column number or a row of column numbers");
+    }
+
+    private static long toCount(final String option, final NtValue val) {
+        if (val instanceof CoreNumber && ((CoreNumber) val).isInteger() && !((CoreNumber) val).isNegative()) {
+            return ((CoreNumber) val).getNumerator().min(BigInteger.valueOf(Long.MAX_VALUE)).longValue();
+        }
+        throw new DispatchException("csv_load", "Expected a non-negative integer for " + option);
+    }
+
+    private static final class Rows extends CoreSequence {
+
+        private final String path;
+        private final char separator;
+        private final int[] columns;
+        private final boolean header;
+        private final long limit;
+        private final long size;
+
+        Rows(final String path, final char separator, final int[] columns, final boolean header, final long limit, final long size) {
+            this.path = path;
+            this.separator = separator;
+            this.columns = columns;
+            this.header = header;
+            this.limit = limit;
+            this.size = size;
+        }
+
+        @Override
+        public Cursor open() {
+            final CsvReader reader;
+            try {
+                reader = new CsvReader(Paths.get(path), separator, columns, header, limit);
+            } catch (IOException ex) {
+                throw new DispatchException("csv_load", ex.getMessage());
+            }
+            return new Cursor() {
+                @Override
+                public NtValue next() {
+                    try {
+                        return reader.read(size);
+                    } catch (IOException ex) {
+                        throw new DispatchException("csv_load", ex.getMessage());
+                    }
+                }
+
+                @Override
+                public void close() {
+                    try {
+                        reader.close();
+                    } catch (IOException ex) {
+                    }
+                }
+            };
+        }
+    }
+
+    private static final class Chunks extends CoreLambda {
+
+        private final CsvReader reader;
+        private final long size;
+        private boolean done;
+
+        Chunks(final CsvReader reader, final long size) {
+            super(new CoreLambda.Info("$$csv_load", "() -> mat OR func(f:[applyCall], init:any) -> any", "Returns the next chunk of rows, or unit if there are none left. With (f) and (init), folds (f) over the remaining chunks."));
+            this.reader = reader;
+            this.size = size;
+        }
+
+        private synchronized NtValue nextChunk() {
+            if (done) {
+                return null;
+            }
+            try {
+                final DoubleMatrix mat = reader.read(size);
+                if (mat == null) {
+                    done = true;
+                    reader.close();
+                }
+                return mat;
+            } catch (IOException ex) {
+                done = true;
+                try {
+                    reader.close();
+                } catch (IOException ignored) {
+                }
+                throw new DispatchException("csv_load", ex.getMessage());
+            }
+        }
+
+        @Override
+        public NtValue applyCall(final NtValue[] params) {
+            switch (params.length) {
+            case 0: {
+                final NtValue mat = nextChunk();
+                return mat == null ? CoreUnit.getInstance() : mat;
+            }
+            case 2: {
+                NtValue acc = params[1];
+                NtValue mat;
+                while ((mat = nextChunk()) != null) {
+                    acc = TailCallTrigger.call(params[0], acc, mat);
+                }
+                return acc;
+            }
+            default:
+            }
+            throw new DispatchException("Expected no parameters or an accumulator and an initial value, got " + params.length + " instead");
+        }
+    }
+}
@@ -0,0 +1,430 @@
+/**
+ *     Copyright (C) 2017  Paul Teng
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program. If not, see <http://www.gnu.org/licenses/>.
+ */
+package ntshell.rt.lib.rout.matrix;
+
+import com.ymcmp.ntshell.value.DoubleMatrix;
+
+import java.io.Closeable;
+import java.io.IOException;
+
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+
+import java.util.Arrays;
+
+/**
+ * Reads numeric CSV files into {@link DoubleMatrix}es. The file is read
+ * through a large buffer and numbers are scanned straight from the bytes,
+ * nothing is allocated per cell unless a number is too long or too precise
+ * to be converted exactly on the fast path.
+ *
+ * <p>
+ * Fields that are empty or not numbers become NaN, as do missing fields at
+ * the end of a short row. Unless columns are selected, the first row decides
+ * the width of the result and extra fields of longer rows are dropped. Fields in double quotes may contain the separator
+ * and doubled quotes.
+ *
+ * @author YTENG
+ */
+final class CsvReader implements Closeable {
+
+    private static final int BUFFER_SIZE = 1 << 20;
+
+    /**
+     * Powers of ten that are exact as doubles
+     */
+    private static final double[] POW10 = new double[23];
+
+    static {
+        POW10[0] = 1;
+        for (int i = 1; i < POW10.length; ++i) {
+            POW10[i] = POW10[i - 1] * 10;
+        }
+    }
+
+    private final FileChannel channel;
+    private final ByteBuffer buf;
+    private final byte separator;
+
+    /**
+     * {@code slots[c]} is the column in the result of column c of the file,
+     * or -1 if the column is skipped. Null means all columns are kept.
+     */
+    private int[] slots;
+    /**
+     * The amount of columns of the result, zero until the first row is seen
+     */
+    private int width;
+    private long remaining;
+    private boolean eof;
+
+    /**
+     * Scratch space for fields that have to go through the slow path
+     */
+    private byte[] field = new byte[64];
+
+    /**
+     * Opens a CSV file
+     *
+     * @param path The file
+     * @param separator The field separator
+     * @param columns The columns to keep (starting from zero) in the order
+     * they appear in the result, null to keep all columns
+     * @param header true if the first line should be skipped
+     * @param limit The maximum amount of rows to read
+     * @throws IOException If the file cannot be opened
+     * @throws IllegalArgumentException If a column is selected more than
+     * once
+     */
+    CsvReader(final Path path, final char separator, final int[] columns, final boolean header, final long limit) throws IOException {
+        this.channel = FileChannel.open(path, StandardOpenOption.READ);
+        this.buf = ByteBuffer.allocateDirect(BUFFER_SIZE);
+        this.buf.limit(0);
+        this.separator = (byte) separator;
+        this.remaining = limit;
+
+        if (columns != null) {
+            int max = 0;
+            for (final int c : columns) {
+                if (c < 0) {
+                    throw new IllegalArgumentException("Column " + (c + 1) + " does not exist");
+                }
+                max = Math.max(max, c + 1);
+            }
+            slots = new int[max];
+            Arrays.fill(slots, -1);
+            for (int i = 0; i < columns.length; ++i) {
+                if (slots[columns[i]] >= 0) {
+                    throw new IllegalArgumentException("Column " + (columns[i] + 1) + " is selected more than once");
+                }
+                slots[columns[i]] = i;
+            }
+            width = columns.length;
+        }
+
+        if (header) {
+            skipLine();
+        }
+    }
+
+    /**
+     * Reads the next rows of the file
+     *
+     * @param maxRows The maximum amount of rows to read
+     * @return The rows, or null if there are no rows left
+     * @throws IOException If the file cannot be read
+     */
+    DoubleMatrix read(final long maxRows) throws IOException {
+        double[] data = null;
+        int rows = 0;
+        while (rows < maxRows && remaining > 0) {
+            if (!skipBlankLines()) {
+                break;
+            }
+            if (slots == null && width == 0) {
+                // The first row of the file decides how many columns there
+                // are, later rows and chunks keep that width
+                width = countFields();
+            }
+            if (data == null) {
+                data = new double[(int) Math.max(width, Math.min((long) width * Math.min(maxRows, remaining), 1 << 16))];
+            }
+            final int offset = rows * width;
+            if ((long) offset + width > Integer.MAX_VALUE - 8) {
+                throw new IOException("Too many cells to fit in one matrix");
+            }
+            if (offset + width > data.length) {
+                data = Arrays.copyOf(data, (int) Math.min(Integer.MAX_VALUE - 8L, Math.max((long) data.length * 2, offset + width)));
+            }
+            readRow(data, offset);
+            ++rows;
+            --remaining;
+        }
+        if (rows == 0) {
+            return null;
+        }
+        return DoubleMatrix.wrap(rows, width, data.length == rows * width ? data : Arrays.copyOf(data, rows * width));
+    }
+
+    /**
+     * Makes sure there is at least one byte to read
+     *
+     * @return false if the end of the file is reached
+     */
+    private boolean fill() throws IOException {
+        if (buf.hasRemaining()) {
+            return true;
+        }
+        if (eof) {
+            return false;
+        }
+        buf.clear();
+        while (buf.position() == 0) {
+            if (channel.read(buf) < 0) {
+                eof = true;
+                break;
+            }
+        }
+        buf.flip();
+        return buf.hasRemaining();
+    }
+
+    private int peek() throws IOException {
+        return fill() ? buf.get(buf.position()) & 0xFF : -1;
+    }
+
+    private int next() throws IOException {
+        return fill() ? buf.get() & 0xFF : -1;
+    }
+
+    private void skipLine() throws IOException {
+        int b;
+        do {
+            b = next();
+        } while (b != '\n' && b != -1);
+    }
+
+    /**
+     * @return false if the end of the file is reached
+     */
+    private boolean skipBlankLines() throws IOException {
+        while (true) {
+            final int b = peek();
+            if (b == -1) {
+                return false;
+            }
+            if (b != '\n' && b != '\r') {
+                return true;
+            }
+            buf.get();
+        }
+    }
+
+    /**
+     * Counts the fields of the next row without consuming it. The row has to
+     * fit in the buffer, which it does unless it is longer than the buffer.
+     */
+    private int countFields() throws IOException {
+        if (buf.remaining() < BUFFER_SIZE / 2 && !eof) {
+            buf.compact();
+            while (buf.hasRemaining() && channel.read(buf) >= 0) {
+            }
+            buf.flip();
+        }
+        int count = 1;
+        boolean quoted = false;
+        for (int i = buf.position(); i < buf.limit(); ++i) {
+            final byte b = buf.get(i);
+            if (b == '"') {
+                quoted = !quoted;
+            } else if (!quoted) {
+                if (b == separator) {
+                    ++count;
+                } else if (b == '\n' || b == '\r') {
+                    break;
+                }
+            }
+        }
+        return count;
+    }
+
+    private void readRow(final double[] data, final int offset) throws IOException {
+        Arrays.fill(data, offset, offset + width, Double.NaN);
+        int column = 0;
+        while (true) {
+            final int slot = slots == null ? (column < width ? column : -1)
+                    : (column < slots.length ? slots[column] : -1);
+            final int end;
+            if (slot < 0) {
+                end = skipField();
+            } else {
+                data[offset + slot] = scanField();
+                end = next();
+            }
+            if (end == separator) {
+                ++column;
+                continue;
+            }
+            if (end == '\r' && peek() == '\n') {
+                buf.get();
+            }
+            return;
+        }
+    }
+
+    /**
+     * Skips a field and its terminator
+     *
+     * @return The terminator: the separator, a line break or -1
+     */
+    private int skipField() throws IOException {
+        boolean quoted = false;
+        while (fill()) {
+            final int limit = buf.limit();
+            for (int i = buf.position(); i < limit; ++i) {
+                final int b = buf.get(i);
+                if (b == '"') {
+                    quoted = !quoted;
+                } else if (!quoted && (b == separator || b == '\n' || b == '\r')) {
+                    buf.position(i + 1);
+                    return b;
+                }
+            }
+            buf.position(limit);
+        }
+        return -1;
+    }
+
+    /**
+     * Reads a field as a number, leaving the terminator unread
+     */
+    private double scanField() throws IOException {
+        int len = 0;
+        boolean quoted = false;
+        while (fill()) {
+            final int limit = buf.limit();
+            int i = buf.position();
+            for (; i < limit; ++i) {
+                final byte b = buf.get(i);
+                if (b == '"') {
+                    quoted = !quoted;
+                } else if (!quoted && (b == separator || b == '\n' || b == '\r')) {
+                    break;
+                } else {
+                    if (len == field.length) {
+                        field = Arrays.copyOf(field, len * 2);
+                    }
+                    field[len++] = b;
+                }
+            }
+            buf.position(i);
+            if (i < limit) {
+                break;
+            }
+        }
+        return parse(field, len);
+    }
+
+    /**
+     * Converts text to a number. Decimals with at most 18 significant digits
+     * and small exponents are converted directly, everything else goes
+     * through {@link Double#parseDouble(java.lang.String)}.
+     *
+     * @param text The text in ASCII
+     * @param len The length of the text
+     * @return The number, or NaN if the text is not a number
+     */
+    static double parse(final byte[] text, final int len) {
+        int i = 0;
+        int end = len;
+        while (i < end && (text[i] == ' ' || text[i] == '\t')) {
+            ++i;
+        }
+        while (end > i && (text[end - 1] == ' ' || text[end - 1] == '\t')) {
+            --end;
+        }
+        if (i == end) {
+            return Double.NaN;
+        }
+
+        final int start = i;
+        boolean negative = false;
+        if (text[i] == '-' || text[i] == '+') {
+            negative = text[i] == '-';
+            ++i;
+        }
+
+        long mantissa = 0;
+        int digits = 0;
+        int exponent = 0;
+        boolean any = false;
+        boolean point = false;
+        for (; i < end; ++i) {
+            final byte b = text[i];
+            if (b >= '0' && b <= '9') {
+                any = true;
+                if (mantissa != 0 || b != '0') {
+                    if (++digits > 18) {
+                        return parseSlow(text, start, end);
+                    }
+                    mantissa = mantissa * 10 + (b - '0');
+                }
+                if (point) {
+                    --exponent;
+                }
+            } else if (b == '.' && !point) {
+                point = true;
+            } else {
+                break;
+            }
+        }
+        if (!any) {
+            return parseSlow(text, start, end);
+        }
+        if (i < end) {
+            if (text[i] != 'e' && text[i] != 'E') {
+                return parseSlow(text, start, end);
+            }
+            ++i;
+            boolean negExp = false;
+            if (i < end && (text[i] == '-' || text[i] == '+')) {
+                negExp = text[i] == '-';
+                ++i;
+            }
+            if (i == end) {
+                return Double.NaN;
+            }
+            int exp = 0;
+            for (; i < end; ++i) {
+                if (text[i] < '0' || text[i] > '9') {
+                    return Double.NaN;
+                }
+                if (exp < 100000) {
+                    exp = exp * 10 + (text[i] - '0');
+                }
+            }
+            exponent += negExp ? -exp : exp;
+        }
+
+        final double value;
+        if (mantissa == 0) {
+            value = 0;
+        } else if (mantissa < (1L << 53) && exponent >= -22 && exponent <= 22) {
+            // Both operands are exact, so the result is correctly rounded
+            value = exponent < 0 ? mantissa / POW10[-exponent] : mantissa * POW10[exponent];
+        } else {
+            return parseSlow(text, start, end);
+        }
+        return negative ? -value : value;
+    }
+
+    private static double parseSlow(final byte[] text, final int start, final int end) {
+        try {
+            return Double.parseDouble(new String(text, start, end - start, StandardCharsets.US_ASCII));
+        } catch (NumberFormatException ex) {
+            return Double.NaN;
+        }
+    }
+
+    @Override
+    public void close() throws IOException {
+        channel.close();
+    }
+}
@@ -22,6 +22,7 @@ import com.ymcmp.ntshell.rte.DispatchException;
 
 import com.ymcmp.ntshell.value.CoreLambda;
 import com.ymcmp.ntshell.value.CoreMatrix;
+import com.ymcmp.ntshell.value.CoreSequence;
 
 /**
  *
@@ -30,11 +31,22 @@ import com.ymcmp.ntshell.value.CoreMatrix;
 final class FoldLeft extends CoreLambda {
 
     public FoldLeft() {
-        super(new CoreLambda.Info("Fold left", "mat -> func", "Wraps the matrix in a fold left context. This operation is the equivalent of a reduce left operation."));
+        super(new CoreLambda.Info("Fold left", "mat -> func OR func(seq) -> func", "Wraps the matrix or the sequence in a fold left context. This operation is the equivalent of a reduce left operation."));
     }
 
     @Override
     public NtValue applyCall(final NtValue[] mat) {
+        if (mat.length == 1 && mat[0] instanceof CoreSequence) {
+            return new CoreLambda(new CoreLambda.Info("$$Fold left", "func([supports applyCall], any) -> any", "Performs a fold left on the sequence with the specified accumulator and the initial value, pulling one element at a time")) {
+                @Override
+                public NtValue applyCall(final NtValue[] f) {
+                    if (f.length == 2) {
+                        return ((CoreSequence) mat[0]).reduceLeft(f[0], f[1]);
+                    }
+                    throw new DispatchException("Expected an instance supporting applyCall and anything, got " + f.length + " instead");
+                }
+            };
+        }
         if (mat.length == 1 && mat[0] instanceof CoreMatrix) {
             return new CoreLambda(new CoreLambda.Info("$$Fold left", "func([supports applyCall], any) -> mat", "Performs a fold left on the matrix with the specified accumulator and the initial value")) {
                 @Override
@@ -46,6 +58,6 @@ final class FoldLeft extends CoreLambda {
                 }
             };
         }
-        throw new DispatchException("Fold left", "Expected a matrix, got " + mat.length + " instead");
+        throw new DispatchException("Fold left", "Expected a matrix or a sequence, got " + mat.length + " instead");
     }
 }
@@ -19,6 +19,7 @@ package ntshell.rt.lib.rout.matrix;
 import com.ymcmp.ntshell.NtLibrary;
 import com.ymcmp.ntshell.value.AbstractNtValue;
 
+import java.util.Collections;
 import java.util.HashMap;
 
 /**
@@ -27,20 +28,35 @@ import java.util.HashMap;
  */
 public final class Loader implements NtLibrary {
 
-    private static final HashMap<String, AbstractNtValue> INSTANCES = new HashMap<>();
+    /**
+     * Filled once when the class is loaded and never changed afterwards, so
+     * lookups are safe from any thread
+     */
+    private static final java.util.Map<String, AbstractNtValue> INSTANCES;
 
     static {
-        INSTANCES.put("atom", new Atom());
-        INSTANCES.put("flip_x", new FlipX());
-        INSTANCES.put("flip_y", new FlipY());
-        INSTANCES.put("group", new Group());
-        INSTANCES.put("iota", new Iota());
-        INSTANCES.put("map", new Map());
-        INSTANCES.put("matrix", new Matrix());
-        INSTANCES.put("reshape", new Reshape());
-        INSTANCES.put("transpose", new Transpose());
-        INSTANCES.put("foldr", new FoldRight());
-        INSTANCES.put("foldl", new FoldLeft());
+        final HashMap<String, AbstractNtValue> map = new HashMap<>();
+        map.put("atom", new Atom());
+        map.put("csv_load", new CsvLoad());
+        map.put("flip_x", new FlipX());
+        map.put("flip_y", new FlipY());
+        map.put("group", new Group());
+        map.put("iota", new Iota());
+        map.put("map", new Map());
+        map.put("pmap", new ParallelMap());
+        map.put("matrix", new Matrix());
+        map.put("mat_load", new MatLoad());
+        map.put("mat_save", new MatSave());
+        map.put("reshape", new Reshape());
+        map.put("sparse", new Sparse());
+        map.put("transpose", new Transpose());
+        map.put("inv", new Inverse());
+        map.put("det", new Determinant());
+        map.put("solve", new Solve());
+        map.put("foldr", new FoldRight());
+        map.put("foldl", new FoldLeft());
+        map.put("fold_par", new FoldParallel());
+        INSTANCES = Collections.unmodifiableMap(map);
     }
 
     @Override
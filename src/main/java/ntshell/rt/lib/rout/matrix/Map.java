@@ -22,6 +22,7 @@ import com.ymcmp.ntshell.rte.DispatchException;
 
 import com.ymcmp.ntshell.value.CoreLambda;
 import com.ymcmp.ntshell.value.CoreMatrix;
+import com.ymcmp.ntshell.value.CoreSequence;
 
 /**
  *
@@ -30,11 +31,22 @@ import com.ymcmp.ntshell.value.CoreMatrix;
 final class Map extends CoreLambda {
 
     public Map() {
-        super(new CoreLambda.Info("map", "mat -> func", "Wraps matrix in a map context. A map is defined as an equivalent application on all elements. The original matrix is left untouched after the transformation."));
+        super(new CoreLambda.Info("map", "mat -> func OR func(seq) -> func", "Wraps matrix in a map context. A map is defined as an equivalent application on all elements. The original matrix is left untouched after the transformation. Sequences are mapped lazily."));
     }
 
     @Override
     public NtValue applyCall(final NtValue[] mat) {
+        if (mat.length == 1 && mat[0] instanceof CoreSequence) {
+            return new CoreLambda(new CoreLambda.Info("$$map", "func([supports applyCall]) -> seq", "Lazily performs the specified transformation on the elements of the sequence")) {
+                @Override
+                public NtValue applyCall(final NtValue[] f) {
+                    if (f.length == 1) {
+                        return ((CoreSequence) mat[0]).map(f[0]);
+                    }
+                    throw new DispatchException("Expected an instance supporting applyCall, got " + f.length + " instead");
+                }
+            };
+        }
         if (mat.length == 1 && mat[0] instanceof CoreMatrix) {
             return new CoreLambda(new CoreLambda.Info("$$map", "func([supports applyCall]) -> mat", "Performs the specified transformation on the matrix elements. The original matrix is left untouched.")) {
                 @Override
@@ -46,6 +58,6 @@ final class Map extends CoreLambda {
                 }
             };
         }
-        throw new DispatchException("map", "Expected a matrix, got " + mat.length + " instead");
+        throw new DispatchException("map", "Expected a matrix or a sequence, got " + mat.length + " instead");
     }
 }
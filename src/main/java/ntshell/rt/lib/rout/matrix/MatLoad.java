@@ -0,0 +1,55 @@
+/**
+ *     Copyright (C) 2017  Paul Teng
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program. If not, see <http://www.gnu.org/licenses/>.
+ */
+package ntshell.rt.lib.rout.matrix;
+
+import com.ymcmp.ntshell.NtValue;
+
+import com.ymcmp.ntshell.rte.DispatchException;
+
+import com.ymcmp.ntshell.value.CoreAtom;
+import com.ymcmp.ntshell.value.CoreLambda;
+import com.ymcmp.ntshell.value.CoreRope;
+import com.ymcmp.ntshell.value.CoreUnit;
+import com.ymcmp.ntshell.value.MatrixFile;
+
+import java.io.IOException;
+
+import java.nio.file.InvalidPathException;
+import java.nio.file.Paths;
+
+/**
+ *
+ * @author YTENG
+ */
+final class MatLoad extends CoreLambda {
+
+    public MatLoad() {
+        super(new CoreLambda.Info("mat_load", "path:atom -> mat", "Loads a matrix saved with mat_save. Matrices of doubles are mapped into memory and only read as they are used. Returns unit if the file cannot be loaded."));
+    }
+
+    @Override
+    public NtValue applyCall(final NtValue[] params) {
+        if (params.length == 1 && (params[0] instanceof CoreAtom || params[0] instanceof CoreRope)) {
+            try {
+                return MatrixFile.load(Paths.get(params[0].toString()));
+            } catch (IOException | InvalidPathException ex) {
+                return CoreUnit.getInstance();
+            }
+        }
+        throw new DispatchException("mat_load", "Expected an atom, got " + params.length + " instead");
+    }
+}
@@ -0,0 +1,61 @@
+/**
+ *     Copyright (C) 2017  Paul Teng
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program. If not, see <http://www.gnu.org/licenses/>.
+ */
+package ntshell.rt.lib.rout.matrix;
+
+import com.ymcmp.ntshell.NtValue;
+
+import com.ymcmp.ntshell.rte.DispatchException;
+
+import com.ymcmp.ntshell.value.CoreAtom;
+import com.ymcmp.ntshell.value.CoreLambda;
+import com.ymcmp.ntshell.value.CoreMatrix;
+import com.ymcmp.ntshell.value.CoreNumber;
+import com.ymcmp.ntshell.value.CoreRope;
+import com.ymcmp.ntshell.value.MatrixFile;
+
+import java.io.IOException;
+
+import java.nio.file.InvalidPathException;
+import java.nio.file.Paths;
+
+/**
+ *
+ * @author YTENG
+ */
+final class MatSave extends CoreLambda {
+
+    public MatSave() {
+        super(new CoreLambda.Info("mat_save", "func(path:atom, m:mat) -> number", "Saves a matrix of numbers to a binary file that can be loaded with mat_load. Returns anything but zero on success."));
+    }
+
+    @Override
+    public NtValue applyCall(final NtValue[] params) {
+        if (params.length == 2
+                && (params[0] instanceof CoreAtom || params[0] instanceof CoreRope)
+                && params[1] instanceof CoreMatrix) {
+            try {
+                MatrixFile.save(Paths.get(params[0].toString()), (CoreMatrix) params[1]);
+                return CoreNumber.from(true);
+            } catch (IOException | InvalidPathException ex) {
+                return CoreNumber.from(false);
+            } catch (IllegalArgumentException ex) {
+                throw new DispatchException("mat_save", ex.getMessage());
+            }
+        }
+        throw new DispatchException("mat_save", "Expected an atom and a matrix, got " + params.length + " instead");
+    }
+}
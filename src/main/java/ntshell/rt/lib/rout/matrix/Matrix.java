@@ -22,6 +22,7 @@ import com.ymcmp.ntshell.rte.DispatchException;
 
 import com.ymcmp.ntshell.value.CoreAtom;
 import com.ymcmp.ntshell.value.CoreLambda;
+import com.ymcmp.ntshell.value.CoreRope;
 
 /**
  *
@@ -30,7 +31,7 @@ import com.ymcmp.ntshell.value.CoreLambda;
 final class Matrix extends CoreLambda {
 
     public Matrix() {
-        super(new CoreLambda.Info("matrix", "atom -> matrix", "Converts the atom into its equivalent matrix"));
+        super(new CoreLambda.Info("matrix", "atom -> matrix", "Converts the atom (or rope) into its equivalent matrix"));
     }
 
     @Override
@@ -38,6 +39,9 @@ final class Matrix extends CoreLambda {
         if (params.length == 1 && params[0] instanceof CoreAtom) {
             return ((CoreAtom) params[0]).toMatrix();
         }
+        if (params.length == 1 && params[0] instanceof CoreRope) {
+            return ((CoreRope) params[0]).toMatrix();
+        }
         throw new DispatchException("matrix", "Expected a atom, got " + params.length + " instead");
     }
 }
@@ -0,0 +1,51 @@
+/**
+ *     Copyright (C) 2017  Paul Teng
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program. If not, see <http://www.gnu.org/licenses/>.
+ */
+package ntshell.rt.lib.rout.matrix;
+
+import com.ymcmp.ntshell.NtValue;
+
+import com.ymcmp.ntshell.rte.DispatchException;
+
+import com.ymcmp.ntshell.value.CoreLambda;
+import com.ymcmp.ntshell.value.CoreMatrix;
+
+/**
+ *
+ * @author YTENG
+ */
+final class Solve extends CoreLambda {
+
+    public Solve() {
+        super(new CoreLambda.Info("solve", "func(a:mat, b:mat) -> mat", "Solves (a) * x = (b) where (a) is square and (b) has one right-hand side per column. Solving with the same (a) again reuses its decomposition."));
+    }
+
+    @Override
+    public NtValue applyCall(final NtValue[] params) {
+        if (params.length == 2
+                && params[0] instanceof CoreMatrix
+                && params[1] instanceof CoreMatrix) {
+            try {
+                return ((CoreMatrix) params[0]).solve((CoreMatrix) params[1]);
+            } catch (CoreMatrix.MatrixBoundMismatchException ex) {
+                throw ex.toDispatchException("solve");
+            } catch (ArithmeticException | IllegalArgumentException ex) {
+                throw new DispatchException("solve", ex.getMessage());
+            }
+        }
+        throw new DispatchException("solve", "Expected two matrices, got " + params.length + " instead");
+    }
+}
@@ -0,0 +1,85 @@
+/**
+ *     Copyright (C) 2017  Paul Teng
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program. If not, see <http://www.gnu.org/licenses/>.
+ */
+package ntshell.rt.lib.rout.matrix;
+
+import com.ymcmp.ntshell.NtValue;
+
+import com.ymcmp.ntshell.rte.DispatchException;
+
+import com.ymcmp.ntshell.value.CoreLambda;
+import com.ymcmp.ntshell.value.CoreMatrix;
+import com.ymcmp.ntshell.value.CoreNumber;
+import com.ymcmp.ntshell.value.SparseMatrix;
+
+/**
+ *
+ * @author YTENG
+ */
+final class Sparse extends CoreLambda {
+
+    public Sparse() {
+        super(new CoreLambda.Info("sparse", "mat -> mat OR (rows:number, cols:number) -> mat OR (rows:number, cols:number, cells:mat) -> mat", "Creates a matrix that only stores its non-zero cells. (cells) has one [row, col, value] row per cell, where cells listed more than once are added together. The result is a normal matrix if more than half of the cells are not zero."));
+    }
+
+    @Override
+    public NtValue applyCall(final NtValue[] params) {
+        if (params.length == 1 && params[0] instanceof CoreMatrix) {
+            return SparseMatrix.from((CoreMatrix) params[0]);
+        }
+        if ((params.length == 2 || params.length == 3)
+                && params[0] instanceof CoreNumber
+                && params[1] instanceof CoreNumber) {
+            final int rows = ((CoreNumber) params[0]).toInt();
+            final int cols = ((CoreNumber) params[1]).toInt();
+            if (params.length == 2) {
+                return fromCells(rows, cols, CoreMatrix.getEmptyMatrix());
+            }
+            if (params[2] instanceof CoreMatrix) {
+                return fromCells(rows, cols, (CoreMatrix) params[2]);
+            }
+        }
+        throw new DispatchException("sparse", "Expected a matrix, or two numbers optionally followed by a matrix, got " + params.length + " instead");
+    }
+
+    private static CoreMatrix fromCells(final int rows, final int cols, final CoreMatrix cells) {
+        final int count = cells.getRowCount();
+        if (count > 0 && cells.getColumnCount() != 3) {
+            throw new DispatchException("sparse", "Expected one [row, col, value] row per cell");
+        }
+        final int[] rowIndex = new int[count];
+        final int[] colIndex = new int[count];
+        final NtValue[] vals = new NtValue[count];
+        for (int i = 0; i < count; ++i) {
+            final NtValue row = cells.getCell(i, 0);
+            final NtValue col = cells.getCell(i, 1);
+            if (!(row instanceof CoreNumber && col instanceof CoreNumber)) {
+                throw new DispatchException("sparse", "Expected numbers as row and column of cell " + (i + 1));
+            }
+            rowIndex[i] = ((CoreNumber) row).toInt() - 1;
+            colIndex[i] = ((CoreNumber) col).toInt() - 1;
+            if (rowIndex[i] < 0 || rowIndex[i] >= rows || colIndex[i] < 0 || colIndex[i] >= cols) {
+                throw new DispatchException("sparse", "Cell " + (i + 1) + " is outside of the " + rows + " by " + cols + " matrix");
+            }
+            vals[i] = cells.getCell(i, 2);
+        }
+        try {
+            return SparseMatrix.fromTriplets(rows, cols, rowIndex, colIndex, vals);
+        } catch (IllegalArgumentException ex) {
+            throw new DispatchException("sparse", ex.getMessage());
+        }
+    }
+}
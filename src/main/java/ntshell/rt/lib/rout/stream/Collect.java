@@ -0,0 +1,43 @@
+/**
+ *     Copyright (C) 2017  Paul Teng
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program. If not, see <http://www.gnu.org/licenses/>.
+ */
+package ntshell.rt.lib.rout.stream;
+
+import com.ymcmp.ntshell.NtValue;
+
+import com.ymcmp.ntshell.rte.DispatchException;
+
+import com.ymcmp.ntshell.value.CoreLambda;
+import com.ymcmp.ntshell.value.CoreSequence;
+
+/**
+ *
+ * @author YTENG
+ */
+final class Collect extends CoreLambda {
+
+    public Collect() {
+        super(new CoreLambda.Info("collect", "seq -> mat", "Consumes the sequence into a matrix. Elements that are matrices with the same amount of columns are stacked as rows, anything else becomes a matrix with one row."));
+    }
+
+    @Override
+    public NtValue applyCall(final NtValue[] params) {
+        if (params.length == 1 && params[0] instanceof CoreSequence) {
+            return ((CoreSequence) params[0]).collect();
+        }
+        throw new DispatchException("collect", "Expected a sequence, got " + params.length + " instead");
+    }
+}
@@ -0,0 +1,49 @@
+/**
+ *     Copyright (C) 2017  Paul Teng
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program. If not, see <http://www.gnu.org/licenses/>.
+ */
+package ntshell.rt.lib.rout.stream;
+
+import com.ymcmp.ntshell.NtLibrary;
+import com.ymcmp.ntshell.value.AbstractNtValue;
+
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ *
+ * @author YTENG
+ */
+public final class Loader implements NtLibrary {
+
+    private static final Map<String, AbstractNtValue> INSTANCES;
+
+    static {
+        final HashMap<String, AbstractNtValue> map = new HashMap<>();
+        map.put("range", new Range());
+        map.put("stream", new Stream());
+        map.put("take", new Take());
+        map.put("drop", new Drop());
+        map.put("filter", new Filter());
+        map.put("collect", new Collect());
+        INSTANCES = Collections.unmodifiableMap(map);
+    }
+
+    @Override
+    public AbstractNtValue findDefinition(String name) {
+        return INSTANCES.get(name);
+    }
+}
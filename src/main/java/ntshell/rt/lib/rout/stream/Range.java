@@ -0,0 +1,55 @@
+/**
+ *     Copyright (C) 2017  Paul Teng
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program. If not, see <http://www.gnu.org/licenses/>.
+ */
+package ntshell.rt.lib.rout.stream;
+
+import com.ymcmp.ntshell.NtValue;
+
+import com.ymcmp.ntshell.rte.DispatchException;
+
+import com.ymcmp.ntshell.value.CoreLambda;
+import com.ymcmp.ntshell.value.CoreNumber;
+import com.ymcmp.ntshell.value.CoreSequence;
+
+/**
+ *
+ * @author YTENG
+ */
+final class Range extends CoreLambda {
+
+    public Range() {
+        super(new CoreLambda.Info("range", "start:number, end:number -> seq OR func(start:number, end:number, step:number) -> seq OR func(start:number) -> seq", "Creates a lazy sequence of numbers from (start) to (end) inclusive, (step) apart. The step is one by default. Without (end), the sequence never ends."));
+    }
+
+    @Override
+    public NtValue applyCall(final NtValue[] params) {
+        for (final NtValue param : params) {
+            if (!(param instanceof CoreNumber)) {
+                throw new DispatchException("range", "Expected numbers");
+            }
+        }
+        switch (params.length) {
+        case 1:
+            return CoreSequence.range((CoreNumber) params[0], null, CoreNumber.ONE);
+        case 2:
+            return CoreSequence.range((CoreNumber) params[0], (CoreNumber) params[1], CoreNumber.ONE);
+        case 3:
+            return CoreSequence.range((CoreNumber) params[0], (CoreNumber) params[1], (CoreNumber) params[2]);
+        default:
+        }
+        throw new DispatchException("range", "Expected one to three numbers, got " + params.length + " instead");
+    }
+}
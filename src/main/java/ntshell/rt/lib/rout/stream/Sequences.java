@@ -0,0 +1,63 @@
+/**
+ *     Copyright (C) 2017  Paul Teng
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program. If not, see <http://www.gnu.org/licenses/>.
+ */
+package ntshell.rt.lib.rout.stream;
+
+import com.ymcmp.ntshell.NtValue;
+
+import com.ymcmp.ntshell.rte.DispatchException;
+
+import com.ymcmp.ntshell.value.CoreLambda;
+import com.ymcmp.ntshell.value.CoreMatrix;
+import com.ymcmp.ntshell.value.CoreNumber;
+import com.ymcmp.ntshell.value.CoreSequence;
+
+import java.math.BigInteger;
+
+/**
+ *
+ * @author YTENG
+ */
+final class Sequences {
+
+    private Sequences() {
+    }
+
+    static CoreSequence toSequence(final String name, final NtValue val) {
+        if (val instanceof CoreSequence) {
+            return (CoreSequence) val;
+        }
+        if (val instanceof CoreMatrix) {
+            return CoreSequence.of((CoreMatrix) val);
+        }
+        if (val instanceof CoreLambda) {
+            return CoreSequence.generate(val);
+        }
+        throw new DispatchException(name, "Expected a matrix, a sequence or a function");
+    }
+
+    static long toCount(final String name, final NtValue val) {
+        if (val instanceof CoreNumber && !((CoreNumber) val).isNaN()) {
+            final CoreNumber n = (CoreNumber) val;
+            if (n.isNegative()) {
+                return 0;
+            }
+            return n.isInfinite() ? Long.MAX_VALUE
+                    : n.getNumerator().divide(n.getDenominator()).min(BigInteger.valueOf(Long.MAX_VALUE)).longValue();
+        }
+        throw new DispatchException(name, "Expected a number");
+    }
+}
@@ -0,0 +1,50 @@
+/**
+ *     Copyright (C) 2017  Paul Teng
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program. If not, see <http://www.gnu.org/licenses/>.
+ */
+package ntshell.rt.lib.rout.stream;
+
+import com.ymcmp.ntshell.NtValue;
+
+import com.ymcmp.ntshell.rte.DispatchException;
+
+import com.ymcmp.ntshell.value.CoreAtom;
+import com.ymcmp.ntshell.value.CoreLambda;
+import com.ymcmp.ntshell.value.CoreMatrix;
+import com.ymcmp.ntshell.value.CoreRope;
+import com.ymcmp.ntshell.value.CoreSequence;
+
+/**
+ *
+ * @author YTENG
+ */
+final class Stream extends CoreLambda {
+
+    public Stream() {
+        super(new CoreLambda.Info("stream", "mat -> seq OR func(mat, @rows) -> seq OR func(f:[applyCall]) -> seq", "Turns a value into a lazy sequence. A matrix gives its cells in row-major order, or its rows with @rows. A function is called without parameters for every element until it returns unit."));
+    }
+
+    @Override
+    public NtValue applyCall(final NtValue[] params) {
+        if (params.length == 1) {
+            return Sequences.toSequence("stream", params[0]);
+        }
+        if (params.length == 2 && params[0] instanceof CoreMatrix
+                && (params[1] instanceof CoreAtom || params[1] instanceof CoreRope) && "rows".equals(params[1].toString())) {
+            return CoreSequence.rowsOf((CoreMatrix) params[0]);
+        }
+        throw new DispatchException("stream", "Expected a matrix, a sequence or a function, got " + params.length + " instead");
+    }
+}
@@ -0,0 +1,42 @@
+/**
+ *     Copyright (C) 2017  Paul Teng
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program. If not, see <http://www.gnu.org/licenses/>.
+ */
+package ntshell.rt.lib.rout.stream;
+
+import com.ymcmp.ntshell.NtValue;
+
+import com.ymcmp.ntshell.rte.DispatchException;
+
+import com.ymcmp.ntshell.value.CoreLambda;
+
+/**
+ *
+ * @author YTENG
+ */
+final class Take extends CoreLambda {
+
+    public Take() {
+        super(new CoreLambda.Info("take", "seq, n:number -> seq", "Lazily keeps the first (n) elements of the sequence. Matrices are treated as the sequence of their cells."));
+    }
+
+    @Override
+    public NtValue applyCall(final NtValue[] params) {
+        if (params.length == 2) {
+            return Sequences.toSequence("take", params[0]).take(Sequences.toCount("take", params[1]));
+        }
+        throw new DispatchException("take", "Expected a sequence and a number, got " + params.length + " instead");
+    }
+}
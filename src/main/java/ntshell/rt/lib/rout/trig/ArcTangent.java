@@ -18,34 +18,53 @@ package ntshell.rt.lib.rout.trig;
 
 import com.ymcmp.ntshell.NtValue;
 
-import com.ymcmp.ntshell.rte.DispatchException;
-
 import com.ymcmp.ntshell.value.CoreLambda;
 import com.ymcmp.ntshell.value.CoreNumber;
 
+import ntshell.rt.lib.rout.UnaryNumericFunction;
+
 import org.apfloat.ApfloatMath;
 
 /**
  *
  * @author YTENG
  */
-final class ArcTangent extends CoreLambda {
+final class ArcTangent extends UnaryNumericFunction {
 
     public ArcTangent() {
-        super(new CoreLambda.Info("inverse tangent", "number -> number  OR  (number, number) -> number", "Calculates the inverse tangent of value in radians. Mapped to the Java functions <code>Math.atan</code> and <code>Math.atan2</code>"));
+        super(new CoreLambda.Info("inverse tangent", "number -> number  OR  mat -> mat  OR  (number, number) -> number", "Calculates the inverse tangent of value in radians. Mapped to the Java functions <code>Math.atan</code> and <code>Math.atan2</code>"));
     }
 
     @Override
-    public NtValue applyCall(final NtValue[] input) {
-        if (input.length == 1 && input[0] instanceof CoreNumber) {
-            return CoreNumber.from(ApfloatMath.atan(((CoreNumber) input[0]).toApfloat()));
+    protected CoreNumber apply(final CoreNumber x) {
+        final double in = x.toDouble();
+        final double out = StrictMath.atan(in);
+        if (CoreNumber.isDoublePrecision(in, out)) {
+            return CoreNumber.exact(out);
         }
+        return CoreNumber.from(ApfloatMath.atan(x.toApfloat()));
+    }
+
+    @Override
+    protected double applyDouble(final double x) {
+        return StrictMath.atan(x);
+    }
+
+    @Override
+    public NtValue applyCall(final NtValue[] input) {
         if (input.length == 2
                 && input[0] instanceof CoreNumber
                 && input[1] instanceof CoreNumber) {
-            return CoreNumber.from(ApfloatMath.atan2(((CoreNumber) input[0]).toApfloat(),
-                                                     ((CoreNumber) input[1]).toApfloat()));
+            final CoreNumber y = (CoreNumber) input[0];
+            final CoreNumber x = (CoreNumber) input[1];
+            final double yd = y.toDouble();
+            final double xd = x.toDouble();
+            final double out = StrictMath.atan2(yd, xd);
+            if (CoreNumber.isDoublePrecision(yd, xd, out)) {
+                return CoreNumber.exact(out);
+            }
+            return CoreNumber.from(ApfloatMath.atan2(y.toApfloat(), x.toApfloat()));
         }
-        throw new DispatchException("inverse tangent", "Expected one or two numbers but got " + input.length);
+        return super.applyCall(input);
     }
 }
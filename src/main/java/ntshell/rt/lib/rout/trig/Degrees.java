@@ -16,27 +16,33 @@
  */
 package ntshell.rt.lib.rout.trig;
 
-import com.ymcmp.ntshell.NtValue;
-import com.ymcmp.ntshell.rte.DispatchException;
 import com.ymcmp.ntshell.value.CoreLambda;
 import com.ymcmp.ntshell.value.CoreNumber;
+import ntshell.rt.lib.rout.UnaryNumericFunction;
 import org.apfloat.ApfloatMath;
 
 /**
  *
  * @author YTENG
  */
-final class Degrees extends CoreLambda {
+final class Degrees extends UnaryNumericFunction {
 
     public Degrees() {
-        super(new CoreLambda.Info("to degrees", "number -> number", "Converts a number into its representation in degrees"));
+        super(new CoreLambda.Info("to degrees", "number -> number  OR  mat -> mat", "Converts a number into its representation in degrees"));
     }
 
     @Override
-    public NtValue applyCall(NtValue[] input) {
-        if (input.length == 1 && input[0] instanceof CoreNumber) {
-            return CoreNumber.from(ApfloatMath.toDegrees(((CoreNumber) input[0]).toApfloat()));
+    protected CoreNumber apply(final CoreNumber x) {
+        final double in = x.toDouble();
+        final double out = StrictMath.toDegrees(in);
+        if (CoreNumber.isDoublePrecision(in, out)) {
+            return CoreNumber.exact(out);
         }
-        throw new DispatchException("to degrees", "Expected a number but got " + input.length);
+        return CoreNumber.from(ApfloatMath.toDegrees(x.toApfloat()));
+    }
+
+    @Override
+    protected double applyDouble(final double x) {
+        return StrictMath.toDegrees(x);
     }
 }
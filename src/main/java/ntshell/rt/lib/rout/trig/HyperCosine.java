@@ -16,30 +16,35 @@
  */
 package ntshell.rt.lib.rout.trig;
 
-import com.ymcmp.ntshell.NtValue;
-
-import com.ymcmp.ntshell.rte.DispatchException;
-
 import com.ymcmp.ntshell.value.CoreLambda;
 import com.ymcmp.ntshell.value.CoreNumber;
 
+import ntshell.rt.lib.rout.UnaryNumericFunction;
+
 import org.apfloat.ApfloatMath;
 
 /**
  *
  * @author YTENG
  */
-final class HyperCosine extends CoreLambda {
+final class HyperCosine extends UnaryNumericFunction {
 
     public HyperCosine() {
-        super(new CoreLambda.Info("hyperbolic cosine", "number -> number", "Calculates the hyperbolic cosine of value in radians"));
+        super(new CoreLambda.Info("hyperbolic cosine", "number -> number  OR  mat -> mat", "Calculates the hyperbolic cosine of value in radians"));
     }
 
     @Override
-    public NtValue applyCall(final NtValue[] input) {
-        if (input.length == 1 && input[0] instanceof CoreNumber) {
-            return CoreNumber.from(ApfloatMath.cosh(((CoreNumber) input[0]).toApfloat()));
+    protected CoreNumber apply(final CoreNumber x) {
+        final double in = x.toDouble();
+        final double out = StrictMath.cosh(in);
+        if (CoreNumber.isDoublePrecision(in, out)) {
+            return CoreNumber.exact(out);
         }
-        throw new DispatchException("hyperbolic cosine", "Expected a number but got " + input.length);
+        return CoreNumber.from(ApfloatMath.cosh(x.toApfloat()));
+    }
+
+    @Override
+    protected double applyDouble(final double x) {
+        return StrictMath.cosh(x);
     }
 }
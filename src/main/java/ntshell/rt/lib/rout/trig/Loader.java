@@ -19,7 +19,9 @@ package ntshell.rt.lib.rout.trig;
 import com.ymcmp.ntshell.NtLibrary;
 import com.ymcmp.ntshell.value.AbstractNtValue;
 
+import java.util.Collections;
 import java.util.HashMap;
+import java.util.Map;
 
 /**
  *
@@ -27,20 +29,22 @@ import java.util.HashMap;
  */
 public final class Loader implements NtLibrary {
 
-    private static final HashMap<String, AbstractNtValue> INSTANCES = new HashMap<>();
+    private static final Map<String, AbstractNtValue> INSTANCES;
 
     static {
-        INSTANCES.put("asin", new ArcSine());
-        INSTANCES.put("acos", new ArcCosine());
-        INSTANCES.put("atan", new ArcTangent());
-        INSTANCES.put("cos", new Cosine());
-        INSTANCES.put("cosh", new HyperCosine());
-        INSTANCES.put("deg", new Degrees());
-        INSTANCES.put("rad", new Radians());
-        INSTANCES.put("sin", new Sine());
-        INSTANCES.put("sinh", new HyperSine());
-        INSTANCES.put("tan", new Tangent());
-        INSTANCES.put("tanh", new HyperTangent());
+        final HashMap<String, AbstractNtValue> map = new HashMap<>();
+        map.put("asin", new ArcSine());
+        map.put("acos", new ArcCosine());
+        map.put("atan", new ArcTangent());
+        map.put("cos", new Cosine());
+        map.put("cosh", new HyperCosine());
+        map.put("deg", new Degrees());
+        map.put("rad", new Radians());
+        map.put("sin", new Sine());
+        map.put("sinh", new HyperSine());
+        map.put("tan", new Tangent());
+        map.put("tanh", new HyperTangent());
+        INSTANCES = Collections.unmodifiableMap(map);
     }
 
     @Override
@@ -16,27 +16,33 @@
  */
 package ntshell.rt.lib.rout.trig;
 
-import com.ymcmp.ntshell.NtValue;
-import com.ymcmp.ntshell.rte.DispatchException;
 import com.ymcmp.ntshell.value.CoreLambda;
 import com.ymcmp.ntshell.value.CoreNumber;
+import ntshell.rt.lib.rout.UnaryNumericFunction;
 import org.apfloat.ApfloatMath;
 
 /**
  *
  * @author YTENG
  */
-final class Radians extends CoreLambda {
+final class Radians extends UnaryNumericFunction {
 
     public Radians() {
-        super(new CoreLambda.Info("to radians", "number -> number", "Converts a number into its representation in radians"));
+        super(new CoreLambda.Info("to radians", "number -> number  OR  mat -> mat", "Converts a number into its representation in radians"));
     }
 
     @Override
-    public NtValue applyCall(final NtValue[] input) {
-        if (input.length == 1 && input[0] instanceof CoreNumber) {
-            return CoreNumber.from(ApfloatMath.toRadians(((CoreNumber) input[0]).toApfloat()));
+    protected CoreNumber apply(final CoreNumber x) {
+        final double in = x.toDouble();
+        final double out = StrictMath.toRadians(in);
+        if (CoreNumber.isDoublePrecision(in, out)) {
+            return CoreNumber.exact(out);
         }
-        throw new DispatchException("to radians", "Expected a number but got " + input.length);
+        return CoreNumber.from(ApfloatMath.toRadians(x.toApfloat()));
+    }
+
+    @Override
+    protected double applyDouble(final double x) {
+        return StrictMath.toRadians(x);
     }
 }
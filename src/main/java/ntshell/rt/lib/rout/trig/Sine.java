@@ -16,27 +16,33 @@
  */
 package ntshell.rt.lib.rout.trig;
 
-import com.ymcmp.ntshell.NtValue;
-import com.ymcmp.ntshell.rte.DispatchException;
 import com.ymcmp.ntshell.value.CoreLambda;
 import com.ymcmp.ntshell.value.CoreNumber;
+import ntshell.rt.lib.rout.UnaryNumericFunction;
 import org.apfloat.ApfloatMath;
 
 /**
  *
  * @author YTENG
  */
-final class Sine extends CoreLambda {
+final class Sine extends UnaryNumericFunction {
 
     public Sine() {
-        super(new CoreLambda.Info("sine", "number -> number", "Calculates the sine of value in radians"));
+        super(new CoreLambda.Info("sine", "number -> number  OR  mat -> mat", "Calculates the sine of value in radians"));
     }
 
     @Override
-    public NtValue applyCall(final NtValue[] input) {
-        if (input.length == 1 && input[0] instanceof CoreNumber) {
-            return CoreNumber.from(ApfloatMath.sin(((CoreNumber) input[0]).toApfloat()));
+    protected CoreNumber apply(final CoreNumber x) {
+        final double in = x.toDouble();
+        final double out = StrictMath.sin(in);
+        if (CoreNumber.isDoublePrecision(in, out)) {
+            return CoreNumber.exact(out);
         }
-        throw new DispatchException("sine", "Expected a number but got " + input.length);
+        return CoreNumber.from(ApfloatMath.sin(x.toApfloat()));
+    }
+
+    @Override
+    protected double applyDouble(final double x) {
+        return StrictMath.sin(x);
     }
 }
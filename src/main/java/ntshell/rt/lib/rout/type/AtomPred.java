@@ -19,6 +19,7 @@ package ntshell.rt.lib.rout.type;
 import com.ymcmp.ntshell.NtValue;
 
 import com.ymcmp.ntshell.value.CoreAtom;
+import com.ymcmp.ntshell.value.CoreRope;
 import com.ymcmp.ntshell.value.CoreLambda;
 import com.ymcmp.ntshell.value.CoreNumber;
 
@@ -35,7 +36,7 @@ final class AtomPred extends CoreLambda {
     @Override
     public NtValue applyCall(final NtValue[] input) {
         for (int i = 0; i < input.length; ++i) {
-            if (!(input[i] instanceof CoreAtom)) {
+            if (!(input[i] instanceof CoreAtom || input[i] instanceof CoreRope)) {
                 return CoreNumber.from(false);
             }
         }
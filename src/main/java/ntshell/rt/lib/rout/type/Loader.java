@@ -19,7 +19,9 @@ package ntshell.rt.lib.rout.type;
 import com.ymcmp.ntshell.NtValue;
 import com.ymcmp.ntshell.NtLibrary;
 
+import java.util.Collections;
 import java.util.HashMap;
+import java.util.Map;
 
 /**
  *
@@ -27,16 +29,18 @@ import java.util.HashMap;
  */
 public final class Loader implements NtLibrary {
 
-    private static final HashMap<String, NtValue> INSTANCES = new HashMap<>();
+    private static final Map<String, NtValue> INSTANCES;
 
     static {
-        INSTANCES.put("comparable?", new ComparablePred());
-        INSTANCES.put("atom?", new AtomPred());
-        INSTANCES.put("number?", new NumberPred());
-        INSTANCES.put("matrix?", new MatrixPred());
-        INSTANCES.put("function?", new FunctionPred());
-        INSTANCES.put("nil?", new NilPred());
-        INSTANCES.put("syntree?", new ASTPred());
+        final HashMap<String, NtValue> map = new HashMap<>();
+        map.put("comparable?", new ComparablePred());
+        map.put("atom?", new AtomPred());
+        map.put("number?", new NumberPred());
+        map.put("matrix?", new MatrixPred());
+        map.put("function?", new FunctionPred());
+        map.put("nil?", new NilPred());
+        map.put("syntree?", new ASTPred());
+        INSTANCES = Collections.unmodifiableMap(map);
     }
 
     @Override
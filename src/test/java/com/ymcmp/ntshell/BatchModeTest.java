@@ -0,0 +1,85 @@
+/**
+ *     Copyright (C) 2017  Paul Teng
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program. If not, see <http://www.gnu.org/licenses/>.
+ */
+package com.ymcmp.ntshell;
+
+import com.ymcmp.ntshell.value.CoreAtom;
+import com.ymcmp.ntshell.value.CoreMatrix;
+import com.ymcmp.ntshell.value.CoreNumber;
+import com.ymcmp.ntshell.value.CoreRope;
+
+import java.io.BufferedWriter;
+import java.io.StringWriter;
+
+import org.junit.Test;
+
+import static org.junit.Assert.*;
+
+/**
+ *
+ * @author YTENG
+ */
+public class BatchModeTest {
+
+    private static final CoreMatrix MAT = CoreMatrix.from(new NtValue[][]{
+        {CoreNumber.ONE, CoreNumber.TWO},
+        {CoreNumber.from(3), CoreMatrix.from(new NtValue[][]{{CoreNumber.from(4), CoreNumber.from(5)}})}
+    });
+
+    @Test
+    public void matricesAreWrittenInline() {
+        final StringWriter out = new StringWriter();
+        final BatchMode batch = new BatchMode(new BufferedWriter(out), new StringWriter(), false);
+        batch.writeResult(MAT);
+        batch.writeResult(CoreMatrix.getEmptyMatrix());
+        // Results are visible without closing the frontend
+        assertEquals("[1, 2; 3, [4, 5]]\n[]\n", out.toString());
+    }
+
+    @Test
+    public void jsonIgnoresDisplayLimit() {
+        final int rows = CoreMatrix.getDisplayRows();
+        final int cols = CoreMatrix.getDisplayColumns();
+        try {
+            CoreMatrix.setDisplayLimit(1, 1);
+            final StringWriter out = new StringWriter();
+            final BatchMode batch = new BatchMode(out, new StringWriter(), true);
+            batch.writeResult(MAT);
+            batch.writeError(new RuntimeException("a \"b\""));
+            assertEquals("{\"result\":\"[1, 2; 3, [4, 5]]\"}\n"
+                    + "{\"error\":\"java.lang.RuntimeException: a \\\"b\\\"\"}\n", out.toString());
+            assertEquals(1, CoreMatrix.getDisplayRows());
+        } finally {
+            CoreMatrix.setDisplayLimit(rows, cols);
+        }
+    }
+
+    @Test
+    public void textIsWrittenAsText() {
+        final CoreRope rope = CoreRope.from("say ").concat("\"hi\"");
+        final StringWriter out = new StringWriter();
+        final BatchMode batch = new BatchMode(out, new StringWriter(), false);
+        batch.writeResult(CoreAtom.from("hello"));
+        batch.writeResult(rope);
+        assertEquals("hello\nsay \"hi\"\n", out.toString());
+
+        final StringWriter json = new StringWriter();
+        final BatchMode jsonBatch = new BatchMode(json, new StringWriter(), true);
+        jsonBatch.writeResult(CoreAtom.from("hello"));
+        jsonBatch.writeResult(rope);
+        assertEquals("{\"result\":\"hello\"}\n{\"result\":\"say \\\"hi\\\"\"}\n", json.toString());
+    }
+}
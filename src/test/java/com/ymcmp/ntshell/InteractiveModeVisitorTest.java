@@ -0,0 +1,119 @@
+/**
+ *     Copyright (C) 2017  Paul Teng
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program. If not, see <http://www.gnu.org/licenses/>.
+ */
+package com.ymcmp.ntshell;
+
+import com.ymcmp.ntshell.value.CoreMatrix;
+import com.ymcmp.ntshell.value.CoreNumber;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import ntshell.rt.lib.Core;
+
+import org.junit.Test;
+
+import static org.junit.Assert.*;
+
+/**
+ *
+ * @author YTENG
+ */
+public class InteractiveModeVisitorTest {
+
+    private static NtValue eval(final InteractiveModeVisitor vis, final String expr) throws LexerException {
+        return vis.eval(new Parser().consumeExpr(Lexer.lexFromString(expr)));
+    }
+
+    @Test
+    public void evaluatesConcurrently() throws Exception {
+        final InteractiveModeVisitor vis = newVisitor();
+        eval(vis, "sq = x -> x * x;");
+
+        final ExecutorService pool = Executors.newFixedThreadPool(8);
+        try {
+            final List<Future<NtValue>> results = new ArrayList<>();
+            for (int i = 0; i < 400; ++i) {
+                final String expr = "r" + i + " = sq(" + i + ") + 1;";
+                results.add(pool.submit(() -> eval(vis, expr)));
+            }
+            for (int i = 0; i < results.size(); ++i) {
+                assertEquals(CoreNumber.from(i * i + 1), results.get(i).get());
+            }
+        } finally {
+            pool.shutdown();
+        }
+
+        // Every assignment made it into the shared variables
+        for (int i = 0; i < 400; ++i) {
+            assertEquals(CoreNumber.from(i * i + 1), eval(vis, "r" + i + ";"));
+        }
+    }
+
+    private static InteractiveModeVisitor newVisitor() {
+        final BatchMode env = new BatchMode(false);
+        env.linkLibrary(Core.getInstance());
+        return new InteractiveModeVisitor(env);
+    }
+
+    @Test
+    public void spawnedTasksSeeSnapshot() throws LexerException {
+        final InteractiveModeVisitor vis = newVisitor();
+        // The scope of g is private to the call, spawn must copy it
+        eval(vis, "g = () -> do a = 1; t = spawn(() -> a * 10); a <- 2; await(t) + a end;");
+        assertEquals(CoreNumber.from(12), eval(vis, "g();"));
+    }
+
+    @Test
+    public void parCollectsResults() throws LexerException {
+        final InteractiveModeVisitor vis = newVisitor();
+        eval(vis, "sq = x -> x * x;");
+        final NtValue res = eval(vis, "par(() -> sq(2), lazy sq(3), () -> 4);");
+        assertEquals(CoreMatrix.from(new NtValue[][]{{CoreNumber.from(4), CoreNumber.from(9), CoreNumber.from(4)}}), res);
+    }
+
+    @Test
+    public void summationOfUserLambdas() throws LexerException {
+        final InteractiveModeVisitor vis = newVisitor();
+        eval(vis, "cubic = x -> x ^ 3 - 2 * x + 1 / 2;");
+        assertEquals(CoreNumber.from(1079, 2), eval(vis, "summation(cubic)(-5, 7);"));
+        // Only a closed form can sum this many terms in time
+        assertEquals(CoreNumber.from("333333383333335000000"), eval(vis, "summation(x -> x * x)(1, 10000000);"));
+        // Not a polynomial, the terms are summed one by one
+        assertEquals(CoreNumber.from(1023), eval(vis, "summation(x -> 2 ^ x)(0, 9);"));
+    }
+
+    @Test
+    public void foldingKeepsMatrixVariables() throws LexerException {
+        final InteractiveModeVisitor vis = newVisitor();
+        eval(vis, "m = [1, 2; 3, 4];");
+        final Parser parser = new Parser();
+        final NtValue quot = vis.eval(parser.consumeExpr(Lexer.lexFromString("m / m;")).unfoldConstant());
+        assertEquals(CoreMatrix.from(new NtValue[][]{
+            {CoreNumber.ONE, CoreNumber.ZERO},
+            {CoreNumber.ZERO, CoreNumber.ONE}
+        }), quot);
+        final NtValue diff = vis.eval(parser.consumeExpr(Lexer.lexFromString("m - m;")).unfoldConstant());
+        assertEquals(CoreMatrix.from(new NtValue[][]{
+            {CoreNumber.ZERO, CoreNumber.ZERO},
+            {CoreNumber.ZERO, CoreNumber.ZERO}
+        }), diff);
+    }
+}
@@ -45,6 +45,28 @@ public class ParserTest {
         }
     }
 
+    @Test
+    public void unfoldKeepsMatrixDivision() {
+        try {
+            final AST scalar = parser.consumeExpr(Lexer.lexFromString("3 / 3;")).unfoldConstant();
+            assertEquals(NumberVal.fromLong(1).toString(), scalar.toString());
+
+            // Variables could hold matrices
+            final AST variable = parser.consumeExpr(Lexer.lexFromString("a / a;")).unfoldConstant();
+            assertTrue(variable instanceof BinaryExpr);
+            final AST call = parser.consumeExpr(Lexer.lexFromString("f(1) - f(1);")).unfoldConstant();
+            assertTrue(call instanceof BinaryExpr);
+
+            // A matrix divided by itself is an identity matrix, not 1
+            final AST matrix = parser.consumeExpr(Lexer.lexFromString("[1,2;3,4] / [1,2;3,4];")).unfoldConstant();
+            assertTrue(matrix instanceof BinaryExpr);
+            final AST diff = parser.consumeExpr(Lexer.lexFromString("[1,2] - [1,2];")).unfoldConstant();
+            assertTrue(diff instanceof BinaryExpr);
+        } catch (LexerException ex) {
+            fail("No exception should be thrown");
+        }
+    }
+
     @Test
     public void parseDoEndBlock() {
         try {
@@ -216,6 +238,20 @@ public class ParserTest {
         }
     }
 
+    @Test
+    public void parseLazyExpr() {
+        try {
+            final String expr = "lazy a + 1";
+            final AST tree = parser.consumeExpr(Lexer.lexFromString(expr));
+            final AST expected = new LazyExpr(new BinaryExpr(new VariableVal(makeIdent("a")),
+                                                             NumberVal.fromLong(1),
+                                                             new Token(Token.Type.ADD, "+")));
+            assertEquals(expected.toString(), tree.toString());
+        } catch (LexerException ex) {
+            fail("No exception should be thrown");
+        }
+    }
+
     @Test
     public void testElseClause() {
         try {
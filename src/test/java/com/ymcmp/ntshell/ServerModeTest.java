@@ -0,0 +1,193 @@
+/**
+ *     Copyright (C) 2017  Paul Teng
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program. If not, see <http://www.gnu.org/licenses/>.
+ */
+package com.ymcmp.ntshell;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+
+import java.net.Socket;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import static java.nio.charset.StandardCharsets.UTF_8;
+
+import static org.junit.Assert.*;
+
+/**
+ *
+ * @author YTENG
+ */
+public class ServerModeTest {
+
+    private ServerMode server;
+    private Thread thread;
+
+    @Before
+    public void start() throws IOException {
+        server = new ServerMode(0, 2, 500);
+        thread = new Thread(() -> {
+            try {
+                server.serve();
+            } catch (IOException ex) {
+            }
+        });
+        thread.setDaemon(true);
+        thread.start();
+    }
+
+    @After
+    public void stop() throws InterruptedException {
+        server.close();
+        thread.join(5000);
+    }
+
+    private final class Client implements AutoCloseable {
+
+        private final Socket socket;
+        private final Writer out;
+        private final BufferedReader in;
+
+        Client() throws IOException {
+            socket = new Socket(server.getAddress().getAddress(), server.getAddress().getPort());
+            socket.setSoTimeout(10000);
+            out = new OutputStreamWriter(socket.getOutputStream(), UTF_8);
+            in = new BufferedReader(new InputStreamReader(socket.getInputStream(), UTF_8));
+        }
+
+        String send(final String line) throws IOException {
+            write(line);
+            return receive();
+        }
+
+        void write(final String lines) throws IOException {
+            out.write(lines + "\n");
+            out.flush();
+        }
+
+        String receive() throws IOException {
+            final StringBuilder sb = new StringBuilder();
+            String s;
+            while ((s = in.readLine()) != null && !s.equals(".")) {
+                sb.append(s).append('\n');
+            }
+            return sb.toString();
+        }
+
+        @Override
+        public void close() throws IOException {
+            socket.close();
+        }
+    }
+
+    @Test
+    public void sessionsAreIsolated() throws IOException {
+        try (final Client a = new Client(); final Client b = new Client()) {
+            assertEquals("3\n", a.send("a = 3;"));
+            assertTrue(b.send("a;").startsWith("! "));
+            assertEquals("6\n", a.send("a * 2;"));
+            assertEquals("6\n", b.send("a = 1 + \\\n5;"));
+        }
+    }
+
+    @Test
+    public void interruptsLongRequests() throws IOException {
+        try (final Client c = new Client()) {
+            c.send("f = x -> f(x);");
+            final String res = c.send("f(1);");
+            assertTrue(res, res.contains("interrupted"));
+            // The worker is free for the next request
+            assertEquals("2\n", c.send("1 + 1;"));
+        }
+    }
+
+    @Test
+    public void exitEndsSession() throws IOException {
+        try (final Client c = new Client()) {
+            assertEquals("", c.send("~exit"));
+            assertNull(c.in.readLine());
+        }
+    }
+
+    @Test
+    public void refusesSharedSettings() throws IOException {
+        try (final Client c = new Client()) {
+            assertTrue(c.send("~display 5 5").startsWith("! "));
+        }
+    }
+
+    @Test
+    public void precisionIsPerSession() throws IOException {
+        try (final Client a = new Client(); final Client b = new Client()) {
+            final String before = b.send("precision();");
+            assertEquals("50\n", a.send("precision(50);"));
+            assertEquals("50\n", a.send("precision();"));
+            assertEquals("50\n", a.send("await(spawn(() -> precision()));"));
+            assertEquals(before, b.send("precision();"));
+            assertEquals("precision: 8 digits\n", b.send("~precision 8"));
+            assertEquals("1.41421356\n", b.send("sqrt(2);"));
+            assertEquals("1.41421356237309504880168872420969807856967187537695\n", a.send("sqrt(2);"));
+        }
+    }
+
+    @Test
+    public void boundsSpawnedTasks() throws IOException, InterruptedException {
+        try (final Client a = new Client(); final Client b = new Client()) {
+            a.send("f = x -> f(x);");
+            a.send("t = spawn(f, 1);");
+            // Tasks of other sessions do not wait behind the endless one
+            assertEquals("2\n", b.send("await(spawn(x -> x + 1, 1));"));
+
+            Thread.sleep(700);
+            final String res = a.send("await(t);");
+            assertTrue(res, res.contains("ran out of time"));
+        }
+    }
+
+    @Test
+    public void refusalsKeepTheOrder() throws IOException {
+        try (final Client c = new Client()) {
+            c.send("f = x -> f(x);");
+            // The first request keeps the worker busy until it times out,
+            // so the queue fills up and the last requests are refused
+            final StringBuilder sb = new StringBuilder("f(1);");
+            final int count = 400;
+            for (int i = 0; i < count; ++i) {
+                sb.append("\n1;");
+            }
+            c.write(sb.toString());
+
+            final String first = c.receive();
+            assertTrue(first, first.contains("interrupted"));
+            int refused = 0;
+            for (int i = 0; i < count; ++i) {
+                final String res = c.receive();
+                if (res.contains("busy")) {
+                    ++refused;
+                } else {
+                    assertEquals("1\n", res);
+                }
+            }
+            assertTrue(refused > 0);
+            assertEquals("2\n", c.send("1 + 1;"));
+        }
+    }
+}
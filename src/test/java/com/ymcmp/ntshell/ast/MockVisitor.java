@@ -103,4 +103,9 @@ public final class MockVisitor extends Visitor<Object> {
     public Object visitDoEndExpr(DoEndExpr assign) {
         throw new UnsupportedOperationException("Not supported yet."); //To change body of generated methods, choose Tools | Templates.
     }
+
+    @Override
+    public Object visitLazyExpr(LazyExpr lazy) {
+        throw new UnsupportedOperationException("Not supported yet."); //To change body of generated methods, choose Tools | Templates.
+    }
 }
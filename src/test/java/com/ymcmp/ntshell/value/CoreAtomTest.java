@@ -31,6 +31,16 @@ public class CoreAtomTest {
         assertSame(CoreAtom.from("Hello"), CoreAtom.from("Hello"));
     }
 
+    @Test
+    public void internTableCountsHitsAndMisses() {
+        final CoreAtom atom = CoreAtom.from("internTableCountsHitsAndMisses");
+        final long hits = CoreAtom.getInternHits();
+        final long misses = CoreAtom.getInternMisses();
+        assertSame(atom, CoreAtom.from("internTableCountsHitsAndMisses"));
+        assertEquals(hits + 1, CoreAtom.getInternHits());
+        assertEquals(misses, CoreAtom.getInternMisses());
+    }
+
     @Test
     public void flipOnXDoesNothing() {
         assertSame(CoreAtom.from("Hello"), CoreAtom.from("Hello").flipOnX());
@@ -112,4 +122,17 @@ public class CoreAtomTest {
         assertEquals("Abc".compareTo("abc"), CoreAtom.from("Abc").compareTo(CoreAtom.from("abc")));
         assertEquals("abc".compareTo("Abc"), CoreAtom.from("abc").compareTo(CoreAtom.from("Abc")));
     }
+
+    @Test
+    public void cellsMatchEquivalentMatrix() {
+        final CoreAtom atom = CoreAtom.from("cellsMatchEquivalentMatrix");
+        assertEquals(1, atom.getRowCount());
+        assertEquals(atom.length(), atom.getColumnCount());
+        assertEquals(CoreNumber.from('c'), atom.getCell(0, 0));
+
+        final CoreMatrix mat = atom.toMatrix();
+        assertEquals(mat, atom);
+        assertEquals(atom, mat);
+        assertEquals(mat.hashCode(), atom.hashCode());
+    }
 }
@@ -0,0 +1,68 @@
+/**
+ *     Copyright (C) 2017  Paul Teng
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program. If not, see <http://www.gnu.org/licenses/>.
+ */
+package com.ymcmp.ntshell.value;
+
+import com.ymcmp.ntshell.NtValue;
+
+import com.ymcmp.ntshell.rte.DispatchException;
+
+import org.junit.Test;
+
+import static org.junit.Assert.*;
+
+/**
+ *
+ * @author YTENG
+ */
+public class CoreFutureTest {
+
+    @Test
+    public void awaitsResult() {
+        final CoreLambda add = new CoreLambda() {
+            @Override
+            public NtValue applyCall(final NtValue[] params) {
+                return params[0].applyAdd(params[1]);
+            }
+        };
+        final CoreFuture fut = CoreFuture.spawn(add, CoreNumber.ONE, CoreNumber.TWO);
+        assertEquals(CoreNumber.THREE, fut.await());
+        assertTrue(fut.isDone());
+    }
+
+    @Test(expected = DispatchException.class)
+    public void rethrowsFailure() {
+        final CoreLambda fail = new CoreLambda() {
+            @Override
+            public NtValue applyCall(final NtValue[] params) {
+                throw new DispatchException("failed on purpose");
+            }
+        };
+        CoreFuture.spawn(fail).await();
+    }
+
+    @Test
+    public void changesParallelism() {
+        final int old = CoreFuture.getParallelism();
+        try {
+            CoreFuture.setParallelism(3);
+            assertEquals(3, CoreFuture.getParallelism());
+            assertEquals(CoreNumber.ONE, CoreFuture.spawn(CoreLambda.getIdentityFunction(), CoreNumber.ONE).await());
+        } finally {
+            CoreFuture.setParallelism(old);
+        }
+    }
+}
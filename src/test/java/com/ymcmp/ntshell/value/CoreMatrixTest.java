@@ -16,9 +16,16 @@
  */
 package com.ymcmp.ntshell.value;
 
+import com.ymcmp.ntshell.Frontend;
+import com.ymcmp.ntshell.NtLibrary;
 import com.ymcmp.ntshell.NtValue;
 
 import com.ymcmp.ntshell.rte.DispatchException;
+import com.ymcmp.ntshell.rte.TaskScope;
+
+import java.util.Arrays;
+
+import java.util.concurrent.ForkJoinPool;
 
 import java.util.function.Function;
 
@@ -124,6 +131,80 @@ public class CoreMatrixTest {
     @Test
     public void testToString() {
         assertEquals("[]", CoreMatrix.getEmptyMatrix().toString());
+
+        final CoreMatrix mat = CoreMatrix.from(new AbstractNtValue[][]{
+                    {CoreNumber.from(1), CoreNumber.from(20)},
+                    {CoreNumber.from(300), CoreNumber.from(4)}
+                }
+        );
+        assertEquals("+---+--+\n"
+                + "| 1 |20|\n"
+                + "+---+--+\n"
+                + "|300|4 |\n"
+                + "+---+--+", mat.toString());
+    }
+
+    @Test
+    public void testToStringTruncatesLargeMatrix() {
+        final int rows = CoreMatrix.getDisplayRows();
+        final int cols = CoreMatrix.getDisplayColumns();
+        try {
+            CoreMatrix.setDisplayLimit(2, 2);
+            final NtValue[][] arr = new NtValue[1000][1000];
+            for (final NtValue[] row : arr) {
+                Arrays.fill(row, CoreNumber.from(7));
+            }
+            assertEquals("+---+---+---+\n"
+                    + "| 7 |...| 7 |\n"
+                    + "+---+---+---+\n"
+                    + "|...|...|...|\n"
+                    + "+---+---+---+\n"
+                    + "| 7 |...| 7 |\n"
+                    + "+---+---+---+", CoreMatrix.from(arr).toString());
+        } finally {
+            CoreMatrix.setDisplayLimit(rows, cols);
+        }
+    }
+
+    @Test
+    public void testWriteToWithOwnLimit() {
+        final StringBuilder sb = new StringBuilder();
+        final Frontend out = new Frontend() {
+            @Override
+            public String readLine() {
+                return null;
+            }
+
+            @Override
+            public void write(final char c) {
+                sb.append(c);
+            }
+
+            @Override
+            public void errWrite(final char c) {
+            }
+
+            @Override
+            public void linkLibrary(final NtLibrary library) {
+            }
+
+            @Override
+            public NtValue findDefinition(final String name) {
+                return null;
+            }
+        };
+        final NtValue[][] arr = new NtValue[30][3];
+        for (final NtValue[] row : arr) {
+            Arrays.fill(row, CoreNumber.from(7));
+        }
+        final CoreMatrix mat = CoreMatrix.from(arr);
+
+        mat.writeTo(out, 1, 0);
+        assertEquals("+---+---+---+\n"
+                + "| 7 | 7 | 7 |\n"
+                + "+---+---+---+\n"
+                + "|...|...|...|\n"
+                + "+---+---+---+\n", sb.toString());
     }
 
     @Test
@@ -317,8 +398,95 @@ public class CoreMatrixTest {
     }
 
     @Test(expected = DispatchException.class)
-    public void applyDivOnMatrixIsNotSupported() {
-        CoreMatrix.getEmptyMatrix().applyDiv(CoreMatrix.getEmptyMatrix());
+    public void applyDivBySingularMatrix() {
+        final CoreMatrix mat = CoreMatrix.from(new AbstractNtValue[][]{
+            {CoreNumber.from(1), CoreNumber.from(2)},
+            {CoreNumber.from(2), CoreNumber.from(4)}
+        });
+        mat.applyDiv(mat);
+    }
+
+    @Test
+    public void applyDivMultipliesByInverse() throws CoreMatrix.MatrixBoundMismatchException {
+        final CoreMatrix a = CoreMatrix.from(new AbstractNtValue[][]{
+            {CoreNumber.from(1), CoreNumber.from(2)},
+            {CoreNumber.from(3), CoreNumber.from(4)}
+        });
+        final CoreMatrix b = CoreMatrix.from(new AbstractNtValue[][]{
+            {CoreNumber.from(2), CoreNumber.from(1)},
+            {CoreNumber.from(1, 2), CoreNumber.from(3)}
+        });
+        assertEquals(a, ((CoreMatrix) a.applyDiv(b)).crossProduct(b));
+    }
+
+    @Test
+    public void testDecomposition() throws CoreMatrix.MatrixBoundMismatchException {
+        // Needs a row swap on the first column
+        final CoreMatrix mat = CoreMatrix.from(new AbstractNtValue[][]{
+            {CoreNumber.from(0), CoreNumber.from(2), CoreNumber.from(1, 3)},
+            {CoreNumber.from(4), CoreNumber.from(1), CoreNumber.from(-1)},
+            {CoreNumber.from(1, 2), CoreNumber.from(5), CoreNumber.from(2)}
+        });
+        // 0 * (2 + 5) - 2 * (8 + 1/2) + 1/3 * (20 - 1/2)
+        assertEquals(CoreNumber.from(-21, 2), mat.determinant());
+
+        final CoreMatrix identity = CoreMatrix.from(new AbstractNtValue[][]{
+            {CoreNumber.ONE, CoreNumber.ZERO, CoreNumber.ZERO},
+            {CoreNumber.ZERO, CoreNumber.ONE, CoreNumber.ZERO},
+            {CoreNumber.ZERO, CoreNumber.ZERO, CoreNumber.ONE}
+        });
+        assertEquals(identity, mat.crossProduct(mat.inverse()));
+        assertSame(mat.inverse(), mat.inverse());
+
+        final CoreMatrix b = CoreMatrix.from(new AbstractNtValue[][]{
+            {CoreNumber.from(1), CoreNumber.from(7)},
+            {CoreNumber.from(2), CoreNumber.from(-3)},
+            {CoreNumber.from(3), CoreNumber.from(1, 5)}
+        });
+        assertEquals(b, mat.crossProduct(mat.solve(b)));
+
+        // Changing a cell drops the cached decomposition: adds 1 * (2 + 5)
+        mat.setCell(0, 0, CoreNumber.ONE);
+        assertEquals(CoreNumber.from(-7, 2), mat.determinant());
+    }
+
+    @Test
+    public void testFloatingDecomposition() throws CoreMatrix.MatrixBoundMismatchException {
+        // Diagonally dominant, so well conditioned
+        final int n = LUDecomposition.EXACT_LIMIT + 10;
+        final NtValue[][] cells = new NtValue[n][n];
+        final NtValue[][] rhs = new NtValue[n][1];
+        for (int i = 0; i < n; ++i) {
+            for (int j = 0; j < n; ++j) {
+                cells[i][j] = CoreNumber.from(i == j ? 2 * n : (i * 7 + j * 3) % 5);
+            }
+            rhs[i][0] = CoreNumber.from(i);
+        }
+        final CoreMatrix mat = CoreMatrix.from(cells);
+        final CoreMatrix x = mat.solve(CoreMatrix.from(rhs));
+        // Approximate solutions stay doubles instead of becoming rationals
+        // with huge denominators
+        assertTrue(x instanceof DoubleMatrix);
+        final CoreMatrix check = mat.crossProduct(x);
+        assertTrue(check instanceof DoubleMatrix);
+        for (int i = 0; i < n; ++i) {
+            assertEquals(i, ((CoreNumber) check.getCell(i, 0)).toDouble(), 1e-9);
+        }
+
+        final CoreMatrix identity = mat.crossProduct(mat.inverse());
+        for (int i = 0; i < n; ++i) {
+            for (int j = 0; j < n; ++j) {
+                assertEquals(i == j ? 1 : 0, ((CoreNumber) identity.getCell(i, j)).toDouble(), 1e-9);
+            }
+        }
+
+        // The determinant is far too large for a double
+        for (int i = 0; i < n; ++i) {
+            cells[i][i] = CoreNumber.from(1000000);
+        }
+        final CoreNumber det = (CoreNumber) CoreMatrix.from(cells).determinant();
+        assertTrue(det.isFinite());
+        assertTrue(det.compareTo((CoreNumber) CoreNumber.from(10).applyPow(CoreNumber.from(6 * n - 10))) > 0);
     }
 
     @Test
@@ -337,6 +505,153 @@ public class CoreMatrixTest {
         assertEquals(CoreNumber.from(0 - 3 - 2 - 1), mat.reduceRight(NtValue::applySub, CoreNumber.from(0)));
     }
 
+    @Test
+    public void testReduceParallel() {
+        final NtValue[][] cells = new NtValue[100][100];
+        for (int i = 0; i < cells.length; ++i) {
+            for (int j = 0; j < cells[i].length; ++j) {
+                cells[i][j] = CoreNumber.from(i * 100 + j);
+            }
+        }
+        final CoreMatrix mat = new CoreMatrix(cells);
+        assertEquals(CoreNumber.from(9999 * 10000 / 2), mat.reduceParallel(NtValue::applyAdd, CoreNumber.from(0)));
+        // Taking the right-hand side is associative but not commutative,
+        // chunks must be combined in order
+        assertEquals(CoreNumber.from(9999), mat.reduceParallel((a, b) -> b, CoreUnit.getInstance()));
+        assertEquals(CoreUnit.getInstance(), new CoreMatrix(0, 0).reduceParallel(NtValue::applyAdd, CoreUnit.getInstance()));
+    }
+
+    @Test
+    public void testMapParallel() {
+        final NtValue[][] cells = new NtValue[3][3000];
+        for (int i = 0; i < cells.length; ++i) {
+            for (int j = 0; j < cells[i].length; ++j) {
+                cells[i][j] = CoreNumber.from(i * 3000 + j);
+            }
+        }
+        final CoreMatrix mat = new CoreMatrix(cells);
+        final CoreLambda square = new CoreLambda() {
+            @Override
+            public NtValue applyCall(final NtValue[] params) {
+                return params[0].applyMul(params[0]);
+            }
+
+            @Override
+            public boolean isPure() {
+                return true;
+            }
+        };
+        final CoreMatrix expected = mat.map(x -> x.applyMul(x));
+        assertEquals(expected, mat.map(square));
+        assertEquals(expected, mat.mapParallel(square));
+        assertEquals(CoreNumber.from(8999 * 8999), mat.mapParallel(square).getCell(2, 2999));
+    }
+
+    @Test
+    public void testParallelMapKeepsScope() {
+        final CoreMatrix mat = new CoreMatrix(1, (int) CoreMatrix.PARALLEL_THRESHOLD * 2);
+        final CoreLambda precision = new CoreLambda() {
+            @Override
+            public NtValue applyCall(final NtValue[] params) {
+                return CoreNumber.from(CoreNumber.getPrecision());
+            }
+
+            @Override
+            public boolean isPure() {
+                return true;
+            }
+        };
+        final int old = CoreNumber.getPrecision();
+        final TaskScope scope = new TaskScope(ForkJoinPool.commonPool(), 0, old + 20);
+        final CoreMatrix digits = scope.run(() -> mat.mapParallel(precision));
+        assertEquals(CoreNumber.from(old + 20), digits.getCell(0, 0));
+        assertEquals(CoreNumber.from(old + 20), digits.getCell(0, digits.getColumnCount() - 1));
+        assertEquals(CoreNumber.from(old + 20), scope.run(() -> mat.reduceParallel(precision, CoreNumber.ZERO)));
+        assertEquals(old, CoreNumber.getPrecision());
+    }
+
+    @Test
+    public void testFusedElementWise() {
+        final CoreMatrix a = CoreMatrix.from(new AbstractNtValue[][]{
+            {CoreNumber.from(1), CoreNumber.from(2)},
+            {CoreNumber.from(3), CoreNumber.from(4)}
+        });
+        final CoreMatrix b = CoreMatrix.from(new AbstractNtValue[][]{
+            {CoreNumber.from(5), CoreNumber.from(6)},
+            {CoreNumber.from(7), CoreNumber.from(8)}
+        });
+        final NtValue fused = a.applyAdd(b.applyMul(CoreNumber.from(2))).applySub(a);
+        assertTrue(fused instanceof LazyMatrix);
+        assertEquals(b.map(x -> x.applyMul(CoreNumber.from(2))), fused);
+
+        NtValue deep = a;
+        for (int i = 0; i < 100; ++i) {
+            deep = deep.applyAdd(CoreNumber.ONE);
+        }
+        assertEquals(a.map(x -> x.applyAdd(CoreNumber.from(100))), deep);
+        // Observed lazy matrices can still be used as operands
+        assertEquals(CoreNumber.from(203), deep.applyAdd(deep).applyNegative().applyNegative().applyCall(CoreNumber.from(2), CoreNumber.from(1)).applySub(CoreNumber.from(3)));
+    }
+
+    @Test
+    public void testFusedSharedOperand() {
+        final CoreMatrix a = CoreMatrix.from(new AbstractNtValue[][]{
+            {CoreNumber.from(1), CoreNumber.from(2)},
+            {CoreNumber.from(3), CoreNumber.from(4)}
+        });
+        // m -> m + m nested 64 times, which would take 2^64 steps per cell if
+        // the shared operand was calculated once per path
+        NtValue m = a;
+        for (int i = 0; i < 64; ++i) {
+            m = m.applyAdd(m);
+        }
+        final CoreNumber scale = (CoreNumber) CoreNumber.TWO.applyPow(CoreNumber.from(64));
+        assertEquals(a.map(x -> x.applyMul(scale)), m);
+
+        // The same operand feeding two separate expressions
+        NtValue n = a;
+        for (int i = 0; i < 64; ++i) {
+            n = n.applyMul(CoreNumber.TWO).applySub(n);
+        }
+        assertEquals(a, n);
+    }
+
+    @Test
+    public void testForceReportsErrors() {
+        final AbstractNtValue broken = new AbstractNtValue() {
+            @Override
+            public NtValue applyAdd(final NtValue rhs) {
+                throw new DispatchException("+", "Cannot add");
+            }
+        };
+        final CoreMatrix a = CoreMatrix.from(new AbstractNtValue[][]{
+            {CoreNumber.from(1), broken}
+        });
+        final CoreMatrix lazy = (CoreMatrix) a.applyAdd(CoreNumber.ONE);
+        try {
+            lazy.force();
+            fail("The deferred error should surface when forced");
+        } catch (DispatchException ex) {
+        }
+
+        // Changing an operand after forcing does not change the result
+        final CoreMatrix b = CoreMatrix.from(new AbstractNtValue[][]{
+            {CoreNumber.from(1), CoreNumber.from(2)}
+        });
+        final CoreMatrix sum = ((CoreMatrix) b.applyAdd(CoreNumber.ONE)).force();
+        b.setCell(0, 0, CoreNumber.from(10));
+        assertEquals(CoreNumber.TWO, sum.getCell(0, 0));
+    }
+
+    @Test(expected = DispatchException.class)
+    public void testFusedShapeMismatch() {
+        final CoreMatrix a = CoreMatrix.from(new AbstractNtValue[][]{
+            {CoreNumber.from(1), CoreNumber.from(2)}
+        });
+        // Shapes are checked before anything is calculated
+        a.applyAdd(CoreMatrix.from(new AbstractNtValue[][]{{CoreNumber.from(1)}}));
+    }
+
     @Test(expected = ClassCastException.class)
     public void testCompareTo() {
         final CoreMatrix mat = CoreMatrix.from(new AbstractNtValue[][]{
@@ -0,0 +1,143 @@
+/**
+ *     Copyright (C) 2017  Paul Teng
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program. If not, see <http://www.gnu.org/licenses/>.
+ */
+package com.ymcmp.ntshell.value;
+
+import org.junit.Test;
+
+import static org.junit.Assert.*;
+
+/**
+ *
+ * @author YTENG
+ */
+public class CoreNumberTest {
+
+    @Test
+    public void toDoubleIsCorrectlyRounded() {
+        assertEquals(0.1, CoreNumber.from(1, 10).toDouble(), 0.0);
+        assertEquals(1.0 / 3.0, CoreNumber.THIRD.toDouble(), 0.0);
+        assertEquals(-2.5, CoreNumber.from(-5, 2).toDouble(), 0.0);
+        assertEquals(3074457345618258432.0, CoreNumber.from(Long.MAX_VALUE, 3).toDouble(), 0.0);
+    }
+
+    @Test
+    public void toDoubleHandlesSpecialValues() {
+        assertTrue(Double.isNaN(CoreNumber.NAN.toDouble()));
+        assertEquals(Double.POSITIVE_INFINITY, CoreNumber.POS_INF.toDouble(), 0.0);
+        assertEquals(Double.NEGATIVE_INFINITY, CoreNumber.NEG_INF.toDouble(), 0.0);
+    }
+
+    @Test
+    public void exactKeepsBinaryValue() {
+        assertEquals(CoreNumber.from(3, 4), CoreNumber.exact(0.75));
+        assertEquals(CoreNumber.from(-1024), CoreNumber.exact(-1024.0));
+        assertNotEquals(CoreNumber.from(1, 10), CoreNumber.exact(0.1));
+        assertEquals(0.1, CoreNumber.exact(0.1).toDouble(), 0.0);
+        assertEquals(Double.MIN_VALUE, CoreNumber.exact(Double.MIN_VALUE).toDouble(), 0.0);
+        assertSame(CoreNumber.NAN, CoreNumber.exact(Double.NaN));
+    }
+
+    @Test
+    public void precisionControlsDecimalConversion() {
+        final int old = CoreNumber.getPrecision();
+        try {
+            CoreNumber.setPrecision(4);
+            assertEquals("0.3333", CoreNumber.THIRD.toString());
+            assertEquals("3.1416", CoreNumber.getPi().toString());
+
+            CoreNumber.setPrecision(40);
+            assertEquals("3.1415926535897932384626433832795028841972", CoreNumber.getPi().toString());
+            assertEquals("2.7182818284590452353602874713526624977572", CoreNumber.getE().toString());
+        } finally {
+            CoreNumber.setPrecision(old);
+        }
+    }
+
+    @Test
+    public void doublePrecisionCountsWholeDigits() {
+        final int old = CoreNumber.getPrecision();
+        try {
+            CoreNumber.setPrecision(10);
+            assertTrue(CoreNumber.isDoublePrecision(0.5, -0.25));
+            assertTrue(CoreNumber.isDoublePrecision(12345.0));
+            assertFalse(CoreNumber.isDoublePrecision(123456.0));
+            assertFalse(CoreNumber.isDoublePrecision(0.5, -1e9));
+            assertTrue(CoreNumber.isDoublePrecision(Double.NaN, Double.POSITIVE_INFINITY));
+        } finally {
+            CoreNumber.setPrecision(old);
+        }
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void precisionMustBePositive() {
+        CoreNumber.setPrecision(0);
+    }
+
+    @Test
+    public void exactRootsStayExact() {
+        assertEquals(CoreNumber.TWO, CoreNumber.from(8).applyPow(CoreNumber.THIRD));
+        assertEquals(CoreNumber.from(9, 4), CoreNumber.from(27, 8).applyPow(CoreNumber.from(2, 3)));
+        assertEquals(CoreNumber.from(-2), CoreNumber.from(-8).applyPow(CoreNumber.THIRD));
+        assertEquals(CoreNumber.from(1, 3), CoreNumber.from(9).applyPow(CoreNumber.from(-1, 2)));
+    }
+
+    @Test
+    public void inexactRootsAreAccurate() {
+        assertEquals("1.414213562373", CoreNumber.TWO.applyPow(CoreNumber.HALF).toString());
+        assertEquals("-1.259921049895", CoreNumber.from(-2).applyPow(CoreNumber.THIRD).toString());
+        assertEquals("0.793700525984", CoreNumber.from(1, 2).applyPow(CoreNumber.THIRD).toString());
+        assertSame(CoreNumber.NAN, CoreNumber.from(-2).applyPow(CoreNumber.HALF));
+
+        final CoreNumber big = (CoreNumber) CoreNumber.TEN.applyPow(CoreNumber.from(401));
+        final String digits = ((CoreNumber) big.applyPow(CoreNumber.HALF)).toDecimal().toBigInteger().toString();
+        assertEquals(201, digits.length());
+        assertTrue(digits.startsWith("31622776601683793319"));
+    }
+
+    @Test
+    public void projectionsFollowValue() {
+        final CoreNumber n = CoreNumber.from(7, 2);
+        assertEquals(3, n.toInt());
+        assertEquals(3.5, n.toDouble(), 0.0);
+        assertSame(n.toDecimal(), n.toDecimal());
+        assertFalse(n.isInteger());
+
+        final CoreNumber inv = n.inverse();
+        assertEquals(0, inv.toInt());
+        assertEquals(2.0 / 7.0, inv.toDouble(), 0.0);
+        assertEquals("0.285714285714", inv.toString());
+        assertEquals(3.5, n.toDouble(), 0.0);
+
+        assertEquals(-42, CoreNumber.from(-42).toIntExact());
+    }
+
+    @Test(expected = ArithmeticException.class)
+    public void toIntExactRejectsFractions() {
+        CoreNumber.HALF.toIntExact();
+    }
+
+    @Test
+    public void smallValuesAreShared() {
+        assertSame(CoreNumber.from('a'), CoreNumber.from(97));
+        assertSame(CoreNumber.from(-5), CoreNumber.TWO.applySub(CoreNumber.from(7)));
+        assertSame(CoreNumber.HALF, CoreNumber.from(3, 6));
+        assertSame(CoreNumber.from(-3, 4), CoreNumber.from("-0.75"));
+        assertSame(CoreNumber.from(42), CoreNumber.from(41).addOne());
+        assertSame(CoreNumber.POS_INF, CoreNumber.ZERO.inverse());
+        assertEquals(CoreNumber.from(1000), CoreNumber.from(new java.math.BigDecimal("1E+3")));
+    }
+}
@@ -0,0 +1,111 @@
+/**
+ *     Copyright (C) 2017  Paul Teng
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program. If not, see <http://www.gnu.org/licenses/>.
+ */
+package com.ymcmp.ntshell.value;
+
+import com.ymcmp.ntshell.NtValue;
+
+import org.junit.Test;
+
+import static org.junit.Assert.*;
+
+/**
+ *
+ * @author YTENG
+ */
+public class CoreRopeTest {
+
+    @Test
+    public void concatKeepsText() {
+        final StringBuilder expected = new StringBuilder();
+        CoreRope rope = CoreRope.getEmptyRope();
+        for (int i = 0; i < 5000; ++i) {
+            final String piece = i % 7 == 0 ? "long piece number " + i + ";" : Integer.toString(i);
+            expected.append(piece);
+            rope = rope.concat(piece);
+        }
+        assertEquals(expected.length(), rope.length());
+        assertEquals(expected.toString(), rope.toString());
+        assertEquals(CoreNumber.from(expected.charAt(1234)), rope.getCharAt(1234));
+        assertEquals(CoreNumber.from(expected.charAt(expected.length() - 1)), rope.getCharAt(-1));
+        assertEquals(CoreRope.from(expected.substring(100, 3000)), rope.slice(100, 3000));
+    }
+
+    @Test
+    public void sliceAndIndexMatchAtom() {
+        final CoreAtom atom = CoreAtom.from("Hello, world");
+        final CoreRope rope = CoreRope.from("Hello").concat(", ").concat(CoreRope.from("world"));
+
+        assertEquals(atom.getCharAt(4), rope.getCharAt(4));
+        assertEquals(atom.getCharAt(-3), rope.getCharAt(-3));
+        assertEquals(CoreUnit.getInstance(), rope.getCharAt(12));
+        assertEquals(atom.slice(3, 9), rope.slice(3, 9));
+        assertEquals(CoreUnit.getInstance(), rope.slice(3, 20));
+        assertEquals(((NtValue) atom).applyCall(CoreNumber.from(2), CoreNumber.from(-1)), ((NtValue) rope).applyCall(CoreNumber.from(2), CoreNumber.from(-1)));
+    }
+
+    @Test
+    public void comparesWithAtoms() {
+        final CoreRope rope = CoreRope.from("Ab").concat("c");
+        assertEquals(CoreAtom.from("Abc"), rope);
+        assertEquals(rope, CoreAtom.from("Abc"));
+        assertEquals(CoreAtom.from("Abc").hashCode(), rope.hashCode());
+        assertEquals(0, rope.compareTo(CoreAtom.from("Abc")));
+        assertEquals("Abc".compareTo("abc"), rope.compareTo(CoreAtom.from("abc")));
+        assertEquals("abc".compareTo("Abc"), CoreAtom.from("abc").compareTo(rope));
+        assertSame(CoreAtom.from("Abc"), rope.toAtom());
+
+        // Pieces split at different places still compare by their text
+        final StringBuilder sb = new StringBuilder();
+        CoreRope a = CoreRope.getEmptyRope();
+        CoreRope b = CoreRope.getEmptyRope();
+        for (int i = 0; i < 500; ++i) {
+            sb.append(i).append(',');
+            a = a.concat(CoreRope.from(i + ","));
+        }
+        b = b.concat(CoreRope.from(sb.substring(0, 7))).concat(CoreRope.from(sb.substring(7)));
+        assertEquals(a, b);
+        assertEquals(0, a.compareTo(b));
+        assertEquals(CoreAtom.from(sb.toString()), a);
+        final CoreRope longer = b.concat("x");
+        assertTrue(a.compareTo(longer) < 0);
+        assertTrue(longer.compareTo(a) > 0);
+        assertNotEquals(a, longer);
+    }
+
+    @Test
+    public void slicesOfOnePiece() {
+        final StringBuilder sb = new StringBuilder();
+        for (int i = 0; i < 100000; ++i) {
+            sb.append((char) ('a' + i % 26));
+        }
+        final String text = sb.toString();
+        final CoreRope rope = CoreRope.from(text);
+
+        final CoreRope outer = (CoreRope) rope.slice(1000, 90000);
+        final CoreRope inner = (CoreRope) outer.slice(500, 600);
+        assertEquals(text.substring(1500, 1600), inner.toString());
+        assertEquals(CoreNumber.from(text.charAt(1550)), inner.getCharAt(50));
+        assertEquals(CoreAtom.from(text.substring(1500, 1600)), inner);
+        assertEquals(0, inner.compareTo(CoreRope.from(text.substring(1500, 1600))));
+
+        final StringBuilder pieces = new StringBuilder();
+        inner.concat(outer.slice(0, 3).toString()).forEachPiece(pieces::append);
+        assertEquals(text.substring(1500, 1600) + text.substring(1000, 1003), pieces.toString());
+        assertEquals(text.substring(1500, 1600) + text.substring(1000, 1003),
+                inner.concat((CoreRope) outer.slice(0, 3)).toString());
+    }
+}
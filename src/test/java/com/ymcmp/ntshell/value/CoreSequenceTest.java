@@ -0,0 +1,153 @@
+/**
+ *     Copyright (C) 2017  Paul Teng
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program. If not, see <http://www.gnu.org/licenses/>.
+ */
+package com.ymcmp.ntshell.value;
+
+import com.ymcmp.ntshell.NtValue;
+
+import com.ymcmp.ntshell.rte.DispatchException;
+
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.junit.Test;
+
+import static org.junit.Assert.*;
+
+/**
+ *
+ * @author YTENG
+ */
+public class CoreSequenceTest {
+
+    private static CoreMatrix row(final long... values) {
+        final NtValue[] cells = new NtValue[values.length];
+        for (int i = 0; i < values.length; ++i) {
+            cells[i] = CoreNumber.from(values[i]);
+        }
+        return CoreMatrix.from(new NtValue[][]{cells});
+    }
+
+    @Test
+    public void testRange() {
+        assertEquals(row(1, 2, 3, 4), CoreSequence.range(CoreNumber.ONE, CoreNumber.from(4), CoreNumber.ONE).collect());
+        assertEquals(row(10, 7, 4, 1), CoreSequence.range(CoreNumber.TEN, CoreNumber.ZERO, CoreNumber.from(-3)).collect());
+        assertEquals(CoreMatrix.getEmptyMatrix(), CoreSequence.range(CoreNumber.TEN, CoreNumber.ONE, CoreNumber.ONE).collect());
+        // Only the elements that are pulled are evaluated
+        assertEquals(row(5, 6, 7), CoreSequence.range(CoreNumber.ONE, null, CoreNumber.ONE).drop(4).take(3).collect());
+        try {
+            CoreSequence.range(CoreNumber.ONE, CoreNumber.TEN, CoreNumber.ZERO);
+            fail("A step of zero never reaches the end");
+        } catch (DispatchException ex) {
+        }
+    }
+
+    @Test
+    public void testLaziness() {
+        final AtomicInteger calls = new AtomicInteger();
+        final CoreSequence seq = CoreSequence.range(CoreNumber.ONE, null, CoreNumber.ONE)
+                .map(new CoreLambda() {
+                    @Override
+                    public NtValue applyCall(final NtValue[] params) {
+                        calls.incrementAndGet();
+                        return params[0].applyMul(params[0]);
+                    }
+                })
+                .filter(new CoreLambda() {
+                    @Override
+                    public NtValue applyCall(final NtValue[] params) {
+                        return params[0].applyMod(CoreNumber.TWO);
+                    }
+                });
+        assertEquals(0, calls.get());
+        assertEquals(row(1, 9, 25), seq.take(3).collect());
+        assertEquals(5, calls.get());
+
+        // Every consumer starts a new pass
+        assertEquals(CoreNumber.from(1 + 9 + 25 + 49), seq.take(4).reduceLeft(new CoreLambda() {
+            @Override
+            public NtValue applyCall(final NtValue[] params) {
+                return params[0].applyAdd(params[1]);
+            }
+        }, CoreNumber.ZERO));
+    }
+
+    @Test
+    public void testArithmetic() {
+        final CoreSequence xs = CoreSequence.range(CoreNumber.ONE, CoreNumber.from(4), CoreNumber.ONE);
+        assertEquals(row(2, 4, 6, 8), ((CoreSequence) xs.applyMul(CoreNumber.TWO)).collect());
+        // The sequence can also be on the right hand side
+        final NtValue doubled = CoreNumber.TWO.applyMul(xs);
+        assertTrue(doubled instanceof CoreSequence);
+        assertEquals(row(2, 4, 6, 8), ((CoreSequence) doubled).collect());
+        assertEquals(row(9, 8, 7, 6), ((CoreSequence) CoreNumber.TEN.applySub(xs)).collect());
+        assertEquals(row(1, 2, 4, 8), ((CoreSequence) CoreNumber.TWO.applyPow(xs.applySub(CoreNumber.ONE))).collect());
+
+        // Two sequences are combined pairwise up to the shorter one
+        final CoreSequence ys = CoreSequence.range(CoreNumber.TEN, null, CoreNumber.TEN);
+        assertEquals(row(11, 22, 33, 44), ((CoreSequence) xs.applyAdd(ys)).collect());
+        assertEquals(row(10, 40, 90, 160), ((CoreSequence) ys.applyMul(xs)).collect());
+    }
+
+    @Test
+    public void testMatrices() {
+        final CoreMatrix mat = CoreMatrix.from(new NtValue[][]{
+            {CoreNumber.ONE, CoreNumber.TWO},
+            {CoreNumber.THREE, CoreNumber.TEN}
+        });
+        assertEquals(row(1, 2, 3, 10), CoreSequence.of(mat).collect());
+        assertEquals(mat, CoreSequence.rowsOf(mat).collect());
+        assertEquals(mat.applyMul(CoreNumber.TWO), ((CoreSequence) CoreSequence.rowsOf(mat).applyMul(CoreNumber.TWO)).collect());
+        assertEquals(row(3, 10), CoreSequence.rowsOf(mat).drop(1).collect());
+
+        // Text is kept whole instead of being stacked as rows of characters
+        final CoreMatrix words = CoreMatrix.from(new NtValue[][]{{CoreRope.from("abc"), CoreRope.from("def")}});
+        assertEquals(words, CoreSequence.of(words).collect());
+    }
+
+    @Test
+    public void testGenerateClosesCursor() {
+        final AtomicInteger next = new AtomicInteger();
+        final CoreSequence gen = CoreSequence.generate(new CoreLambda() {
+            @Override
+            public NtValue applyCall(final NtValue[] params) {
+                final int n = next.incrementAndGet();
+                return n > 3 ? CoreUnit.getInstance() : CoreNumber.from(n);
+            }
+        });
+        assertEquals(row(1, 2, 3), gen.collect());
+
+        final AtomicInteger closed = new AtomicInteger();
+        final CoreSequence seq = new CoreSequence() {
+            @Override
+            public Cursor open() {
+                final Cursor src = CoreSequence.range(CoreNumber.ONE, null, CoreNumber.ONE).open();
+                return new Cursor() {
+                    @Override
+                    public NtValue next() {
+                        return src.next();
+                    }
+
+                    @Override
+                    public void close() {
+                        closed.incrementAndGet();
+                    }
+                };
+            }
+        };
+        seq.take(2).collect();
+        assertEquals(1, closed.get());
+    }
+}
@@ -0,0 +1,116 @@
+/**
+ *     Copyright (C) 2017  Paul Teng
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program. If not, see <http://www.gnu.org/licenses/>.
+ */
+package com.ymcmp.ntshell.value;
+
+import com.ymcmp.ntshell.NtValue;
+
+import com.ymcmp.ntshell.rte.DispatchException;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.junit.Test;
+
+import static org.junit.Assert.*;
+
+/**
+ *
+ * @author YTENG
+ */
+public class CoreThunkTest {
+
+    @Test
+    public void forcesOnce() {
+        final AtomicInteger calls = new AtomicInteger();
+        final CoreThunk thunk = new CoreThunk(() -> {
+            calls.incrementAndGet();
+            return CoreNumber.THREE;
+        });
+
+        assertFalse(thunk.isForced());
+        assertEquals(0, calls.get());
+        assertEquals(CoreNumber.THREE, thunk.applyCall());
+        assertEquals(CoreNumber.THREE, thunk.applyCall());
+        assertTrue(thunk.isForced());
+        assertEquals(1, calls.get());
+    }
+
+    @Test
+    public void forcesOnceAcrossThreads() throws Exception {
+        final AtomicInteger calls = new AtomicInteger();
+        final CountDownLatch start = new CountDownLatch(1);
+        final CoreThunk thunk = new CoreThunk(() -> {
+            calls.incrementAndGet();
+            return CoreNumber.TWO;
+        });
+
+        final ExecutorService pool = Executors.newFixedThreadPool(8);
+        try {
+            final List<Future<NtValue>> results = new ArrayList<>();
+            for (int i = 0; i < 64; ++i) {
+                results.add(pool.submit(() -> {
+                    start.await();
+                    return thunk.force();
+                }));
+            }
+            start.countDown();
+            for (final Future<NtValue> result : results) {
+                assertEquals(CoreNumber.TWO, result.get());
+            }
+        } finally {
+            pool.shutdown();
+        }
+        assertEquals(1, calls.get());
+    }
+
+    @Test
+    public void retriesAfterFailure() {
+        final AtomicInteger calls = new AtomicInteger();
+        final CoreThunk thunk = new CoreThunk(() -> {
+            if (calls.incrementAndGet() == 1) {
+                throw new DispatchException("boom");
+            }
+            return CoreNumber.ONE;
+        });
+
+        try {
+            thunk.force();
+            fail("The first force should fail");
+        } catch (DispatchException ex) {
+        }
+        assertFalse(thunk.isForced());
+        assertEquals(CoreNumber.ONE, thunk.force());
+    }
+
+    @Test(expected = DispatchException.class)
+    public void rejectsSelfDependency() {
+        final CoreThunk[] self = new CoreThunk[1];
+        self[0] = new CoreThunk(() -> self[0].force());
+        self[0].force();
+    }
+
+    @Test(expected = DispatchException.class)
+    public void rejectsParameters() {
+        new CoreThunk(() -> CoreNumber.ONE).applyCall(CoreNumber.ONE);
+    }
+}
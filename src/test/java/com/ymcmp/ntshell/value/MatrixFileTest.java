@@ -0,0 +1,146 @@
+/**
+ *     Copyright (C) 2017  Paul Teng
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program. If not, see <http://www.gnu.org/licenses/>.
+ */
+package com.ymcmp.ntshell.value;
+
+import com.ymcmp.ntshell.NtValue;
+
+import java.io.IOException;
+
+import java.nio.ByteBuffer;
+
+import java.nio.file.FileSystems;
+import java.nio.file.Files;
+import java.nio.file.Path;
+
+import java.nio.file.attribute.PosixFilePermissions;
+
+import org.junit.Assume;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import static org.junit.Assert.*;
+
+/**
+ *
+ * @author YTENG
+ */
+public class MatrixFileTest {
+
+    @Rule
+    public final TemporaryFolder folder = new TemporaryFolder();
+
+    @Test
+    public void doublesAreMapped() throws IOException {
+        final CoreMatrix mat = CoreMatrix.from(new NtValue[][]{
+            {CoreNumber.from(1), CoreNumber.from(1, 2), CoreNumber.from(-3)},
+            {CoreNumber.from(1, 1024), CoreNumber.ZERO, CoreNumber.from(1L << 40)}
+        });
+        final Path path = folder.newFile().toPath();
+        MatrixFile.save(path, mat);
+        assertEquals(16 + 6 * 8, Files.size(path));
+
+        final CoreMatrix loaded = MatrixFile.load(path);
+        assertTrue(loaded instanceof DoubleMatrix);
+        assertEquals(mat, loaded);
+        assertEquals(0.5, ((DoubleMatrix) loaded).getDouble(0, 1), 0);
+    }
+
+    @Test
+    public void rationalsStayExact() throws IOException {
+        final CoreMatrix mat = CoreMatrix.from(new NtValue[][]{
+            {CoreNumber.from(1, 3), CoreNumber.from("123456789012345678901234567890")},
+            {CoreNumber.from(-2, 7), CoreNumber.POS_INF}
+        });
+        final Path path = folder.newFile().toPath();
+        MatrixFile.save(path, mat);
+
+        final CoreMatrix loaded = MatrixFile.load(path);
+        assertFalse(loaded instanceof DoubleMatrix);
+        assertEquals(mat, loaded);
+    }
+
+    @Test
+    public void savingKeepsMappedMatrices() throws IOException {
+        final Path path = folder.newFile().toPath();
+        MatrixFile.save(path, CoreMatrix.from(new NtValue[][]{{CoreNumber.from(1), CoreNumber.from(2)}}));
+        final CoreMatrix old = MatrixFile.load(path);
+
+        MatrixFile.save(path, CoreMatrix.from(new NtValue[][]{{CoreNumber.from(3)}}));
+        assertEquals(CoreMatrix.from(new NtValue[][]{{CoreNumber.from(1), CoreNumber.from(2)}}), old);
+        assertEquals(CoreMatrix.from(new NtValue[][]{{CoreNumber.from(3)}}), MatrixFile.load(path));
+        assertEquals(1, folder.getRoot().list().length);
+    }
+
+    @Test
+    public void rejectsTruncatedRationals() throws IOException {
+        final Path path = folder.newFile().toPath();
+        final ByteBuffer header = ByteBuffer.allocate(20);
+        header.put(new byte[]{'N', 'T', 'M', 'X', 1, 2, 0, 0});
+        // A huge shape with hardly any cells
+        header.putInt(Integer.MAX_VALUE).putInt(Integer.MAX_VALUE);
+        header.put(new byte[]{1, 1, 1, 1});
+        Files.write(path, header.array());
+        try {
+            MatrixFile.load(path);
+            fail("The shape does not fit in the file");
+        } catch (IOException ex) {
+        }
+
+        // A cell that claims to be longer than the file
+        header.putInt(8, 1).putInt(12, 1);
+        header.put(16, (byte) 0x7F);
+        Files.write(path, header.array());
+        try {
+            MatrixFile.load(path);
+            fail("The cell does not fit in the file");
+        } catch (IOException ex) {
+        }
+    }
+
+    @Test(expected = IOException.class)
+    public void rejectsOtherFiles() throws IOException {
+        final Path path = folder.newFile().toPath();
+        Files.write(path, "not a matrix, just text".getBytes());
+        MatrixFile.load(path);
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void onlyNumbersAreSaved() throws IOException {
+        MatrixFile.save(folder.newFile().toPath(), CoreMatrix.from(new NtValue[][]{{CoreUnit.getInstance()}}));
+    }
+
+    @Test
+    public void savingKeepsPermissions() throws IOException {
+        Assume.assumeTrue(FileSystems.getDefault().supportedFileAttributeViews().contains("posix"));
+        final CoreMatrix mat = CoreMatrix.from(new NtValue[][]{{CoreNumber.ONE}});
+
+        // New files get the same permissions as any other new file
+        final Path plain = folder.newFile("plain").toPath();
+        final Path fresh = folder.getRoot().toPath().resolve("fresh.ntmx");
+        MatrixFile.save(fresh, mat);
+        assertEquals(Files.getPosixFilePermissions(plain), Files.getPosixFilePermissions(fresh));
+
+        // Existing files keep theirs
+        final Path existing = folder.newFile("existing.ntmx").toPath();
+        Files.setPosixFilePermissions(existing, PosixFilePermissions.fromString("rw-r-----"));
+        MatrixFile.save(existing, mat);
+        assertEquals(PosixFilePermissions.fromString("rw-r-----"), Files.getPosixFilePermissions(existing));
+        assertEquals(mat, MatrixFile.load(existing));
+        assertEquals(3, folder.getRoot().list().length);
+    }
+}
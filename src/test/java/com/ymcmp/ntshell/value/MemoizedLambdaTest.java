@@ -0,0 +1,113 @@
+/**
+ *     Copyright (C) 2017  Paul Teng
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program. If not, see <http://www.gnu.org/licenses/>.
+ */
+package com.ymcmp.ntshell.value;
+
+import com.ymcmp.ntshell.NtValue;
+
+import com.ymcmp.ntshell.rte.TailCallTrigger;
+
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.junit.Test;
+
+import static org.junit.Assert.*;
+
+/**
+ *
+ * @author YTENG
+ */
+public class MemoizedLambdaTest {
+
+    /**
+     * x -> x * 2 that counts how often it is called
+     */
+    private static CoreLambda doubling(final AtomicInteger calls) {
+        return new CoreLambda() {
+            @Override
+            public NtValue applyCall(final NtValue[] params) {
+                calls.incrementAndGet();
+                return params[0].applyMul(CoreNumber.TWO);
+            }
+        };
+    }
+
+    @Test
+    public void cachesByValue() {
+        final AtomicInteger calls = new AtomicInteger();
+        final MemoizedLambda f = new MemoizedLambda(doubling(calls), 16);
+
+        assertEquals(CoreNumber.from(6), f.applyCall(new NtValue[]{CoreNumber.THREE}));
+        assertEquals(CoreNumber.from(6), f.applyCall(new NtValue[]{CoreNumber.from(6, 2)}));
+        assertEquals(1, calls.get());
+
+        // Matrices are keyed by their cells
+        final NtValue[][] cells = {{CoreNumber.ONE, CoreNumber.TWO}};
+        f.applyCall(new NtValue[]{CoreMatrix.from(cells)});
+        f.applyCall(new NtValue[]{CoreMatrix.from(new NtValue[][]{cells[0].clone()})});
+        assertEquals(2, calls.get());
+
+        assertEquals(2, f.getHits());
+        assertEquals(2, f.getMisses());
+        assertEquals(2, f.getSize());
+    }
+
+    @Test
+    public void evictsLeastRecentlyUsed() {
+        final AtomicInteger calls = new AtomicInteger();
+        final MemoizedLambda f = new MemoizedLambda(doubling(calls), 2);
+
+        f.applyCall(new NtValue[]{CoreNumber.ONE});
+        f.applyCall(new NtValue[]{CoreNumber.TWO});
+        f.applyCall(new NtValue[]{CoreNumber.ONE});
+        // Evicts 2, the least recently used
+        f.applyCall(new NtValue[]{CoreNumber.THREE});
+        assertEquals(3, calls.get());
+
+        f.applyCall(new NtValue[]{CoreNumber.ONE});
+        assertEquals(3, calls.get());
+        f.applyCall(new NtValue[]{CoreNumber.TWO});
+        assertEquals(4, calls.get());
+        assertEquals(2, f.getSize());
+    }
+
+    @Test
+    public void recursiveCallsHitTheCache() {
+        final AtomicInteger calls = new AtomicInteger();
+        final MemoizedLambda[] fib = new MemoizedLambda[1];
+        fib[0] = new MemoizedLambda(new CoreLambda() {
+            @Override
+            public NtValue applyCall(final NtValue[] params) {
+                calls.incrementAndGet();
+                final CoreNumber n = (CoreNumber) params[0];
+                if (n.compareTo(CoreNumber.TWO) < 0) {
+                    return n;
+                }
+                // The last call is a tail call, like in user defined lambdas
+                final NtValue a = fib[0].applyCall(new NtValue[]{n.applySub(CoreNumber.ONE)});
+                throw new TailCallTrigger(new CoreLambda() {
+                    @Override
+                    public NtValue applyCall(final NtValue[] unused) {
+                        return a.applyAdd(fib[0].applyCall(new NtValue[]{n.applySub(CoreNumber.TWO)}));
+                    }
+                });
+            }
+        }, MemoizedLambda.DEFAULT_CAPACITY);
+
+        assertEquals(CoreNumber.from(12586269025L), fib[0].applyCall(new NtValue[]{CoreNumber.from(50)}));
+        assertEquals(51, calls.get());
+    }
+}
@@ -0,0 +1,103 @@
+/**
+ *     Copyright (C) 2017  Paul Teng
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program. If not, see <http://www.gnu.org/licenses/>.
+ */
+package com.ymcmp.ntshell.value;
+
+import com.ymcmp.ntshell.NtValue;
+
+import org.junit.Test;
+
+import static org.junit.Assert.*;
+
+/**
+ *
+ * @author YTENG
+ */
+public class SparseMatrixTest {
+
+    /**
+     * A 4x5 matrix with a duplicated cell at (1, 3)
+     */
+    private static CoreMatrix sample() {
+        return SparseMatrix.fromTriplets(4, 5,
+                new int[]{3, 1, 0, 1, 1},
+                new int[]{4, 3, 0, 0, 3},
+                new NtValue[]{CoreNumber.from(7), CoreNumber.from(2), CoreNumber.from(1), CoreNumber.from(5), CoreNumber.from(3)});
+    }
+
+    private static CoreMatrix dense(final CoreMatrix mat) {
+        final NtValue[][] cells = new NtValue[mat.getRowCount()][mat.getColumnCount()];
+        for (int i = 0; i < cells.length; ++i) {
+            for (int j = 0; j < cells[i].length; ++j) {
+                cells[i][j] = mat.getCell(i, j);
+            }
+        }
+        return CoreMatrix.from(cells);
+    }
+
+    @Test
+    public void tripletsBecomeCells() {
+        final CoreMatrix mat = sample();
+        assertTrue(mat instanceof SparseMatrix);
+        assertEquals(4, ((SparseMatrix) mat).getNonZeroCount());
+        assertEquals(CoreNumber.from(5), mat.getCell(1, 3));
+        assertEquals(CoreNumber.from(5), mat.getCell(1, 0));
+        assertEquals(CoreNumber.ZERO, mat.getCell(2, 2));
+        assertEquals(dense(mat), mat);
+        assertEquals(mat, SparseMatrix.from(dense(mat)));
+    }
+
+    @Test
+    public void operationsMatchDense() throws CoreMatrix.MatrixBoundMismatchException {
+        final CoreMatrix mat = sample();
+        final CoreMatrix den = dense(mat);
+
+        final NtValue sum = mat.applyAdd(mat.applyMul(CoreNumber.from(2)));
+        assertTrue(sum instanceof SparseMatrix);
+        assertEquals(den.applyAdd(den.applyMul(CoreNumber.from(2))), sum);
+        assertEquals(den.applySub(den), mat.applySub(mat));
+
+        final CoreMatrix trans = mat.transpose();
+        assertTrue(trans instanceof SparseMatrix);
+        assertEquals(den.transpose(), trans);
+
+        final CoreMatrix expected = den.crossProduct(den.transpose());
+        assertEquals(expected, mat.crossProduct(trans));
+        assertEquals(expected, mat.crossProduct(den.transpose()));
+        assertEquals(expected, den.crossProduct(trans));
+
+        assertEquals(den.reduceLeft(NtValue::applySub, CoreNumber.ZERO), mat.reduceLeft(NtValue::applySub, CoreNumber.ZERO));
+    }
+
+    @Test
+    public void denseResultsAreNotSparse() {
+        final CoreMatrix mat = SparseMatrix.fromTriplets(2, 2,
+                new int[]{0, 1}, new int[]{0, 1},
+                new NtValue[]{CoreNumber.ONE, CoreNumber.ONE});
+        final CoreMatrix other = SparseMatrix.fromTriplets(2, 2,
+                new int[]{0}, new int[]{1},
+                new NtValue[]{CoreNumber.ONE});
+        assertTrue(mat instanceof SparseMatrix);
+        assertFalse(mat.applyAdd(other) instanceof SparseMatrix);
+        // Multiplying by zero leaves nothing to store
+        assertEquals(0, ((SparseMatrix) mat.applyMul(CoreNumber.ZERO)).getNonZeroCount());
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void cellsMustBeInBounds() {
+        SparseMatrix.fromTriplets(2, 2, new int[]{2}, new int[]{0}, new NtValue[]{CoreNumber.ONE});
+    }
+}
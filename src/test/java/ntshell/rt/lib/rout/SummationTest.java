@@ -0,0 +1,101 @@
+/**
+ *     Copyright (C) 2017  Paul Teng
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program. If not, see <http://www.gnu.org/licenses/>.
+ */
+package ntshell.rt.lib.rout;
+
+import com.ymcmp.ntshell.NtValue;
+import com.ymcmp.ntshell.value.CoreAtom;
+import com.ymcmp.ntshell.value.CoreLambda;
+import com.ymcmp.ntshell.value.CoreNumber;
+import com.ymcmp.ntshell.value.CoreRope;
+
+import org.junit.Test;
+
+import static org.junit.Assert.*;
+
+/**
+ *
+ * @author YTENG
+ */
+public class SummationTest {
+
+    /**
+     * x -> x^3 - 2x + 1/2, optionally telling summation that it is pure and
+     * what its coefficients are
+     */
+    private static CoreLambda cubic(final boolean pure, final boolean polynomial) {
+        return new CoreLambda(new CoreLambda.Info("cubic", "number -> number", "")) {
+            @Override
+            public NtValue applyCall(final NtValue[] params) {
+                final NtValue x = params[0];
+                return x.applyPow(CoreNumber.from(3))
+                        .applySub(CoreNumber.from(2).applyMul(x))
+                        .applyAdd(CoreNumber.from(1, 2));
+            }
+
+            @Override
+            public boolean isPure() {
+                return pure;
+            }
+
+            @Override
+            public CoreNumber[] getPolynomial() {
+                if (polynomial) {
+                    return new CoreNumber[]{CoreNumber.from(1, 2), CoreNumber.from(-2), CoreNumber.ZERO, CoreNumber.ONE};
+                }
+                return null;
+            }
+        };
+    }
+
+    private static NtValue sum(final NtValue f, final long m, final long n) {
+        return Summation.getInstance().applyCall(f).applyCall(CoreNumber.from(m), CoreNumber.from(n));
+    }
+
+    @Test
+    public void strategiesAgree() {
+        final NtValue expected = sum(cubic(false, false), -5, 20000);
+        assertEquals(expected, sum(cubic(false, true), -5, 20000));
+        assertEquals(expected, sum(cubic(true, false), -5, 20000));
+        assertEquals(CoreNumber.from(1079, 2), sum(cubic(true, true), -5, 7));
+    }
+
+    @Test
+    public void closedFormHandlesHugeRanges() {
+        final CoreLambda square = new CoreLambda(new CoreLambda.Info("square", "number -> number", "")) {
+            @Override
+            public NtValue applyCall(final NtValue[] params) {
+                throw new AssertionError("Closed form should not call the function");
+            }
+
+            @Override
+            public CoreNumber[] getPolynomial() {
+                return new CoreNumber[]{CoreNumber.ZERO, CoreNumber.ZERO, CoreNumber.ONE};
+            }
+        };
+        assertEquals(CoreNumber.from("333333383333335000000"), sum(square, 1, 10000000));
+    }
+
+    @Test
+    public void kahanSumsAsDoubles() {
+        final NtValue f = Summation.getInstance().applyCall(cubic(false, false), CoreAtom.from("kahan"));
+        final double actual = ((CoreNumber) f.applyCall(CoreNumber.from(-5), CoreNumber.from(7))).toDouble();
+        assertEquals(539.5, actual, 1e-9);
+
+        final NtValue g = Summation.getInstance().applyCall(cubic(false, false), CoreRope.from("ka").concat("han"));
+        assertEquals(539.5, ((CoreNumber) g.applyCall(CoreNumber.from(-5), CoreNumber.from(7))).toDouble(), 1e-9);
+    }
+}
@@ -0,0 +1,156 @@
+/**
+ *     Copyright (C) 2017  Paul Teng
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program. If not, see <http://www.gnu.org/licenses/>.
+ */
+package ntshell.rt.lib.rout;
+
+import com.ymcmp.ntshell.NtValue;
+import com.ymcmp.ntshell.rte.DispatchException;
+import com.ymcmp.ntshell.value.CoreAtom;
+import com.ymcmp.ntshell.value.CoreMatrix;
+import com.ymcmp.ntshell.value.CoreNumber;
+import com.ymcmp.ntshell.value.CoreRope;
+import com.ymcmp.ntshell.value.CoreSequence;
+import com.ymcmp.ntshell.value.DoubleMatrix;
+
+
+import ntshell.rt.lib.rout.trig.Loader;
+
+import org.junit.Test;
+
+import static org.junit.Assert.*;
+
+/**
+ *
+ * @author YTENG
+ */
+public class UnaryNumericFunctionTest {
+
+    private static NtValue call(final NtValue f, final NtValue x) {
+        return f.applyCall(new NtValue[]{x});
+    }
+
+    @Test
+    public void broadcastsOverMatrices() {
+        final CoreMatrix mat = CoreMatrix.from(new NtValue[][]{
+            {CoreNumber.from(4), CoreNumber.from(-9, 4)},
+            {CoreNumber.from(5, 2), CoreNumber.from(-5, 2)}
+        });
+        assertEquals(CoreMatrix.from(new NtValue[][]{
+            {CoreNumber.from(4), CoreNumber.from(9, 4)},
+            {CoreNumber.from(5, 2), CoreNumber.from(5, 2)}
+        }), call(Abs.getInstance(), mat));
+        assertEquals(CoreMatrix.from(new NtValue[][]{
+            {CoreNumber.from(4), CoreNumber.from(-2)},
+            {CoreNumber.from(3), CoreNumber.from(-3)}
+        }), call(Round.getInstance(), mat));
+        assertEquals(CoreNumber.from(3), call(Sqrt.getInstance(), CoreNumber.from(9)));
+        assertEquals(CoreMatrix.getEmptyMatrix(), call(Floor.getInstance(), CoreMatrix.getEmptyMatrix()));
+
+        try {
+            call(Abs.getInstance(), CoreAtom.from("abc"));
+            fail("Atoms are not numbers");
+        } catch (DispatchException ex) {
+        }
+        try {
+            call(Abs.getInstance(), CoreRope.from("abc"));
+            fail("Ropes are not numbers either");
+        } catch (DispatchException ex) {
+        }
+    }
+
+    @Test
+    public void doubleMatricesStayPrimitive() {
+        final double[] cells = {0.5, -0.5, 2.5, -2.5, 1.49, Double.NaN};
+        final NtValue result = call(Round.getInstance(), DoubleMatrix.wrap(2, 3, cells));
+        assertTrue(result instanceof DoubleMatrix);
+        final DoubleMatrix rounded = (DoubleMatrix) result;
+        assertEquals(1, rounded.getDouble(0), 0);
+        assertEquals(-1, rounded.getDouble(1), 0);
+        assertEquals(3, rounded.getDouble(2), 0);
+        assertEquals(-3, rounded.getDouble(3), 0);
+        assertEquals(1, rounded.getDouble(4), 0);
+        assertTrue(Double.isNaN(rounded.getDouble(5)));
+
+        final NtValue logs = call(LogBase.getInstance().applyCall(new NtValue[]{CoreNumber.TWO}),
+                DoubleMatrix.wrap(1, 2, new double[]{8, 1024}));
+        assertEquals(3, ((DoubleMatrix) logs).getDouble(0), 1e-12);
+        assertEquals(10, ((DoubleMatrix) logs).getDouble(1), 1e-12);
+    }
+
+    @Test
+    public void nonFiniteNumbersAgreeWithDoubles() {
+        final Loader trig = new Loader();
+        final NtValue[] functions = {
+            Abs.getInstance(), Sqrt.getInstance(), Cbrt.getInstance(), Floor.getInstance(),
+            Ceil.getInstance(), Round.getInstance(), Cube.getInstance(), Square.getInstance(),
+            NaturalLog.getInstance(), Log10.getInstance(),
+            trig.findDefinition("sin"), trig.findDefinition("cos"), trig.findDefinition("tan"),
+            trig.findDefinition("asin"), trig.findDefinition("acos"), trig.findDefinition("atan"),
+            trig.findDefinition("sinh"), trig.findDefinition("cosh"), trig.findDefinition("tanh"),
+            trig.findDefinition("deg"), trig.findDefinition("rad")
+        };
+        final double[] cells = {Double.POSITIVE_INFINITY, Double.NEGATIVE_INFINITY, Double.NaN};
+        final CoreNumber[] numbers = {CoreNumber.POS_INF, CoreNumber.NEG_INF, CoreNumber.NAN};
+        for (final NtValue f : functions) {
+            final DoubleMatrix expected = (DoubleMatrix) call(f, DoubleMatrix.wrap(1, cells.length, cells));
+            for (int i = 0; i < numbers.length; ++i) {
+                assertEquals(f + " of " + numbers[i], CoreNumber.exact(expected.getDouble(i)), call(f, numbers[i]));
+            }
+        }
+    }
+
+    @Test
+    public void largeNumbersKeepTheirPrecision() {
+        final int old = CoreNumber.getPrecision();
+        try {
+            CoreNumber.setPrecision(10);
+            final NtValue rad = new Loader().findDefinition("rad");
+            // 9 integer digits and 10 decimal places do not fit in a double
+            assertEquals("174532925.1994329577", call(rad, CoreNumber.from(10000000000L)).toString());
+            assertEquals("0.0174532925", call(rad, CoreNumber.ONE).toString());
+        } finally {
+            CoreNumber.setPrecision(old);
+        }
+    }
+
+    @Test
+    public void largeMatricesAgreeWithMap() {
+        final int rows = 100;
+        final int columns = 80;
+        final double[] cells = new double[rows * columns];
+        final NtValue[][] values = new NtValue[rows][columns];
+        for (int i = 0; i < cells.length; ++i) {
+            cells[i] = i / 7.0 - 300;
+            values[i / columns][i % columns] = CoreNumber.exact(cells[i]);
+        }
+
+        final NtValue square = Square.getInstance();
+        final CoreMatrix mat = CoreMatrix.from(values);
+        assertEquals(mat.map(x -> x.applyMul(x)), call(square, mat));
+        // Double matrices are squared in double precision
+        assertEquals(mat.map(x -> CoreNumber.exact(((CoreNumber) x).toDouble() * ((CoreNumber) x).toDouble())),
+                call(square, DoubleMatrix.wrap(rows, columns, cells)));
+    }
+
+    @Test
+    public void sequencesAreMappedLazily() {
+        final NtValue seq = call(Cube.getInstance(), CoreSequence.range(CoreNumber.ONE, null, CoreNumber.ONE));
+        assertTrue(seq instanceof CoreSequence);
+        assertEquals(CoreMatrix.from(new NtValue[][]{
+            {CoreNumber.ONE, CoreNumber.from(8), CoreNumber.from(27)}
+        }), ((CoreSequence) seq).take(3).collect());
+    }
+}
@@ -0,0 +1,179 @@
+/**
+ *     Copyright (C) 2017  Paul Teng
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program. If not, see <http://www.gnu.org/licenses/>.
+ */
+package ntshell.rt.lib.rout.matrix;
+
+import com.ymcmp.ntshell.NtValue;
+
+import com.ymcmp.ntshell.rte.DispatchException;
+
+import com.ymcmp.ntshell.value.CoreAtom;
+import com.ymcmp.ntshell.value.CoreLambda;
+import com.ymcmp.ntshell.value.CoreMatrix;
+import com.ymcmp.ntshell.value.CoreNumber;
+import com.ymcmp.ntshell.value.CoreRope;
+import com.ymcmp.ntshell.value.CoreSequence;
+import com.ymcmp.ntshell.value.CoreUnit;
+import com.ymcmp.ntshell.value.DoubleMatrix;
+
+import java.io.IOException;
+
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import static org.junit.Assert.*;
+
+/**
+ *
+ * @author YTENG
+ */
+public class CsvLoadTest {
+
+    @Rule
+    public final TemporaryFolder folder = new TemporaryFolder();
+
+    private final CsvLoad csvLoad = new CsvLoad();
+
+    private static double parse(final String str) {
+        final byte[] text = str.getBytes(StandardCharsets.US_ASCII);
+        return CsvReader.parse(text, text.length);
+    }
+
+    private NtValue load(final String content, final NtValue... opts) throws IOException {
+        final Path path = folder.newFile().toPath();
+        Files.write(path, content.getBytes(StandardCharsets.UTF_8));
+        final NtValue[][] rows = new NtValue[opts.length / 2][];
+        for (int i = 0; i < rows.length; ++i) {
+            rows[i] = new NtValue[]{opts[i * 2], opts[i * 2 + 1]};
+        }
+        final NtValue atom = CoreAtom.from(path.toString());
+        return opts.length == 0
+                ? csvLoad.applyCall(new NtValue[]{atom})
+                : csvLoad.applyCall(new NtValue[]{atom, CoreMatrix.from(rows)});
+    }
+
+    private static CoreMatrix matrix(final double[][] cells) {
+        final NtValue[][] values = new NtValue[cells.length][];
+        for (int i = 0; i < cells.length; ++i) {
+            values[i] = new NtValue[cells[i].length];
+            for (int j = 0; j < cells[i].length; ++j) {
+                values[i][j] = CoreNumber.exact(cells[i][j]);
+            }
+        }
+        return CoreMatrix.from(values);
+    }
+
+    @Test
+    public void testParse() {
+        assertEquals(0, parse("0"), 0);
+        assertEquals(-12.5, parse("-12.5"), 0);
+        assertEquals(1.5e10, parse("+1.5E10"), 0);
+        assertEquals(0.001, parse(".1e-2"), 0);
+        assertEquals(0.1, parse("0.1"), 0);
+        assertEquals(Double.parseDouble("12345678901234567890.5"), parse("12345678901234567890.5"), 0);
+        assertEquals(Double.parseDouble("1e300"), parse("1e300"), 0);
+        assertEquals(Double.POSITIVE_INFINITY, parse("Infinity"), 0);
+        assertTrue(Double.isNaN(parse("")));
+        assertTrue(Double.isNaN(parse("1.2.3")));
+        assertTrue(Double.isNaN(parse("abc")));
+    }
+
+    @Test
+    public void loadWholeFile() throws IOException {
+        final NtValue mat = load("1,2,3\n4,5.5,x\r\n\n\"7\",,9");
+        assertTrue(mat instanceof DoubleMatrix);
+        assertEquals(matrix(new double[][]{{1, 2, 3}, {4, 5.5, Double.NaN}, {7, Double.NaN, 9}}), mat);
+
+        assertEquals(CoreMatrix.getEmptyMatrix(), load(""));
+        assertEquals(CoreUnit.getInstance(), csvLoad.applyCall(new NtValue[]{
+            CoreAtom.from(folder.getRoot().toPath().resolve("missing.csv").toString())}));
+    }
+
+    @Test
+    public void loadRaggedRows() throws IOException {
+        final double nan = Double.NaN;
+        assertEquals(matrix(new double[][]{{1, 2, 3}, {4, 5, nan}, {6, 7, 8}}), load("1,2,3\n4,5\n6,7,8"));
+        assertEquals(matrix(new double[][]{{1, 2}, {3, 4}, {6, 7}}), load("1,2\n3,4,5\n6,7"));
+
+        // The width of the first row carries over to later chunks
+        final NtValue gen = load("1,2\n3,4,5\n6\n", CoreAtom.from("chunk"), CoreNumber.ONE);
+        assertEquals(matrix(new double[][]{{1, 2}}), gen.applyCall(new NtValue[0]));
+        assertEquals(matrix(new double[][]{{3, 4}}), gen.applyCall(new NtValue[0]));
+        assertEquals(matrix(new double[][]{{6, nan}}), gen.applyCall(new NtValue[0]));
+    }
+
+    @Test
+    public void loadWithOptions() throws IOException {
+        final String content = "a,b,c\n1,2,3\n4,\"5,5\",6\n7,8,9\n";
+        assertEquals(matrix(new double[][]{{3, 1}, {6, 4}}), load(content,
+                CoreAtom.from("header"), CoreNumber.ONE,
+                CoreAtom.from("columns"), CoreMatrix.from(new NtValue[][]{{CoreNumber.from(3), CoreNumber.ONE}}),
+                CoreAtom.from("limit"), CoreNumber.from(2)));
+        assertEquals(matrix(new double[][]{{1, 2}, {4, 5}}), load("1;2\n4;5",
+                CoreAtom.from("separator"), CoreAtom.from(";")));
+        assertEquals(matrix(new double[][]{{1, 2}, {4, 5}}), load("1;2\n4;5",
+                CoreAtom.from("separator"), CoreRope.from(";")));
+
+        try {
+            load(content, CoreAtom.from("bogus"), CoreNumber.ONE);
+            fail("Unknown options should be rejected");
+        } catch (DispatchException ex) {
+        }
+        try {
+            load(content, CoreAtom.from("columns"), CoreNumber.ZERO);
+            fail("Columns start at one");
+        } catch (DispatchException ex) {
+        }
+    }
+
+    @Test
+    public void loadInChunks() throws IOException {
+        final StringBuilder sb = new StringBuilder();
+        for (int i = 1; i <= 10; ++i) {
+            sb.append(i).append(',').append(i * i).append('\n');
+        }
+        final NtValue gen = load(sb.toString(), CoreAtom.from("chunk"), CoreNumber.from(4));
+        final NtValue first = gen.applyCall(new NtValue[0]);
+        assertEquals(matrix(new double[][]{{1, 1}, {2, 4}, {3, 9}, {4, 16}}), first);
+
+        // Fold the remaining six rows by counting them
+        final NtValue rows = gen.applyCall(new NtValue[]{
+            new CoreLambda() {
+                @Override
+                public NtValue applyCall(final NtValue[] params) {
+                    return params[0].applyAdd(CoreNumber.from(((CoreMatrix) params[1]).getRowCount()));
+                }
+            },
+            CoreNumber.ZERO
+        });
+        assertEquals(CoreNumber.from(6), rows);
+        assertEquals(CoreUnit.getInstance(), gen.applyCall(new NtValue[0]));
+    }
+
+    @Test
+    public void loadAsSequence() throws IOException {
+        final NtValue seq = load("1,2\n3,4\n5,6\n", CoreAtom.from("stream"), CoreNumber.ONE);
+        assertTrue(seq instanceof CoreSequence);
+        assertEquals(matrix(new double[][]{{1, 2}, {3, 4}, {5, 6}}), ((CoreSequence) seq).collect());
+        // Every pass reads the file again
+        assertEquals(matrix(new double[][]{{3, 4}}), ((CoreSequence) seq).drop(1).take(1).collect());
+    }
+}
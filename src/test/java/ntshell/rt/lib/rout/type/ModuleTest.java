@@ -106,6 +106,7 @@ public class ModuleTest {
         assertEquals(CoreNumber.from(true), val.applyCall(CoreAtom.from("Abc"), CoreAtom.from("ZJ")));
         assertEquals(CoreNumber.from(false), val.applyCall(CoreAtom.from("Abc"), CoreUnit.getInstance()));
         assertEquals(CoreNumber.from(false), val.applyCall(CoreUnit.getInstance()));
+        assertEquals(CoreNumber.from(true), val.applyCall(CoreRope.from("Abc"), CoreAtom.from("ZJ")));
     }
 
     @Test